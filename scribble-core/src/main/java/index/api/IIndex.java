@@ -1,6 +1,7 @@
 package index.api;
 
 import java.io.IOException;
+import java.util.stream.Stream;
 
 public interface IIndex {
 	void open() throws IOException;
@@ -15,6 +16,42 @@ public interface IIndex {
 	void remove(Object id) throws IOException;
 
 
+	/**
+	 * Streams the entries whose ids are in the specified range in ascending order of the ids. Ids of the same type sort
+	 * naturally. The entries are read lazily, so a limit or any other short-circuiting operation ends the scan early.
+	 *
+	 * @param fromId the first id, inclusive, or null to start with the smallest id
+	 * @param toId the end id, exclusive, or null to end with the greatest id
+	 * @return the {@link Stream} of the entries
+	 * @throws IOException if the index could not be opened
+	 */
+	Stream<IIndexEntry> scan(Object fromId, Object toId) throws IOException;
+
+
+	/**
+	 * Streams the entries whose ids are strings starting with the specified prefix in ascending order of the ids, see
+	 * {@link #scan(Object, Object)}.
+	 *
+	 * @param prefix the prefix
+	 * @return the {@link Stream} of the entries
+	 * @throws IOException if the index could not be opened
+	 */
+	Stream<IIndexEntry> prefix(String prefix) throws IOException;
+
+
+	/**
+	 * Streams the ids of the entries which have the specified value of a property with a secondary index in ascending
+	 * order. The entries with a collection as property value are found by each of its elements.
+	 *
+	 * @param property the name of the property
+	 * @param value the value
+	 * @return the {@link Stream} of the ids
+	 * @throws IOException if the secondary index could not be opened
+	 * @throws IllegalArgumentException if the property has no secondary index
+	 */
+	Stream<Object> findIds(String property, Object value) throws IOException;
+
+
 	void close() throws IOException;
 
 }
@@ -1,5 +1,7 @@
 package index.api;
 
+import java.util.Map;
+
 public interface IIndexEntry extends Cloneable {
 	Object getId();
 
@@ -25,5 +27,8 @@ public interface IIndexEntry extends Cloneable {
 	void setProperty(String key, Object value);
 
 
+	Map<String, Object> getProperties();
+
+
 	IIndexEntry clone();
 }
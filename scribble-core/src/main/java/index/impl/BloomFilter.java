@@ -0,0 +1,209 @@
+package index.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A Bloom filter over the keys of a segment-file, so that lookups of keys which are not contained return without
+ * reading the segment-file. The bit positions are derived from the 64-bit {@link IndexKey#hash(byte[])} by double
+ * hashing.
+ * <p>
+ * The filter is stored next to its segment-file together with the entry count and size of the segment-file, so that
+ * a filter which does not belong to the current segment-file, e.g. after a crash between writing both, is discarded.
+ * A read filter is memory-mapped and does not occupy the heap.
+ */
+public class BloomFilter {
+	private static final int MAGIC = 0x424C4F4D;
+	private static final int HEADER_SIZE = 32;
+	private final LongBuffer words;
+	private final long bits;
+	private final int hashes;
+
+
+	private BloomFilter(final LongBuffer words, final long bits, final int hashes) {
+		this.words = words;
+		this.bits = bits;
+		this.hashes = hashes;
+	}
+
+
+	/**
+	 * Creates an empty filter sized for the expected number of keys and the false positive rate.
+	 *
+	 * @param expectedKeys the expected number of keys
+	 * @param falsePositiveRate the false positive rate between 0 and 1 (exclusive)
+	 * @return the {@link BloomFilter}
+	 */
+	public static BloomFilter create(final long expectedKeys, final double falsePositiveRate) {
+		if (falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+			throw new IllegalArgumentException("The false positive rate must be between 0 and 1!");
+		}
+
+		final long keys = Math.max(1L, expectedKeys);
+		final long optimal = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		final long words = Math.max(1L, (optimal + 63) >>> 6);
+
+		if (words > Integer.MAX_VALUE / 8 - BloomFilter.HEADER_SIZE) {
+			throw new IllegalArgumentException("The filter for " + expectedKeys + " keys is too large");
+		}
+
+		final int hashes = (int) Math.max(1L, Math.round((double) (words << 6) / keys * Math.log(2)));
+		return new BloomFilter(LongBuffer.allocate((int) words), words << 6, hashes);
+	}
+
+
+	/**
+	 * Adds a key.
+	 *
+	 * @param key the key
+	 */
+	public void add(final byte[] key) {
+		add(IndexKey.hash(key));
+	}
+
+
+	/**
+	 * Adds the key with the specified hash.
+	 *
+	 * @param hash the {@link IndexKey#hash(byte[])} of the key
+	 */
+	void add(final long hash) {
+		final long second = IndexKey.mix(hash) | 1L;
+
+		for (int i = 0; i < hashes; i++) {
+			final long bit = Math.floorMod(hash + i * second, bits);
+			final int index = (int) (bit >>> 6);
+			words.put(index, words.get(index) | 1L << bit);
+		}
+	}
+
+
+	/**
+	 * Returns false if the key has certainly not been added.
+	 *
+	 * @param key the key
+	 * @return false if the key is not contained, true if it may be contained
+	 */
+	public boolean mightContain(final byte[] key) {
+		final long hash = IndexKey.hash(key);
+		final long second = IndexKey.mix(hash) | 1L;
+
+		for (int i = 0; i < hashes; i++) {
+			final long bit = Math.floorMod(hash + i * second, bits);
+
+			if ((words.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Writes the filter to a temporary file and moves it to the specified path atomically.
+	 *
+	 * @param path the path
+	 * @param entryCount the entry count of the segment-file
+	 * @param segmentSize the size of the segment-file
+	 * @throws IOException if the file could not be written
+	 */
+	public void write(final Path path, final long entryCount, final long segmentSize) throws IOException {
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		final ByteBuffer bytes = ByteBuffer.allocate(BloomFilter.HEADER_SIZE + words.capacity() * 8);
+		bytes.putInt(BloomFilter.MAGIC).putLong(entryCount).putLong(segmentSize).putInt(hashes).putLong(bits);
+		bytes.asLongBuffer().put(words.duplicate().clear());
+		bytes.clear();
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+
+			channel.force(true);
+		}
+
+		Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+
+	/**
+	 * Reads the filter of a segment-file.
+	 *
+	 * @param path the path of the filter
+	 * @param entryCount the entry count of the segment-file
+	 * @param segmentSize the size of the segment-file
+	 * @return the {@link BloomFilter} or null if the file does not exist or belongs to another segment-file
+	 * @throws IOException if the file could not be read
+	 */
+	public static BloomFilter read(final Path path, final long entryCount, final long segmentSize) throws IOException {
+		if (!Files.exists(path)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < BloomFilter.HEADER_SIZE) {
+				return null;
+			}
+
+			final ByteBuffer header = ByteBuffer.allocate(BloomFilter.HEADER_SIZE);
+
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+
+			header.flip();
+
+			if (header.getInt() != BloomFilter.MAGIC || header.getLong() != entryCount || header.getLong() != segmentSize) {
+				return null;
+			}
+
+			final int hashes = header.getInt();
+			final long bits = header.getLong();
+
+			if (channel.size() != BloomFilter.HEADER_SIZE + bits / 8) {
+				return null;
+			}
+
+			// the mapping stays valid after the channel has been closed
+			return new BloomFilter(channel.map(MapMode.READ_ONLY, BloomFilter.HEADER_SIZE, bits / 8).asLongBuffer(), bits, hashes);
+		}
+	}
+
+
+	/**
+	 * Gets the path of the filter of a segment-file.
+	 *
+	 * @param segmentPath the path of the segment-file
+	 * @return the path of the filter
+	 */
+	public static Path getPath(final Path segmentPath) {
+		return segmentPath.resolveSibling(segmentPath.getFileName() + ".bloom");
+	}
+
+
+	/**
+	 * Gets the number of bits.
+	 *
+	 * @return the number of bits
+	 */
+	public long getBitCount() {
+		return bits;
+	}
+
+
+	/**
+	 * Gets the number of hash functions.
+	 *
+	 * @return the number of hash functions
+	 */
+	public int getHashCount() {
+		return hashes;
+	}
+}
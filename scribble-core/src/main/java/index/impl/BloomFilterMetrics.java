@@ -0,0 +1,93 @@
+package index.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the lookups of the segment-files of an index which have been answered by their {@link BloomFilter}s.
+ */
+public class BloomFilterMetrics {
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder negatives = new LongAdder();
+	private final LongAdder falsePositives = new LongAdder();
+
+
+	/**
+	 * Records a lookup in a segment-file with a filter.
+	 *
+	 * @param negative true if the filter excluded the key
+	 */
+	void lookup(final boolean negative) {
+		lookups.increment();
+
+		if (negative) {
+			negatives.increment();
+		}
+	}
+
+
+	/**
+	 * Records a lookup which has passed the filter but has not found the key.
+	 */
+	void falsePositive() {
+		falsePositives.increment();
+	}
+
+
+	/**
+	 * Gets the number of lookups in segment-files with a filter.
+	 *
+	 * @return the number of lookups
+	 */
+	public long getLookups() {
+		return lookups.sum();
+	}
+
+
+	/**
+	 * Gets the number of lookups which have been answered by the filter without reading the segment-file.
+	 *
+	 * @return the number of lookups
+	 */
+	public long getNegatives() {
+		return negatives.sum();
+	}
+
+
+	/**
+	 * Gets the number of lookups which have passed the filter but have not found the key.
+	 *
+	 * @return the number of false positives
+	 */
+	public long getFalsePositives() {
+		return falsePositives.sum();
+	}
+
+
+	/**
+	 * Gets the share of the lookups of absent keys which have passed the filter.
+	 *
+	 * @return the observed false positive rate or 0 if there has not been a lookup of an absent key
+	 */
+	public double getFalsePositiveRate() {
+		final long falsePositives = getFalsePositives();
+		final long absent = getNegatives() + falsePositives;
+		return absent > 0 ? (double) falsePositives / absent : 0.0;
+	}
+
+
+	/**
+	 * Gets the share of the lookups which have been answered by the filter without reading the segment-file.
+	 *
+	 * @return the share of the lookups
+	 */
+	public double getNegativeRate() {
+		final long lookups = getLookups();
+		return lookups > 0 ? (double) getNegatives() / lookups : 0.0;
+	}
+
+
+	@Override
+	public String toString() {
+		return "BloomFilterMetrics [lookups=" + getLookups() + ", negatives=" + getNegatives() + ", falsePositives=" + getFalsePositives() + ", falsePositiveRate=" + getFalsePositiveRate() + "]";
+	}
+}
@@ -4,65 +4,613 @@ import index.api.IIndex;
 import index.api.IIndexEntry;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
-public class Index implements IIndex {
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index partitioned by the hash of the ids into 2^{@link IndexOptions#getPartitionBits()} {@link Segment}s. The
+ * partition of an id is given by the top bits of its {@link IndexKey#hash(byte[])}, so the ids spread evenly over the
+ * partitions. The number of partitions is stored in the index directory and cannot change afterwards.
+ * <p>
+ * At most {@link IndexOptions#getMaxOpenSegments()} segments are kept open. The least recently used segment which is
+ * not in use is closed when another one has to be opened. The index is safe for use by multiple threads.
+ * <p>
+ * The changes are logged to an {@link IndexLog} before they are applied to a segment. A checkpoint writes the changes
+ * of all open segments to their segment-files once the log exceeds {@link IndexOptions#getCheckpointSize()}, so that
+ * the replay after a crash is bounded by the checkpoint size.
+ * <p>
+ * The {@link SecondaryIndexes} are partitioned indexes in sub-directories. Their tuple ids are partitioned by the first
+ * element, so the posting list of a value is read from a single partition. Their postings are logged with the entries
+ * and they are checkpointed together with the segments.
+ */
+public class Index implements SortedIndex {
+	private static final Logger LOG = LoggerFactory.getLogger(Index.class);
+	private static final String PARTITIONS_FILE = "index.partitions";
+	private static final String LOG_FILE = "index.wal";
 	private Path path;
-	private final Map<String, Segment> cache = new HashMap<>();
+	private IndexOptions options = new IndexOptions();
+	private final BloomFilterMetrics metrics = new BloomFilterMetrics();
+	// the open segments in access order, guarded by itself
+	private final Map<Integer, CachedSegment> cache = new LinkedHashMap<>(16, 0.75f, true);
+	// the evicted segments which are being closed
+	private final Map<Integer, Segment> closing = new ConcurrentHashMap<>();
+	private final SecondaryIndexes secondaries;
+	private final Object checkpointLock = new Object();
+	private volatile IndexLog log;
+	private volatile boolean open = false;
 
 
 	public Index() {
+		secondaries = createSecondaryIndexes();
 	}
 
 
 	public Index(final Path path) {
 		this.path = path;
+		secondaries = createSecondaryIndexes();
+	}
+
+
+	public Index(final Path path, final IndexOptions options) {
+		this.path = path;
+		this.options = options;
+		secondaries = createSecondaryIndexes();
 	}
 
 
+	private SecondaryIndexes createSecondaryIndexes() {
+		final IndexOptions secondaryOptions = options.withoutSecondaryIndexes();
+		return new SecondaryIndexes(options, property -> new Index(path.resolve(SecondaryIndexes.getDirectoryName(property)), secondaryOptions));
+	}
+
+
+	/**
+	 * Creates the index directory and checks that the number of partitions matches the one the index has been created
+	 * with.
+	 */
 	@Override
-	public void open() throws IOException {
+	public synchronized void open() throws IOException {
+		if (open) {
+			return;
+		}
+
+		Files.createDirectories(path);
+		final Path partitionsPath = path.resolve(Index.PARTITIONS_FILE);
+		final int partitions = 1 << options.getPartitionBits();
+
+		if (Files.exists(partitionsPath)) {
+			final int existing = Integer.parseInt(new String(Files.readAllBytes(partitionsPath), StandardCharsets.UTF_8).trim());
+
+			if (existing != partitions) {
+				throw new IOException("The index " + path + " has " + existing + " partitions, but " + partitions + " are configured!");
+			}
+		} else {
+			Files.write(partitionsPath, Integer.toString(partitions).getBytes(StandardCharsets.UTF_8));
+		}
+
+		// the replay redoes the changes of the postings
+		secondaries.open();
+
+		if (options.isWriteAheadLog()) {
+			recover();
+		}
+
+		open = true;
+	}
+
+
+	/**
+	 * Replays the changes in the write-ahead log since the last checkpoint and writes them to the segment-files.
+	 *
+	 * @throws IOException if an error occurs during recovery
+	 */
+	private void recover() throws IOException {
+		final IndexLog recovered = new IndexLog(path.resolve(Index.LOG_FILE), options);
+
+		try {
+			final int changes = recovered.replay((key, entry, postings) -> apply(IndexKey.decode(key), entry, postings));
+
+			if (changes > 0) {
+				LOG.info("Recovered " + changes + " changes from the write-ahead log of " + path);
+			}
+
+			recovered.checkpoint(this::rebuild);
+		} catch (final IOException | RuntimeException e) {
+			recovered.close();
+			throw e;
+		}
+
+		log = recovered;
 	}
 
 
 	@Override
 	public void add(final IIndexEntry indexEntry) throws IOException {
-		final Segment segment = getSegmentForId(indexEntry.getId());
-		segment.add(indexEntry);
+		write(indexEntry.getId(), indexEntry);
 	}
 
 
 	@Override
 	public IIndexEntry find(final Object id) throws IOException {
-		final Segment segment = getSegmentForId(id);
-		return segment.get(id);
+		return withSegment(id, segment -> segment.get(id));
 	}
 
 
 	@Override
 	public void remove(final Object id) throws IOException {
-		final Segment segment = getSegmentForId(id);
-		segment.remove(id);
+		write(id, null);
+	}
+
+
+	/**
+	 * Adds or removes the entry of an id and updates its postings in the {@link SecondaryIndexes}.
+	 *
+	 * @param id the id
+	 * @param entry the entry or null to remove the id
+	 * @throws IOException if the change could not be written
+	 */
+	private void write(final Object id, final IIndexEntry entry) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		if (secondaries.isEmpty()) {
+			log(id, entry, List.of());
+			return;
+		}
+
+		if (entry != null) {
+			secondaries.validate(entry);
+		}
+
+		synchronized (secondaries.lock(id)) {
+			final IIndexEntry previous = withPartition(getPartition(id), segment -> segment.get(id));
+			log(id, entry, secondaries.changes(id, previous, entry));
+		}
+	}
+
+
+	/**
+	 * Logs the change with the changes of its postings to the {@link IndexLog} and applies them.
+	 *
+	 * @param id the id
+	 * @param entry the entry or null to remove the id
+	 * @param postings the changes of the postings of the id
+	 * @throws IOException if the change could not be logged or applied
+	 */
+	private void log(final Object id, final IIndexEntry entry, final List<SecondaryIndexes.Posting> postings) throws IOException {
+		final IndexLog log = this.log;
+
+		if (log == null) {
+			apply(id, entry, postings);
+			return;
+		}
+
+		final long lsn = log.append(IndexKey.encode(id), entry, postings);
+
+		try {
+			apply(id, entry, postings);
+		} finally {
+			log.done();
+		}
+
+		log.commit(lsn);
+
+		if (log.size() > options.getCheckpointSize()) {
+			checkpoint();
+		}
+	}
+
+
+	/**
+	 * Applies a change to the segment of the id and the changes of its postings to the {@link SecondaryIndexes}. Used
+	 * by the writes and the replay of the log alike.
+	 *
+	 * @param id the id
+	 * @param entry the entry or null to remove the id
+	 * @param postings the changes of the postings of the id
+	 * @throws IOException if the change could not be applied
+	 */
+	private void apply(final Object id, final IIndexEntry entry, final List<SecondaryIndexes.Posting> postings) throws IOException {
+		withPartition(getPartition(id), segment -> {
+			if (entry != null) {
+				segment.add(entry);
+			} else {
+				segment.remove(id);
+			}
+
+			return null;
+		});
+
+		secondaries.apply(postings);
+	}
+
+
+	/**
+	 * Writes the changes of all segments and of the {@link SecondaryIndexes} to their files and discards the
+	 * write-ahead log, so that a restart only replays the changes since now.
+	 *
+	 * @throws IOException if a segment-file could not be written
+	 */
+	@Override
+	public void checkpoint() throws IOException {
+		synchronized (checkpointLock) {
+			final IndexLog log = this.log;
+
+			if (log == null) {
+				rebuild();
+			} else if (log.size() > 0) {
+				log.checkpoint(this::rebuild);
+			}
+		}
+	}
+
+
+	/**
+	 * Rebuilds the open segments, waits for the evicted segments to be closed and checkpoints the
+	 * {@link SecondaryIndexes}.
+	 *
+	 * @throws IOException if a segment-file could not be written
+	 */
+	private void rebuild() throws IOException {
+		final List<Segment> segments = new ArrayList<>();
+
+		synchronized (cache) {
+			for (final CachedSegment cached : cache.values()) {
+				segments.add(cached.segment);
+			}
+		}
+
+		segments.addAll(closing.values());
+
+		for (final Segment segment : segments) {
+			segment.rebuild();
+		}
+
+		secondaries.checkpoint();
+	}
+
+
+	/**
+	 * Merges the scans of all partitions in key order. Each partition is scanned in batches, so that a scan holds no
+	 * segment between batches and does not keep more than {@link IndexOptions#getMaxOpenSegments()} segments open.
+	 */
+	@Override
+	public Stream<IIndexEntry> scan(final Object fromId, final Object toId) throws IOException {
+		return scan(IndexScan.bound(fromId), IndexScan.bound(toId));
+	}
+
+
+	@Override
+	public Stream<IIndexEntry> prefix(final String prefix) throws IOException {
+		final byte[] from = IndexKey.encode(prefix);
+		return scan(from, IndexScan.prefixEnd(from));
+	}
+
+
+	/**
+	 * Scans the single partition of the tuples starting with the element.
+	 */
+	@Override
+	public Stream<IIndexEntry> scanTuples(final Object first) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		final byte[] from = IndexKey.encode(List.of(first));
+		final int partition = getPartition(first);
+		return IndexScan.stream(IndexScan.batches((start, end, limit) -> withPartition(partition, segment -> segment.scan(start, end, limit)), from, IndexScan.prefixEnd(from)));
+	}
+
+
+	@Override
+	public Stream<Object> findIds(final String property, final Object value) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		return secondaries.findIds(property, value);
 	}
 
 
+	private Stream<IIndexEntry> scan(final byte[] from, final byte[] to) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		final List<Iterator<Map.Entry<byte[], IIndexEntry>>> partitions = new ArrayList<>();
+
+		for (int p = 0; p < 1 << options.getPartitionBits(); p++) {
+			final int partition = p;
+			partitions.add(IndexScan.batches((start, end, limit) -> withPartition(partition, segment -> segment.scan(start, end, limit)), from, to));
+		}
+
+		return IndexScan.stream(IndexScan.union(partitions));
+	}
+
+
+	/**
+	 * Closes all open segments, which writes their changes to the segment-files, and discards the write-ahead log.
+	 */
 	@Override
-	public void close() throws IOException {
+	public synchronized void close() throws IOException {
+		final List<Segment> segments = new ArrayList<>();
+
+		synchronized (cache) {
+			for (final CachedSegment cached : cache.values()) {
+				segments.add(cached.segment);
+			}
+
+			cache.clear();
+		}
+
+		segments.addAll(closing.values());
+		IOException error = null;
+
+		try {
+			secondaries.close();
+		} catch (final IOException e) {
+			error = e;
+		}
+
+		for (final Segment segment : segments) {
+			try {
+				segment.close();
+			} catch (final IOException e) {
+				error = e;
+			}
+		}
+
+		if (log != null) {
+			try {
+				// the log is only discarded if all changes have been written
+				if (error == null) {
+					log.checkpoint(() -> {
+					});
+				}
+
+				log.close();
+			} catch (final IOException e) {
+				error = e;
+			} finally {
+				log = null;
+			}
+		}
+
+		open = false;
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+
+	/**
+	 * Gets the partition of the specified id. A tuple id is in the partition of its first element.
+	 *
+	 * @param id the id
+	 * @return the partition between 0 and 2^{@link IndexOptions#getPartitionBits()} - 1
+	 */
+	public int getPartition(final Object id) {
+		final int bits = options.getPartitionBits();
+		final Object partitioned = id instanceof List && !((List<?>) id).isEmpty() ? ((List<?>) id).get(0) : id;
+		return bits > 0 ? (int) (IndexKey.hash(IndexKey.encode(partitioned)) >>> (64 - bits)) : 0;
+	}
+
+
+	/**
+	 * Calls the function with the open segment of the id. The segment is not closed while the function runs.
+	 *
+	 * @param id the id
+	 * @param function the function
+	 * @return the result of the function
+	 * @throws IOException if the segment could not be opened or the function failed
+	 */
+	private <T> T withSegment(final Object id, final SegmentFunction<T> function) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		return withPartition(getPartition(id), function);
+	}
+
+
+	/**
+	 * Calls the function with the open segment of the partition. The segment is not closed while the function runs.
+	 *
+	 * @param partition the partition
+	 * @param function the function
+	 * @return the result of the function
+	 * @throws IOException if the segment could not be opened or the function failed
+	 */
+	private <T> T withPartition(final int partition, final SegmentFunction<T> function) throws IOException {
+		final CachedSegment cached = acquire(partition);
+
+		try {
+			return function.apply(cached.segment);
+		} finally {
+			release(cached);
+		}
+	}
+
+
+	/**
+	 * Gets the open segment of the partition and marks it as in use.
+	 *
+	 * @param partition the partition
+	 * @return the {@link CachedSegment}
+	 * @throws IOException if the segment could not be opened
+	 */
+	private CachedSegment acquire(final int partition) throws IOException {
+		while (true) {
+			final Segment evicted = closing.get(partition);
+
+			// wait until the evicted segment has been written before opening it again
+			if (evicted != null) {
+				evicted.close();
+				closing.remove(partition, evicted);
+				continue;
+			}
+
+			final List<Map.Entry<Integer, Segment>> evictions;
+			final CachedSegment cached;
+
+			synchronized (cache) {
+				if (closing.containsKey(partition)) {
+					continue;
+				}
+
+				CachedSegment existing = cache.get(partition);
+
+				if (existing == null) {
+					existing = new CachedSegment(Segment.open(getSegmentName(partition), options, metrics));
+					cache.put(partition, existing);
+				}
+
+				existing.users++;
+				cached = existing;
+				evictions = evict();
+			}
+
+			close(evictions);
+			return cached;
+		}
+	}
+
+
+	/**
+	 * Marks the segment as no longer in use by the caller.
+	 *
+	 * @param cached the {@link CachedSegment}
+	 * @throws IOException if an evicted segment could not be closed
+	 */
+	private void release(final CachedSegment cached) throws IOException {
+		final List<Map.Entry<Integer, Segment>> evictions;
+
+		synchronized (cache) {
+			cached.users--;
+			evictions = evict();
+		}
+
+		close(evictions);
+	}
+
+
+	/**
+	 * Removes the least recently used segments which are not in use until at most the maximum number of segments is
+	 * open. Must be called while holding the cache lock.
+	 *
+	 * @return the partitions and removed segments, which must be closed by the caller
+	 */
+	private List<Map.Entry<Integer, Segment>> evict() {
+		List<Map.Entry<Integer, Segment>> evictions = null;
+		final Iterator<Map.Entry<Integer, CachedSegment>> iterator = cache.entrySet().iterator();
+
+		while (cache.size() > options.getMaxOpenSegments() && iterator.hasNext()) {
+			final Map.Entry<Integer, CachedSegment> entry = iterator.next();
+
+			if (entry.getValue().users == 0) {
+				iterator.remove();
+				closing.put(entry.getKey(), entry.getValue().segment);
+
+				if (evictions == null) {
+					evictions = new ArrayList<>();
+				}
+
+				evictions.add(Map.entry(entry.getKey(), entry.getValue().segment));
+			}
+		}
+
+		return evictions;
 	}
 
 
-	public Segment getSegmentForId(final Object id) throws IOException {
-		final String name = path.toString() + "/" + ("0" + id.hashCode()).substring(0, 2);
-		Segment segment = cache.get(name);
+	/**
+	 * Closes the evicted segments outside of the cache lock, as closing writes their changes.
+	 *
+	 * @param evictions the evicted segments or null
+	 * @throws IOException if a segment could not be closed
+	 */
+	private void close(final List<Map.Entry<Integer, Segment>> evictions) throws IOException {
+		if (evictions == null) {
+			return;
+		}
 
-		if (segment == null) {
-			segment = Segment.open(name);
-			cache.put(name, segment);
+		for (final Map.Entry<Integer, Segment> eviction : evictions) {
+			try {
+				eviction.getValue().close();
+			} finally {
+				closing.remove(eviction.getKey(), eviction.getValue());
+			}
 		}
+	}
+
 
-		return segment;
+	private String getSegmentName(final int partition) {
+		final int digits = Math.max(1, (options.getPartitionBits() + 3) / 4);
+		return path.resolve(String.format("%0" + digits + "x", partition)).toString();
 	}
 
+
+	/**
+	 * Gets the number of open segments.
+	 *
+	 * @return the number of open segments
+	 */
+	public int getOpenSegments() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+
+	/**
+	 * Gets the {@link BloomFilterMetrics} of all segments.
+	 *
+	 * @return the metrics
+	 */
+	public BloomFilterMetrics getBloomFilterMetrics() {
+		return metrics;
+	}
+
+
+	/**
+	 * Gets the {@link IndexOptions}.
+	 *
+	 * @return the options
+	 */
+	public IndexOptions getOptions() {
+		return options;
+	}
+
+
+	/**
+	 * An open segment with the number of callers using it.
+	 */
+	private static class CachedSegment {
+		private final Segment segment;
+		private int users = 0;
+
+
+		CachedSegment(final Segment segment) {
+			this.segment = segment;
+		}
+	}
+
+
+	@FunctionalInterface
+	private interface SegmentFunction<T> {
+		T apply(Segment segment) throws IOException;
+	}
 }
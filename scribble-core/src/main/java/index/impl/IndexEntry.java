@@ -2,6 +2,7 @@ package index.impl;
 
 import index.api.IIndexEntry;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -78,12 +79,22 @@ public class IndexEntry implements IIndexEntry {
 	}
 
 
+	/**
+	 * @return the properties (read-only)
+	 */
+	@Override
+	public Map<String, Object> getProperties() {
+		return Collections.unmodifiableMap(properties);
+	}
+
+
 	@Override
 	public IIndexEntry clone() {
 		final IndexEntry clone = new IndexEntry();
 		clone.setId(getId());
 		clone.setStart(getStart());
 		clone.setSize(getSize());
+		clone.properties.putAll(properties);
 
 		return clone;
 	}
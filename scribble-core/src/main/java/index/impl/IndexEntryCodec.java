@@ -0,0 +1,249 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compact binary encoding of the values of index entries in a segment-file:
+ *
+ * <pre>
+ * value:     varint start, varint size, varint property count, property*
+ * property:  varint key number, byte type, typed value
+ * </pre>
+ *
+ * The property keys are interned per segment-file: a property refers to its key by its number in the key dictionary
+ * of the file, see {@link #getKeys()}. Null, booleans, integers, longs, doubles, strings and byte arrays are stored
+ * with their own type, numbers as zigzag varints. Other values are Java-serialized.
+ * <p>
+ * The static methods read the encoding from a buffer, see {@link IndexEntryView}.
+ */
+public class IndexEntryCodec {
+	static final byte NULL = 0;
+	static final byte TRUE = 1;
+	static final byte FALSE = 2;
+	static final byte INT = 3;
+	static final byte LONG = 4;
+	static final byte DOUBLE = 5;
+	static final byte STRING = 6;
+	static final byte BYTES = 7;
+	static final byte SERIALIZED = 8;
+	private final Map<String, Integer> keyNumbers = new HashMap<>();
+	private final List<String> keys = new ArrayList<>();
+
+
+	/**
+	 * Encodes the value of the entry, i.e. everything but the id.
+	 *
+	 * @param entry the {@link IIndexEntry}
+	 * @param out the stream to write to
+	 * @throws IOException if a property value could not be serialized
+	 */
+	public void encode(final IIndexEntry entry, final ByteArrayOutputStream out) throws IOException {
+		IndexEntryCodec.writeVarLong(out, entry.getStart());
+		IndexEntryCodec.writeVarLong(out, entry.getSize());
+
+		final Map<String, Object> properties = entry.getProperties();
+		IndexEntryCodec.writeVarLong(out, properties.size());
+
+		for (final Map.Entry<String, Object> property : properties.entrySet()) {
+			Integer number = keyNumbers.get(property.getKey());
+
+			if (number == null) {
+				number = keys.size();
+				keyNumbers.put(property.getKey(), number);
+				keys.add(property.getKey());
+			}
+
+			IndexEntryCodec.writeVarLong(out, number);
+			IndexEntryCodec.writeValue(out, property.getValue());
+		}
+	}
+
+
+	/**
+	 * Gets the dictionary of the property keys in the order of their numbers.
+	 *
+	 * @return the keys
+	 */
+	public List<String> getKeys() {
+		return keys;
+	}
+
+
+	private static void writeValue(final ByteArrayOutputStream out, final Object value) throws IOException {
+		if (value == null) {
+			out.write(IndexEntryCodec.NULL);
+		} else if (value instanceof Boolean) {
+			out.write((Boolean) value ? IndexEntryCodec.TRUE : IndexEntryCodec.FALSE);
+		} else if (value instanceof Integer) {
+			out.write(IndexEntryCodec.INT);
+			IndexEntryCodec.writeVarLong(out, IndexEntryCodec.zigzag((Integer) value));
+		} else if (value instanceof Long) {
+			out.write(IndexEntryCodec.LONG);
+			IndexEntryCodec.writeVarLong(out, IndexEntryCodec.zigzag((Long) value));
+		} else if (value instanceof Double) {
+			out.write(IndexEntryCodec.DOUBLE);
+			out.write(ByteBuffer.allocate(8).putDouble((Double) value).array());
+		} else if (value instanceof String) {
+			out.write(IndexEntryCodec.STRING);
+			IndexEntryCodec.writeBytes(out, ((String) value).getBytes(StandardCharsets.UTF_8));
+		} else if (value instanceof byte[]) {
+			out.write(IndexEntryCodec.BYTES);
+			IndexEntryCodec.writeBytes(out, (byte[]) value);
+		} else {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+			try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+				oos.writeObject(value);
+			}
+
+			out.write(IndexEntryCodec.SERIALIZED);
+			IndexEntryCodec.writeBytes(out, bytes.toByteArray());
+		}
+	}
+
+
+	private static void writeBytes(final ByteArrayOutputStream out, final byte[] bytes) {
+		IndexEntryCodec.writeVarLong(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+
+	/**
+	 * Writes an unsigned varint of 7 bits per byte, least significant group first.
+	 *
+	 * @param out the stream
+	 * @param value the value
+	 */
+	static void writeVarLong(final ByteArrayOutputStream out, final long value) {
+		long remaining = value;
+
+		while ((remaining & ~0x7FL) != 0) {
+			out.write((int) (remaining & 0x7F | 0x80));
+			remaining >>>= 7;
+		}
+
+		out.write((int) remaining);
+	}
+
+
+	/**
+	 * Reads an unsigned varint written by {@link #writeVarLong(ByteArrayOutputStream, long)}.
+	 *
+	 * @param bytes the buffer positioned at the varint
+	 * @return the value
+	 */
+	static long readVarLong(final ByteBuffer bytes) {
+		long value = 0L;
+
+		for (int shift = 0;; shift += 7) {
+			final byte b = bytes.get();
+			value |= (long) (b & 0x7F) << shift;
+
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+
+	private static long zigzag(final long value) {
+		return value << 1 ^ value >> 63;
+	}
+
+
+	private static long unzigzag(final long value) {
+		return value >>> 1 ^ -(value & 1);
+	}
+
+
+	/**
+	 * Reads a typed property value.
+	 *
+	 * @param bytes the buffer positioned at the type
+	 * @return the value
+	 */
+	static Object readValue(final ByteBuffer bytes) {
+		final byte type = bytes.get();
+
+		switch (type) {
+			case NULL:
+				return null;
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case INT:
+				return (int) IndexEntryCodec.unzigzag(IndexEntryCodec.readVarLong(bytes));
+			case LONG:
+				return IndexEntryCodec.unzigzag(IndexEntryCodec.readVarLong(bytes));
+			case DOUBLE:
+				return bytes.getDouble();
+			case STRING:
+				return new String(IndexEntryCodec.readBytes(bytes), StandardCharsets.UTF_8);
+			case BYTES:
+				return IndexEntryCodec.readBytes(bytes);
+			case SERIALIZED:
+				try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(IndexEntryCodec.readBytes(bytes)))) {
+					return ois.readObject();
+				} catch (final IOException e) {
+					throw new UncheckedIOException(e);
+				} catch (final ClassNotFoundException e) {
+					throw new UncheckedIOException(new IOException("A property value could not be read!", e));
+				}
+			default:
+				throw new IllegalStateException("Invalid property type " + type);
+		}
+	}
+
+
+	/**
+	 * Skips a typed property value.
+	 *
+	 * @param bytes the buffer positioned at the type
+	 */
+	static void skipValue(final ByteBuffer bytes) {
+		final byte type = bytes.get();
+
+		switch (type) {
+			case NULL:
+			case TRUE:
+			case FALSE:
+				break;
+			case INT:
+			case LONG:
+				IndexEntryCodec.readVarLong(bytes);
+				break;
+			case DOUBLE:
+				bytes.position(bytes.position() + 8);
+				break;
+			case STRING:
+			case BYTES:
+			case SERIALIZED:
+				final int length = (int) IndexEntryCodec.readVarLong(bytes);
+				bytes.position(bytes.position() + length);
+				break;
+			default:
+				throw new IllegalStateException("Invalid property type " + type);
+		}
+	}
+
+
+	private static byte[] readBytes(final ByteBuffer bytes) {
+		final byte[] value = new byte[(int) IndexEntryCodec.readVarLong(bytes)];
+		bytes.get(value);
+		return value;
+	}
+}
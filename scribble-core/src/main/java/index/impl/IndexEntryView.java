@@ -0,0 +1,143 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only flyweight {@link IIndexEntry} over an entry encoded by {@link IndexEntryCodec}, e.g. in a memory-mapped
+ * segment-file. The fields are decoded on each access straight from the buffer, so that a lookup which only needs the
+ * start and size of a record does not decode the id or properties. {@link #clone()} returns a modifiable
+ * {@link IndexEntry}.
+ */
+public class IndexEntryView implements IIndexEntry {
+	private final byte[] key;
+	private final ByteBuffer value;
+	private final String[] keys;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param key the encoded id, see {@link IndexKey}
+	 * @param value the encoded value, which fills the buffer from position 0
+	 * @param keys the property key dictionary of the segment-file
+	 */
+	IndexEntryView(final byte[] key, final ByteBuffer value, final String[] keys) {
+		this.key = key;
+		this.value = value;
+		this.keys = keys;
+	}
+
+
+	@Override
+	public Object getId() {
+		return IndexKey.decode(key);
+	}
+
+
+	@Override
+	public void setId(final Object id) {
+		throw new UnsupportedOperationException("The entry is read-only!");
+	}
+
+
+	@Override
+	public long getStart() {
+		return IndexEntryCodec.readVarLong(value.duplicate());
+	}
+
+
+	@Override
+	public void setStart(final long start) {
+		throw new UnsupportedOperationException("The entry is read-only!");
+	}
+
+
+	@Override
+	public long getSize() {
+		final ByteBuffer bytes = value.duplicate();
+		IndexEntryCodec.readVarLong(bytes);
+		return IndexEntryCodec.readVarLong(bytes);
+	}
+
+
+	@Override
+	public void setSize(final long size) {
+		throw new UnsupportedOperationException("The entry is read-only!");
+	}
+
+
+	/**
+	 * Decodes the value of the specified property without decoding the others.
+	 */
+	@Override
+	public Object getProperty(final String name) {
+		final ByteBuffer bytes = properties();
+
+		for (long count = IndexEntryCodec.readVarLong(bytes); count > 0; count--) {
+			if (keys[(int) IndexEntryCodec.readVarLong(bytes)].equals(name)) {
+				return IndexEntryCodec.readValue(bytes);
+			}
+
+			IndexEntryCodec.skipValue(bytes);
+		}
+
+		return null;
+	}
+
+
+	@Override
+	public void setProperty(final String name, final Object value) {
+		throw new UnsupportedOperationException("The entry is read-only!");
+	}
+
+
+	/**
+	 * Decodes all properties.
+	 */
+	@Override
+	public Map<String, Object> getProperties() {
+		final ByteBuffer bytes = properties();
+		final Map<String, Object> properties = new HashMap<>();
+
+		for (long count = IndexEntryCodec.readVarLong(bytes); count > 0; count--) {
+			final String name = keys[(int) IndexEntryCodec.readVarLong(bytes)];
+			properties.put(name, IndexEntryCodec.readValue(bytes));
+		}
+
+		return properties;
+	}
+
+
+	/**
+	 * Gets a buffer positioned at the property count.
+	 *
+	 * @return the buffer
+	 */
+	private ByteBuffer properties() {
+		final ByteBuffer bytes = value.duplicate();
+		IndexEntryCodec.readVarLong(bytes);
+		IndexEntryCodec.readVarLong(bytes);
+		return bytes;
+	}
+
+
+	@Override
+	public IIndexEntry clone() {
+		final IndexEntry clone = new IndexEntry();
+		clone.setId(getId());
+		clone.setStart(getStart());
+		clone.setSize(getSize());
+		getProperties().forEach(clone::setProperty);
+		return clone;
+	}
+
+
+	@Override
+	public String toString() {
+		return "IndexEntryView [id=" + getId() + ", start=" + getStart() + ", size=" + getSize() + "]";
+	}
+}
@@ -0,0 +1,178 @@
+package index.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Encodes the ids of index entries as keys which sort in the same order as bytes compared unsigned, so that sorted
+ * segments can be searched without decoding the ids. Supported ids are {@link String}s, {@link Integer}s and
+ * {@link Long}s and {@link List}s of them as tuples. The first byte of a key is the type, so ids of different types never
+ * collide and sort by type first. Numbers are stored big-endian with the sign bit flipped, strings as UTF-8.
+ * <p>
+ * The elements of a tuple are encoded as keys with the zero bytes escaped as 0x00 0xFF and each followed by the
+ * terminator 0x00 0x01. Tuples therefore sort element by element and the key of a tuple is a prefix of the keys of all
+ * longer tuples starting with its elements.
+ */
+public final class IndexKey {
+	/** Compares encoded keys as unsigned bytes. */
+	public static final Comparator<byte[]> COMPARATOR = Arrays::compareUnsigned;
+	private static final byte INTEGER = 1;
+	private static final byte LONG = 2;
+	private static final byte STRING = 3;
+	private static final byte TUPLE = 4;
+
+
+	private IndexKey() {
+	}
+
+
+	/**
+	 * Encodes the id as key.
+	 *
+	 * @param id the id
+	 * @return the key
+	 * @throws IllegalArgumentException if the type of the id is not supported
+	 */
+	public static byte[] encode(final Object id) {
+		if (id instanceof String) {
+			final byte[] chars = ((String) id).getBytes(StandardCharsets.UTF_8);
+			final byte[] key = new byte[chars.length + 1];
+			key[0] = IndexKey.STRING;
+			System.arraycopy(chars, 0, key, 1, chars.length);
+			return key;
+		} else if (id instanceof Integer) {
+			return ByteBuffer.allocate(5).put(IndexKey.INTEGER).putInt((Integer) id ^ Integer.MIN_VALUE).array();
+		} else if (id instanceof Long) {
+			return ByteBuffer.allocate(9).put(IndexKey.LONG).putLong((Long) id ^ Long.MIN_VALUE).array();
+		} else if (id instanceof List && !((List<?>) id).isEmpty()) {
+			return IndexKey.encodeTuple((List<?>) id);
+		}
+
+		throw new IllegalArgumentException("Unsupported id type: " + (id != null ? id.getClass().getName() : null));
+	}
+
+
+	private static byte[] encodeTuple(final List<?> tuple) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(IndexKey.TUPLE);
+
+		for (final Object element : tuple) {
+			if (element instanceof List) {
+				throw new IllegalArgumentException("Tuples cannot be nested!");
+			}
+
+			for (final byte b : IndexKey.encode(element)) {
+				out.write(b);
+
+				if (b == 0) {
+					out.write(0xFF);
+				}
+			}
+
+			out.write(0);
+			out.write(1);
+		}
+
+		return out.toByteArray();
+	}
+
+
+	/**
+	 * Computes a 64-bit hash of a key. The bytes are mixed in 8-byte words and the result is finalized with the mix
+	 * function of MurmurHash3, so that all bits of the hash depend on all bytes of the key.
+	 *
+	 * @param key the key
+	 * @return the hash
+	 */
+	public static long hash(final byte[] key) {
+		long hash = 0x9E3779B97F4A7C15L ^ key.length;
+		int i = 0;
+
+		for (; i + 8 <= key.length; i += 8) {
+			long word = 0L;
+
+			for (int j = 0; j < 8; j++) {
+				word = word << 8 | key[i + j] & 0xFFL;
+			}
+
+			hash = Long.rotateLeft(hash ^ IndexKey.mix(word), 27) * 0x9E3779B97F4A7C15L;
+		}
+
+		long word = 0L;
+
+		for (; i < key.length; i++) {
+			word = word << 8 | key[i] & 0xFFL;
+		}
+
+		return IndexKey.mix(hash ^ IndexKey.mix(word));
+	}
+
+
+	/**
+	 * The 64-bit finalizer of MurmurHash3.
+	 *
+	 * @param value the value
+	 * @return the mixed value
+	 */
+	static long mix(final long value) {
+		long hash = value;
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+
+	/**
+	 * Decodes the id from a key.
+	 *
+	 * @param key the key
+	 * @return the id
+	 * @throws IllegalArgumentException if the key is not valid
+	 */
+	public static Object decode(final byte[] key) {
+		switch (key.length > 0 ? key[0] : 0) {
+			case STRING:
+				return new String(key, 1, key.length - 1, StandardCharsets.UTF_8);
+			case INTEGER:
+				return ByteBuffer.wrap(key, 1, 4).getInt() ^ Integer.MIN_VALUE;
+			case LONG:
+				return ByteBuffer.wrap(key, 1, 8).getLong() ^ Long.MIN_VALUE;
+			case TUPLE:
+				return IndexKey.decodeTuple(key);
+			default:
+				throw new IllegalArgumentException("Invalid key of type " + (key.length > 0 ? key[0] : "-"));
+		}
+	}
+
+
+	private static List<Object> decodeTuple(final byte[] key) {
+		final List<Object> tuple = new ArrayList<>();
+		final ByteArrayOutputStream element = new ByteArrayOutputStream();
+
+		for (int i = 1; i < key.length; i++) {
+			if (key[i] != 0) {
+				element.write(key[i]);
+			} else if (i + 1 < key.length && key[i + 1] == (byte) 0xFF) {
+				element.write(0);
+				i++;
+			} else if (i + 1 < key.length && key[i + 1] == 1) {
+				tuple.add(IndexKey.decode(element.toByteArray()));
+				element.reset();
+				i++;
+			} else {
+				throw new IllegalArgumentException("Invalid tuple key");
+			}
+		}
+
+		return Collections.unmodifiableList(tuple);
+	}
+}
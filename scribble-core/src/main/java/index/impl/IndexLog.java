@@ -0,0 +1,212 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import store.WriteAheadLog;
+
+/**
+ * The redo log of the changes of an index, stored in a {@link WriteAheadLog}. Every change is appended to the log
+ * before it is applied to the in-memory state of the index. A checkpoint writes the in-memory state to segment-files,
+ * which replace the old ones atomically, and then discards the log, so that a restart after a crash only replays the
+ * changes since the last checkpoint.
+ * <p>
+ * The records use the start of a {@link WriteAheadLog} record as operation and no id. Their data is the encoded key,
+ * the changes of the postings in the {@link SecondaryIndexes} and the entry of an add, whose property keys are stored in
+ * the record as it is replayed on its own:
+ *
+ * <pre>
+ * data:    varint key length, key, varint posting count, posting*,
+ *          (varint property key count, (varint length, UTF-8 property key)*, value if added)
+ * posting: varint property length, UTF-8 property, operation, varint key length, encoded tuple
+ * </pre>
+ *
+ * The value is encoded by the {@link IndexEntryCodec}. As an entry and its postings are logged in a single record, the
+ * replay either redoes both or neither of them.
+ */
+final class IndexLog implements Closeable {
+	private static final long ADD = 0L;
+	private static final long REMOVE = 1L;
+	private final WriteAheadLog log;
+
+
+	/**
+	 * Receives the changes during the replay of the log.
+	 */
+	@FunctionalInterface
+	interface ChangeHandler {
+		/**
+		 * Applies a change.
+		 *
+		 * @param key the encoded id
+		 * @param entry the added entry or null if the id has been removed
+		 * @param postings the changes of the postings of the id
+		 * @throws IOException if the change could not be applied
+		 */
+		void handle(byte[] key, IIndexEntry entry, List<SecondaryIndexes.Posting> postings) throws IOException;
+	}
+
+
+	/**
+	 * Opens the log.
+	 *
+	 * @param path the path of the log
+	 * @param options the {@link IndexOptions}
+	 * @throws IOException if the log could not be opened
+	 */
+	IndexLog(final Path path, final IndexOptions options) throws IOException {
+		log = new WriteAheadLog(path, options.getFsyncPolicy(), options.getFsyncInterval(), null);
+	}
+
+
+	/**
+	 * Replays all valid records of the log.
+	 *
+	 * @param handler the {@link ChangeHandler}
+	 * @return the number of replayed changes
+	 * @throws IOException if the log could not be read or a change could not be applied
+	 */
+	int replay(final ChangeHandler handler) throws IOException {
+		return log.replay((id, operation, bytes) -> {
+			final byte[] key = IndexLog.readBytes(bytes);
+			final List<SecondaryIndexes.Posting> postings = new ArrayList<>();
+
+			for (long i = IndexEntryCodec.readVarLong(bytes); i > 0; i--) {
+				final String property = new String(IndexLog.readBytes(bytes), StandardCharsets.UTF_8);
+				final boolean added = bytes.get() == IndexLog.ADD;
+				postings.add(new SecondaryIndexes.Posting(property, IndexKey.decode(IndexLog.readBytes(bytes)), added));
+			}
+
+			if (operation == IndexLog.REMOVE) {
+				handler.handle(key, null, postings);
+				return;
+			}
+
+			final String[] keys = new String[(int) IndexEntryCodec.readVarLong(bytes)];
+
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = new String(IndexLog.readBytes(bytes), StandardCharsets.UTF_8);
+			}
+
+			handler.handle(key, new IndexEntryView(key, bytes.slice(), keys).clone(), postings);
+		});
+	}
+
+
+	/**
+	 * Reads a byte array prefixed with its length.
+	 *
+	 * @param bytes the data of a record
+	 * @return the byte array
+	 */
+	private static byte[] readBytes(final ByteBuffer bytes) {
+		final byte[] read = new byte[(int) IndexEntryCodec.readVarLong(bytes)];
+		bytes.get(read);
+		return read;
+	}
+
+
+	/**
+	 * Writes a byte array prefixed with its length.
+	 *
+	 * @param data the data of a record
+	 * @param bytes the byte array
+	 */
+	private static void writeBytes(final ByteArrayOutputStream data, final byte[] bytes) {
+		IndexEntryCodec.writeVarLong(data, bytes.length);
+		data.write(bytes, 0, bytes.length);
+	}
+
+
+	/**
+	 * Appends a change. The caller must call {@link #done()} once the change has been applied.
+	 *
+	 * @param key the encoded id
+	 * @param entry the added entry or null if the id is removed
+	 * @param postings the changes of the postings of the id
+	 * @return the log sequence number to commit
+	 * @throws IOException if the record could not be appended
+	 */
+	long append(final byte[] key, final IIndexEntry entry, final List<SecondaryIndexes.Posting> postings) throws IOException {
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		IndexLog.writeBytes(data, key);
+		IndexEntryCodec.writeVarLong(data, postings.size());
+
+		for (final SecondaryIndexes.Posting posting : postings) {
+			IndexLog.writeBytes(data, posting.getProperty().getBytes(StandardCharsets.UTF_8));
+			data.write(posting.isAdded() ? (int) IndexLog.ADD : (int) IndexLog.REMOVE);
+			IndexLog.writeBytes(data, IndexKey.encode(posting.getTuple()));
+		}
+
+		if (entry != null) {
+			final IndexEntryCodec codec = new IndexEntryCodec();
+			final ByteArrayOutputStream value = new ByteArrayOutputStream();
+			codec.encode(entry, value);
+			final List<String> keys = codec.getKeys();
+			IndexEntryCodec.writeVarLong(data, keys.size());
+
+			for (final String name : keys) {
+				IndexLog.writeBytes(data, name.getBytes(StandardCharsets.UTF_8));
+			}
+
+			value.writeTo(data);
+		}
+
+		return log.append("", entry != null ? IndexLog.ADD : IndexLog.REMOVE, ByteBuffer.wrap(data.toByteArray()));
+	}
+
+
+	/**
+	 * Signals that the change appended by this thread has been applied.
+	 */
+	void done() {
+		log.done();
+	}
+
+
+	/**
+	 * Commits the change with the specified log sequence number according to the {@link store.FsyncPolicy}.
+	 *
+	 * @param lsn the log sequence number
+	 * @throws IOException if the log could not be forced
+	 */
+	void commit(final long lsn) throws IOException {
+		log.commit(lsn);
+	}
+
+
+	/**
+	 * Waits for all changes in progress, writes the index via the specified {@link WriteAheadLog.Syncable} and discards
+	 * the log.
+	 *
+	 * @param index writes the in-memory state of the index to its files
+	 * @throws IOException if the checkpoint failed
+	 */
+	void checkpoint(final WriteAheadLog.Syncable index) throws IOException {
+		log.checkpoint(index);
+	}
+
+
+	/**
+	 * Gets the size of the log in bytes.
+	 *
+	 * @return the size
+	 */
+	long size() {
+		return log.size();
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+}
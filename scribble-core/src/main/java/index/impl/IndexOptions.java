@@ -0,0 +1,400 @@
+package index.impl;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import store.FsyncPolicy;
+
+/**
+ * The options of an {@link Index} or {@link LsmIndex}.
+ */
+public class IndexOptions {
+	private static final Pattern PROPERTY_NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+	private int memtableSize = 64 * 1024;
+	private int maxImmutableMemtables = 4;
+	private int level0Files = 4;
+	private long baseLevelSize = 64L * 1024 * 1024;
+	private int levelSizeRatio = 10;
+	private double bloomFilterFalsePositiveRate = 0.01;
+	private int partitionBits = 8;
+	private int maxOpenSegments = 64;
+	private List<String> secondaryIndexes = List.of();
+	private boolean writeAheadLog = true;
+	private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+	private long fsyncInterval = 1000L;
+	private long checkpointSize = 64L * 1024 * 1024;
+
+
+	/**
+	 * Gets the number of entries after which the memtable is flushed to a level-0 file.
+	 *
+	 * @return the number of entries
+	 */
+	public int getMemtableSize() {
+		return memtableSize;
+	}
+
+
+	/**
+	 * Sets the number of entries after which the memtable is flushed to a level-0 file.
+	 *
+	 * @param memtableSize the number of entries
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setMemtableSize(final int memtableSize) {
+		if (memtableSize <= 0) {
+			throw new IllegalArgumentException("The memtable size must be greater than 0!");
+		}
+
+		this.memtableSize = memtableSize;
+		return this;
+	}
+
+
+	/**
+	 * Gets the number of full memtables waiting to be flushed after which writers wait for the flush.
+	 *
+	 * @return the number of memtables
+	 */
+	public int getMaxImmutableMemtables() {
+		return maxImmutableMemtables;
+	}
+
+
+	/**
+	 * Sets the number of full memtables waiting to be flushed after which writers wait for the flush.
+	 *
+	 * @param maxImmutableMemtables the number of memtables
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setMaxImmutableMemtables(final int maxImmutableMemtables) {
+		if (maxImmutableMemtables <= 0) {
+			throw new IllegalArgumentException("The number of immutable memtables must be greater than 0!");
+		}
+
+		this.maxImmutableMemtables = maxImmutableMemtables;
+		return this;
+	}
+
+
+	/**
+	 * Gets the number of level-0 files after which they are compacted into level 1.
+	 *
+	 * @return the number of files
+	 */
+	public int getLevel0Files() {
+		return level0Files;
+	}
+
+
+	/**
+	 * Sets the number of level-0 files after which they are compacted into level 1.
+	 *
+	 * @param level0Files the number of files
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setLevel0Files(final int level0Files) {
+		if (level0Files <= 0) {
+			throw new IllegalArgumentException("The number of level-0 files must be greater than 0!");
+		}
+
+		this.level0Files = level0Files;
+		return this;
+	}
+
+
+	/**
+	 * Gets the size of level 1 in bytes after which it is compacted into level 2.
+	 *
+	 * @return the size in bytes
+	 */
+	public long getBaseLevelSize() {
+		return baseLevelSize;
+	}
+
+
+	/**
+	 * Sets the size of level 1 in bytes after which it is compacted into level 2.
+	 *
+	 * @param baseLevelSize the size in bytes
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setBaseLevelSize(final long baseLevelSize) {
+		if (baseLevelSize <= 0) {
+			throw new IllegalArgumentException("The base level size must be greater than 0!");
+		}
+
+		this.baseLevelSize = baseLevelSize;
+		return this;
+	}
+
+
+	/**
+	 * Gets the factor by which the maximum size of each level exceeds the size of the previous level.
+	 *
+	 * @return the ratio
+	 */
+	public int getLevelSizeRatio() {
+		return levelSizeRatio;
+	}
+
+
+	/**
+	 * Sets the factor by which the maximum size of each level exceeds the size of the previous level.
+	 *
+	 * @param levelSizeRatio the ratio
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setLevelSizeRatio(final int levelSizeRatio) {
+		if (levelSizeRatio < 2) {
+			throw new IllegalArgumentException("The level size ratio must be at least 2!");
+		}
+
+		this.levelSizeRatio = levelSizeRatio;
+		return this;
+	}
+
+
+	/**
+	 * Gets the false positive rate of the {@link BloomFilter}s of the segment-files.
+	 *
+	 * @return the false positive rate or 0 if no filters are written
+	 */
+	public double getBloomFilterFalsePositiveRate() {
+		return bloomFilterFalsePositiveRate;
+	}
+
+
+	/**
+	 * Sets the false positive rate of the {@link BloomFilter}s of the segment-files. A lower rate avoids more reads of
+	 * segment-files for absent keys at the cost of about 1.44 * log2(1 / rate) bits per key.
+	 *
+	 * @param bloomFilterFalsePositiveRate the false positive rate or 0 to write no filters
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setBloomFilterFalsePositiveRate(final double bloomFilterFalsePositiveRate) {
+		if (bloomFilterFalsePositiveRate < 0.0 || bloomFilterFalsePositiveRate >= 1.0) {
+			throw new IllegalArgumentException("The false positive rate must be at least 0 and less than 1!");
+		}
+
+		this.bloomFilterFalsePositiveRate = bloomFilterFalsePositiveRate;
+		return this;
+	}
+
+
+	/**
+	 * Gets the number of bits of the id hash which select the partition of an {@link Index}.
+	 *
+	 * @return the number of bits, the index has 2^bits partitions
+	 */
+	public int getPartitionBits() {
+		return partitionBits;
+	}
+
+
+	/**
+	 * Sets the number of bits of the id hash which select the partition of an {@link Index}. The number of partitions
+	 * of an existing index cannot be changed.
+	 *
+	 * @param partitionBits the number of bits between 0 and 16, the index has 2^bits partitions
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setPartitionBits(final int partitionBits) {
+		if (partitionBits < 0 || partitionBits > 16) {
+			throw new IllegalArgumentException("The partition bits must be between 0 and 16!");
+		}
+
+		this.partitionBits = partitionBits;
+		return this;
+	}
+
+
+	/**
+	 * Gets the maximum number of segments an {@link Index} keeps open.
+	 *
+	 * @return the number of segments
+	 */
+	public int getMaxOpenSegments() {
+		return maxOpenSegments;
+	}
+
+
+	/**
+	 * Sets the maximum number of segments an {@link Index} keeps open. Segments in use are not closed, so the number
+	 * may be exceeded temporarily by concurrent callers.
+	 *
+	 * @param maxOpenSegments the number of segments
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setMaxOpenSegments(final int maxOpenSegments) {
+		if (maxOpenSegments <= 0) {
+			throw new IllegalArgumentException("The maximum number of open segments must be greater than 0!");
+		}
+
+		this.maxOpenSegments = maxOpenSegments;
+		return this;
+	}
+
+
+	/**
+	 * Gets the names of the properties with a secondary index.
+	 *
+	 * @return the property names
+	 */
+	public List<String> getSecondaryIndexes() {
+		return secondaryIndexes;
+	}
+
+
+	/**
+	 * Sets the names of the properties with a secondary index, which maps the values of the property to the ids of the
+	 * entries. The secondary indexes are stored in sub-directories of the index, so the names may only consist of
+	 * letters, digits, '_', '.' and '-'.
+	 *
+	 * @param properties the property names
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setSecondaryIndexes(final String... properties) {
+		for (final String property : properties) {
+			if (property == null || !IndexOptions.PROPERTY_NAME.matcher(property).matches()) {
+				throw new IllegalArgumentException("Invalid property name for a secondary index: " + property);
+			}
+		}
+
+		secondaryIndexes = List.of(properties);
+		return this;
+	}
+
+
+	/**
+	 * Returns true if the changes are logged to the write-ahead log of the index.
+	 *
+	 * @return true if the write-ahead log is enabled
+	 */
+	public boolean isWriteAheadLog() {
+		return writeAheadLog;
+	}
+
+
+	/**
+	 * Sets the flag if the changes are logged to the write-ahead log of the index. Without the log the changes since
+	 * the last write of the segment-files are lost if the index is not closed.
+	 *
+	 * @param writeAheadLog true to enable the write-ahead log
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setWriteAheadLog(final boolean writeAheadLog) {
+		this.writeAheadLog = writeAheadLog;
+		return this;
+	}
+
+
+	/**
+	 * Gets the {@link FsyncPolicy} of the write-ahead log.
+	 *
+	 * @return the {@link FsyncPolicy}
+	 */
+	public FsyncPolicy getFsyncPolicy() {
+		return fsyncPolicy;
+	}
+
+
+	/**
+	 * Sets the {@link FsyncPolicy} of the write-ahead log. The default is {@link FsyncPolicy#INTERVAL}, as forcing the
+	 * log for every single entry would dominate the cost of the index.
+	 *
+	 * @param fsyncPolicy the {@link FsyncPolicy}
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setFsyncPolicy(final FsyncPolicy fsyncPolicy) {
+		this.fsyncPolicy = fsyncPolicy;
+		return this;
+	}
+
+
+	/**
+	 * Gets the interval in milliseconds in which the write-ahead log is forced with {@link FsyncPolicy#INTERVAL}.
+	 *
+	 * @return the interval in milliseconds
+	 */
+	public long getFsyncInterval() {
+		return fsyncInterval;
+	}
+
+
+	/**
+	 * Sets the interval in milliseconds in which the write-ahead log is forced with {@link FsyncPolicy#INTERVAL}.
+	 *
+	 * @param fsyncInterval the interval in milliseconds
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setFsyncInterval(final long fsyncInterval) {
+		if (fsyncInterval <= 0) {
+			throw new IllegalArgumentException("The fsync interval must be greater than 0!");
+		}
+
+		this.fsyncInterval = fsyncInterval;
+		return this;
+	}
+
+
+	/**
+	 * Gets the size of the write-ahead log after which the in-memory changes are written to the files of the index and
+	 * the log is discarded. It bounds the time of the replay after a crash.
+	 *
+	 * @return the checkpoint size in bytes
+	 */
+	public long getCheckpointSize() {
+		return checkpointSize;
+	}
+
+
+	/**
+	 * Sets the size of the write-ahead log after which the in-memory changes are written to the files of the index and
+	 * the log is discarded. It bounds the time of the replay after a crash.
+	 *
+	 * @param checkpointSize the checkpoint size in bytes
+	 * @return this {@link IndexOptions}
+	 */
+	public IndexOptions setCheckpointSize(final long checkpointSize) {
+		if (checkpointSize <= 0) {
+			throw new IllegalArgumentException("The checkpoint size must be greater than 0!");
+		}
+
+		this.checkpointSize = checkpointSize;
+		return this;
+	}
+
+
+	/**
+	 * Copies the options without the secondary indexes and without write-ahead log, as used for the secondary indexes
+	 * themselves. Their changes are logged with the changes of their index.
+	 *
+	 * @return the copy
+	 */
+	IndexOptions withoutSecondaryIndexes() {
+		final IndexOptions copy = new IndexOptions();
+		copy.memtableSize = memtableSize;
+		copy.maxImmutableMemtables = maxImmutableMemtables;
+		copy.level0Files = level0Files;
+		copy.baseLevelSize = baseLevelSize;
+		copy.levelSizeRatio = levelSizeRatio;
+		copy.bloomFilterFalsePositiveRate = bloomFilterFalsePositiveRate;
+		copy.partitionBits = partitionBits;
+		copy.maxOpenSegments = maxOpenSegments;
+		copy.writeAheadLog = false;
+		copy.fsyncPolicy = fsyncPolicy;
+		copy.fsyncInterval = fsyncInterval;
+		copy.checkpointSize = checkpointSize;
+		return copy;
+	}
+
+
+	@Override
+	public String toString() {
+		return "IndexOptions [memtableSize=" + memtableSize + ", maxImmutableMemtables=" + maxImmutableMemtables + ", level0Files=" + level0Files + ", baseLevelSize=" + baseLevelSize + ", levelSizeRatio="
+				+ levelSizeRatio + ", bloomFilterFalsePositiveRate=" + bloomFilterFalsePositiveRate + ", partitionBits=" + partitionBits
+				+ ", maxOpenSegments=" + maxOpenSegments + ", secondaryIndexes=" + secondaryIndexes + ", writeAheadLog=" + writeAheadLog + ", fsyncPolicy=" + fsyncPolicy + ", fsyncInterval=" + fsyncInterval + ", checkpointSize="
+				+ checkpointSize + "]";
+	}
+}
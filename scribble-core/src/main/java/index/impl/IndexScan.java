@@ -0,0 +1,233 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Helpers for range scans over sorted keys. A scan reads its source in batches of growing size, each starting after
+ * the last key of the previous batch, so that no lock or segment is held between batches and a scan which is
+ * terminated early has only read a few entries. The batches of several sources with disjoint keys, e.g. the
+ * partitions of an {@link Index}, are merged in key order.
+ */
+final class IndexScan {
+	private static final int FIRST_BATCH = 8;
+	private static final int MAX_BATCH = 1024;
+	private static final byte[] FIRST_KEY = new byte[0];
+
+
+	private IndexScan() {
+	}
+
+
+	/**
+	 * A sorted source of entries.
+	 */
+	@FunctionalInterface
+	interface Source {
+		/**
+		 * Reads the entries of a key range in ascending key order without the removed keys.
+		 *
+		 * @param from the first key, inclusive
+		 * @param to the end key, exclusive, or null for no end
+		 * @param limit the maximum number of entries
+		 * @return the entries
+		 * @throws IOException if an error occurs during reading
+		 */
+		List<Map.Entry<byte[], IIndexEntry>> read(byte[] from, byte[] to, int limit) throws IOException;
+	}
+
+
+	/**
+	 * Encodes the bounds of a range of ids.
+	 *
+	 * @param id the id or null for no bound
+	 * @return the key or null
+	 */
+	static byte[] bound(final Object id) {
+		return id != null ? IndexKey.encode(id) : null;
+	}
+
+
+	/**
+	 * Gets the end key of all keys starting with the specified prefix, i.e. the prefix with its last byte incremented
+	 * after removing trailing 0xFF bytes.
+	 *
+	 * @param prefix the prefix
+	 * @return the end key, exclusive, or null if there is no end
+	 */
+	static byte[] prefixEnd(final byte[] prefix) {
+		for (int i = prefix.length - 1; i >= 0; i--) {
+			if (prefix[i] != (byte) 0xFF) {
+				final byte[] end = Arrays.copyOf(prefix, i + 1);
+				end[i]++;
+				return end;
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Collects at most limit entries with keys before the end key.
+	 *
+	 * @param entries the entries in ascending key order, starting at the first key of the range
+	 * @param to the end key, exclusive, or null for no end
+	 * @param limit the maximum number of entries
+	 * @return the entries
+	 */
+	static List<Map.Entry<byte[], IIndexEntry>> collect(final Iterator<Map.Entry<byte[], IIndexEntry>> entries, final byte[] to, final int limit) {
+		final List<Map.Entry<byte[], IIndexEntry>> result = new ArrayList<>(Math.min(limit, IndexScan.MAX_BATCH));
+
+		while (result.size() < limit && entries.hasNext()) {
+			final Map.Entry<byte[], IIndexEntry> entry = entries.next();
+
+			if (to != null && IndexKey.COMPARATOR.compare(entry.getKey(), to) >= 0) {
+				break;
+			}
+
+			result.add(entry);
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Iterates over a key range of the source, reading it in batches.
+	 *
+	 * @param source the {@link Source}
+	 * @param from the first key, inclusive, or null for no start
+	 * @param to the end key, exclusive, or null for no end
+	 * @return the {@link Iterator}
+	 */
+	static Iterator<Map.Entry<byte[], IIndexEntry>> batches(final Source source, final byte[] from, final byte[] to) {
+		return new Iterator<>() {
+			private byte[] next = from != null ? from : IndexScan.FIRST_KEY;
+			private int size = IndexScan.FIRST_BATCH;
+			private Iterator<Map.Entry<byte[], IIndexEntry>> batch = null;
+
+
+			@Override
+			public boolean hasNext() {
+				if ((batch == null || !batch.hasNext()) && next != null) {
+					final List<Map.Entry<byte[], IIndexEntry>> entries;
+
+					try {
+						entries = source.read(next, to, size);
+					} catch (final IOException e) {
+						throw new UncheckedIOException(e);
+					}
+
+					if (entries.size() < size) {
+						next = null;
+					} else {
+						// the smallest key greater than the last key is the last key followed by a zero byte
+						final byte[] last = entries.get(entries.size() - 1).getKey();
+						next = Arrays.copyOf(last, last.length + 1);
+					}
+
+					size = Math.min(size * 2, IndexScan.MAX_BATCH);
+					batch = entries.iterator();
+				}
+
+				return batch.hasNext();
+			}
+
+
+			@Override
+			public Map.Entry<byte[], IIndexEntry> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				return batch.next();
+			}
+		};
+	}
+
+
+	/**
+	 * Merges iterators over disjoint keys in ascending key order. The iterators are not read before the first call of
+	 * {@link Iterator#hasNext()}.
+	 *
+	 * @param iterators the iterators in ascending key order
+	 * @return the merged {@link Iterator}
+	 */
+	static Iterator<Map.Entry<byte[], IIndexEntry>> union(final List<Iterator<Map.Entry<byte[], IIndexEntry>>> iterators) {
+		return new Iterator<>() {
+			private PriorityQueue<Head> heads = null;
+
+
+			@Override
+			public boolean hasNext() {
+				if (heads == null) {
+					heads = new PriorityQueue<>(Math.max(1, iterators.size()), (a, b) -> IndexKey.COMPARATOR.compare(a.entry.getKey(), b.entry.getKey()));
+
+					for (final Iterator<Map.Entry<byte[], IIndexEntry>> iterator : iterators) {
+						if (iterator.hasNext()) {
+							heads.add(new Head(iterator.next(), iterator));
+						}
+					}
+				}
+
+				return !heads.isEmpty();
+			}
+
+
+			@Override
+			public Map.Entry<byte[], IIndexEntry> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				final Head head = heads.poll();
+
+				if (head.iterator.hasNext()) {
+					heads.add(new Head(head.iterator.next(), head.iterator));
+				}
+
+				return head.entry;
+			}
+		};
+	}
+
+
+	/**
+	 * Streams the entries of an iterator.
+	 *
+	 * @param entries the entries in ascending key order
+	 * @return the {@link Stream} of the {@link IIndexEntry}s
+	 */
+	static Stream<IIndexEntry> stream(final Iterator<Map.Entry<byte[], IIndexEntry>> entries) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries, Spliterator.ORDERED | Spliterator.NONNULL), false).map(Map.Entry::getValue);
+	}
+
+
+	/**
+	 * The next entry of an iterator.
+	 */
+	private static class Head {
+		private final Map.Entry<byte[], IIndexEntry> entry;
+		private final Iterator<Map.Entry<byte[], IIndexEntry>> iterator;
+
+
+		Head(final Map.Entry<byte[], IIndexEntry> entry, final Iterator<Map.Entry<byte[], IIndexEntry>> iterator) {
+			this.entry = entry;
+			this.iterator = iterator;
+		}
+	}
+}
@@ -0,0 +1,860 @@
+package index.impl;
+
+import index.api.IIndex;
+import index.api.IIndexEntry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A log-structured merge-tree implementation of {@link IIndex}. Changes are written to a concurrent in-memory memtable,
+ * so that random inserts become sequential writes: a full memtable is flushed by a background thread to an immutable
+ * level-0 file (see {@link SegmentWriter}) and the level-0 files are compacted into level 1 once there are
+ * {@link IndexOptions#getLevel0Files()} of them. Each level from 1 on is a single sorted file, which is merged into the
+ * next level once it exceeds its maximum size of {@link IndexOptions#getBaseLevelSize()} times
+ * {@link IndexOptions#getLevelSizeRatio()} to the power of the level minus one.
+ * <p>
+ * A removed id is written as tombstone which hides the older entries of the id until it is compacted into the deepest
+ * level. A lookup checks the memtables, the level-0 files from new to old and then the levels in ascending order. The
+ * {@link BloomFilter} of each file excludes most files which do not contain the key without reading them.
+ * <p>
+ * The files are named <code>level-sequence.sst</code>. The sequence of a file is the sequence of the newest memtable
+ * it contains, so that files left over by an interrupted compaction are recognized as obsolete on opening.
+ * <p>
+ * The changes are logged to an {@link IndexLog} before they are written to the memtable. A checkpoint flushes all
+ * memtables and discards the log once it exceeds {@link IndexOptions#getCheckpointSize()}, so that opening the index
+ * after a crash only replays the changes since the last checkpoint.
+ * <p>
+ * The {@link SecondaryIndexes} are LSM-trees in sub-directories with the same {@link IndexOptions}. Their postings are
+ * logged with the entries and they are flushed together with the memtables at a checkpoint.
+ */
+public class LsmIndex implements SortedIndex {
+	private static final Logger LOG = LoggerFactory.getLogger(LsmIndex.class);
+	private static final IIndexEntry TOMBSTONE = new IndexEntry();
+	private static final Pattern FILE_NAME = Pattern.compile("(\\d+)-(\\d+)\\.sst");
+	private static final String LOG_FILE = "index.wal";
+	private final Path path;
+	private final IndexOptions options;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final BloomFilterMetrics metrics = new BloomFilterMetrics();
+	private final AtomicLong sequence = new AtomicLong();
+	private volatile Memtable memtable;
+	// newest first
+	private final Deque<Memtable> immutables = new ConcurrentLinkedDeque<>();
+	// newest first
+	private final List<Run> level0 = new ArrayList<>();
+	// the run of level n at index n - 1 or null
+	private final List<Run> levels = new ArrayList<>();
+	private final SecondaryIndexes secondaries;
+	private final Object checkpointLock = new Object();
+	private volatile IndexLog log;
+	private ExecutorService executor;
+	private volatile boolean open = false;
+
+
+	/**
+	 * Constructor with the default {@link IndexOptions}.
+	 *
+	 * @param path the directory of the index
+	 */
+	public LsmIndex(final Path path) {
+		this(path, new IndexOptions());
+	}
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path the directory of the index
+	 * @param options the {@link IndexOptions}
+	 */
+	public LsmIndex(final Path path, final IndexOptions options) {
+		this.path = path;
+		this.options = options;
+		final IndexOptions secondaryOptions = options.withoutSecondaryIndexes();
+		secondaries = new SecondaryIndexes(options, property -> new LsmIndex(path.resolve(SecondaryIndexes.getDirectoryName(property)), secondaryOptions));
+	}
+
+
+	/**
+	 * Opens the files of the index and deletes the files made obsolete by an interrupted compaction.
+	 */
+	@Override
+	public synchronized void open() throws IOException {
+		if (open) {
+			return;
+		}
+
+		Files.createDirectories(path);
+		final List<Run> runs = new ArrayList<>();
+
+		try (Stream<Path> files = Files.list(path)) {
+			for (final Path file : (Iterable<Path>) files::iterator) {
+				final Matcher matcher = LsmIndex.FILE_NAME.matcher(file.getFileName().toString());
+
+				if (matcher.matches()) {
+					runs.add(new Run(null, file, Integer.parseInt(matcher.group(1)), Long.parseLong(matcher.group(2))));
+				} else if (file.getFileName().toString().endsWith(".tmp")) {
+					Files.delete(file);
+				}
+			}
+		}
+
+		// a run is obsolete if a newer run of its level or any run of a deeper level contains it
+		runs.sort((a, b) -> a.level != b.level ? b.level - a.level : Long.compare(b.sequence, a.sequence));
+		long deeper = -1L;
+		int level = -1;
+
+		for (final Run run : runs) {
+			if (run.sequence <= deeper || run.level == level && run.level > 0) {
+				LOG.info("Deleting obsolete index file " + run.path);
+				SegmentFile.delete(run.path);
+				continue;
+			}
+
+			final Run opened = new Run(SegmentFile.open(run.path, metrics), run.path, run.level, run.sequence);
+
+			if (run.level == 0) {
+				level0.add(opened);
+			} else {
+				while (levels.size() < run.level) {
+					levels.add(null);
+				}
+
+				levels.set(run.level - 1, opened);
+				deeper = Math.max(deeper, run.sequence);
+			}
+
+			level = run.level;
+			sequence.accumulateAndGet(run.sequence, Math::max);
+		}
+
+		secondaries.open();
+		memtable = new Memtable(sequence.incrementAndGet());
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "lsm-index-" + path.getFileName());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		if (options.isWriteAheadLog()) {
+			recover();
+		}
+
+		open = true;
+		LOG.info("Opened index " + path + " with " + level0.size() + " level-0 files and " + levels.size() + " levels");
+	}
+
+
+	@Override
+	public void add(final IIndexEntry indexEntry) throws IOException {
+		if (secondaries.isEmpty()) {
+			write(IndexKey.encode(indexEntry.getId()), indexEntry.clone(), List.of());
+			return;
+		}
+
+		secondaries.validate(indexEntry);
+
+		synchronized (secondaries.lock(indexEntry.getId())) {
+			final IIndexEntry previous = find(indexEntry.getId());
+			write(IndexKey.encode(indexEntry.getId()), indexEntry.clone(), secondaries.changes(indexEntry.getId(), previous, indexEntry));
+		}
+	}
+
+
+	@Override
+	public IIndexEntry find(final Object id) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		final byte[] key = IndexKey.encode(id);
+		lock.readLock().lock();
+
+		try {
+			IIndexEntry entry = memtable.entries.get(key);
+
+			if (entry != null) {
+				return entry != LsmIndex.TOMBSTONE ? entry.clone() : null;
+			}
+
+			for (final Memtable immutable : immutables) {
+				entry = immutable.entries.get(key);
+
+				if (entry != null) {
+					return entry != LsmIndex.TOMBSTONE ? entry.clone() : null;
+				}
+			}
+
+			for (final Run run : getRuns()) {
+				final Map.Entry<byte[], IIndexEntry> found = run.file.find(key);
+
+				if (found != null) {
+					return found.getValue();
+				}
+			}
+
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	@Override
+	public Stream<IIndexEntry> scan(final Object fromId, final Object toId) throws IOException {
+		return scan(IndexScan.bound(fromId), IndexScan.bound(toId));
+	}
+
+
+	@Override
+	public Stream<IIndexEntry> prefix(final String prefix) throws IOException {
+		final byte[] from = IndexKey.encode(prefix);
+		return scan(from, IndexScan.prefixEnd(from));
+	}
+
+
+	@Override
+	public Stream<IIndexEntry> scanTuples(final Object first) throws IOException {
+		final byte[] from = IndexKey.encode(List.of(first));
+		return scan(from, IndexScan.prefixEnd(from));
+	}
+
+
+	@Override
+	public Stream<Object> findIds(final String property, final Object value) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		return secondaries.findIds(property, value);
+	}
+
+
+	private Stream<IIndexEntry> scan(final byte[] from, final byte[] to) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		return IndexScan.stream(IndexScan.batches(this::read, from, to));
+	}
+
+
+	/**
+	 * Reads a batch of a scan by merging the memtables and runs from old to new, so that newer entries and tombstones
+	 * replace older ones. The read lock keeps the runs open while the batch is read.
+	 *
+	 * @param from the first key, inclusive
+	 * @param to the end key, exclusive, or null for no end
+	 * @param limit the maximum number of entries
+	 * @return the entries
+	 */
+	private List<Map.Entry<byte[], IIndexEntry>> read(final byte[] from, final byte[] to, final int limit) {
+		lock.readLock().lock();
+
+		try {
+			Iterator<Map.Entry<byte[], IIndexEntry>> entries = Collections.emptyIterator();
+			final List<Run> runs = getRuns();
+
+			for (int i = runs.size() - 1; i >= 0; i--) {
+				entries = Segment.merge(entries, runs.get(i).file.iterator(from));
+			}
+
+			for (final Iterator<Memtable> iterator = immutables.descendingIterator(); iterator.hasNext();) {
+				entries = Segment.merge(entries, LsmIndex.range(iterator.next(), from, to));
+			}
+
+			entries = Segment.merge(entries, LsmIndex.range(memtable, from, to));
+			return IndexScan.collect(Segment.withoutRemoved(entries), to, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Iterates over a key range of a memtable with copies of its entries and null values for the tombstones.
+	 */
+	private static Iterator<Map.Entry<byte[], IIndexEntry>> range(final Memtable memtable, final byte[] from, final byte[] to) {
+		final Map<byte[], IIndexEntry> entries = to != null ? memtable.entries.subMap(from, true, to, false) : memtable.entries.tailMap(from, true);
+		return entries.entrySet().stream()
+				.map(entry -> (Map.Entry<byte[], IIndexEntry>) new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue() != LsmIndex.TOMBSTONE ? entry.getValue().clone() : null))
+				.iterator();
+	}
+
+
+	@Override
+	public void remove(final Object id) throws IOException {
+		if (secondaries.isEmpty()) {
+			write(IndexKey.encode(id), LsmIndex.TOMBSTONE, List.of());
+			return;
+		}
+
+		synchronized (secondaries.lock(id)) {
+			final IIndexEntry previous = find(id);
+			write(IndexKey.encode(id), LsmIndex.TOMBSTONE, secondaries.changes(id, previous, null));
+		}
+	}
+
+
+	/**
+	 * Replays the changes in the write-ahead log since the last checkpoint and flushes them.
+	 *
+	 * @throws IOException if an error occurs during recovery
+	 */
+	private void recover() throws IOException {
+		final IndexLog recovered = new IndexLog(path.resolve(LsmIndex.LOG_FILE), options);
+
+		try {
+			final int changes = recovered.replay((key, entry, postings) -> apply(key, entry != null ? entry : LsmIndex.TOMBSTONE, postings));
+
+			if (changes > 0) {
+				LOG.info("Recovered " + changes + " changes from the write-ahead log of " + path);
+			}
+
+			recovered.checkpoint(this::flushAll);
+		} catch (final IOException | RuntimeException e) {
+			recovered.close();
+			throw e;
+		}
+
+		log = recovered;
+	}
+
+
+	/**
+	 * Logs the entry with the changes of its postings to the {@link IndexLog} and applies them.
+	 *
+	 * @param key the key
+	 * @param entry the entry or the tombstone
+	 * @param postings the changes of the postings of the id
+	 * @throws IOException if the index could not be opened, the change could not be logged or a flush failed while
+	 *         waiting for it
+	 */
+	private void write(final byte[] key, final IIndexEntry entry, final List<SecondaryIndexes.Posting> postings) throws IOException {
+		if (!open) {
+			open();
+		}
+
+		final IndexLog log = this.log;
+
+		if (log == null) {
+			apply(key, entry, postings);
+			return;
+		}
+
+		final long lsn = log.append(key, entry != LsmIndex.TOMBSTONE ? entry : null, postings);
+
+		try {
+			apply(key, entry, postings);
+		} finally {
+			log.done();
+		}
+
+		log.commit(lsn);
+
+		if (log.size() > options.getCheckpointSize()) {
+			checkpoint();
+		}
+	}
+
+
+	/**
+	 * Writes the entry to the memtable and the changes of its postings to the {@link SecondaryIndexes}. Used by the
+	 * writes and the replay of the log alike.
+	 *
+	 * @param key the key
+	 * @param entry the entry or the tombstone
+	 * @param postings the changes of the postings of the id
+	 * @throws IOException if the change could not be applied
+	 */
+	private void apply(final byte[] key, final IIndexEntry entry, final List<SecondaryIndexes.Posting> postings) throws IOException {
+		put(key, entry);
+		secondaries.apply(postings);
+	}
+
+
+	/**
+	 * Writes the entry to the memtable and switches to a new memtable if it is full.
+	 *
+	 * @param key the key
+	 * @param entry the entry or the tombstone
+	 * @throws IOException if a flush failed while waiting for it
+	 */
+	private void put(final byte[] key, final IIndexEntry entry) throws IOException {
+		final int count;
+		lock.readLock().lock();
+
+		try {
+			memtable.entries.put(key, entry);
+			count = memtable.count.incrementAndGet();
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		if (count >= options.getMemtableSize()) {
+			rotate();
+		}
+	}
+
+
+	/**
+	 * Replaces a full memtable with a new one and schedules its flush. If too many memtables are waiting to be flushed
+	 * the caller waits for the flush.
+	 *
+	 * @throws IOException if waiting for the flush failed
+	 */
+	private void rotate() throws IOException {
+		final Future<?> flush;
+
+		lock.writeLock().lock();
+
+		try {
+			if (memtable.count.get() < options.getMemtableSize()) {
+				return;
+			}
+
+			immutables.addFirst(memtable);
+			memtable = new Memtable(sequence.incrementAndGet());
+			flush = executor.submit(this::flushAndCompact);
+
+			if (immutables.size() <= options.getMaxImmutableMemtables()) {
+				return;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		LsmIndex.await(flush);
+	}
+
+
+	private static void await(final Future<?> future) throws IOException {
+		try {
+			future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the index flush");
+		} catch (final ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+
+	/**
+	 * Flushes all memtables and the {@link SecondaryIndexes} and discards the write-ahead log, so that a restart only
+	 * replays the changes since now.
+	 *
+	 * @throws IOException if a memtable could not be flushed
+	 */
+	@Override
+	public void checkpoint() throws IOException {
+		if (!open) {
+			return;
+		}
+
+		synchronized (checkpointLock) {
+			final IndexLog log = this.log;
+
+			if (log == null) {
+				flushAll();
+			} else if (log.size() > 0) {
+				log.checkpoint(this::flushAll);
+			}
+		}
+	}
+
+
+	/**
+	 * Switches to a new memtable, flushes all memtables on the background thread and checkpoints the
+	 * {@link SecondaryIndexes}.
+	 *
+	 * @throws IOException if a memtable could not be flushed
+	 */
+	private void flushAll() throws IOException {
+		lock.writeLock().lock();
+
+		try {
+			if (!memtable.entries.isEmpty()) {
+				immutables.addFirst(memtable);
+				memtable = new Memtable(sequence.incrementAndGet());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		LsmIndex.await(executor.submit(() -> {
+			while (!immutables.isEmpty()) {
+				flush();
+			}
+
+			return null;
+		}));
+
+		secondaries.checkpoint();
+	}
+
+
+	/**
+	 * Flushes the oldest immutable memtable and compacts the levels if necessary. Runs on the background thread.
+	 */
+	private void flushAndCompact() {
+		try {
+			flush();
+			compact();
+		} catch (final IOException | RuntimeException e) {
+			// the memtable stays readable and its flush is repeated with the next one
+			LOG.error("Error flushing index " + path, e);
+		}
+	}
+
+
+	/**
+	 * Flushes the oldest immutable memtable to a level-0 file. Memtables are always flushed oldest first, so that the
+	 * level-0 files are in the order of the memtables even if a flush has failed.
+	 *
+	 * @throws IOException if the file could not be written
+	 */
+	private void flush() throws IOException {
+		final Memtable oldest = immutables.peekLast();
+
+		if (oldest == null) {
+			return;
+		}
+
+		final Path file = path.resolve(LsmIndex.fileName(0, oldest.sequence));
+		SegmentWriter.write(file, LsmIndex.withRemoved(oldest.entries.entrySet().iterator()), options.getBloomFilterFalsePositiveRate());
+		final Run run = new Run(SegmentFile.open(file, metrics), file, 0, oldest.sequence);
+
+		lock.writeLock().lock();
+
+		try {
+			level0.add(0, run);
+			immutables.removeLast();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Merges the level-0 files into level 1 and each level exceeding its maximum size into the next level until no
+	 * compaction is necessary. Only the background thread changes the runs, so they are read without lock.
+	 *
+	 * @throws IOException if a file could not be written
+	 */
+	private void compact() throws IOException {
+		while (true) {
+			final List<Run> inputs = new ArrayList<>();
+			int target = 0;
+
+			if (level0.size() >= options.getLevel0Files()) {
+				inputs.addAll(level0);
+				target = 1;
+			} else {
+				for (int level = 1; level <= levels.size() && target == 0; level++) {
+					final Run run = levels.get(level - 1);
+
+					if (run != null && run.file.getSize() > getMaxLevelSize(level)) {
+						inputs.add(run);
+						target = level + 1;
+					}
+				}
+			}
+
+			if (target == 0) {
+				return;
+			}
+
+			final Run existing = target <= levels.size() ? levels.get(target - 1) : null;
+
+			if (existing != null) {
+				inputs.add(existing);
+			}
+
+			compact(inputs, target);
+		}
+	}
+
+
+	/**
+	 * Merges the runs into a new run of the target level and deletes them.
+	 *
+	 * @param inputs the runs from new to old
+	 * @param target the target level
+	 * @throws IOException if the file could not be written
+	 */
+	private void compact(final List<Run> inputs, final int target) throws IOException {
+		Iterator<Map.Entry<byte[], IIndexEntry>> entries = Collections.emptyIterator();
+		long newest = 0L;
+
+		for (int i = inputs.size() - 1; i >= 0; i--) {
+			entries = Segment.merge(entries, inputs.get(i).file.iterator());
+			newest = Math.max(newest, inputs.get(i).sequence);
+		}
+
+		// tombstones are only needed as long as older entries may exist in deeper levels
+		if (target >= levels.size() || levels.subList(target, levels.size()).stream().allMatch(run -> run == null)) {
+			entries = Segment.withoutRemoved(entries);
+		}
+
+		final Path file = path.resolve(LsmIndex.fileName(target, newest));
+		final long count = SegmentWriter.write(file, entries, options.getBloomFilterFalsePositiveRate());
+		final Run run = new Run(SegmentFile.open(file, metrics), file, target, newest);
+
+		lock.writeLock().lock();
+
+		try {
+			level0.removeAll(inputs);
+
+			for (int level = 0; level < levels.size(); level++) {
+				if (inputs.contains(levels.get(level))) {
+					levels.set(level, null);
+				}
+			}
+
+			while (levels.size() < target) {
+				levels.add(null);
+			}
+
+			levels.set(target - 1, run);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		for (final Run input : inputs) {
+			input.file.close();
+			SegmentFile.delete(input.path);
+		}
+
+		LOG.debug("Compacted " + inputs.size() + " index files into level " + target + " with " + count + " entries");
+	}
+
+
+	private long getMaxLevelSize(final int level) {
+		long size = options.getBaseLevelSize();
+
+		for (int i = 1; i < level; i++) {
+			size *= options.getLevelSizeRatio();
+		}
+
+		return size;
+	}
+
+
+	/**
+	 * Gets the runs in the order of a lookup: the level-0 files from new to old, then the levels in ascending order.
+	 *
+	 * @return the runs
+	 */
+	private List<Run> getRuns() {
+		final List<Run> runs = new ArrayList<>(level0);
+
+		for (final Run run : levels) {
+			if (run != null) {
+				runs.add(run);
+			}
+		}
+
+		return runs;
+	}
+
+
+	/**
+	 * Maps the tombstones of a memtable to null values, which mark removed keys in a segment-file.
+	 *
+	 * @param entries the entries of a memtable
+	 * @return the entries for the {@link SegmentWriter}
+	 */
+	private static Iterator<Map.Entry<byte[], IIndexEntry>> withRemoved(final Iterator<Map.Entry<byte[], IIndexEntry>> entries) {
+		return new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+
+
+			@Override
+			public Map.Entry<byte[], IIndexEntry> next() {
+				final Map.Entry<byte[], IIndexEntry> entry = entries.next();
+				return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue() != LsmIndex.TOMBSTONE ? entry.getValue() : null);
+			}
+		};
+	}
+
+
+	private static String fileName(final int level, final long sequence) {
+		return String.format("%d-%010d.sst", level, sequence);
+	}
+
+
+	/**
+	 * Gets the number of runs per level, level 0 first.
+	 *
+	 * @return the number of files of each level
+	 */
+	public int[] getLevelFiles() {
+		lock.readLock().lock();
+
+		try {
+			final int[] files = new int[levels.size() + 1];
+			files[0] = level0.size();
+
+			for (int level = 1; level < files.length; level++) {
+				files[level] = levels.get(level - 1) != null ? 1 : 0;
+			}
+
+			return files;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Gets the {@link BloomFilterMetrics} of the files of the index.
+	 *
+	 * @return the metrics
+	 */
+	public BloomFilterMetrics getBloomFilterMetrics() {
+		return metrics;
+	}
+
+
+	/**
+	 * Gets the directory of the index.
+	 *
+	 * @return the path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+
+	/**
+	 * Gets the {@link IndexOptions}.
+	 *
+	 * @return the options
+	 */
+	public IndexOptions getOptions() {
+		return options;
+	}
+
+
+	/**
+	 * Returns true if the index is open.
+	 *
+	 * @return the open flag
+	 */
+	public boolean isOpen() {
+		return open;
+	}
+
+
+	/**
+	 * Flushes all memtables, discards the write-ahead log, waits for the compactions to finish and closes the files.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!open) {
+			return;
+		}
+
+		try {
+			if (log != null) {
+				try {
+					log.checkpoint(this::flushAll);
+				} finally {
+					log.close();
+					log = null;
+				}
+			} else {
+				flushAll();
+			}
+
+			LsmIndex.await(executor.submit(() -> {
+				compact();
+				return null;
+			}));
+		} finally {
+			open = false;
+			executor.shutdown();
+
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			for (final Run run : getRuns()) {
+				run.file.close();
+			}
+
+			level0.clear();
+			levels.clear();
+			immutables.clear();
+			secondaries.close();
+		}
+	}
+
+
+	/**
+	 * A memtable with the sequence number of the level-0 file it will be flushed to.
+	 */
+	private static class Memtable {
+		private final ConcurrentNavigableMap<byte[], IIndexEntry> entries = new ConcurrentSkipListMap<>(IndexKey.COMPARATOR);
+		private final AtomicInteger count = new AtomicInteger();
+		private final long sequence;
+
+
+		Memtable(final long sequence) {
+			this.sequence = sequence;
+		}
+	}
+
+
+	/**
+	 * A sorted file of a level.
+	 */
+	private static class Run {
+		private final SegmentFile file;
+		private final Path path;
+		private final int level;
+		private final long sequence;
+
+
+		Run(final SegmentFile file, final Path path, final int level, final long sequence) {
+			this.file = file;
+			this.path = path;
+			this.level = level;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * The secondary indexes of an index on the properties named by {@link IndexOptions#getSecondaryIndexes()}. The
+ * secondary index of a property maps its values to the ids of the entries with the value. Its entries are postings
+ * whose ids are the tuples (value, id), so the posting list of a value is the sorted range of the tuples starting with
+ * the value and adding or removing an id only writes a single posting. A property with a {@link Collection} as value
+ * has a posting for each element.
+ * <p>
+ * The postings of an id are updated while holding the lock of the id, see {@link #lock(Object)}, so that concurrent
+ * changes of the same id do not leave stale postings.
+ * <p>
+ * The secondary indexes have no write-ahead log of their own. The {@link Posting} changes of an entry are computed
+ * before the change is logged and are logged in the same {@link IndexLog} record as the entry, so that the replay after
+ * a crash redoes them regardless of which of the indexes had already written the change. The secondary indexes are
+ * checkpointed together with their index.
+ */
+final class SecondaryIndexes {
+	private static final int STRIPES = 64;
+	private final Map<String, SortedIndex> indexes = new LinkedHashMap<>();
+	private final Object[] locks = new Object[SecondaryIndexes.STRIPES];
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param options the {@link IndexOptions} of the index
+	 * @param factory creates the secondary index of a property
+	 */
+	SecondaryIndexes(final IndexOptions options, final Function<String, SortedIndex> factory) {
+		for (final String property : options.getSecondaryIndexes()) {
+			indexes.put(property, factory.apply(property));
+		}
+
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+
+	/**
+	 * Returns true if no property has a secondary index.
+	 *
+	 * @return true if there are no secondary indexes
+	 */
+	boolean isEmpty() {
+		return indexes.isEmpty();
+	}
+
+
+	/**
+	 * Gets the lock which must be held while the entry of the id and its postings are changed.
+	 *
+	 * @param id the id
+	 * @return the lock
+	 */
+	Object lock(final Object id) {
+		return locks[(int) IndexKey.hash(IndexKey.encode(id)) & SecondaryIndexes.STRIPES - 1];
+	}
+
+
+	/**
+	 * Checks that the values of the indexed properties can be indexed, before the entry is written.
+	 *
+	 * @param entry the entry
+	 * @throws IllegalArgumentException if a value is not supported as id, see {@link IndexKey}
+	 */
+	void validate(final IIndexEntry entry) {
+		for (final String property : indexes.keySet()) {
+			for (final Object value : SecondaryIndexes.values(entry, property)) {
+				IndexKey.encode(List.of(value, entry.getId()));
+			}
+		}
+	}
+
+
+	/**
+	 * Computes the posting changes of an id from its previous to its new entry.
+	 *
+	 * @param id the id
+	 * @param previous the previous entry or null
+	 * @param entry the new entry or null if the id is removed
+	 * @return the {@link Posting}s to add or remove
+	 */
+	List<Posting> changes(final Object id, final IIndexEntry previous, final IIndexEntry entry) {
+		final List<Posting> postings = new ArrayList<>();
+
+		for (final String property : indexes.keySet()) {
+			final Set<Object> removed = SecondaryIndexes.values(previous, property);
+			final Set<Object> added = SecondaryIndexes.values(entry, property);
+
+			for (final Object value : removed) {
+				if (!added.contains(value)) {
+					postings.add(new Posting(property, List.of(value, id), false));
+				}
+			}
+
+			for (final Object value : added) {
+				if (!removed.contains(value)) {
+					postings.add(new Posting(property, List.of(value, id), true));
+				}
+			}
+		}
+
+		return postings;
+	}
+
+
+	/**
+	 * Adds or removes the postings in their secondary indexes. Applying the same postings again has no effect.
+	 *
+	 * @param postings the {@link Posting}s
+	 * @throws IOException if a secondary index could not be written
+	 * @throws IllegalArgumentException if the property of a posting has no secondary index
+	 */
+	void apply(final List<Posting> postings) throws IOException {
+		for (final Posting posting : postings) {
+			final SortedIndex index = indexes.get(posting.property);
+
+			if (index == null) {
+				throw new IllegalArgumentException("The property " + posting.property + " has no secondary index!");
+			}
+
+			if (posting.added) {
+				final IndexEntry entry = new IndexEntry();
+				entry.setId(posting.tuple);
+				index.add(entry);
+			} else {
+				index.remove(posting.tuple);
+			}
+		}
+	}
+
+
+	/**
+	 * Gets the distinct values of a property, the elements if the value is a {@link Collection}.
+	 *
+	 * @param entry the entry or null
+	 * @param property the property
+	 * @return the values
+	 */
+	private static Set<Object> values(final IIndexEntry entry, final String property) {
+		final Object value = entry != null ? entry.getProperty(property) : null;
+		final Set<Object> values = new LinkedHashSet<>();
+
+		if (value instanceof Collection) {
+			for (final Object element : (Collection<?>) value) {
+				if (element != null) {
+					values.add(element);
+				}
+			}
+		} else if (value != null) {
+			values.add(value);
+		}
+
+		return values;
+	}
+
+
+	/**
+	 * Streams the ids of the posting list of a value.
+	 *
+	 * @param property the property
+	 * @param value the value
+	 * @return the {@link Stream} of the ids
+	 * @throws IOException if the secondary index could not be opened
+	 * @throws IllegalArgumentException if the property has no secondary index
+	 */
+	Stream<Object> findIds(final String property, final Object value) throws IOException {
+		final SortedIndex index = indexes.get(property);
+
+		if (index == null) {
+			throw new IllegalArgumentException("The property " + property + " has no secondary index!");
+		}
+
+		return index.scanTuples(value).map(posting -> ((List<?>) posting.getId()).get(1));
+	}
+
+
+	/**
+	 * Opens the secondary indexes.
+	 *
+	 * @throws IOException if a secondary index could not be opened
+	 */
+	void open() throws IOException {
+		for (final SortedIndex index : indexes.values()) {
+			index.open();
+		}
+	}
+
+
+	/**
+	 * Writes the changes of the secondary indexes to their files.
+	 *
+	 * @throws IOException if a secondary index could not be written
+	 */
+	void checkpoint() throws IOException {
+		for (final SortedIndex index : indexes.values()) {
+			index.checkpoint();
+		}
+	}
+
+
+	/**
+	 * Closes the secondary indexes.
+	 *
+	 * @throws IOException if a secondary index could not be closed
+	 */
+	void close() throws IOException {
+		IOException error = null;
+
+		for (final SortedIndex index : indexes.values()) {
+			try {
+				index.close();
+			} catch (final IOException e) {
+				error = e;
+			}
+		}
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+
+	/**
+	 * Gets the directory of the secondary index of a property.
+	 *
+	 * @param property the property
+	 * @return the directory name
+	 */
+	static String getDirectoryName(final String property) {
+		return "secondary-" + property;
+	}
+
+
+	/**
+	 * A posting which is added to or removed from the secondary index of a property.
+	 */
+	static final class Posting {
+		private final String property;
+		private final Object tuple;
+		private final boolean added;
+
+
+		/**
+		 * Constructor.
+		 *
+		 * @param property the property
+		 * @param tuple the id of the posting, the tuple (value, id)
+		 * @param added true if the posting is added, false if it is removed
+		 */
+		Posting(final String property, final Object tuple, final boolean added) {
+			this.property = property;
+			this.tuple = tuple;
+			this.added = added;
+		}
+
+
+		String getProperty() {
+			return property;
+		}
+
+
+		Object getTuple() {
+			return tuple;
+		}
+
+
+		boolean isAdded() {
+			return added;
+		}
+	}
+}
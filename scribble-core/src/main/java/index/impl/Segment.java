@@ -3,90 +3,404 @@ package index.impl;
 import index.api.IIndexEntry;
 import index.api.IIndexSegment;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.EnumSet;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
 
+/**
+ * A segment of the index persisted as sorted {@link SegmentFile}s. The changes since the last flush are kept in memory
+ * and written by {@link #rebuild()}, which is called on {@link #close()}, at a checkpoint and when the number of changes
+ * exceeds {@link #MAX_CHANGES}.
+ * <p>
+ * The segment consists of the base file <code>name.seg</code> and the delta files <code>name.0.delta</code>,
+ * <code>name.1.delta</code>, ... from old to new, which hold the changes including the removed keys. A rebuild writes
+ * the changes as new delta file, so that its cost does not grow with the size of the segment. Two deltas are merged
+ * into one while the newer one is at least half as large as the older one, so that the sizes of the deltas decrease
+ * geometrically and there are only logarithmically many of them. The deltas are merged into the base file once they
+ * hold at least half as many entries as the base file, so that the base file grows geometrically between its rewrites.
+ * Hence each change is written a logarithmic number of times in the size of the segment instead of once per
+ * {@link #MAX_CHANGES} changes, e.g. about 3.3 times instead of 8.5 times when a segment is filled with 16 times
+ * {@link #MAX_CHANGES} new entries.
+ * <p>
+ * Opening a segment probes for the deltas from 0 on and stops at the first missing one. A merged delta replaces the
+ * older of its inputs before the newer one is deleted, and the deltas merged into the base file are deleted from the
+ * oldest one on, so that a crash only leaves deltas which are newer than the files they have been merged into, or
+ * which are not found anymore. The delta after a new delta is deleted before it is written, so that such a leftover is
+ * never mistaken for a newer delta.
+ */
 public class Segment implements IIndexSegment {
-	private FileChannel channel;
+	/** The number of changes after which the segment is rebuilt. */
+	public static final int MAX_CHANGES = 64 * 1024;
+	private final String name;
+	private final Path path;
+	private final IndexOptions options;
+	private final BloomFilterMetrics metrics;
+	private SegmentFile file;
+	private final List<SegmentFile> deltas = new ArrayList<>();
 	private boolean open;
-	private Map<Object, IIndexEntry> entries;
+	private long written;
+	private final NavigableMap<byte[], IIndexEntry> changes = new TreeMap<>(IndexKey.COMPARATOR);
+
+
+	private Segment(final String name, final IndexOptions options, final BloomFilterMetrics metrics) {
+		this.name = name;
+		this.path = Paths.get(name + ".seg");
+		this.options = options;
+		this.metrics = metrics;
+	}
 
 
-	@SuppressWarnings({ "unchecked" })
 	public static Segment open(final String name) throws IOException {
-		final Segment segment = new Segment();
-		final Path path = Paths.get(name + ".seg");
+		return Segment.open(name, new IndexOptions(), null);
+	}
+
+
+	/**
+	 * Opens the segment with the specified name.
+	 *
+	 * @param name the path of the segment without extension
+	 * @param options the {@link IndexOptions}
+	 * @param metrics the {@link BloomFilterMetrics} to record the lookups in or null
+	 * @return the {@link Segment}
+	 * @throws IOException if the segment-file could not be opened
+	 */
+	public static Segment open(final String name, final IndexOptions options, final BloomFilterMetrics metrics) throws IOException {
+		final Segment segment = new Segment(name, options, metrics);
 
-		if (!Files.exists(path.getParent())) {
-			Files.createDirectories(path.getParent());
+		if (segment.path.getParent() != null && !Files.exists(segment.path.getParent())) {
+			Files.createDirectories(segment.path.getParent());
 		}
-		segment.channel = FileChannel.open(path, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
 
-		if (Files.exists(path) && Files.size(path) > 0) {
-			ByteBuffer bytes = ByteBuffer.allocate((int) Files.size(path));
-			segment.channel.read(bytes);
+		if (Files.exists(segment.path) && Files.size(segment.path) > 0) {
+			segment.file = SegmentFile.open(segment.path, metrics);
+		}
 
-			if (bytes.remaining() == 0) {
-				final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.array()));
-				try {
-					segment.entries = (Map<Object, IIndexEntry>) ois.readObject();
-				} catch (final ClassNotFoundException e) {
-					e.printStackTrace();
-					segment.entries = new TreeMap<>();
-				}
-				// clean up
-				bytes = null;
+		try {
+			for (Path delta = segment.getDeltaPath(0); Files.exists(delta); delta = segment.getDeltaPath(segment.deltas.size())) {
+				segment.deltas.add(SegmentFile.open(delta, metrics));
 			}
-		} else {
-			segment.entries = new TreeMap<>();
+		} catch (final IOException e) {
+			segment.closeFiles();
+			throw e;
 		}
 
+		segment.open = true;
 		return segment;
 	}
 
 
 	@Override
-	public IIndexEntry get(final Object id) throws IOException {
-		return entries.get(id);
+	public synchronized IIndexEntry get(final Object id) throws IOException {
+		final byte[] key = IndexKey.encode(id);
+
+		if (changes.containsKey(key)) {
+			return changes.get(key);
+		}
+
+		for (int i = deltas.size() - 1; i >= 0; i--) {
+			final Map.Entry<byte[], IIndexEntry> entry = deltas.get(i).find(key);
+
+			if (entry != null) {
+				return entry.getValue();
+			}
+		}
+
+		if (file != null) {
+			final Map.Entry<byte[], IIndexEntry> entry = file.find(key);
+			return entry != null ? entry.getValue() : null;
+		}
+
+		return null;
 	}
 
 
 	@Override
-	public void add(final IIndexEntry indexEntry) throws IOException {
-		entries.put(indexEntry.getId(), indexEntry);
+	public synchronized void add(final IIndexEntry indexEntry) throws IOException {
+		changes.put(IndexKey.encode(indexEntry.getId()), indexEntry.clone());
+
+		if (changes.size() >= Segment.MAX_CHANGES) {
+			rebuild();
+		}
 	}
 
 
 	@Override
-	public void remove(final Object id) throws IOException {
-		entries.remove(id);
+	public synchronized void remove(final Object id) throws IOException {
+		// a null value hides the entry of the file until the next rebuild
+		changes.put(IndexKey.encode(id), null);
+
+		if (changes.size() >= Segment.MAX_CHANGES) {
+			rebuild();
+		}
+	}
+
+
+	/**
+	 * Reads the entries of a key range in ascending key order without the removed keys.
+	 *
+	 * @param from the first key, inclusive
+	 * @param to the end key, exclusive, or null for no end
+	 * @param limit the maximum number of entries
+	 * @return the keys and {@link IIndexEntry}s
+	 */
+	synchronized List<Map.Entry<byte[], IIndexEntry>> scan(final byte[] from, final byte[] to, final int limit) {
+		Iterator<Map.Entry<byte[], IIndexEntry>> entries = file != null ? file.iterator(from) : Collections.emptyIterator();
+
+		for (final SegmentFile delta : deltas) {
+			entries = Segment.merge(entries, delta.iterator(from));
+		}
+
+		final NavigableMap<byte[], IIndexEntry> changed = to != null ? changes.subMap(from, true, to, false) : changes.tailMap(from, true);
+		return IndexScan.collect(Segment.withoutRemoved(Segment.merge(entries, changed.entrySet().iterator())), to, limit);
 	}
 
 
+	/**
+	 * Writes the changes to the segment-files, see the class comment: the changes become a new delta file, which is
+	 * merged with the newest deltas of similar size, or are merged into the base file together with all deltas.
+	 */
 	@Override
-	public void rebuild() throws IOException {
+	public synchronized void rebuild() throws IOException {
+		if (changes.isEmpty()) {
+			return;
+		}
+
+		long deltaCount = changes.size();
+
+		for (final SegmentFile delta : deltas) {
+			deltaCount += delta.getEntryCount();
+		}
+
+		if (file == null || deltaCount * 2 >= file.getEntryCount()) {
+			mergeBase();
+			return;
+		}
+
+		final Path delta = getDeltaPath(deltas.size());
+		SegmentFile.delete(getDeltaPath(deltas.size() + 1));
+		written += SegmentWriter.write(delta, changes.entrySet().iterator(), options.getBloomFilterFalsePositiveRate());
+		deltas.add(SegmentFile.open(delta, metrics));
+		changes.clear();
+
+		while (deltas.size() >= 2 && deltas.get(deltas.size() - 1).getEntryCount() * 2 >= deltas.get(deltas.size() - 2).getEntryCount()) {
+			mergeDeltas();
+		}
+	}
+
+
+	/**
+	 * Merges the base file, the deltas and the changes into a new base file, which atomically replaces the old one,
+	 * and deletes the deltas from the oldest one on.
+	 */
+	private void mergeBase() throws IOException {
+		Iterator<Map.Entry<byte[], IIndexEntry>> entries = file != null ? file.iterator() : Collections.emptyIterator();
+
+		for (final SegmentFile delta : deltas) {
+			entries = Segment.merge(entries, delta.iterator());
+		}
+
+		written += SegmentWriter.write(path, Segment.withoutRemoved(Segment.merge(entries, changes.entrySet().iterator())), options.getBloomFilterFalsePositiveRate());
+		changes.clear();
+
+		if (file != null) {
+			file.close();
+		}
+
+		file = SegmentFile.open(path, metrics);
+
+		for (final SegmentFile delta : deltas) {
+			delta.close();
+			SegmentFile.delete(delta.getPath());
+		}
+
+		deltas.clear();
+	}
+
+
+	/**
+	 * Merges the two newest deltas into a delta which replaces the older one and deletes the newer one.
+	 */
+	private void mergeDeltas() throws IOException {
+		final SegmentFile newer = deltas.remove(deltas.size() - 1);
+		final SegmentFile older = deltas.get(deltas.size() - 1);
+		written += SegmentWriter.write(older.getPath(), Segment.merge(older.iterator(), newer.iterator()), options.getBloomFilterFalsePositiveRate());
+		older.close();
+		deltas.set(deltas.size() - 1, SegmentFile.open(older.getPath(), metrics));
+		newer.close();
+		SegmentFile.delete(newer.getPath());
+	}
+
+
+	/**
+	 * Gets the path of a delta file.
+	 *
+	 * @param index the index of the delta, 0 for the oldest
+	 * @return the path
+	 */
+	private Path getDeltaPath(final int index) {
+		return Paths.get(name + "." + index + ".delta");
+	}
+
+
+	/**
+	 * Merges two iterators in ascending key order. The entry of the second iterator wins on equal keys.
+	 *
+	 * @param older the older entries
+	 * @param newer the newer entries
+	 * @return the merged {@link Iterator}
+	 */
+	static Iterator<Map.Entry<byte[], IIndexEntry>> merge(final Iterator<Map.Entry<byte[], IIndexEntry>> older, final Iterator<Map.Entry<byte[], IIndexEntry>> newer) {
+		return new Iterator<>() {
+			private Map.Entry<byte[], IIndexEntry> nextOlder = older.hasNext() ? older.next() : null;
+			private Map.Entry<byte[], IIndexEntry> nextNewer = newer.hasNext() ? newer.next() : null;
+
+
+			@Override
+			public boolean hasNext() {
+				return nextOlder != null || nextNewer != null;
+			}
+
+
+			@Override
+			public Map.Entry<byte[], IIndexEntry> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				final int comparison = nextOlder == null ? 1 : nextNewer == null ? -1 : IndexKey.COMPARATOR.compare(nextOlder.getKey(), nextNewer.getKey());
+				final Map.Entry<byte[], IIndexEntry> result = comparison < 0 ? nextOlder : nextNewer;
+
+				if (comparison <= 0) {
+					nextOlder = older.hasNext() ? older.next() : null;
+				}
+
+				if (comparison >= 0) {
+					nextNewer = newer.hasNext() ? newer.next() : null;
+				}
+
+				return result;
+			}
+		};
+	}
+
+
+	/**
+	 * Skips the removed keys, whose value is null.
+	 *
+	 * @param entries the entries
+	 * @return the {@link Iterator} over the entries which have not been removed
+	 */
+	static Iterator<Map.Entry<byte[], IIndexEntry>> withoutRemoved(final Iterator<Map.Entry<byte[], IIndexEntry>> entries) {
+		return new Iterator<>() {
+			private Map.Entry<byte[], IIndexEntry> next = advance();
+
+
+			private Map.Entry<byte[], IIndexEntry> advance() {
+				while (entries.hasNext()) {
+					final Map.Entry<byte[], IIndexEntry> entry = entries.next();
+
+					if (entry.getValue() != null) {
+						return entry;
+					}
+				}
+
+				return null;
+			}
+
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+
+			@Override
+			public Map.Entry<byte[], IIndexEntry> next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+
+				final Map.Entry<byte[], IIndexEntry> result = next;
+				next = advance();
+				return new AbstractMap.SimpleImmutableEntry<>(result);
+			}
+		};
 	}
 
 
 	@Override
-	public void close() throws IOException {
-		channel.close();
+	public synchronized void close() throws IOException {
+		if (!open) {
+			return;
+		}
+
+		try {
+			rebuild();
+		} finally {
+			open = false;
+			closeFiles();
+		}
+	}
+
+
+	private void closeFiles() throws IOException {
+		for (final SegmentFile delta : deltas) {
+			delta.close();
+		}
+
+		deltas.clear();
+
+		if (file != null) {
+			file.close();
+			file = null;
+		}
+	}
+
+
+	/**
+	 * Gets the path of the segment-file.
+	 *
+	 * @return the path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+
+	/**
+	 * Gets the number of entries written to segment-files since the segment has been opened, including the rewritten
+	 * ones.
+	 *
+	 * @return the number of entries
+	 */
+	long getWrittenEntries() {
+		return written;
+	}
+
+
+	/**
+	 * Gets the number of delta files.
+	 *
+	 * @return the number of deltas
+	 */
+	int getDeltaCount() {
+		return deltas.size();
 	}
 
 
 	/**
 	 * Returns true if the segment is open.
-	 * 
+	 *
 	 * @return the open flag
 	 */
 	public boolean isOpen() {
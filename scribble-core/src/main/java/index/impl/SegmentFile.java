@@ -0,0 +1,412 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import store.MappedRegions;
+
+/**
+ * A read-only segment-file written by {@link SegmentWriter}. The file is memory-mapped and only its footer is read on
+ * opening, so opening is independent of the number of entries and the entries do not occupy the heap. A lookup binary
+ * searches the sparse block index in the mapped file and then scans a single block. The entries are returned as
+ * {@link IndexEntryView}s, which decode their fields from the mapped file on demand.
+ */
+public class SegmentFile implements Closeable {
+	private static final int REGION_SIZE = 64 * 1024 * 1024;
+	private final Path path;
+	private final MappedRegions regions;
+	private final long size;
+	private final long entryCount;
+	private final int blockCount;
+	private final long keysPosition;
+	private final long indexPosition;
+	private final long tablePosition;
+	private String[] keys;
+	private BloomFilter filter;
+	private BloomFilterMetrics metrics;
+
+
+	private SegmentFile(final Path path, final MappedRegions regions, final long size, final ByteBuffer footer) {
+		this.path = path;
+		this.regions = regions;
+		this.size = size;
+		entryCount = footer.getLong();
+		blockCount = footer.getInt();
+		keysPosition = footer.getLong();
+		indexPosition = footer.getLong();
+		tablePosition = footer.getLong();
+	}
+
+
+	/**
+	 * Opens the segment-file at the specified path without recording {@link BloomFilterMetrics}.
+	 *
+	 * @param path the path
+	 * @return the {@link SegmentFile}
+	 * @throws IOException if the file could not be opened or is not a valid segment-file
+	 */
+	public static SegmentFile open(final Path path) throws IOException {
+		return SegmentFile.open(path, null);
+	}
+
+
+	/**
+	 * Opens the segment-file at the specified path together with its {@link BloomFilter} if it has one.
+	 *
+	 * @param path the path
+	 * @param metrics the {@link BloomFilterMetrics} to record the lookups in or null
+	 * @return the {@link SegmentFile}
+	 * @throws IOException if the file could not be opened or is not a valid segment-file
+	 */
+	public static SegmentFile open(final Path path, final BloomFilterMetrics metrics) throws IOException {
+		final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		final MappedRegions regions = new MappedRegions(channel, SegmentFile.REGION_SIZE);
+
+		try {
+			final long size = channel.size();
+
+			if (size < 8 + SegmentWriter.FOOTER_SIZE) {
+				throw new IOException("Invalid segment-file " + path + ": the file is truncated");
+			}
+
+			final ByteBuffer header = regions.slice(0, 8);
+			final ByteBuffer footer = regions.slice(size - SegmentWriter.FOOTER_SIZE, SegmentWriter.FOOTER_SIZE);
+
+			if (header.getInt() != SegmentWriter.MAGIC || footer.getInt(SegmentWriter.FOOTER_SIZE - 4) != SegmentWriter.MAGIC) {
+				throw new IOException("Invalid segment-file " + path + ": the file is not a segment-file or incomplete");
+			}
+
+			if (header.getInt() != SegmentWriter.VERSION) {
+				throw new IOException("Invalid segment-file " + path + ": unsupported version " + header.getInt(4));
+			}
+
+			final SegmentFile file = new SegmentFile(path, regions, size, footer);
+			file.keys = SegmentFile.readKeys(regions.slice(file.keysPosition, (int) (file.indexPosition - file.keysPosition)));
+			file.filter = BloomFilter.read(BloomFilter.getPath(path), file.entryCount, size);
+			file.metrics = file.filter != null ? metrics : null;
+			return file;
+		} catch (final IOException | RuntimeException e) {
+			regions.close();
+			throw e;
+		}
+	}
+
+
+	private static String[] readKeys(final ByteBuffer bytes) {
+		final String[] keys = new String[(int) IndexEntryCodec.readVarLong(bytes)];
+
+		for (int i = 0; i < keys.length; i++) {
+			final byte[] key = new byte[(int) IndexEntryCodec.readVarLong(bytes)];
+			bytes.get(key);
+			keys[i] = new String(key, StandardCharsets.UTF_8).intern();
+		}
+
+		return keys;
+	}
+
+
+	/**
+	 * Gets the entry for the specified id.
+	 *
+	 * @param id the id
+	 * @return the {@link IIndexEntry} or null if the id is not contained or has been removed
+	 * @throws IOException if an error occurs during reading
+	 */
+	public IIndexEntry get(final Object id) throws IOException {
+		final Map.Entry<byte[], IIndexEntry> entry = find(IndexKey.encode(id));
+		return entry != null ? entry.getValue() : null;
+	}
+
+
+	/**
+	 * Finds the entry for the specified key.
+	 *
+	 * @param key the encoded key
+	 * @return the key and {@link IIndexEntry}, whose value is null if the key has been removed, or null if the key is not
+	 *         contained
+	 * @throws IOException if an error occurs during reading
+	 */
+	Map.Entry<byte[], IIndexEntry> find(final byte[] key) throws IOException {
+		if (filter != null) {
+			final boolean negative = !filter.mightContain(key);
+
+			if (metrics != null) {
+				metrics.lookup(negative);
+			}
+
+			if (negative) {
+				return null;
+			}
+		}
+
+		final Map.Entry<byte[], IIndexEntry> entry = findInBlock(key);
+
+		if (entry == null && metrics != null) {
+			metrics.falsePositive();
+		}
+
+		return entry;
+	}
+
+
+	private Map.Entry<byte[], IIndexEntry> findInBlock(final byte[] key) throws IOException {
+		final int block = findBlock(key);
+
+		if (block < 0) {
+			return null;
+		}
+
+		final ByteBuffer bytes = readBlock(block);
+
+		while (bytes.hasRemaining()) {
+			final byte flags = bytes.get();
+			final byte[] entryKey = SegmentFile.readKey(bytes);
+			final int comparison = IndexKey.COMPARATOR.compare(entryKey, key);
+
+			if (comparison == 0) {
+				return new AbstractMap.SimpleImmutableEntry<>(entryKey, readEntry(bytes, flags, entryKey));
+			} else if (comparison > 0) {
+				return null;
+			}
+
+			SegmentFile.skipEntry(bytes, flags);
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Finds the last block whose first key is less than or equal to the specified key.
+	 *
+	 * @param key the key
+	 * @return the block number or -1 if the key is less than all keys
+	 * @throws IOException if an error occurs during reading
+	 */
+	private int findBlock(final byte[] key) throws IOException {
+		int low = 0;
+		int high = blockCount - 1;
+		int result = -1;
+
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+
+			if (IndexKey.COMPARATOR.compare(getFirstKey(mid), key) <= 0) {
+				result = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return result;
+	}
+
+
+	private long getBlockIndexPosition(final int block) throws IOException {
+		return regions.slice(tablePosition + 8L * block, 8).getLong();
+	}
+
+
+	private byte[] getFirstKey(final int block) throws IOException {
+		final long position = getBlockIndexPosition(block) + 8;
+		final int length = regions.slice(position, 2).getShort();
+		final byte[] key = new byte[length];
+		regions.slice(position + 2, length).get(key);
+		return key;
+	}
+
+
+	private long getBlockOffset(final int block) throws IOException {
+		return regions.slice(getBlockIndexPosition(block), 8).getLong();
+	}
+
+
+	private ByteBuffer readBlock(final int block) throws IOException {
+		final long start = getBlockOffset(block);
+		final long end = block + 1 < blockCount ? getBlockOffset(block + 1) : keysPosition;
+		return regions.slice(start, (int) (end - start));
+	}
+
+
+	private static byte[] readKey(final ByteBuffer bytes) {
+		final byte[] key = new byte[(int) IndexEntryCodec.readVarLong(bytes)];
+		bytes.get(key);
+		return key;
+	}
+
+
+	private static void skipEntry(final ByteBuffer bytes, final byte flags) {
+		if ((flags & SegmentWriter.REMOVED) == 0) {
+			final int length = (int) IndexEntryCodec.readVarLong(bytes);
+			bytes.position(bytes.position() + length);
+		}
+	}
+
+
+	/**
+	 * Reads the value of an entry as an {@link IndexEntryView} over the buffer, which is positioned after it.
+	 */
+	private IIndexEntry readEntry(final ByteBuffer bytes, final byte flags, final byte[] key) {
+		if ((flags & SegmentWriter.REMOVED) != 0) {
+			return null;
+		}
+
+		final int length = (int) IndexEntryCodec.readVarLong(bytes);
+		final ByteBuffer value = bytes.slice(bytes.position(), length);
+		bytes.position(bytes.position() + length);
+		return new IndexEntryView(key, value, keys);
+	}
+
+
+	/**
+	 * Iterates over all entries in key order, including removed keys whose value is null.
+	 *
+	 * @return the {@link Iterator}
+	 */
+	public Iterator<Map.Entry<byte[], IIndexEntry>> iterator() {
+		return iterator(new byte[0]);
+	}
+
+
+	/**
+	 * Iterates over the entries from the specified key on in key order, including removed keys whose value is null.
+	 * Only the blocks from the one which may contain the key on are read.
+	 *
+	 * @param from the first key, inclusive
+	 * @return the {@link Iterator}
+	 */
+	Iterator<Map.Entry<byte[], IIndexEntry>> iterator(final byte[] from) {
+		return new Iterator<>() {
+			private int block = -1;
+			private ByteBuffer bytes = null;
+			private Map.Entry<byte[], IIndexEntry> next = null;
+
+
+			private Map.Entry<byte[], IIndexEntry> advance() throws IOException {
+				if (block < 0) {
+					block = Math.max(0, findBlock(from));
+				}
+
+				while (true) {
+					while ((bytes == null || !bytes.hasRemaining()) && block < blockCount) {
+						bytes = readBlock(block++);
+					}
+
+					if (bytes == null || !bytes.hasRemaining()) {
+						return null;
+					}
+
+					final byte flags = bytes.get();
+					final byte[] key = SegmentFile.readKey(bytes);
+
+					if (IndexKey.COMPARATOR.compare(key, from) >= 0) {
+						return new AbstractMap.SimpleImmutableEntry<>(key, readEntry(bytes, flags, key));
+					}
+
+					SegmentFile.skipEntry(bytes, flags);
+				}
+			}
+
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = advance();
+					} catch (final IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+
+				return next != null;
+			}
+
+
+			@Override
+			public Map.Entry<byte[], IIndexEntry> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				final Map.Entry<byte[], IIndexEntry> result = next;
+				next = null;
+				return result;
+			}
+		};
+	}
+
+
+	/**
+	 * Gets the number of entries including removed keys.
+	 *
+	 * @return the number of entries
+	 */
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+
+	/**
+	 * Gets the {@link BloomFilter} of the file.
+	 *
+	 * @return the filter or null if the file has none
+	 */
+	public BloomFilter getFilter() {
+		return filter;
+	}
+
+
+	/**
+	 * Deletes a segment-file and its {@link BloomFilter}.
+	 *
+	 * @param path the path of the segment-file
+	 * @throws IOException if a file could not be deleted
+	 */
+	public static void delete(final Path path) throws IOException {
+		Files.deleteIfExists(path);
+		Files.deleteIfExists(BloomFilter.getPath(path));
+	}
+
+
+	/**
+	 * Gets the size of the file.
+	 *
+	 * @return the size in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+
+	/**
+	 * Gets the path of the file.
+	 *
+	 * @return the path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+
+	/**
+	 * Unmaps and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		regions.close();
+	}
+}
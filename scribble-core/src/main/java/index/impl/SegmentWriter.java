@@ -0,0 +1,311 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a sorted segment-file which is read by {@link SegmentFile}. The file is written to a temporary file next to
+ * the target and then moved over the target atomically, so that a reader either sees the old or the complete new file.
+ * <p>
+ * The file consists of a header, the data blocks holding the entries in key order, the dictionary of the property
+ * keys, the sparse block index holding the offset and first key of each block, a table of the positions of the block
+ * index entries and a fixed-size footer:
+ *
+ * <pre>
+ * header:       int magic, int version
+ * block:        entry*
+ * entry:        byte flags, varint key length, key, (varint value length, value if not removed)
+ * dictionary:   varint key count, (varint length, UTF-8 key)*
+ * block index:  (long block offset, short key length, key)*
+ * index table:  long position of the block index entry*
+ * footer:       long entry count, int block count, long dictionary position, long block index position,
+ *               long index table position, int magic
+ * </pre>
+ *
+ * The values are encoded by the {@link IndexEntryCodec}.
+ */
+public class SegmentWriter {
+	static final int MAGIC = 0x5345474D;
+	static final int VERSION = 2;
+	static final int FOOTER_SIZE = 40;
+	static final byte REMOVED = 1;
+	/** The size after which a block is completed. */
+	public static final int BLOCK_SIZE = 4096;
+
+
+	private SegmentWriter() {
+	}
+
+
+	/**
+	 * Writes the entries to the segment-file at the specified path without {@link BloomFilter} and replaces an existing
+	 * file atomically.
+	 *
+	 * @param path the path of the segment-file
+	 * @param entries the entries in ascending key order, a null value marks a removed key
+	 * @return the number of entries written
+	 * @throws IOException if the file could not be written
+	 */
+	public static long write(final Path path, final Iterator<Map.Entry<byte[], IIndexEntry>> entries) throws IOException {
+		return SegmentWriter.write(path, entries, 0.0);
+	}
+
+
+	/**
+	 * Writes the entries to the segment-file at the specified path and replaces an existing file atomically. The
+	 * {@link BloomFilter} over all keys, including the removed ones, is written before the segment-file is replaced. It
+	 * is sized from the number of written entries and filled by a second pass over the keys of the written file, so
+	 * that no key is held in memory while the entries are written.
+	 *
+	 * @param path the path of the segment-file
+	 * @param entries the entries in ascending key order, a null value marks a removed key
+	 * @param falsePositiveRate the false positive rate of the {@link BloomFilter} or 0 to write none
+	 * @return the number of entries written
+	 * @throws IOException if the file could not be written
+	 */
+	public static long write(final Path path, final Iterator<Map.Entry<byte[], IIndexEntry>> entries, final double falsePositiveRate) throws IOException {
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		final List<byte[]> firstKeys = new ArrayList<>();
+		final List<Long> blockOffsets = new ArrayList<>();
+		final IndexEntryCodec codec = new IndexEntryCodec();
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final ByteArrayOutputStream value = new ByteArrayOutputStream();
+		long count = 0L;
+		long keysPosition;
+		long size;
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+			final DataOutputStream out = new DataOutputStream(counter);
+			out.writeInt(SegmentWriter.MAGIC);
+			out.writeInt(SegmentWriter.VERSION);
+
+			long blockStart = -1L;
+			byte[] previous = null;
+
+			while (entries.hasNext()) {
+				final Map.Entry<byte[], IIndexEntry> entry = entries.next();
+				final byte[] key = entry.getKey();
+
+				if (previous != null && IndexKey.COMPARATOR.compare(previous, key) >= 0) {
+					throw new IllegalArgumentException("The entries are not in ascending key order!");
+				}
+
+				if (blockStart < 0 || counter.count - blockStart >= SegmentWriter.BLOCK_SIZE) {
+					blockStart = counter.count;
+					blockOffsets.add(blockStart);
+					firstKeys.add(key);
+				}
+
+				SegmentWriter.writeEntry(out, key, entry.getValue(), codec, buffer, value);
+				previous = key;
+				count++;
+			}
+
+			keysPosition = counter.count;
+			buffer.reset();
+			IndexEntryCodec.writeVarLong(buffer, codec.getKeys().size());
+
+			for (final String name : codec.getKeys()) {
+				final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+				IndexEntryCodec.writeVarLong(buffer, bytes.length);
+				buffer.write(bytes, 0, bytes.length);
+			}
+
+			buffer.writeTo(out);
+
+			final long indexPosition = counter.count;
+			final long[] positions = new long[firstKeys.size()];
+
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = counter.count;
+				out.writeLong(blockOffsets.get(i));
+				SegmentWriter.writeKey(out, firstKeys.get(i));
+			}
+
+			final long tablePosition = counter.count;
+
+			for (final long position : positions) {
+				out.writeLong(position);
+			}
+
+			out.writeLong(count);
+			out.writeInt(positions.length);
+			out.writeLong(keysPosition);
+			out.writeLong(indexPosition);
+			out.writeLong(tablePosition);
+			out.writeInt(SegmentWriter.MAGIC);
+			out.flush();
+			channel.force(true);
+			size = counter.count;
+		} catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		final Path filterPath = BloomFilter.getPath(path);
+
+		try {
+			if (falsePositiveRate > 0.0) {
+				final BloomFilter filter = BloomFilter.create(count, falsePositiveRate);
+				SegmentWriter.addKeys(temp, keysPosition, filter);
+				filter.write(filterPath, count, size);
+			} else {
+				Files.deleteIfExists(filterPath);
+			}
+		} catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		SegmentWriter.forceDirectory(path.toAbsolutePath().getParent());
+		return count;
+	}
+
+
+	/**
+	 * Forces the directory, so that the move of a file into it survives a system crash before a checkpoint discards
+	 * the write-ahead log. Not all platforms can open a directory, in which case the move is left to the file system.
+	 *
+	 * @param directory the directory
+	 */
+	static void forceDirectory(final Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (final IOException e) {
+			// e.g. on Windows
+		}
+	}
+
+
+	/**
+	 * Adds the keys of the entries of a written segment-file to a {@link BloomFilter}, reading the data blocks
+	 * sequentially and skipping the values.
+	 *
+	 * @param path the path of the segment-file
+	 * @param end the position of the dictionary, which follows the last entry
+	 * @param filter the {@link BloomFilter}
+	 * @throws IOException if the file could not be read
+	 */
+	private static void addKeys(final Path path, final long end, final BloomFilter filter) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+			in.skipNBytes(8);
+			long position = 8L;
+
+			while (position < end) {
+				final byte flags = in.readByte();
+				final byte[] key = new byte[(int) SegmentWriter.readVarLong(in)];
+				in.readFully(key);
+				filter.add(key);
+				position += 1 + SegmentWriter.varLongSize(key.length) + key.length;
+
+				if (flags != SegmentWriter.REMOVED) {
+					final long valueLength = SegmentWriter.readVarLong(in);
+					in.skipNBytes(valueLength);
+					position += SegmentWriter.varLongSize(valueLength) + valueLength;
+				}
+			}
+		}
+	}
+
+
+	private static long readVarLong(final InputStream in) throws IOException {
+		long value = 0L;
+
+		for (int shift = 0;; shift += 7) {
+			final int b = in.read();
+
+			if (b < 0) {
+				throw new EOFException();
+			}
+
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+
+	private static int varLongSize(final long value) {
+		return Math.max(1, (70 - Long.numberOfLeadingZeros(value)) / 7);
+	}
+
+
+	private static void writeKey(final DataOutputStream out, final byte[] key) throws IOException {
+		if (key.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("The key is too long: " + key.length + " bytes");
+		}
+
+		out.writeShort(key.length);
+		out.write(key);
+	}
+
+
+	private static void writeEntry(final DataOutputStream out, final byte[] key, final IIndexEntry entry, final IndexEntryCodec codec, final ByteArrayOutputStream buffer, final ByteArrayOutputStream value)
+			throws IOException {
+		buffer.reset();
+		buffer.write(entry == null ? SegmentWriter.REMOVED : 0);
+		IndexEntryCodec.writeVarLong(buffer, key.length);
+		buffer.write(key, 0, key.length);
+
+		if (entry != null) {
+			value.reset();
+			codec.encode(entry, value);
+			IndexEntryCodec.writeVarLong(buffer, value.size());
+			value.writeTo(buffer);
+		}
+
+		buffer.writeTo(out);
+	}
+
+
+	/**
+	 * Counts the bytes written, which is the position in the file.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0L;
+
+
+		CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package index.impl;
+
+import index.api.IIndex;
+import index.api.IIndexEntry;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+
+/**
+ * An {@link IIndex} which can scan the tuple ids starting with an element, see {@link IndexKey}. Used for the postings
+ * of the {@link SecondaryIndexes}.
+ */
+interface SortedIndex extends IIndex {
+	/**
+	 * Streams the entries whose ids are tuples with the specified first element in ascending order of the ids.
+	 *
+	 * @param first the first element
+	 * @return the {@link Stream} of the entries
+	 * @throws IOException if the index could not be opened
+	 */
+	Stream<IIndexEntry> scanTuples(Object first) throws IOException;
+
+
+	/**
+	 * Writes all changes to the files of the index and discards its write-ahead log if it has one.
+	 *
+	 * @throws IOException if the files could not be written
+	 */
+	void checkpoint() throws IOException;
+}
@@ -0,0 +1,14 @@
+package store;
+
+/**
+ * The implementations of the {@link store.allocation.IAllocationTable} used by the {@link Store}.
+ */
+public enum AllocationMode {
+  /** Keeps the fragments as heap objects ({@link store.allocation.AllocationTable}), supports any string id. */
+  HEAP,
+  /**
+   * Keeps the fragments in off-heap primitive maps ({@link store.allocation.OffHeapAllocationTable}), supports numeric
+   * ids only.
+   */
+  OFF_HEAP;
+}
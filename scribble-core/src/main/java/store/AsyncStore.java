@@ -0,0 +1,244 @@
+package store;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import store.allocation.Fragment;
+import store.allocation.IAllocationTable;
+
+/**
+ * Asynchronous access to a {@link Store}. Reads are issued on an {@link AsynchronousFileChannel} and do not occupy a
+ * pooled channel or a caller thread while they are in flight, so a few threads can keep thousands of reads
+ * outstanding. Writes run the write path of the {@link Store} on threads of their own, as they must be ordered with
+ * the {@link WriteAheadLog} and the locks of the store and must not delay the completion of the reads.
+ * <p>
+ * The number of operations in flight is bounded. A caller submitting an operation beyond the bound is blocked until
+ * an operation has completed.
+ * <p>
+ * Reads do not lock the id while in flight. The location and version of the id are taken before the read and
+ * validated once the read has completed. If the id has been written or relocated in the meantime, the read is retried.
+ */
+public class AsyncStore implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncStore.class);
+  private final Store store;
+  private final IAllocationTable allocationTable;
+  private final AsynchronousFileChannel channel;
+  private final ExecutorService executor;
+  private final ExecutorService writeExecutor;
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+
+
+  /**
+   * Constructor.
+   *
+   * @param store the opened {@link Store}
+   * @param threads the number of threads completing the reads and the number of threads performing the writes
+   * @param maxInFlight the maximum number of operations in flight
+   * @throws IOException if the store-file could not be opened
+   */
+  AsyncStore(final Store store, final int threads, final int maxInFlight) throws IOException {
+    final AtomicInteger count = new AtomicInteger(0);
+    this.store = store;
+    this.maxInFlight = maxInFlight;
+    allocationTable = store.getAllocationTable();
+    inFlight = new Semaphore(maxInFlight);
+    executor = Executors.newFixedThreadPool(threads, runnable -> {
+      final Thread thread = new Thread(runnable, "async-store-" + store.getPath().getFileName() + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    writeExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+      final Thread thread = new Thread(runnable, "async-store-write-" + store.getPath().getFileName() + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    channel = AsynchronousFileChannel.open(store.getPath(), EnumSet.of(StandardOpenOption.READ), executor);
+  }
+
+
+  /**
+   * Reads the data for the specified id. The caller is blocked while the maximum number of operations is in flight.
+   *
+   * @param id the id
+   * @return the future of the data, which fails with an {@link IOException} if the id is not found
+   */
+  public CompletableFuture<ByteBuffer> read(final String id) {
+    final RecordCache cache = store.getCache();
+    final ByteBuffer cached = cache != null ? cache.get(id) : null;
+
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+
+    if (acquire(future)) {
+      future.whenComplete((bytes, e) -> inFlight.release());
+
+      try {
+        read(id, future);
+      } catch (final RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    return future;
+  }
+
+
+  /**
+   * Reads the current fragment of the id and completes the future if the fragment is still current afterwards.
+   *
+   * @param id the id
+   * @param future the future to complete
+   */
+  private void read(final String id, final CompletableFuture<ByteBuffer> future) {
+    final long version = store.getVersion(id);
+    final Fragment fragment = allocationTable.findById(id);
+
+    if (fragment == null) {
+      future.completeExceptionally(new IOException("Error: Item for id='" + id + "' not found!"));
+      return;
+    }
+
+    final ByteBuffer bytes = ByteBuffer.allocate((int) fragment.getSize());
+
+    channel.read(bytes, fragment.getStart(), null, new CompletionHandler<Integer, Void>() {
+
+      @Override
+      public void completed(final Integer count, final Void attachment) {
+        // the future must be completed on any error, otherwise its caller waits forever and the slot is never freed
+        try {
+          if (count >= 0 && bytes.hasRemaining()) {
+            channel.read(bytes, fragment.getStart() + bytes.position(), null, this);
+          } else if (store.getVersion(id) != version || !isCurrent(id, fragment)) {
+            read(id, future);
+          } else if (bytes.hasRemaining()) {
+            future.completeExceptionally(new EOFException("Unexpected end of the store-file for id='" + id + "'"));
+          } else {
+            final ByteBuffer data = store.decode(id, bytes);
+            store.cache(id, version, data);
+            future.complete(data);
+          }
+        } catch (final IOException | RuntimeException e) {
+          future.completeExceptionally(e);
+        }
+      }
+
+
+      @Override
+      public void failed(final Throwable e, final Void attachment) {
+        future.completeExceptionally(e);
+      }
+    });
+  }
+
+
+  /**
+   * Returns true if the specified fragment is still the one allocated for the id.
+   *
+   * @param id the id
+   * @param fragment the {@link Fragment}
+   * @return true if the fragment is current
+   */
+  private boolean isCurrent(final String id, final Fragment fragment) {
+    final Fragment current = allocationTable.findById(id);
+    return current != null && current.getStart() == fragment.getStart() && current.getEnd() == fragment.getEnd();
+  }
+
+
+  /**
+   * Writes the specified data to the store. The caller is blocked while the maximum number of operations is in
+   * flight.
+   *
+   * @param id the id or null for a new record
+   * @param bytes the data
+   * @return the future of the id
+   * @see Store#write(String, ByteBuffer)
+   */
+  public CompletableFuture<String> write(final String id, final ByteBuffer bytes) {
+    final CompletableFuture<String> future = new CompletableFuture<>();
+
+    if (acquire(future)) {
+      future.whenComplete((result, e) -> inFlight.release());
+
+      try {
+        writeExecutor.execute(() -> {
+          try {
+            future.complete(store.write(id, bytes));
+          } catch (final IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+          }
+        });
+      } catch (final RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    return future;
+  }
+
+
+  /**
+   * Waits for a free slot for an operation.
+   *
+   * @param future the future of the operation which fails if the caller is interrupted
+   * @return true if the slot has been acquired
+   */
+  private boolean acquire(final CompletableFuture<?> future) {
+    try {
+      inFlight.acquire();
+      return true;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.completeExceptionally(new InterruptedIOException("Interrupted while waiting for an operation to complete"));
+      return false;
+    }
+  }
+
+
+  /**
+   * Gets the number of operations currently in flight.
+   *
+   * @return the number of operations in flight
+   */
+  public int getInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+
+  /**
+   * Waits for the operations in flight and closes the channel.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!inFlight.tryAcquire(maxInFlight, 10, TimeUnit.SECONDS)) {
+        AsyncStore.LOG.warn("Closing " + store.getPath() + " with " + getInFlight() + " asynchronous operations in flight");
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    channel.close();
+    executor.shutdownNow();
+    writeExecutor.shutdownNow();
+  }
+}
@@ -0,0 +1,313 @@
+package store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import store.allocation.IAllocationTable;
+import store.allocation.Fragment;
+
+/**
+ * Compacts the store-file while it is in use. A pass walks the allocated {@link Fragment}s from the end of the file
+ * towards the head and moves each one into a free space before it. The fragments are moved in batches: the data is
+ * copied first, forced and then each fragment is atomically switched to its new space, so reads continue on the old
+ * space until the switch. A fragment written in the meantime is not moved. Finally the trailing free space is truncated
+ * from the file.
+ * <p>
+ * A pass ends as soon as no free space lies before its cursor. As the free space before the cursor only shrinks during
+ * a pass, a fragment is not tried to be moved if a fragment of the same or a larger size did not fit before, so that
+ * the pass does not search the free space for every fragment which cannot be moved.
+ * <p>
+ * Copying is throttled to an I/O budget in bytes per second to protect the latency of foreground reads and writes.
+ */
+public class Compactor implements Closeable {
+  /**
+   * A fragment to be moved to a claimed free space.
+   */
+  private static class Relocation {
+    private final String id;
+    private final Fragment fragment;
+    private final Fragment claimed;
+    private long version;
+
+
+    private Relocation(final String id, final Fragment fragment, final Fragment claimed) {
+      this.id = id;
+      this.fragment = fragment;
+      this.claimed = claimed;
+    }
+  }
+
+
+  private static final Logger LOG = LoggerFactory.getLogger(Compactor.class);
+  private static final long BATCH_SIZE = 1024 * 1024;
+  private final Store store;
+  private final IAllocationTable allocationTable;
+  private final long rate;
+  private final AtomicLong bytesRelocated = new AtomicLong(0L);
+  private final AtomicLong fragmentsRelocated = new AtomicLong(0L);
+  private final AtomicLong bytesReclaimed = new AtomicLong(0L);
+  private ScheduledExecutorService scheduler;
+  private volatile boolean running = false;
+  private volatile boolean closed = false;
+  private volatile double progress = 1.0;
+
+
+  /**
+   * Constructor.
+   *
+   * @param store the {@link Store} to compact
+   * @param rate the I/O budget in bytes per second
+   */
+  Compactor(final Store store, final long rate) {
+    this.store = store;
+    this.rate = rate;
+    allocationTable = store.getAllocationTable();
+  }
+
+
+  /**
+   * Starts to check periodically in the background if the free space exceeds the threshold and compacts the store-file
+   * if so.
+   *
+   * @param interval the interval in milliseconds
+   * @param threshold the ratio of free space to the size of the store-file
+   */
+  synchronized void start(final long interval, final double threshold) {
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "compactor-" + store.getPath().getFileName());
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        if (isRequired(threshold)) {
+          compact();
+        }
+      } catch (final IOException | RuntimeException e) {
+        Compactor.LOG.error("Error compacting " + store.getPath(), e);
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Returns true if the ratio of free space to the size of the store-file has reached the specified threshold.
+   *
+   * @param threshold the threshold between 0 and 1
+   * @return true if a compaction is required
+   */
+  public boolean isRequired(final double threshold) {
+    final long tail = allocationTable.getTail();
+    return tail > 0 && allocationTable.getFreeSpace() > 0 && (double) allocationTable.getFreeSpace() / tail >= threshold;
+  }
+
+
+  /**
+   * Runs a compaction pass.
+   *
+   * @return the number of bytes the store-file has been truncated by
+   * @throws IOException if an error occurs during compaction
+   */
+  public synchronized long compact() throws IOException {
+    final long end = allocationTable.getTail();
+    final long startedAt = System.nanoTime();
+    final List<Relocation> batch = new ArrayList<>();
+    long position = end;
+    long copied = 0L;
+    long batchSize = 0L;
+    long unfit = Long.MAX_VALUE;
+    running = true;
+    progress = 0.0;
+
+    try {
+      while (!closed && allocationTable.getFreeSpace() > 0) {
+        final Fragment first = allocationTable.findFirstFree();
+        final Fragment fragment = first != null && first.getStart() < position ? allocationTable.findLastBlock(position) : null;
+
+        if (fragment != null) {
+          position = fragment.getStart();
+          progress = (double) (end - position) / end;
+          final String id = fragment.getId();
+          final Fragment claimed = id != null && fragment.getSize() < unfit ? allocationTable.claim(fragment.getSize(), position) : null;
+
+          if (claimed != null) {
+            batch.add(new Relocation(id, fragment, claimed));
+            batchSize += fragment.getSize();
+          } else if (id != null) {
+            unfit = Math.min(unfit, fragment.getSize());
+          }
+        }
+
+        if (fragment == null || batchSize >= Compactor.BATCH_SIZE) {
+          copied += relocate(batch, startedAt, copied);
+          batchSize = 0L;
+        }
+
+        if (fragment == null) {
+          break;
+        }
+      }
+    } finally {
+      try {
+        relocate(batch, startedAt, copied);
+      } finally {
+        running = false;
+      }
+    }
+
+    final long reclaimed = store.truncate();
+    bytesReclaimed.addAndGet(reclaimed);
+    progress = 1.0;
+    Compactor.LOG.info("Compacted " + store.getPath() + ": copied " + copied + " bytes, reclaimed " + reclaimed + " bytes");
+
+    return reclaimed;
+  }
+
+
+  /**
+   * Copies the batch of fragments to their claimed free space, forces the copies and switches the fragments to their
+   * new space.
+   *
+   * @param batch the batch of fragments and their claimed free space
+   * @param startedAt the start of the pass in nanoseconds
+   * @param copied the bytes copied in this pass so far
+   * @return the bytes copied for this batch
+   * @throws IOException if an error occurs during copying
+   */
+  private long relocate(final List<Relocation> batch, final long startedAt, final long copied) throws IOException {
+    if (batch.isEmpty()) {
+      return 0L;
+    }
+
+    long batchCopied = 0L;
+
+    try {
+      // the data of writes in progress must be written before it is copied
+      store.awaitWrites();
+
+      for (final Relocation relocation : batch) {
+        relocation.version = store.copy(relocation.id, relocation.fragment, relocation.claimed.getStart());
+        batchCopied += relocation.fragment.getSize();
+        throttle(startedAt, copied + batchCopied);
+      }
+
+      store.forceRelocations();
+    } catch (final IOException | RuntimeException e) {
+      for (final Relocation relocation : batch) {
+        allocationTable.unclaim(relocation.claimed);
+      }
+
+      batch.clear();
+      throw e;
+    }
+
+    for (final Relocation relocation : batch) {
+      final long size = relocation.fragment.getSize();
+
+      if (store.relocate(relocation.id, relocation.fragment, relocation.claimed, relocation.version) != null) {
+        fragmentsRelocated.incrementAndGet();
+        bytesRelocated.addAndGet(size);
+      }
+    }
+
+    batch.clear();
+    return batchCopied;
+  }
+
+
+  /**
+   * Waits until the copied bytes are within the I/O budget.
+   *
+   * @param startedAt the start of the pass in nanoseconds
+   * @param copied the bytes copied since the start
+   * @throws InterruptedIOException if the compactor was interrupted
+   */
+  private void throttle(final long startedAt, final long copied) throws InterruptedIOException {
+    final long wait = startedAt + (long) (copied * 1_000_000_000.0 / rate) - System.nanoTime();
+
+    if (wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Compaction of " + store.getPath() + " interrupted");
+      }
+    }
+  }
+
+
+  /**
+   * Returns true if a compaction pass is currently running.
+   *
+   * @return true if running
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+
+  /**
+   * Gets the progress of the current pass, i.e. the part of the store-file which has been processed.
+   *
+   * @return the progress between 0 and 1
+   */
+  public double getProgress() {
+    return progress;
+  }
+
+
+  /**
+   * Gets the total number of bytes which have been moved.
+   *
+   * @return the relocated bytes
+   */
+  public long getBytesRelocated() {
+    return bytesRelocated.get();
+  }
+
+
+  /**
+   * Gets the total number of fragments which have been moved.
+   *
+   * @return the relocated fragments
+   */
+  public long getFragmentsRelocated() {
+    return fragmentsRelocated.get();
+  }
+
+
+  /**
+   * Gets the total number of bytes the store-file has been truncated by.
+   *
+   * @return the reclaimed bytes
+   */
+  public long getBytesReclaimed() {
+    return bytesReclaimed.get();
+  }
+
+
+  /**
+   * Stops the background compaction and waits for a running pass to stop.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+
+    synchronized (this) {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    }
+  }
+}
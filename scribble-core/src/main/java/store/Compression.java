@@ -0,0 +1,13 @@
+package store;
+
+/**
+ * The codecs with which the {@link Store} compresses its records.
+ */
+public enum Compression {
+  /** Records are written as they are, without a header. */
+  NONE,
+  /** Fast LZ77 compression in the LZ4 block format, for a low CPU overhead on reads and writes. */
+  LZ4,
+  /** Deflate with the highest compression level, for the smallest footprint. */
+  DEFLATE;
+}
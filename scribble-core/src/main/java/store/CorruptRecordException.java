@@ -0,0 +1,33 @@
+package store;
+
+import java.io.IOException;
+
+/**
+ * Signals that the checksum of a record in the store-file does not match its data, e.g. after a torn write or bit rot.
+ */
+public class CorruptRecordException extends IOException {
+  private static final long serialVersionUID = 1L;
+  private final String id;
+
+
+  /**
+   * Constructor.
+   *
+   * @param id the id of the corrupt record
+   * @param message the message
+   */
+  public CorruptRecordException(final String id, final String message) {
+    super(message);
+    this.id = id;
+  }
+
+
+  /**
+   * Gets the id of the corrupt record.
+   *
+   * @return the id
+   */
+  public String getId() {
+    return id;
+  }
+}
@@ -0,0 +1,97 @@
+package store;
+
+/**
+ * Count-Min sketch estimating the access frequency of keys for the admission of the {@link RecordCache}. Each key
+ * increments one of four 4-bit counters in four rows and its frequency is the minimum of them. All counters are halved
+ * once the sample size has been reached, so that the frequencies follow the recent accesses.
+ */
+class FrequencySketch {
+  private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private final long[] table;
+  private final int mask;
+  private final int sampleSize;
+  private int size;
+
+
+  /**
+   * Constructor.
+   *
+   * @param expectedEntries the expected number of entries in the cache
+   */
+  FrequencySketch(final int expectedEntries) {
+    // 4 counters per expected entry, 16 counters per long
+    final int counters = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 3;
+    table = new long[counters >>> 4];
+    mask = counters - 1;
+    sampleSize = 10 * Math.max(16, expectedEntries);
+  }
+
+
+  /**
+   * Increments the frequency of the key with the specified hash.
+   *
+   * @param hash the hash of the key
+   */
+  void increment(final int hash) {
+    boolean added = false;
+
+    for (int i = 0; i < FrequencySketch.SEEDS.length; i++) {
+      final int counter = counter(hash, i);
+      final int index = counter >>> 4;
+      final int shift = (counter & 15) << 2;
+
+      if (((table[index] >>> shift) & 15L) < 15L) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+
+    if (added && ++size >= sampleSize) {
+      reset();
+    }
+  }
+
+
+  /**
+   * Gets the estimated frequency of the key with the specified hash.
+   *
+   * @param hash the hash of the key
+   * @return the frequency between 0 and 15
+   */
+  int frequency(final int hash) {
+    int frequency = 15;
+
+    for (int i = 0; i < FrequencySketch.SEEDS.length; i++) {
+      final int counter = counter(hash, i);
+      frequency = Math.min(frequency, (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 15L));
+    }
+
+    return frequency;
+  }
+
+
+  /**
+   * Halves all counters.
+   */
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & FrequencySketch.RESET_MASK;
+    }
+
+    size /= 2;
+  }
+
+
+  /**
+   * Gets the counter of the key with the specified hash in the specified row.
+   *
+   * @param hash the hash of the key
+   * @param row the row
+   * @return the index of the counter
+   */
+  private int counter(final int hash, final int row) {
+    final long h = (hash + FrequencySketch.SEEDS[row]) * FrequencySketch.SEEDS[row];
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+}
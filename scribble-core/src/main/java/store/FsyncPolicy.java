@@ -0,0 +1,13 @@
+package store;
+
+/**
+ * The policies when the {@link WriteAheadLog} of the {@link Store} is forced to the storage device.
+ */
+public enum FsyncPolicy {
+  /** Never force the log, leave it to the operating system. Survives process crashes but not system crashes. */
+  NEVER,
+  /** Force the log periodically in the background. Loses at most the writes of one interval. */
+  INTERVAL,
+  /** Force the log before a write returns. Concurrent writes are committed together by a single force. */
+  COMMIT;
+}
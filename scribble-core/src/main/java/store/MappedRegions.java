@@ -0,0 +1,165 @@
+package store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+/**
+ * Maps a file in fixed-size read-only regions and hands out slices of them. Regions are mapped lazily and remapped
+ * when the file has grown beyond the currently mapped length of a region.
+ */
+public class MappedRegions implements Closeable {
+  private final FileChannel channel;
+  private final int regionSize;
+  private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+
+  /**
+   * Constructor.
+   *
+   * @param channel the channel to map (must be readable)
+   * @param regionSize the size of a region
+   */
+  public MappedRegions(final FileChannel channel, final int regionSize) {
+    this.channel = channel;
+    this.regionSize = regionSize;
+  }
+
+
+  /**
+   * Gets a read-only view of the specified range of the file. If the range spans two regions the bytes are copied into
+   * a new buffer.
+   *
+   * @param start the start position in the file
+   * @param size the number of bytes
+   * @return the read-only {@link ByteBuffer}
+   * @throws IOException if the range lies beyond the end of the file
+   */
+  public ByteBuffer slice(final long start, final int size) throws IOException {
+    final int index = (int) (start / regionSize);
+    final int offset = (int) (start % regionSize);
+
+    if ((long) offset + size <= regionSize) {
+      return region(index, offset + size).slice(offset, size);
+    }
+
+    // the range spans multiple regions so copy it
+    final ByteBuffer bytes = ByteBuffer.allocate(size);
+    long position = start;
+
+    while (bytes.hasRemaining()) {
+      final int regionOffset = (int) (position % regionSize);
+      final int length = Math.min(bytes.remaining(), regionSize - regionOffset);
+      final MappedByteBuffer region = region((int) (position / regionSize), regionOffset + length);
+      bytes.put(region.slice(regionOffset, length));
+      position += length;
+    }
+
+    return bytes.flip().asReadOnlyBuffer();
+  }
+
+
+  /**
+   * Gets the region for the specified index which is mapped at least up to the specified length.
+   *
+   * @param index the region index
+   * @param length the required length
+   * @return the {@link MappedByteBuffer}
+   * @throws IOException if the region could not be mapped
+   */
+  private MappedByteBuffer region(final int index, final int length) throws IOException {
+    MappedByteBuffer region = index < regions.length ? regions[index] : null;
+
+    if (region != null && region.capacity() >= length) {
+      return region;
+    }
+
+    synchronized (this) {
+      MappedByteBuffer[] current = regions;
+      region = index < current.length ? current[index] : null;
+
+      if (region == null || region.capacity() < length) {
+        final long position = (long) index * regionSize;
+        final long mappable = Math.min(regionSize, channel.size() - position);
+
+        if (mappable < length) {
+          throw new IOException("Cannot map region " + index + " up to " + length + " bytes, file size is " + channel.size());
+        }
+
+        region = channel.map(MapMode.READ_ONLY, position, mappable);
+
+        if (index >= current.length) {
+          current = Arrays.copyOf(current, index + 1);
+        } else {
+          current = current.clone();
+        }
+
+        current[index] = region;
+        regions = current;
+      }
+
+      return region;
+    }
+  }
+
+
+  /**
+   * Drops all regions which are mapped beyond the specified length, so that they are remapped after the file has been
+   * truncated to that length. Buffers previously sliced from dropped regions must no longer be accessed.
+   *
+   * @param length the new length of the file
+   */
+  public synchronized void truncate(final long length) {
+    final MappedByteBuffer[] current = regions.clone();
+
+    for (int index = 0; index < current.length; index++) {
+      if (current[index] != null && (long) index * regionSize + current[index].capacity() > length) {
+        current[index] = null;
+      }
+    }
+
+    regions = current;
+  }
+
+
+  /**
+   * Gets the length of the file which is covered by the mapped regions.
+   *
+   * @return the mapped length
+   */
+  public synchronized long getMappedLength() {
+    long length = 0L;
+
+    for (int index = 0; index < regions.length; index++) {
+      if (regions[index] != null) {
+        length = Math.max(length, (long) index * regionSize + regions[index].capacity());
+      }
+    }
+
+    return length;
+  }
+
+
+  /**
+   * Gets the size of the regions.
+   *
+   * @return the region size
+   */
+  public int getRegionSize() {
+    return regionSize;
+  }
+
+
+  /**
+   * Drops all mapped regions and closes the channel.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    regions = new MappedByteBuffer[0];
+    channel.close();
+  }
+}
@@ -0,0 +1,22 @@
+package store;
+
+/**
+ * The modes in which the {@link Store} can read its data.
+ */
+public enum ReadMode {
+  /** Reads through a pool of {@link java.nio.channels.FileChannel}s into a new heap buffer. */
+  POOLED,
+  /**
+   * Reads with positional reads on a few {@link java.nio.channels.FileChannel}s shared by all readers into a new heap
+   * buffer, which avoids borrowing a channel from the pool for each read.
+   */
+  SHARED,
+  /**
+   * Copies the data from memory-mapped regions of the store-file into a new heap buffer. With
+   * {@link StoreOptions#setZeroCopyReads(boolean)} read-only slices of the regions are returned instead, which reflect
+   * later writes to the same space. The store-file is not truncated below its mapped regions while the slices may be
+   * accessed, so with background compaction the data is always copied, so that the {@link Compactor} can truncate the
+   * store-file.
+   */
+  MAPPED;
+}
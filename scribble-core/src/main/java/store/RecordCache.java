@@ -0,0 +1,401 @@
+package store;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded cache of hot records in front of the store-file. The data is held off-heap in direct buffers and is
+ * copied to a heap buffer on each hit, as callers may modify the returned buffer.
+ * <p>
+ * The cache follows the W-TinyLFU policy: new records enter a small LRU window and then compete for the main space,
+ * which is split into a probation and a protected segment. A record leaving the window is admitted only if the
+ * {@link FrequencySketch} estimates it to be accessed more often than the record it would evict, so a scan over
+ * records read once does not flush the frequently read ones.
+ * <p>
+ * The cache is split into segments by the hash of the id, each with its own lock, policy and sketch.
+ */
+public class RecordCache {
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+  private static final int MAX_SEGMENTS = 16;
+  private static final long SEGMENT_SIZE = 4L * 1024 * 1024;
+  private static final int AVERAGE_RECORD_SIZE = 128;
+  private final Segment[] segments;
+  private final long capacity;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * An entry in one of the LRU queues of a segment.
+   */
+  private static class Node {
+    private final String id;
+    private final int hash;
+    private final ByteBuffer data;
+    private int queue;
+    private Node previous;
+    private Node next;
+
+
+    private Node(final String id, final int hash, final ByteBuffer data) {
+      this.id = id;
+      this.hash = hash;
+      this.data = data;
+    }
+
+
+    private int size() {
+      return data.capacity();
+    }
+  }
+
+  /**
+   * A doubly linked LRU queue with a sentinel, the head being the least recently used entry.
+   */
+  private static class Queue {
+    private final Node sentinel = new Node(null, 0, null);
+    private long size;
+
+
+    private Queue() {
+      sentinel.previous = sentinel;
+      sentinel.next = sentinel;
+    }
+
+
+    private void add(final Node node) {
+      node.previous = sentinel.previous;
+      node.next = sentinel;
+      sentinel.previous.next = node;
+      sentinel.previous = node;
+      size += node.size();
+    }
+
+
+    private void remove(final Node node) {
+      node.previous.next = node.next;
+      node.next.previous = node.previous;
+      node.previous = null;
+      node.next = null;
+      size -= node.size();
+    }
+
+
+    private Node head() {
+      return sentinel.next != sentinel ? sentinel.next : null;
+    }
+  }
+
+  /**
+   * A part of the cache with its own lock.
+   */
+  private class Segment {
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Queue[] queues = { new Queue(), new Queue(), new Queue() };
+    private final FrequencySketch sketch;
+    private final long windowCapacity;
+    private final long mainCapacity;
+    private final long protectedCapacity;
+
+
+    private Segment(final long capacity) {
+      windowCapacity = Math.max(1L, capacity / 100);
+      mainCapacity = capacity - windowCapacity;
+      protectedCapacity = mainCapacity * 4 / 5;
+      sketch = new FrequencySketch((int) Math.min(1 << 20, capacity / RecordCache.AVERAGE_RECORD_SIZE));
+    }
+
+
+    private synchronized ByteBuffer get(final String id, final int hash) {
+      sketch.increment(hash);
+      final Node node = nodes.get(id);
+
+      if (node == null) {
+        return null;
+      }
+
+      queues[node.queue].remove(node);
+
+      if (node.queue == RecordCache.PROBATION) {
+        node.queue = RecordCache.PROTECTED;
+      }
+
+      queues[node.queue].add(node);
+
+      // the protected segment is bounded, its least recently used entries get another chance in probation
+      while (queues[RecordCache.PROTECTED].size > protectedCapacity) {
+        final Node demoted = queues[RecordCache.PROTECTED].head();
+        queues[RecordCache.PROTECTED].remove(demoted);
+        demoted.queue = RecordCache.PROBATION;
+        queues[RecordCache.PROBATION].add(demoted);
+      }
+
+      return node.data.duplicate();
+    }
+
+
+    private synchronized void put(final Node node) {
+      remove(node.id);
+      nodes.put(node.id, node);
+      node.queue = RecordCache.WINDOW;
+      queues[RecordCache.WINDOW].add(node);
+
+      while (queues[RecordCache.WINDOW].size > windowCapacity) {
+        final Node candidate = queues[RecordCache.WINDOW].head();
+        queues[RecordCache.WINDOW].remove(candidate);
+        admit(candidate);
+      }
+    }
+
+
+    /**
+     * Moves a candidate leaving the window to the probation segment if it is accessed more frequently than the entries
+     * it has to evict from the main space and evicts it otherwise.
+     *
+     * @param candidate the candidate
+     */
+    private void admit(final Node candidate) {
+      while (queues[RecordCache.PROBATION].size + queues[RecordCache.PROTECTED].size + candidate.size() > mainCapacity) {
+        Node victim = queues[RecordCache.PROBATION].head();
+
+        if (victim == null) {
+          victim = queues[RecordCache.PROTECTED].head();
+        }
+
+        if (victim == null || sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+          nodes.remove(candidate.id);
+          evictions.increment();
+          return;
+        }
+
+        queues[victim.queue].remove(victim);
+        nodes.remove(victim.id);
+        evictions.increment();
+      }
+
+      candidate.queue = RecordCache.PROBATION;
+      queues[RecordCache.PROBATION].add(candidate);
+    }
+
+
+    private synchronized void remove(final String id) {
+      final Node node = nodes.remove(id);
+
+      if (node != null) {
+        queues[node.queue].remove(node);
+      }
+    }
+
+
+    private synchronized long size() {
+      return queues[RecordCache.WINDOW].size + queues[RecordCache.PROBATION].size + queues[RecordCache.PROTECTED].size;
+    }
+
+
+    private synchronized int count() {
+      return nodes.size();
+    }
+
+
+    private synchronized void clear() {
+      for (final Queue queue : queues) {
+        Node node;
+
+        while ((node = queue.head()) != null) {
+          queue.remove(node);
+        }
+      }
+
+      nodes.clear();
+    }
+  }
+
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the maximum size of the cached data in bytes
+   */
+  RecordCache(final long capacity) {
+    this.capacity = capacity;
+    final int count = Integer.highestOneBit((int) Math.max(1L, Math.min(RecordCache.MAX_SEGMENTS, capacity / RecordCache.SEGMENT_SIZE)));
+    segments = new Segment[count];
+
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment(capacity / count);
+    }
+  }
+
+
+  /**
+   * Gets a copy of the cached data for the specified id.
+   *
+   * @param id the id
+   * @return the data or null if the id is not cached
+   */
+  public ByteBuffer get(final String id) {
+    final int hash = RecordCache.hash(id);
+    final ByteBuffer data = segment(hash).get(id, hash);
+
+    if (data == null) {
+      misses.increment();
+      return null;
+    }
+
+    hits.increment();
+
+    // the data is immutable once cached, so it is copied outside of the lock
+    return ByteBuffer.allocate(data.remaining()).put(data).flip();
+  }
+
+
+  /**
+   * Offers the data of the specified id to the cache. The caller must ensure that the id is not written concurrently,
+   * as the data would otherwise replace the invalidation of the write.
+   *
+   * @param id the id
+   * @param bytes the data filling the whole buffer, as returned by {@link Store#read(String)}
+   */
+  void put(final String id, final ByteBuffer bytes) {
+    final int hash = RecordCache.hash(id);
+    final Segment segment = segment(hash);
+
+    if (bytes.capacity() > segment.mainCapacity) {
+      return;
+    }
+
+    final ByteBuffer data = ByteBuffer.allocateDirect(bytes.capacity()).put(bytes.duplicate().clear()).flip();
+    segment.put(new Node(id, hash, data));
+  }
+
+
+  /**
+   * Removes the data of the specified id from the cache.
+   *
+   * @param id the id
+   */
+  void invalidate(final String id) {
+    segment(RecordCache.hash(id)).remove(id);
+  }
+
+
+  /**
+   * Removes all data from the cache.
+   */
+  void clear() {
+    for (final Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+
+  /**
+   * Gets the maximum size of the cached data.
+   *
+   * @return the capacity in bytes
+   */
+  public long getCapacity() {
+    return capacity;
+  }
+
+
+  /**
+   * Gets the size of the cached data.
+   *
+   * @return the size in bytes
+   */
+  public long getSize() {
+    long size = 0L;
+
+    for (final Segment segment : segments) {
+      size += segment.size();
+    }
+
+    return size;
+  }
+
+
+  /**
+   * Gets the number of cached records.
+   *
+   * @return the number of records
+   */
+  public int getCount() {
+    int count = 0;
+
+    for (final Segment segment : segments) {
+      count += segment.count();
+    }
+
+    return count;
+  }
+
+
+  /**
+   * Gets the number of reads served from the cache.
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+
+  /**
+   * Gets the number of reads not served from the cache.
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+
+  /**
+   * Gets the number of records which have been evicted or have not been admitted to the cache.
+   *
+   * @return the number of evictions
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+
+  /**
+   * Gets the ratio of the reads served from the cache.
+   *
+   * @return the hit rate between 0 and 1
+   */
+  public double getHitRate() {
+    final long hits = getHits();
+    final long requests = hits + getMisses();
+    return requests == 0 ? 0.0 : (double) hits / requests;
+  }
+
+
+  private Segment segment(final int hash) {
+    return segments[(hash >>> 16) & (segments.length - 1)];
+  }
+
+
+  private static int hash(final String id) {
+    final int h = id.hashCode() * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "RecordCache [capacity=" + capacity + ", size=" + getSize() + ", count=" + getCount() + ", hits=" + getHits() + ", misses=" + getMisses()
+        + ", evictions=" + getEvictions() + "]";
+  }
+}
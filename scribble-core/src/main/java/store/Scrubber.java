@@ -0,0 +1,268 @@
+package store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import store.allocation.Fragment;
+import store.allocation.IAllocationTable;
+
+/**
+ * Verifies the checksums of all records in the store-file in the background, so that torn writes and bit rot are
+ * detected before the records are read. A pass walks the allocated {@link Fragment}s from the end of the file towards
+ * the head on a low priority thread and reports the corrupt ranges. Reading is throttled to an I/O budget in bytes per
+ * second.
+ */
+public class Scrubber implements Closeable {
+  /**
+   * A range of the store-file holding a corrupt record.
+   */
+  public static class CorruptRange {
+    private final String id;
+    private final long start;
+    private final long end;
+
+
+    private CorruptRange(final String id, final long start, final long end) {
+      this.id = id;
+      this.start = start;
+      this.end = end;
+    }
+
+
+    /**
+     * Gets the id of the corrupt record.
+     *
+     * @return the id
+     */
+    public String getId() {
+      return id;
+    }
+
+
+    /**
+     * Gets the start of the range.
+     *
+     * @return the start position
+     */
+    public long getStart() {
+      return start;
+    }
+
+
+    /**
+     * Gets the end of the range (inclusive).
+     *
+     * @return the end position
+     */
+    public long getEnd() {
+      return end;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return "CorruptRange [id=" + id + ", start=" + start + ", end=" + end + "]";
+    }
+  }
+
+
+  private static final Logger LOG = LoggerFactory.getLogger(Scrubber.class);
+  private final Store store;
+  private final IAllocationTable allocationTable;
+  private final long rate;
+  private final AtomicLong bytesScrubbed = new AtomicLong(0L);
+  private final AtomicLong passes = new AtomicLong(0L);
+  private ScheduledExecutorService scheduler;
+  private volatile List<CorruptRange> corruptRanges = Collections.emptyList();
+  private volatile boolean running = false;
+  private volatile boolean closed = false;
+  private volatile double progress = 1.0;
+
+
+  /**
+   * Constructor.
+   *
+   * @param store the {@link Store} to scrub
+   * @param rate the I/O budget in bytes per second
+   */
+  Scrubber(final Store store, final long rate) {
+    this.store = store;
+    this.rate = rate;
+    allocationTable = store.getAllocationTable();
+  }
+
+
+  /**
+   * Starts to scrub the store-file periodically in the background.
+   *
+   * @param interval the interval between two passes in milliseconds
+   */
+  synchronized void start(final long interval) {
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "scrubber-" + store.getPath().getFileName());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        scrub();
+      } catch (final IOException | RuntimeException e) {
+        Scrubber.LOG.error("Error scrubbing " + store.getPath(), e);
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Runs a scrubbing pass over all records.
+   *
+   * @return the corrupt ranges found
+   * @throws IOException if an error occurs during reading
+   */
+  public synchronized List<CorruptRange> scrub() throws IOException {
+    final long end = allocationTable.getTail();
+    final long startedAt = System.nanoTime();
+    final List<CorruptRange> corrupt = new ArrayList<>();
+    long position = end;
+    long scrubbed = 0L;
+    running = true;
+    progress = 0.0;
+
+    try {
+      while (!closed) {
+        final Fragment fragment = allocationTable.findLastBlock(position);
+
+        if (fragment == null) {
+          break;
+        }
+
+        position = fragment.getStart();
+        progress = (double) (end - position) / end;
+        final String id = fragment.getId();
+
+        if (id != null && !store.verify(id, fragment)) {
+          final CorruptRange range = new CorruptRange(id, fragment.getStart(), fragment.getEnd());
+          Scrubber.LOG.error("Corrupt record in " + store.getPath() + ": " + range);
+          corrupt.add(range);
+        }
+
+        scrubbed += fragment.getSize();
+        bytesScrubbed.addAndGet(fragment.getSize());
+        throttle(startedAt, scrubbed);
+      }
+    } finally {
+      running = false;
+    }
+
+    corruptRanges = Collections.unmodifiableList(corrupt);
+    passes.incrementAndGet();
+    progress = 1.0;
+    Scrubber.LOG.info("Scrubbed " + store.getPath() + ": verified " + scrubbed + " bytes, found " + corrupt.size() + " corrupt records");
+
+    return corruptRanges;
+  }
+
+
+  /**
+   * Waits until the verified bytes are within the I/O budget.
+   *
+   * @param startedAt the start of the pass in nanoseconds
+   * @param scrubbed the bytes verified since the start
+   * @throws InterruptedIOException if the scrubber was interrupted
+   */
+  private void throttle(final long startedAt, final long scrubbed) throws InterruptedIOException {
+    final long wait = startedAt + (long) (scrubbed * 1_000_000_000.0 / rate) - System.nanoTime();
+
+    if (wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Scrubbing of " + store.getPath() + " interrupted");
+      }
+    }
+  }
+
+
+  /**
+   * Gets the corrupt ranges found by the last completed pass.
+   *
+   * @return the corrupt ranges
+   */
+  public List<CorruptRange> getCorruptRanges() {
+    return corruptRanges;
+  }
+
+
+  /**
+   * Returns true if a scrubbing pass is currently running.
+   *
+   * @return true if running
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+
+  /**
+   * Gets the progress of the current pass, i.e. the part of the store-file which has been verified.
+   *
+   * @return the progress between 0 and 1
+   */
+  public double getProgress() {
+    return progress;
+  }
+
+
+  /**
+   * Gets the total number of bytes which have been verified.
+   *
+   * @return the verified bytes
+   */
+  public long getBytesScrubbed() {
+    return bytesScrubbed.get();
+  }
+
+
+  /**
+   * Gets the number of completed passes.
+   *
+   * @return the number of passes
+   */
+  public long getPasses() {
+    return passes.get();
+  }
+
+
+  /**
+   * Stops the background scrubbing and waits for a running pass to stop.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+
+    synchronized (this) {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    }
+  }
+}
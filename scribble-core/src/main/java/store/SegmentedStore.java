@@ -0,0 +1,522 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.enterprise.inject.Default;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A store split across several segment-files, each of which is a {@link Store} with its own allocation table,
+ * write-ahead log and compactor. New records are spread across a number of active segments and a segment is rolled
+ * over to a new segment-file once it has reached the segment size. The segment-files can be spread across several
+ * directories, e.g. one per disk.
+ * <p>
+ * The ids of a segmented store are prefixed with the number of their segment, e.g. <code>3:17</code>. Updates stay in
+ * the segment of their id. The segments are compacted one at a time by a single background thread, so the cost of a
+ * compaction is bounded by the segment size.
+ */
+@Default
+public class SegmentedStore {
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentedStore.class);
+  private static final char SEPARATOR = ':';
+  @Inject
+  private Path path;
+  @Inject
+  private StoreOptions options;
+  private final Map<Integer, Store> segments = new ConcurrentSkipListMap<>();
+  private final Map<Store, Integer> numbers = new ConcurrentHashMap<>();
+  private volatile Store[] active;
+  private final AtomicInteger next = new AtomicInteger();
+  private int nextSegment;
+  private ScheduledExecutorService scheduler;
+  private volatile boolean open = false;
+
+
+  public SegmentedStore() {
+  }
+
+
+  /**
+   * Constructor for a {@link SegmentedStore} outside of a CDI container.
+   *
+   * @param path the path of the store, the segment-files are named after it
+   * @param options the {@link StoreOptions}
+   */
+  SegmentedStore(final Path path, final StoreOptions options) {
+    this.path = path;
+    this.options = options;
+  }
+
+
+  /**
+   * Opens the existing segments and selects the active segments, creating new ones if required.
+   *
+   * @throws IOException if an error occurs during opening
+   */
+  protected synchronized void open() throws IOException {
+    if (open) {
+      return;
+    }
+
+    final Pattern pattern = Pattern.compile(Pattern.quote(path.getFileName().toString()) + "\\.(\\d+)");
+
+    for (final Path directory : getDirectories()) {
+      if (!Files.isDirectory(directory)) {
+        continue;
+      }
+
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+        for (final Path file : files) {
+          final Matcher matcher = pattern.matcher(file.getFileName().toString());
+
+          if (matcher.matches()) {
+            final int segment = Integer.parseInt(matcher.group(1));
+            final Store store = new Store(file, options, false);
+            store.open();
+            segments.put(segment, store);
+            numbers.put(store, segment);
+            nextSegment = Math.max(nextSegment, segment + 1);
+          }
+        }
+      }
+    }
+
+    if (!segments.isEmpty()) {
+      SegmentedStore.LOG.info("Opened " + segments.size() + " segments of " + path);
+    }
+
+    // the most recent segments which have not been filled yet stay active
+    final List<Store> stores = new ArrayList<>();
+    final List<Store> existing = new ArrayList<>(segments.values());
+    Collections.reverse(existing);
+
+    for (final Store store : existing) {
+      if (stores.size() < options.getActiveSegments() && !isFull(store)) {
+        stores.add(store);
+      }
+    }
+
+    while (stores.size() < options.getActiveSegments()) {
+      stores.add(createSegment());
+    }
+
+    active = stores.toArray(new Store[stores.size()]);
+
+    startBackgroundTasks();
+    open = true;
+  }
+
+
+  /**
+   * Starts a single thread which compacts the segment with the highest ratio of free space above the threshold and
+   * scrubs the segments one after the other.
+   */
+  private void startBackgroundTasks() {
+    final boolean scrubbing = options.isChecksums() && options.isScrubbing();
+
+    if (!options.isCompaction() && !scrubbing) {
+      return;
+    }
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "segments-" + path.getFileName());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    if (options.isCompaction()) {
+      scheduler.scheduleWithFixedDelay(this::compactSegment, options.getCompactionInterval(), options.getCompactionInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    if (scrubbing) {
+      scheduler.scheduleWithFixedDelay(this::scrubSegments, options.getScrubInterval(), options.getScrubInterval(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+
+  /**
+   * Compacts the segment with the highest ratio of free space if it has reached the compaction threshold.
+   */
+  private void compactSegment() {
+    Store candidate = null;
+    double ratio = 0.0;
+
+    for (final Store store : segments.values()) {
+      final long tail = store.getAllocationTable().getTail();
+
+      if (tail > 0 && store.getCompactor().isRequired(options.getCompactionThreshold())) {
+        final double free = (double) store.getAllocationTable().getFreeSpace() / tail;
+
+        if (free > ratio) {
+          candidate = store;
+          ratio = free;
+        }
+      }
+    }
+
+    if (candidate != null) {
+      try {
+        candidate.getCompactor().compact();
+      } catch (final IOException | RuntimeException e) {
+        SegmentedStore.LOG.error("Error compacting " + candidate.getPath(), e);
+      }
+    }
+  }
+
+
+  /**
+   * Runs a scrubbing pass over each segment.
+   */
+  private void scrubSegments() {
+    for (final Store store : segments.values()) {
+      try {
+        store.getScrubber().scrub();
+      } catch (final IOException | RuntimeException e) {
+        SegmentedStore.LOG.error("Error scrubbing " + store.getPath(), e);
+      }
+    }
+  }
+
+
+  /**
+   * Creates the next segment.
+   *
+   * @return the {@link Store} of the segment
+   * @throws IOException if an error occurs during opening
+   */
+  private synchronized Store createSegment() throws IOException {
+    final int segment = nextSegment++;
+    final Store store = new Store(getSegmentPath(segment), options, false);
+    store.open();
+    segments.put(segment, store);
+    numbers.put(store, segment);
+
+    return store;
+  }
+
+
+  /**
+   * Replaces the specified active segment with a new segment if it has reached the segment size.
+   *
+   * @param store the active segment
+   * @throws IOException if an error occurs during creating the new segment
+   */
+  private synchronized void roll(final Store store) throws IOException {
+    if (!isFull(store)) {
+      return;
+    }
+
+    final Store[] stores = active.clone();
+
+    for (int i = 0; i < stores.length; i++) {
+      if (stores[i] == store) {
+        stores[i] = createSegment();
+        active = stores;
+        SegmentedStore.LOG.info("Rolled " + store.getPath() + " over to " + stores[i].getPath());
+      }
+    }
+  }
+
+
+  private boolean isFull(final Store store) {
+    return store.getAllocationTable().getTail() >= options.getSegmentSize();
+  }
+
+
+  /**
+   * Writes the specified data to the store. New records are written to the next active segment, updates to the
+   * segment of their id.
+   *
+   * @param id the id or null for a new record
+   * @param bytes the data
+   * @return the id
+   * @throws IOException if an error occurs during writing
+   */
+  public String write(final String id, final ByteBuffer bytes) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    if (id != null) {
+      segment(id).write(localId(id), bytes);
+      return id;
+    }
+
+    final Store store = nextActive();
+    final String localId = store.write(null, bytes);
+    roll(store);
+
+    return id(store, localId);
+  }
+
+
+  /**
+   * Writes a batch of new records to the next active segment (see {@link Store#writeAll(List)}).
+   *
+   * @param records the data of the records
+   * @return the generated ids in the order of the records
+   * @throws IOException if an error occurs during writing
+   */
+  public List<String> writeAll(final List<ByteBuffer> records) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    final Store store = nextActive();
+    final List<String> ids = new ArrayList<>(records.size());
+
+    for (final String localId : store.writeAll(records)) {
+      ids.add(id(store, localId));
+    }
+
+    roll(store);
+
+    return ids;
+  }
+
+
+  /**
+   * Reads the data for the specified id from its segment.
+   *
+   * @param id the id
+   * @return the data
+   * @throws IOException if an error occurs during reading
+   */
+  public ByteBuffer read(final String id) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    if (id == null) {
+      return null;
+    }
+
+    return segment(id).read(localId(id));
+  }
+
+
+  /**
+   * Transfers the data for the specified id from its segment to the target channel (see
+   * {@link Store#transferTo(String, WritableByteChannel)}).
+   *
+   * @param id the id
+   * @param target the blocking target channel
+   * @return the number of bytes transferred
+   * @throws IOException if the id is not found or an error occurs during the transfer
+   */
+  public long transferTo(final String id, final WritableByteChannel target) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    return segment(id).transferTo(localId(id), target);
+  }
+
+
+  /**
+   * Reads the data for a batch of ids with one {@link Store#readAll(Collection)} per segment.
+   *
+   * @param ids the ids
+   * @return the data for each id in the order of the ids
+   * @throws IOException if an id is not found or an error occurs during reading
+   */
+  public Map<String, ByteBuffer> readAll(final Collection<String> ids) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    final Map<Store, List<String>> localIds = new LinkedHashMap<>();
+
+    for (final String id : ids) {
+      localIds.computeIfAbsent(segment(id), store -> new ArrayList<>()).add(localId(id));
+    }
+
+    final Map<String, ByteBuffer> data = new HashMap<>();
+
+    for (final Map.Entry<Store, List<String>> entry : localIds.entrySet()) {
+      for (final Map.Entry<String, ByteBuffer> record : entry.getKey().readAll(entry.getValue()).entrySet()) {
+        data.put(id(entry.getKey(), record.getKey()), record.getValue());
+      }
+    }
+
+    final Map<String, ByteBuffer> result = new LinkedHashMap<>();
+
+    for (final String id : ids) {
+      result.put(id, data.get(id));
+    }
+
+    return result;
+  }
+
+
+  /**
+   * Forces all segments and discards their write-ahead logs.
+   *
+   * @throws IOException if an error occurs during the checkpoint
+   */
+  public void checkpoint() throws IOException {
+    for (final Store store : segments.values()) {
+      store.checkpoint();
+    }
+  }
+
+
+  /**
+   * Closes all segments.
+   */
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+
+      try {
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      scheduler = null;
+    }
+
+    for (final Store store : segments.values()) {
+      store.close();
+    }
+
+    segments.clear();
+    numbers.clear();
+    active = null;
+    nextSegment = 0;
+    open = false;
+  }
+
+
+  private Store nextActive() {
+    final Store[] stores = active;
+    return stores[(next.getAndIncrement() & 0x7fffffff) % stores.length];
+  }
+
+
+  /**
+   * Gets the segment of the specified id.
+   *
+   * @param id the id
+   * @return the {@link Store} of the segment
+   * @throws IOException if the id does not belong to a segment
+   */
+  private Store segment(final String id) throws IOException {
+    final int separator = id.indexOf(SegmentedStore.SEPARATOR);
+    Store store = null;
+
+    if (separator > 0) {
+      try {
+        store = segments.get(Integer.valueOf(id.substring(0, separator)));
+      } catch (final NumberFormatException e) {
+      }
+    }
+
+    if (store == null) {
+      throw new IOException("Error: Item for id='" + id + "' not found!");
+    }
+
+    return store;
+  }
+
+
+  private static String localId(final String id) {
+    return id.substring(id.indexOf(SegmentedStore.SEPARATOR) + 1);
+  }
+
+
+  private String id(final Store store, final String localId) {
+    return numbers.get(store).toString() + SegmentedStore.SEPARATOR + localId;
+  }
+
+
+  /**
+   * Gets the directories of the segment-files.
+   *
+   * @return the directories
+   */
+  private List<Path> getDirectories() {
+    if (options.getSegmentDirectories().isEmpty()) {
+      return Collections.singletonList(path.toAbsolutePath().getParent());
+    }
+
+    return options.getSegmentDirectories();
+  }
+
+
+  /**
+   * Gets the path of the segment-file with the specified number. The segment-files are spread round-robin across the
+   * segment directories.
+   *
+   * @param segment the number of the segment
+   * @return the path
+   */
+  public Path getSegmentPath(final int segment) {
+    final List<Path> directories = getDirectories();
+    return directories.get(segment % directories.size()).resolve(path.getFileName() + "." + String.format("%05d", segment));
+  }
+
+
+  /**
+   * Gets the {@link Store}s of the opened segments by their number.
+   *
+   * @return the segments
+   */
+  public Map<Integer, Store> getSegments() {
+    return Collections.unmodifiableMap(segments);
+  }
+
+
+  /**
+   * Gets the path of the store, after which the segment-files are named.
+   *
+   * @return the path
+   */
+  public Path getPath() {
+    return path;
+  }
+
+
+  /**
+   * Gets the {@link StoreOptions}.
+   *
+   * @return the {@link StoreOptions}
+   */
+  public StoreOptions getOptions() {
+    return options;
+  }
+
+
+  /**
+   * Returns the flag if the {@link SegmentedStore} is currently open.
+   *
+   * @return the flag if the {@link SegmentedStore} is currently open
+   */
+  public boolean isOpen() {
+    return open;
+  }
+}
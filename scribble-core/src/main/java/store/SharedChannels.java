@@ -0,0 +1,179 @@
+package store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed set of read channels on a file shared by all readers. Positional reads do not touch the position of a
+ * channel and are safe for concurrent use, so readers neither borrow nor return a channel. Each thread reads through
+ * the channel selected by its id to spread the readers over the channels.
+ * <p>
+ * A thread interrupted during a read closes the channel for all threads. Such a channel is reopened by the next read
+ * and the reads which failed on it are reported as {@link ClosedChannelException}s, so that the caller can retry them
+ * elsewhere.
+ */
+public class SharedChannels implements Closeable {
+  private final Path path;
+  private final FileChannel[] channels;
+  private volatile boolean closed = false;
+
+
+  /**
+   * Constructor.
+   *
+   * @param path the path of the file
+   * @param count the number of channels
+   * @throws IOException if a channel could not be opened
+   */
+  public SharedChannels(final Path path, final int count) throws IOException {
+    this.path = path;
+    channels = new FileChannel[count];
+
+    for (int i = 0; i < channels.length; i++) {
+      channels[i] = FileChannel.open(path, StandardOpenOption.READ);
+    }
+  }
+
+
+  /**
+   * Reads bytes into the remaining space of the buffer from the specified position until it is full or the end of the
+   * file has been reached.
+   *
+   * @param bytes the buffer
+   * @param position the position in the file
+   * @throws ClosedByInterruptException if the current thread has been interrupted
+   * @throws ClosedChannelException if the channel has been closed by another thread during the read
+   * @throws IOException if an error occurs during reading
+   */
+  public void read(final ByteBuffer bytes, final long position) throws IOException {
+    final int index = (int) (Thread.currentThread().getId() % channels.length);
+    final FileChannel channel = channel(index);
+    final long start = position - bytes.position();
+
+    try {
+      while (bytes.hasRemaining() && channel.read(bytes, start + bytes.position()) >= 0) {
+      }
+    } catch (final ClosedChannelException e) {
+      reopen(index, channel);
+      throw e;
+    }
+  }
+
+
+  /**
+   * Transfers the specified range of the file to the target channel with {@link FileChannel#transferTo(long, long,
+   * WritableByteChannel)}, so that the bytes do not pass through the heap.
+   *
+   * @param position the position in the file
+   * @param count the number of bytes
+   * @param target the target channel
+   * @return the number of bytes transferred, less than the count if the end of the file has been reached
+   * @throws ClosedByInterruptException if the current thread has been interrupted
+   * @throws ClosedChannelException if the channel has been closed by another thread during the transfer
+   * @throws IOException if an error occurs during the transfer
+   */
+  public long transferTo(final long position, final long count, final WritableByteChannel target) throws IOException {
+    final int index = (int) (Thread.currentThread().getId() % channels.length);
+    final FileChannel channel = channel(index);
+
+    try {
+      return SharedChannels.transferTo(channel, position, count, target);
+    } catch (final ClosedChannelException e) {
+      reopen(index, channel);
+      throw e;
+    }
+  }
+
+
+  /**
+   * Transfers the specified range of a file channel to the target channel until all bytes have been transferred or the
+   * end of the file has been reached.
+   *
+   * @param channel the file channel
+   * @param position the position in the file
+   * @param count the number of bytes
+   * @param target the target channel
+   * @return the number of bytes transferred
+   * @throws IOException if an error occurs during the transfer
+   */
+  static long transferTo(final FileChannel channel, final long position, final long count, final WritableByteChannel target) throws IOException {
+    long transferred = 0L;
+
+    while (transferred < count) {
+      final long bytes = channel.transferTo(position + transferred, count - transferred, target);
+
+      // transferTo returns 0 at the end of the file, a non-blocking target is not supported
+      if (bytes <= 0) {
+        break;
+      }
+
+      transferred += bytes;
+    }
+
+    return transferred;
+  }
+
+
+  /**
+   * Gets the open channel at the specified index.
+   *
+   * @param index the index
+   * @return the channel
+   * @throws IOException if the channel had to be reopened and could not be
+   */
+  private FileChannel channel(final int index) throws IOException {
+    final FileChannel channel = channels[index];
+    return channel.isOpen() ? channel : reopen(index, channel);
+  }
+
+
+  /**
+   * Replaces the specified closed channel with a new one unless another thread has replaced it already.
+   *
+   * @param index the index of the channel
+   * @param channel the closed channel
+   * @return the current channel
+   * @throws IOException if the channel could not be reopened
+   */
+  private synchronized FileChannel reopen(final int index, final FileChannel channel) throws IOException {
+    if (closed) {
+      throw new ClosedChannelException();
+    }
+
+    if (channels[index] == channel) {
+      channels[index] = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    return channels[index];
+  }
+
+
+  /**
+   * Gets the number of channels.
+   *
+   * @return the number of channels
+   */
+  public int size() {
+    return channels.length;
+  }
+
+
+  /**
+   * Closes all channels.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+
+    for (final FileChannel channel : channels) {
+      channel.close();
+    }
+  }
+}
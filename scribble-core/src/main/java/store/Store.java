@@ -1,11 +1,28 @@
 package store;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.inject.Default;
@@ -14,23 +31,83 @@ import javax.inject.Inject;
 import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import index.api.IIndexEntry;
 import store.allocation.AllocationTable;
+import store.allocation.IAllocationTable;
+import store.allocation.OffHeapAllocationTable;
 import store.allocation.Fragment;
+import store.codec.DeflateCodec;
+import store.codec.DictionaryTrainer;
+import store.codec.Lz4Codec;
+import store.codec.RecordCodec;
 
 @Default
 public class Store {
-  private FileChannel channel;
+  private static final Logger LOG = LoggerFactory.getLogger(Store.class);
+  private static final int LOCK_STRIPES = 64;
+  private static final int CHECKSUM_SIZE = 4;
+  private FileChannel[] writers;
   @Inject
   private Path path;
+  @Inject
+  private StoreOptions options;
   private ObjectPool<FileChannel> readerPool;
-  private final AllocationTable allocationTable = new AllocationTable();
-  private boolean open = false;
+  private SharedChannels sharedChannels;
+  private MappedRegions mappedRegions;
+  private WriteAheadLog writeAheadLog;
+  private final Object checkpointLock = new Object();
+  private final ReadWriteLock[] locks = new ReadWriteLock[Store.LOCK_STRIPES];
+  private final long[] versions = new long[Store.LOCK_STRIPES];
+  private final ReadWriteLock resizeLock = new ReentrantReadWriteLock();
+  private Compactor compactor;
+  private AsyncStore asyncStore;
+  private RecordCodec codec;
+  private Scrubber scrubber;
+  private RecordCache cache;
+  private boolean checksums;
+  private boolean mappedCopies;
+  private boolean background = true;
+  private IAllocationTable allocationTable;
+  private volatile boolean open = false;
 
 
   public Store() {
     open = false;
+
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new ReentrantReadWriteLock();
+    }
+  }
+
+
+  /**
+   * Constructor for a {@link Store} outside of a CDI container.
+   *
+   * @param path the path to the store-file
+   * @param options the {@link StoreOptions}
+   */
+  Store(final Path path, final StoreOptions options) {
+    this();
+    this.path = path;
+    this.options = options;
+    init();
+  }
+
+
+  /**
+   * Constructor for a segment of a {@link SegmentedStore}, which schedules the compaction and scrubbing of its segments
+   * itself.
+   *
+   * @param path the path to the segment-file
+   * @param options the {@link StoreOptions}
+   * @param background true if the store starts its own {@link Compactor} and {@link Scrubber}
+   */
+  Store(final Path path, final StoreOptions options, final boolean background) {
+    this(path, options);
+    this.background = background;
   }
 
 
@@ -41,6 +118,7 @@ public class Store {
     config.setMaxIdle(2);
     config.setMaxTotal(200);
     readerPool = new GenericObjectPool<FileChannel>(factory, config);
+    allocationTable = options.getAllocationMode() == AllocationMode.OFF_HEAP ? new OffHeapAllocationTable() : new AllocationTable();
   }
 
 
@@ -51,14 +129,86 @@ public class Store {
    * @throws IOException if an error occurs during opening
    */
   protected synchronized void open() throws IOException {
-    channel = FileChannel.open(path,
-        EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE));
+    if (open) {
+      return;
+    }
+
+    allocationTable.open(getTablePath());
+
+    if (options.getCompression() != Compression.NONE) {
+      codec = new RecordCodec(options.getCompression() == Compression.LZ4 ? new Lz4Codec() : new DeflateCodec());
+
+      if (Files.exists(getDictionaryPath())) {
+        codec.setDictionary(Files.readAllBytes(getDictionaryPath()));
+      }
+    }
+
+    writers = new FileChannel[options.getWriteChannels()];
+
+    for (int i = 0; i < writers.length; i++) {
+      writers[i] = FileChannel.open(path, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+    }
+
+    if (options.isWriteAheadLog()) {
+      writeAheadLog = new WriteAheadLog(getWalPath(), options.getFsyncPolicy(), options.getFsyncInterval(), allocationTable::force);
+      recover();
+    }
+
+    if (options.getReadMode() == ReadMode.MAPPED) {
+      mappedRegions = new MappedRegions(FileChannel.open(path, StandardOpenOption.READ), options.getRegionSize());
+    } else if (options.getReadMode() == ReadMode.SHARED) {
+      sharedChannels = new SharedChannels(path, options.getReadChannels());
+    }
+
+    checksums = options.isChecksums();
+    // a slice changes when its space is reused and the compactor may truncate the store-file under it at any time
+    mappedCopies = !options.isZeroCopyReads() || options.isCompaction();
+
+    if (options.getCacheSize() > 0) {
+      cache = new RecordCache(options.getCacheSize());
+    }
+
+    compactor = new Compactor(this, options.getCompactionRate());
+    scrubber = new Scrubber(this, options.getScrubRate());
+
+    if (background && checksums && options.isScrubbing()) {
+      scrubber.start(options.getScrubInterval());
+    }
+
+    if (background && options.isCompaction()) {
+      compactor.start(options.getCompactionInterval(), options.getCompactionThreshold());
+    }
+
     open = true;
   }
 
 
   /**
-   * Writes the specified data to the store.
+   * Redoes the writes in the {@link WriteAheadLog} whose fragment is still allocated and discards the log.
+   *
+   * @throws IOException if an error occurs during recovery
+   */
+  private void recover() throws IOException {
+    final int records = writeAheadLog.replay((id, start, bytes) -> {
+      final Fragment fragment = allocationTable.findById(id);
+
+      // skip writes which have been superseded
+      if (fragment != null && fragment.getStart() == start && fragment.getSize() == bytes.remaining()) {
+        write(writers[0], bytes, start);
+      }
+    });
+
+    if (records > 0) {
+      Store.LOG.info("Recovered " + records + " writes from the write-ahead log of " + path);
+    }
+
+    writeAheadLog.checkpoint(this::force);
+  }
+
+
+  /**
+   * Writes the specified data to the store. Concurrent writers allocate their space independently and write with
+   * positional writes on one of several channels.
    *
    * @param id the id
    * @param bytes the data
@@ -80,90 +230,1147 @@ public class Store {
       }
     }
 
-    final Fragment fragment = allocationTable.allocate(id, bytes.limit());
+    final ByteBuffer record = encode(bytes);
+    final FileChannel writer = writers[(int) (Thread.currentThread().getId() % writers.length)];
+    final Fragment fragment;
+    long lsn = 0L;
+
+    // an update must not be read or relocated before it is written
+    final int stripe = id != null ? stripe(id) : -1;
+
+    if (stripe >= 0) {
+      locks[stripe].writeLock().lock();
+      versions[stripe]++;
+
+      if (cache != null) {
+        cache.invalidate(id);
+      }
+    }
+
+    // the file must not be truncated between the allocation and the write
+    resizeLock.readLock().lock();
+
+    try {
+      fragment = allocationTable.allocate(id, record.limit());
+
+      if (writeAheadLog != null) {
+        lsn = writeAheadLog.append(fragment.getId(), fragment.getStart(), record);
+
+        try {
+          write(writer, record, fragment.getStart());
+        } finally {
+          writeAheadLog.done();
+        }
+      } else {
+        write(writer, record, fragment.getStart());
+      }
+    } finally {
+      resizeLock.readLock().unlock();
+
+      if (stripe >= 0) {
+        locks[stripe].writeLock().unlock();
+      }
+    }
+
+    if (writeAheadLog != null) {
+      writeAheadLog.commit(lsn);
 
-    channel.write(bytes, fragment.getStart());
+      if (writeAheadLog.size() > options.getCheckpointSize()) {
+        checkpoint();
+      }
+    }
 
     return fragment.getId();
   }
 
 
   /**
-   * Reads the data for the specified id from the store.
+   * Writes a batch of new records to the store. The records are allocated one contiguous space in a single table
+   * operation and are written with a single gathering write, which saves the per-record overhead of
+   * {@link #write(String, ByteBuffer)} for bulk loads.
    *
-   * @param id the id
-   * @return the data
-   * @throws IOException if an error occurs during reading
+   * @param records the data of the records
+   * @return the generated ids in the order of the records
+   * @throws IOException if an error occurs during writing
    */
-  public ByteBuffer read(final String id) throws IOException {
+  public List<String> writeAll(final List<ByteBuffer> records) throws IOException {
     if (!isOpen()) {
       open();
     }
 
-    if (id != null) {
-      final Fragment fragment = allocationTable.findById(id);
+    final List<String> ids = new ArrayList<>(records.size());
 
-      if (fragment != null) {
-        FileChannel storeReader = null;
-        try {
-          storeReader = readerPool.borrowObject();
+    if (records.isEmpty()) {
+      return ids;
+    }
 
-          final ByteBuffer bytes = ByteBuffer.allocate((int) fragment.getSize());
-          storeReader.read(bytes, fragment.getStart());
+    final ByteBuffer[] buffers = new ByteBuffer[records.size()];
+    final long[] sizes = new long[buffers.length];
 
-          return bytes;
-        } catch (final Exception e) {
-          throw new IOException(e.getMessage(), e);
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = encode(records.get(i));
+      sizes[i] = buffers[i].limit();
+    }
+
+    final FileChannel writer = writers[(int) (Thread.currentThread().getId() % writers.length)];
+    long lsn = 0L;
+
+    // the file must not be truncated between the allocation and the write
+    resizeLock.readLock().lock();
+
+    try {
+      final List<Fragment> fragments = allocationTable.allocateAll(sizes);
+      final long[] starts = new long[fragments.size()];
+
+      for (int i = 0; i < starts.length; i++) {
+        ids.add(fragments.get(i).getId());
+        starts[i] = fragments.get(i).getStart();
+      }
+
+      if (writeAheadLog != null) {
+        lsn = writeAheadLog.appendAll(ids.toArray(new String[ids.size()]), starts, buffers);
+
+        try {
+          write(writer, buffers, starts[0]);
         } finally {
-          if (storeReader != null) {
-            try {
-              readerPool.returnObject(storeReader);
-            } catch (final Exception e) {
-              e.printStackTrace();
-            }
-          }
+          writeAheadLog.done();
         }
       } else {
-        throw new IOException("Error: Item for id='" + id + "' not found!");
+        write(writer, buffers, starts[0]);
       }
+    } finally {
+      resizeLock.readLock().unlock();
     }
 
-    return null;
+    if (writeAheadLog != null) {
+      writeAheadLog.commit(lsn);
+
+      if (writeAheadLog.size() > options.getCheckpointSize()) {
+        checkpoint();
+      }
+    }
+
+    return ids;
   }
 
 
   /**
-   * Closes this store.
+   * Encodes the data of a record with the {@link RecordCodec} if compression is enabled and appends the checksum if
+   * checksums are enabled.
+   *
+   * @param bytes the data
+   * @return the record to write
    */
-  public void close() {
+  private ByteBuffer encode(final ByteBuffer bytes) {
+    final ByteBuffer record = codec != null ? codec.encode(bytes) : bytes;
+
+    if (!checksums) {
+      return record;
+    }
+
+    final CRC32C crc = new CRC32C();
+    crc.update(record.duplicate());
+    final ByteBuffer checked = ByteBuffer.allocate(record.remaining() + Store.CHECKSUM_SIZE);
+    return checked.put(record.duplicate()).putInt((int) crc.getValue()).flip();
+  }
+
+
+  /**
+   * Verifies the checksum of a record read from the store-file if checksums are enabled and decodes it with the
+   * {@link RecordCodec} if compression is enabled.
+   *
+   * @param id the id of the record
+   * @param record the record filling the whole buffer
+   * @return the data
+   * @throws CorruptRecordException if the checksum does not match
+   * @throws IOException if the record could not be decoded
+   */
+  ByteBuffer decode(final String id, final ByteBuffer record) throws IOException {
+    if (!checksums) {
+      return codec != null ? codec.decode(record.duplicate().clear()) : record;
+    }
+
+    final ByteBuffer data = verify(id, record.duplicate().clear());
+
+    if (codec != null) {
+      return codec.decode(data);
+    }
+
+    // heap buffers are copied, so that their array holds exactly the data
+    if (data.hasArray()) {
+      return ByteBuffer.wrap(Arrays.copyOfRange(data.array(), data.arrayOffset(), data.arrayOffset() + data.remaining()));
+    }
+
+    return data;
+  }
+
+
+  /**
+   * Verifies the checksum at the end of the specified record.
+   *
+   * @param id the id of the record
+   * @param record the record with the checksum
+   * @return the data of the record without the checksum
+   * @throws CorruptRecordException if the checksum does not match
+   */
+  private static ByteBuffer verify(final String id, final ByteBuffer record) throws CorruptRecordException {
+    if (record.remaining() < Store.CHECKSUM_SIZE) {
+      throw new CorruptRecordException(id, "The record for id='" + id + "' is too short for its checksum");
+    }
+
+    final ByteBuffer data = record.duplicate();
+    data.limit(record.limit() - Store.CHECKSUM_SIZE);
+    final CRC32C crc = new CRC32C();
+    crc.update(data.duplicate());
+
+    if ((int) crc.getValue() != record.getInt(record.limit() - Store.CHECKSUM_SIZE)) {
+      throw new CorruptRecordException(id, "The checksum of the record for id='" + id + "' does not match its data");
+    }
+
+    return data.slice();
+  }
+
+
+  /**
+   * Verifies the checksum of the specified fragment for the {@link Scrubber}. A fragment which is no longer current is
+   * skipped, as its id has been written or relocated in the meantime.
+   *
+   * @param id the id of the fragment
+   * @param fragment the {@link Fragment}
+   * @return false if the fragment is current and corrupt
+   * @throws IOException if an error occurs during reading
+   */
+  boolean verify(final String id, final Fragment fragment) throws IOException {
+    final ReadWriteLock lock = locks[stripe(id)];
+    lock.readLock().lock();
+
     try {
-      readerPool.close();
+      final Fragment current = allocationTable.findById(id);
 
-      if (open) {
-        channel.close();
-        open = false;
+      if (!checksums || current == null || current.getStart() != fragment.getStart() || current.getEnd() != fragment.getEnd()) {
+        return true;
       }
-    } catch (final IOException e) {}
+
+      verify(id, readRecord(current).duplicate().clear());
+      return true;
+    } catch (final CorruptRecordException e) {
+      return false;
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
 
   /**
-   * Gets the {@link AllocationTable}.
+   * Writes all remaining bytes at the specified position.
    *
-   * @return the {@link AllocationTable}
+   * @param channel the channel to write to
+   * @param bytes the bytes
+   * @param position the position
+   * @throws IOException if an error occurs during writing
    */
-  public AllocationTable getAllocationTable() {
-    return allocationTable;
+  private static void write(final FileChannel channel, final ByteBuffer bytes, final long position) throws IOException {
+    long offset = position;
+
+    while (bytes.hasRemaining()) {
+      offset += channel.write(bytes, offset);
+    }
   }
 
 
   /**
-   * Gets the path to the store-file.
+   * Writes all remaining bytes of the buffers consecutively from the specified position with gathering writes.
    *
-   * @return the path
+   * @param channel the channel to write to
+   * @param buffers the buffers
+   * @param position the position
+   * @throws IOException if an error occurs during writing
    */
-  public Path getPath() {
-    return path;
+  private static void write(final FileChannel channel, final ByteBuffer[] buffers, final long position) throws IOException {
+    long remaining = 0L;
+
+    for (final ByteBuffer buffer : buffers) {
+      remaining += buffer.remaining();
+    }
+
+    // the channel position is shared by all writers of the channel
+    synchronized (channel) {
+      channel.position(position);
+
+      while (remaining > 0) {
+        remaining -= channel.write(buffers);
+      }
+    }
+  }
+
+
+  /**
+   * Forces the store-file and discards the {@link WriteAheadLog}.
+   *
+   * @throws IOException if an error occurs during the checkpoint
+   */
+  public void checkpoint() throws IOException {
+    synchronized (checkpointLock) {
+      if (writeAheadLog != null && writeAheadLog.size() > 0) {
+        writeAheadLog.checkpoint(this::force);
+      }
+    }
+  }
+
+
+  /**
+   * Takes a consistent point-in-time {@link StoreSnapshot} of the store. The snapshot does not block writers, it only
+   * waits for the writes which have allocated their space so far to be written.
+   *
+   * @return the {@link StoreSnapshot}, which must be closed
+   * @throws IOException if an error occurs during opening
+   */
+  public StoreSnapshot snapshot() throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    resizeLock.writeLock().lock();
+
+    try {
+      return new StoreSnapshot(this, allocationTable.pin());
+    } finally {
+      resizeLock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Scans all records of a {@link StoreSnapshot} in the order of their position in the store-file (see
+   * {@link StoreSnapshot#stream(boolean)}). The snapshot is closed with the stream.
+   *
+   * @param parallel true for a parallel stream, which is split by ranges of the store-file
+   * @return the stream of ids and data, which must be closed
+   * @throws IOException if an error occurs during opening
+   */
+  public Stream<Map.Entry<String, ByteBuffer>> scan(final boolean parallel) throws IOException {
+    final StoreSnapshot snapshot = snapshot();
+
+    try {
+      return snapshot.stream(parallel).onClose(snapshot::close);
+    } catch (final IOException | RuntimeException e) {
+      snapshot.close();
+      throw e;
+    }
+  }
+
+
+  /**
+   * Forces the store-file to the storage device.
+   *
+   * @throws IOException if an error occurs during forcing
+   */
+  private void force() throws IOException {
+    // forcing one channel forces all changes to the file
+    writers[0].force(false);
+  }
+
+
+  /**
+   * Gets the stripe of the lock and version guarding the location of the specified id.
+   *
+   * @param id the id
+   * @return the stripe
+   */
+  private int stripe(final String id) {
+    return (id.hashCode() & 0x7fffffff) % locks.length;
+  }
+
+
+  /**
+   * Gets the version of the specified id, which changes whenever an id of the same stripe is written. A read without
+   * the lock of the id is valid if the version has not changed during the read.
+   *
+   * @param id the id
+   * @return the version
+   */
+  long getVersion(final String id) {
+    final int stripe = stripe(id);
+    locks[stripe].readLock().lock();
+
+    try {
+      return versions[stripe];
+    } finally {
+      locks[stripe].readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Offers the data of the specified id read without its lock to the {@link RecordCache}, unless the id has been
+   * written since the version has been taken.
+   *
+   * @param id the id
+   * @param version the version of the id before the read
+   * @param bytes the data
+   */
+  void cache(final String id, final long version, final ByteBuffer bytes) {
+    if (cache == null) {
+      return;
+    }
+
+    final int stripe = stripe(id);
+    locks[stripe].readLock().lock();
+
+    try {
+      if (versions[stripe] == version) {
+        cache.put(id, bytes);
+      }
+    } finally {
+      locks[stripe].readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Waits until all writes which have allocated their space so far have been written, so that the {@link Compactor}
+   * does not copy a fragment before its data.
+   */
+  void awaitWrites() {
+    resizeLock.writeLock().lock();
+    resizeLock.writeLock().unlock();
+  }
+
+
+  /**
+   * Copies the data of the specified fragment to the specified position for the {@link Compactor}. The copy is logged
+   * to the {@link WriteAheadLog}, so that older records for the same space are not replayed over it.
+   *
+   * @param id the id of the fragment
+   * @param fragment the {@link Fragment} to copy
+   * @param position the position to copy to
+   * @return the version of the id which has been copied
+   * @throws IOException if an error occurs during copying
+   */
+  long copy(final String id, final Fragment fragment, final long position) throws IOException {
+    final ByteBuffer bytes = ByteBuffer.allocate((int) fragment.getSize());
+    final int stripe = stripe(id);
+    final long version;
+
+    // the id must not be updated while it is copied
+    locks[stripe].readLock().lock();
+
+    try {
+      version = versions[stripe];
+      read(bytes, fragment.getStart());
+    } finally {
+      locks[stripe].readLock().unlock();
+    }
+
+    bytes.flip();
+
+    if (writeAheadLog != null) {
+      writeAheadLog.append(id, position, bytes);
+
+      try {
+        write(writers[0], bytes, position);
+      } finally {
+        writeAheadLog.done();
+      }
+    } else {
+      write(writers[0], bytes, position);
+    }
+
+    return version;
+  }
+
+
+  /**
+   * Forces the data copied by the {@link Compactor} before the fragments are switched to it.
+   *
+   * @throws IOException if an error occurs during forcing
+   */
+  void forceRelocations() throws IOException {
+    force();
+
+    if (writeAheadLog != null) {
+      writeAheadLog.sync(writeAheadLog.size());
+    }
+  }
+
+
+  /**
+   * Switches the specified fragment to the claimed free space unless its id is currently being read.
+   *
+   * @param id the id of the fragment
+   * @param fragment the {@link Fragment}
+   * @param claimed the claimed free space the data has been copied to
+   * @param version the version of the id which has been copied
+   * @return the relocated {@link Fragment} or null if the id has been written or freed in the meantime
+   */
+  Fragment relocate(final String id, final Fragment fragment, final Fragment claimed, final long version) {
+    final int stripe = stripe(id);
+    locks[stripe].writeLock().lock();
+
+    try {
+      if (versions[stripe] != version) {
+        allocationTable.unclaim(claimed);
+        return null;
+      }
+
+      return allocationTable.relocate(fragment, claimed);
+    } finally {
+      locks[stripe].writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Truncates the trailing free space from the store-file.
+   *
+   * @return the number of bytes the store-file has been truncated by
+   * @throws IOException if an error occurs during truncation
+   */
+  long truncate() throws IOException {
+    // the relocations must be durable before their previous space is dropped
+    allocationTable.force();
+    resizeLock.writeLock().lock();
+
+    try {
+      long length = allocationTable.trim();
+      final long size = writers[0].size();
+
+      // slices of the mapped regions may still be accessed, so the mapped range of the file must remain
+      if (mappedRegions != null && !mappedCopies) {
+        length = Math.max(length, mappedRegions.getMappedLength());
+      }
+
+      if (size <= length) {
+        return 0L;
+      }
+
+      writers[0].truncate(length);
+
+      if (mappedRegions != null) {
+        mappedRegions.truncate(length);
+      }
+
+      return size - length;
+    } finally {
+      resizeLock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Reads the data for the specified id from the store. In {@link ReadMode#MAPPED} with
+   * {@link StoreOptions#setZeroCopyReads(boolean)} the returned buffer is a read-only view of the store-file which
+   * reflects later writes to the same space, unless background compaction is enabled.
+   *
+   * @param id the id
+   * @return the data
+   * @throws IOException if an error occurs during reading
+   */
+  public ByteBuffer read(final String id) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    if (id != null) {
+      final ByteBuffer cached = cache != null ? cache.get(id) : null;
+
+      if (cached != null) {
+        return cached;
+      }
+
+      // the fragment must not be relocated while it is read
+      final ReadWriteLock lock = locks[stripe(id)];
+      lock.readLock().lock();
+
+      try {
+        final ByteBuffer bytes = read(id, allocationTable.findById(id));
+
+        // cached under the lock, so that a concurrent update invalidates it afterwards
+        if (cache != null) {
+          cache.put(id, bytes);
+        }
+
+        return bytes;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    return null;
+  }
+
+
+  /**
+   * Transfers the data for the specified id to the target channel without copying it to the heap. The fragment range is
+   * transferred with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so that the
+   * bytes go from the page cache to e.g. a socket directly. Checksums are not verified on this path, they are left to
+   * the {@link Scrubber}. Compressed records and cached records are written from a buffer instead.
+   * <p>
+   * The id is locked for reading during the transfer, so a slow target delays the writes of the same lock stripe. A
+   * failed transfer is not retried, as the target may have received a part of the data already.
+   *
+   * @param id the id
+   * @param target the blocking target channel
+   * @return the number of bytes transferred
+   * @throws IOException if the id is not found or an error occurs during the transfer
+   */
+  public long transferTo(final String id, final WritableByteChannel target) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    if (codec != null) {
+      return write(target, read(id));
+    }
+
+    final ByteBuffer cached = cache != null ? cache.get(id) : null;
+
+    if (cached != null) {
+      return write(target, cached);
+    }
+
+    // the fragment must not be relocated while it is transferred
+    final ReadWriteLock lock = locks[stripe(id)];
+    lock.readLock().lock();
+
+    try {
+      final Fragment fragment = allocationTable.findById(id);
+
+      if (fragment == null) {
+        throw new IOException("Error: Item for id='" + id + "' not found!");
+      }
+
+      final long size = checksums ? fragment.getSize() - Store.CHECKSUM_SIZE : fragment.getSize();
+
+      if (mappedRegions != null) {
+        return write(target, mappedRegions.slice(fragment.getStart(), (int) size));
+      }
+
+      final long transferred;
+
+      if (sharedChannels != null) {
+        transferred = sharedChannels.transferTo(fragment.getStart(), size, target);
+      } else {
+        transferred = transferPooled(fragment.getStart(), size, target);
+      }
+
+      if (transferred < size) {
+        throw new EOFException("Unexpected end of the store-file for id='" + id + "'");
+      }
+
+      return transferred;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Transfers the specified range of the store-file to the target channel through a channel of the pool.
+   *
+   * @param position the position in the store-file
+   * @param count the number of bytes
+   * @param target the target channel
+   * @return the number of bytes transferred
+   * @throws IOException if an error occurs during the transfer
+   */
+  private long transferPooled(final long position, final long count, final WritableByteChannel target) throws IOException {
+    FileChannel storeReader = null;
+
+    try {
+      storeReader = readerPool.borrowObject();
+      return SharedChannels.transferTo(storeReader, position, count, target);
+    } catch (final IOException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw new IOException(e.getMessage(), e);
+    } finally {
+      if (storeReader != null) {
+        try {
+          readerPool.returnObject(storeReader);
+        } catch (final Exception e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Writes all remaining bytes to the target channel.
+   *
+   * @param target the target channel
+   * @param bytes the bytes
+   * @return the number of bytes written
+   * @throws IOException if an error occurs during writing
+   */
+  private static long write(final WritableByteChannel target, final ByteBuffer bytes) throws IOException {
+    final long count = bytes.remaining();
+
+    while (bytes.hasRemaining()) {
+      target.write(bytes);
+    }
+
+    return count;
+  }
+
+
+  /**
+   * Reads the data for a batch of ids. The records are read in the order of their position in the store-file and
+   * records which are adjacent in the store-file are read with a single scattering read.
+   *
+   * @param ids the ids
+   * @return the data for each distinct id in the order of the ids
+   * @throws IOException if an id is not found or an error occurs during reading
+   */
+  public Map<String, ByteBuffer> readAll(final Collection<String> ids) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    final Map<String, ByteBuffer> result = new LinkedHashMap<>();
+    final List<Fragment> fragments = new ArrayList<>(ids.size());
+
+    // the fragments must not be relocated while they are read, the stripes are locked in ascending order
+    final int[] stripes = ids.stream().mapToInt(this::stripe).distinct().sorted().toArray();
+
+    for (final int stripe : stripes) {
+      locks[stripe].readLock().lock();
+    }
+
+    try {
+      for (final String id : ids) {
+        // a repeated id is read and decoded once
+        if (result.containsKey(id)) {
+          continue;
+        }
+
+        final ByteBuffer cached = cache != null ? cache.get(id) : null;
+
+        if (cached != null) {
+          result.put(id, cached);
+          continue;
+        }
+
+        final Fragment fragment = allocationTable.findById(id);
+
+        if (fragment == null) {
+          throw new IOException("Error: Item for id='" + id + "' not found!");
+        }
+
+        fragments.add(fragment);
+        result.put(id, null);
+      }
+
+      fragments.sort(Comparator.comparingLong(Fragment::getStart));
+
+      if (mappedRegions != null) {
+        for (final Fragment fragment : fragments) {
+          result.put(fragment.getId(), readRange(fragment.getStart(), (int) fragment.getSize()));
+        }
+      } else {
+        read(fragments, result);
+      }
+
+      for (final Fragment fragment : fragments) {
+        final String id = fragment.getId();
+
+        if (codec != null || checksums) {
+          result.put(id, decode(id, result.get(id)));
+        }
+
+        if (cache != null) {
+          cache.put(id, result.get(id));
+        }
+      }
+    } finally {
+      for (final int stripe : stripes) {
+        locks[stripe].readLock().unlock();
+      }
+    }
+
+    return result;
+  }
+
+
+  /**
+   * Reads the data of the specified fragments sorted by their position with scattering reads over runs of adjacent
+   * fragments.
+   *
+   * @param fragments the {@link Fragment}s sorted by their start
+   * @param result receives the data for each id
+   * @throws IOException if an error occurs during reading
+   */
+  private void read(final List<Fragment> fragments, final Map<String, ByteBuffer> result) throws IOException {
+    // a scattering read moves the position of the channel, so shared channels read each fragment on its own
+    if (sharedChannels != null) {
+      for (final Fragment fragment : fragments) {
+        final ByteBuffer bytes = ByteBuffer.allocate((int) fragment.getSize());
+        read(bytes, fragment.getStart());
+        result.put(fragment.getId(), bytes);
+      }
+
+      return;
+    }
+
+    FileChannel storeReader = null;
+
+    try {
+      storeReader = readerPool.borrowObject();
+      int first = 0;
+
+      while (first < fragments.size()) {
+        int last = first;
+
+        while (last + 1 < fragments.size() && fragments.get(last + 1).getStart() == fragments.get(last).getEnd() + 1) {
+          last++;
+        }
+
+        final ByteBuffer[] buffers = new ByteBuffer[last - first + 1];
+        long remaining = 0L;
+
+        for (int i = 0; i < buffers.length; i++) {
+          final Fragment fragment = fragments.get(first + i);
+          buffers[i] = ByteBuffer.allocate((int) fragment.getSize());
+          result.put(fragment.getId(), buffers[i]);
+          remaining += fragment.getSize();
+        }
+
+        storeReader.position(fragments.get(first).getStart());
+
+        while (remaining > 0) {
+          final long count = storeReader.read(buffers);
+
+          if (count < 0) {
+            break;
+          }
+
+          remaining -= count;
+        }
+
+        first = last + 1;
+      }
+    } catch (final IOException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw new IOException(e.getMessage(), e);
+    } finally {
+      if (storeReader != null) {
+        try {
+          readerPool.returnObject(storeReader);
+        } catch (final Exception e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Reads the data of the specified fragment.
+   *
+   * @param id the id
+   * @param fragment the {@link Fragment} or null if the id is not allocated
+   * @return the data
+   * @throws IOException if an error occurs during reading
+   */
+  ByteBuffer read(final String id, final Fragment fragment) throws IOException {
+    if (fragment == null) {
+      throw new IOException("Error: Item for id='" + id + "' not found!");
+    }
+
+    return decode(id, readRecord(fragment));
+  }
+
+
+  /**
+   * Reads the record of the specified fragment as it is stored in the store-file.
+   *
+   * @param fragment the {@link Fragment}
+   * @return the record
+   * @throws IOException if an error occurs during reading
+   */
+  private ByteBuffer readRecord(final Fragment fragment) throws IOException {
+    return readRange(fragment.getStart(), (int) fragment.getSize());
+  }
+
+
+  /**
+   * Reads the specified range of the store-file, e.g. a chunk of consecutive records for the {@link StoreScanner}. In
+   * {@link ReadMode#MAPPED} the range is copied from the mapped regions, or is a read-only view of the store-file with
+   * zero-copy reads, unless background compaction is enabled, as the view must not be accessed after the compactor
+   * has truncated the store-file.
+   *
+   * @param position the position in the store-file
+   * @param size the number of bytes
+   * @return the bytes
+   * @throws IOException if an error occurs during reading
+   */
+  ByteBuffer readRange(final long position, final int size) throws IOException {
+    if (mappedRegions != null && !mappedCopies) {
+      return mappedRegions.slice(position, size);
+    }
+
+    final ByteBuffer bytes = ByteBuffer.allocate(size);
+
+    if (mappedRegions != null) {
+      return bytes.put(mappedRegions.slice(position, size)).flip();
+    }
+
+    read(bytes, position);
+    return bytes;
+  }
+
+
+  /**
+   * Reads bytes into the remaining space of the buffer from the specified position of the store-file until it is full
+   * or the end of the file has been reached. In {@link ReadMode#SHARED} the bytes are read with a positional read on a
+   * shared channel, the pool is only used if the shared channel has been closed by an interrupted reader.
+   *
+   * @param bytes the buffer
+   * @param position the position in the store-file
+   * @throws IOException if an error occurs during reading
+   */
+  private void read(final ByteBuffer bytes, final long position) throws IOException {
+    final int offset = bytes.position();
+
+    if (sharedChannels != null) {
+      try {
+        sharedChannels.read(bytes, position);
+        return;
+      } catch (final ClosedByInterruptException e) {
+        throw e;
+      } catch (final ClosedChannelException e) {
+        bytes.position(offset);
+      }
+    }
+
+    FileChannel storeReader = null;
+
+    try {
+      storeReader = readerPool.borrowObject();
+
+      while (bytes.hasRemaining() && storeReader.read(bytes, position + bytes.position() - offset) >= 0) {
+      }
+    } catch (final IOException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw new IOException(e.getMessage(), e);
+    } finally {
+      if (storeReader != null) {
+        try {
+          readerPool.returnObject(storeReader);
+        } catch (final Exception e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Closes this store.
+   */
+  public void close() {
+    try {
+      synchronized (this) {
+        if (asyncStore != null) {
+          asyncStore.close();
+          asyncStore = null;
+        }
+      }
+
+      // the compactor and the scrubber read through the pool or the shared channels
+      if (compactor != null) {
+        compactor.close();
+      }
+
+      if (scrubber != null) {
+        scrubber.close();
+      }
+
+      if (cache != null) {
+        cache.clear();
+      }
+
+      readerPool.close();
+
+      if (open) {
+        if (writeAheadLog != null) {
+          checkpoint();
+          writeAheadLog.close();
+          writeAheadLog = null;
+        }
+
+        allocationTable.close();
+
+        if (mappedRegions != null) {
+          mappedRegions.close();
+          mappedRegions = null;
+        }
+
+        if (sharedChannels != null) {
+          sharedChannels.close();
+          sharedChannels = null;
+        }
+
+        for (final FileChannel writer : writers) {
+          writer.close();
+        }
+
+        open = false;
+      }
+    } catch (final IOException e) {}
+  }
+
+
+  /**
+   * Trains a dictionary on the specified sample records and compresses all records written from now on with it. The
+   * dictionary is saved next to the store-file, as it is required to read the records. A dictionary can only be
+   * trained once per store.
+   *
+   * @param samples the sample records
+   * @return the size of the dictionary
+   * @throws IOException if the dictionary could not be saved
+   * @throws IllegalStateException if compression is disabled or the store has a dictionary already
+   */
+  public synchronized int trainDictionary(final List<ByteBuffer> samples) throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    if (codec == null) {
+      throw new IllegalStateException("Compression is not enabled for " + path);
+    }
+
+    if (codec.getDictionary() != null) {
+      throw new IllegalStateException("The dictionary of " + path + " has already been trained");
+    }
+
+    final byte[] dictionary = DictionaryTrainer.train(samples, options.getDictionarySize());
+    final Path temp = getDictionaryPath().resolveSibling(getDictionaryPath().getFileName() + ".tmp");
+
+    // the dictionary must be durable before the first record uses it
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      write(channel, ByteBuffer.wrap(dictionary), 0L);
+      channel.force(true);
+    }
+
+    Files.move(temp, getDictionaryPath(), StandardCopyOption.ATOMIC_MOVE);
+    codec.setDictionary(dictionary);
+    Store.LOG.info("Trained a dictionary of " + dictionary.length + " bytes for " + path + " on " + samples.size() + " samples");
+
+    return dictionary.length;
+  }
+
+
+  /**
+   * Gets the {@link IAllocationTable}.
+   *
+   * @return the {@link IAllocationTable}
+   */
+  public IAllocationTable getAllocationTable() {
+    return allocationTable;
+  }
+
+
+  /**
+   * Gets the {@link Compactor} of the opened store.
+   *
+   * @return the {@link Compactor} or null if the store has not been opened yet
+   */
+  public Compactor getCompactor() {
+    return compactor;
+  }
+
+
+  /**
+   * Gets the {@link AsyncStore} for asynchronous access to this store. The store is opened if required.
+   *
+   * @return the {@link AsyncStore}
+   * @throws IOException if an error occurs during opening
+   */
+  public synchronized AsyncStore getAsyncStore() throws IOException {
+    if (!isOpen()) {
+      open();
+    }
+
+    if (asyncStore == null) {
+      asyncStore = new AsyncStore(this, options.getAsyncThreads(), options.getMaxInFlight());
+    }
+
+    return asyncStore;
+  }
+
+
+  /**
+   * Gets the {@link Scrubber} of the opened store.
+   *
+   * @return the {@link Scrubber} or null if the store has not been opened yet
+   */
+  public Scrubber getScrubber() {
+    return scrubber;
+  }
+
+
+  /**
+   * Gets the {@link RecordCache} of the opened store.
+   *
+   * @return the {@link RecordCache} or null if the cache is disabled or the store has not been opened yet
+   */
+  public RecordCache getCache() {
+    return cache;
+  }
+
+
+  /**
+   * Gets the path to the store-file.
+   *
+   * @return the path
+   */
+  public Path getPath() {
+    return path;
+  }
+
+
+  /**
+   * Gets the path to the persisted {@link IAllocationTable}.
+   *
+   * @return the path
+   */
+  public Path getTablePath() {
+    return path.resolveSibling(path.getFileName() + ".table");
+  }
+
+
+  /**
+   * Gets the path to the dictionary of the compressed records.
+   *
+   * @return the path
+   */
+  public Path getDictionaryPath() {
+    return path.resolveSibling(path.getFileName() + ".dict");
+  }
+
+
+  /**
+   * Gets the path to the {@link WriteAheadLog}.
+   *
+   * @return the path
+   */
+  public Path getWalPath() {
+    return path.resolveSibling(path.getFileName() + ".wal");
+  }
+
+
+  /**
+   * Gets the {@link StoreOptions}.
+   *
+   * @return the {@link StoreOptions}
+   */
+  public StoreOptions getOptions() {
+    return options;
   }
 
 
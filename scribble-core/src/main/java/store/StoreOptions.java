@@ -0,0 +1,732 @@
+package store;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.enterprise.inject.Vetoed;
+
+/**
+ * The options to configure a {@link Store}.
+ */
+@Vetoed
+public class StoreOptions {
+  /** The default size of a memory-mapped region (256MB). */
+  public static final int DEFAULT_REGION_SIZE = 256 * 1024 * 1024;
+  private ReadMode readMode = ReadMode.POOLED;
+  private AllocationMode allocationMode = AllocationMode.HEAP;
+  private int regionSize = StoreOptions.DEFAULT_REGION_SIZE;
+  private boolean zeroCopyReads = false;
+  private int writeChannels = 4;
+  private int readChannels = Runtime.getRuntime().availableProcessors();
+  private boolean writeAheadLog = true;
+  private FsyncPolicy fsyncPolicy = FsyncPolicy.COMMIT;
+  private long fsyncInterval = 1000L;
+  private long checkpointSize = 64L * 1024 * 1024;
+  private boolean compaction = false;
+  private long compactionInterval = 60_000L;
+  private double compactionThreshold = 0.25;
+  private long compactionRate = 32L * 1024 * 1024;
+  private int asyncThreads = 4;
+  private int maxInFlight = 4096;
+  private Compression compression = Compression.NONE;
+  private int dictionarySize = 32 * 1024;
+  private boolean checksums = false;
+  private boolean scrubbing = true;
+  private long scrubInterval = 6L * 60 * 60 * 1000;
+  private long scrubRate = 8L * 1024 * 1024;
+  private long cacheSize = 0L;
+  private int scanChunkSize = 4 * 1024 * 1024;
+  private long segmentSize = 1024L * 1024 * 1024;
+  private int activeSegments = 1;
+  private List<Path> segmentDirectories = Collections.emptyList();
+
+
+  /**
+   * Gets the {@link ReadMode}.
+   *
+   * @return the {@link ReadMode}
+   */
+  public ReadMode getReadMode() {
+    return readMode;
+  }
+
+
+  /**
+   * Sets the {@link ReadMode}.
+   *
+   * @param readMode the {@link ReadMode}
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setReadMode(final ReadMode readMode) {
+    this.readMode = readMode;
+    return this;
+  }
+
+
+  /**
+   * Gets the {@link AllocationMode}.
+   *
+   * @return the {@link AllocationMode}
+   */
+  public AllocationMode getAllocationMode() {
+    return allocationMode;
+  }
+
+
+  /**
+   * Sets the {@link AllocationMode}.
+   *
+   * @param allocationMode the {@link AllocationMode}
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setAllocationMode(final AllocationMode allocationMode) {
+    this.allocationMode = allocationMode;
+    return this;
+  }
+
+
+  /**
+   * Gets the size of a memory-mapped region used in {@link ReadMode#MAPPED}.
+   *
+   * @return the region size in bytes
+   */
+  public int getRegionSize() {
+    return regionSize;
+  }
+
+
+  /**
+   * Sets the size of a memory-mapped region used in {@link ReadMode#MAPPED}.
+   *
+   * @param regionSize the region size in bytes
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setRegionSize(final int regionSize) {
+    if (regionSize <= 0) {
+      throw new IllegalArgumentException("The region size must be greater than 0!");
+    }
+
+    this.regionSize = regionSize;
+    return this;
+  }
+
+
+  /**
+   * Gets the flag if reads in {@link ReadMode#MAPPED} return views of the memory-mapped regions instead of copies.
+   *
+   * @return true if reads are zero-copy
+   */
+  public boolean isZeroCopyReads() {
+    return zeroCopyReads;
+  }
+
+
+  /**
+   * Sets the flag if reads in {@link ReadMode#MAPPED} return read-only views of the memory-mapped regions instead of
+   * copies. A view reflects later writes to the same space, so it must not be accessed after the record has been
+   * written, removed or its space has been reused. Zero-copy reads are disabled by default and have no effect with
+   * background compaction.
+   *
+   * @param zeroCopyReads true to return views of the store-file
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setZeroCopyReads(final boolean zeroCopyReads) {
+    this.zeroCopyReads = zeroCopyReads;
+    return this;
+  }
+
+
+  /**
+   * Gets the number of shared channels used for concurrent reads in {@link ReadMode#SHARED}.
+   *
+   * @return the number of read channels
+   */
+  public int getReadChannels() {
+    return readChannels;
+  }
+
+
+  /**
+   * Sets the number of shared channels used for concurrent reads in {@link ReadMode#SHARED}.
+   *
+   * @param readChannels the number of read channels
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setReadChannels(final int readChannels) {
+    if (readChannels <= 0) {
+      throw new IllegalArgumentException("The number of read channels must be greater than 0!");
+    }
+
+    this.readChannels = readChannels;
+    return this;
+  }
+
+
+  /**
+   * Gets the number of channels used for concurrent writes.
+   *
+   * @return the number of write channels
+   */
+  public int getWriteChannels() {
+    return writeChannels;
+  }
+
+
+  /**
+   * Sets the number of channels used for concurrent writes.
+   *
+   * @param writeChannels the number of write channels
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setWriteChannels(final int writeChannels) {
+    if (writeChannels <= 0) {
+      throw new IllegalArgumentException("The number of write channels must be greater than 0!");
+    }
+
+    this.writeChannels = writeChannels;
+    return this;
+  }
+
+
+  /**
+   * Returns true if writes are logged to the {@link WriteAheadLog}.
+   *
+   * @return true if the write-ahead log is enabled
+   */
+  public boolean isWriteAheadLog() {
+    return writeAheadLog;
+  }
+
+
+  /**
+   * Sets the flag if writes are logged to the {@link WriteAheadLog}.
+   *
+   * @param writeAheadLog true to enable the write-ahead log
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setWriteAheadLog(final boolean writeAheadLog) {
+    this.writeAheadLog = writeAheadLog;
+    return this;
+  }
+
+
+  /**
+   * Gets the {@link FsyncPolicy} of the {@link WriteAheadLog}.
+   *
+   * @return the {@link FsyncPolicy}
+   */
+  public FsyncPolicy getFsyncPolicy() {
+    return fsyncPolicy;
+  }
+
+
+  /**
+   * Sets the {@link FsyncPolicy} of the {@link WriteAheadLog}.
+   *
+   * @param fsyncPolicy the {@link FsyncPolicy}
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setFsyncPolicy(final FsyncPolicy fsyncPolicy) {
+    this.fsyncPolicy = fsyncPolicy;
+    return this;
+  }
+
+
+  /**
+   * Gets the interval in milliseconds in which the {@link WriteAheadLog} is forced with {@link FsyncPolicy#INTERVAL}.
+   *
+   * @return the interval in milliseconds
+   */
+  public long getFsyncInterval() {
+    return fsyncInterval;
+  }
+
+
+  /**
+   * Sets the interval in milliseconds in which the {@link WriteAheadLog} is forced with {@link FsyncPolicy#INTERVAL}.
+   *
+   * @param fsyncInterval the interval in milliseconds
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setFsyncInterval(final long fsyncInterval) {
+    if (fsyncInterval <= 0) {
+      throw new IllegalArgumentException("The fsync interval must be greater than 0!");
+    }
+
+    this.fsyncInterval = fsyncInterval;
+    return this;
+  }
+
+
+  /**
+   * Gets the size of the {@link WriteAheadLog} after which the store-file is forced and the log is discarded.
+   *
+   * @return the checkpoint size in bytes
+   */
+  public long getCheckpointSize() {
+    return checkpointSize;
+  }
+
+
+  /**
+   * Sets the size of the {@link WriteAheadLog} after which the store-file is forced and the log is discarded.
+   *
+   * @param checkpointSize the checkpoint size in bytes
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setCheckpointSize(final long checkpointSize) {
+    this.checkpointSize = checkpointSize;
+    return this;
+  }
+
+
+  /**
+   * Returns true if the {@link Compactor} runs in the background.
+   *
+   * @return true if background compaction is enabled
+   */
+  public boolean isCompaction() {
+    return compaction;
+  }
+
+
+  /**
+   * Sets the flag if the {@link Compactor} runs in the background. Background compaction is disabled by default, as it
+   * competes with the foreground reads and writes for I/O.
+   *
+   * @param compaction true to enable background compaction
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setCompaction(final boolean compaction) {
+    this.compaction = compaction;
+    return this;
+  }
+
+
+  /**
+   * Gets the interval in milliseconds in which the {@link Compactor} checks if the store-file needs to be compacted.
+   *
+   * @return the interval in milliseconds
+   */
+  public long getCompactionInterval() {
+    return compactionInterval;
+  }
+
+
+  /**
+   * Sets the interval in milliseconds in which the {@link Compactor} checks if the store-file needs to be compacted.
+   *
+   * @param compactionInterval the interval in milliseconds
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setCompactionInterval(final long compactionInterval) {
+    if (compactionInterval <= 0) {
+      throw new IllegalArgumentException("The compaction interval must be greater than 0!");
+    }
+
+    this.compactionInterval = compactionInterval;
+    return this;
+  }
+
+
+  /**
+   * Gets the ratio of free space to the size of the store-file above which the {@link Compactor} starts a pass.
+   *
+   * @return the compaction threshold between 0 and 1
+   */
+  public double getCompactionThreshold() {
+    return compactionThreshold;
+  }
+
+
+  /**
+   * Sets the ratio of free space to the size of the store-file above which the {@link Compactor} starts a pass.
+   *
+   * @param compactionThreshold the compaction threshold between 0 and 1
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setCompactionThreshold(final double compactionThreshold) {
+    if (compactionThreshold < 0.0 || compactionThreshold > 1.0) {
+      throw new IllegalArgumentException("The compaction threshold must be between 0 and 1!");
+    }
+
+    this.compactionThreshold = compactionThreshold;
+    return this;
+  }
+
+
+  /**
+   * Gets the I/O budget of the {@link Compactor} in bytes per second.
+   *
+   * @return the bytes per second
+   */
+  public long getCompactionRate() {
+    return compactionRate;
+  }
+
+
+  /**
+   * Sets the I/O budget of the {@link Compactor} in bytes per second.
+   *
+   * @param compactionRate the bytes per second
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setCompactionRate(final long compactionRate) {
+    if (compactionRate <= 0) {
+      throw new IllegalArgumentException("The compaction rate must be greater than 0!");
+    }
+
+    this.compactionRate = compactionRate;
+    return this;
+  }
+
+
+  /**
+   * Gets the number of threads performing the I/O of the {@link AsyncStore}.
+   *
+   * @return the number of threads
+   */
+  public int getAsyncThreads() {
+    return asyncThreads;
+  }
+
+
+  /**
+   * Sets the number of threads performing the I/O of the {@link AsyncStore}.
+   *
+   * @param asyncThreads the number of threads
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setAsyncThreads(final int asyncThreads) {
+    if (asyncThreads <= 0) {
+      throw new IllegalArgumentException("The number of async threads must be greater than 0!");
+    }
+
+    this.asyncThreads = asyncThreads;
+    return this;
+  }
+
+
+  /**
+   * Gets the maximum number of operations of the {@link AsyncStore} in flight before callers are blocked.
+   *
+   * @return the maximum number of operations in flight
+   */
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+
+  /**
+   * Sets the maximum number of operations of the {@link AsyncStore} in flight before callers are blocked.
+   *
+   * @param maxInFlight the maximum number of operations in flight
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setMaxInFlight(final int maxInFlight) {
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("The maximum number of operations in flight must be greater than 0!");
+    }
+
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
+
+  /**
+   * Gets the {@link Compression} of new records.
+   *
+   * @return the {@link Compression}
+   */
+  public Compression getCompression() {
+    return compression;
+  }
+
+
+  /**
+   * Sets the {@link Compression} of new records. A store-file written without compression can not be read with
+   * compression and vice versa, as only compressed records have a header.
+   *
+   * @param compression the {@link Compression}
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setCompression(final Compression compression) {
+    this.compression = compression;
+    return this;
+  }
+
+
+  /**
+   * Gets the maximum size of a dictionary trained with {@link Store#trainDictionary(java.util.List)}.
+   *
+   * @return the dictionary size in bytes
+   */
+  public int getDictionarySize() {
+    return dictionarySize;
+  }
+
+
+  /**
+   * Sets the maximum size of a dictionary trained with {@link Store#trainDictionary(java.util.List)}. Deflate uses at
+   * most the last 32KB of a dictionary.
+   *
+   * @param dictionarySize the dictionary size in bytes up to 64KB
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setDictionarySize(final int dictionarySize) {
+    if (dictionarySize <= 0 || dictionarySize > 64 * 1024) {
+      throw new IllegalArgumentException("The dictionary size must be between 1 and 64KB!");
+    }
+
+    this.dictionarySize = dictionarySize;
+    return this;
+  }
+
+
+  /**
+   * Returns true if a CRC32C checksum is appended to each record and verified on read.
+   *
+   * @return true if checksums are enabled
+   */
+  public boolean isChecksums() {
+    return checksums;
+  }
+
+
+  /**
+   * Sets the flag if a CRC32C checksum is appended to each record and verified on read. A store-file must always be
+   * opened with the same setting, as the checksum is part of the records.
+   *
+   * @param checksums true to enable checksums
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setChecksums(final boolean checksums) {
+    this.checksums = checksums;
+    return this;
+  }
+
+
+  /**
+   * Returns true if the {@link Scrubber} verifies the checksums of all records in the background.
+   *
+   * @return true if background scrubbing is enabled
+   */
+  public boolean isScrubbing() {
+    return scrubbing;
+  }
+
+
+  /**
+   * Sets the flag if the {@link Scrubber} verifies the checksums of all records in the background. Scrubbing requires
+   * checksums.
+   *
+   * @param scrubbing true to enable background scrubbing
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setScrubbing(final boolean scrubbing) {
+    this.scrubbing = scrubbing;
+    return this;
+  }
+
+
+  /**
+   * Gets the interval in milliseconds between two passes of the {@link Scrubber}.
+   *
+   * @return the interval in milliseconds
+   */
+  public long getScrubInterval() {
+    return scrubInterval;
+  }
+
+
+  /**
+   * Sets the interval in milliseconds between two passes of the {@link Scrubber}.
+   *
+   * @param scrubInterval the interval in milliseconds
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setScrubInterval(final long scrubInterval) {
+    if (scrubInterval <= 0) {
+      throw new IllegalArgumentException("The scrub interval must be greater than 0!");
+    }
+
+    this.scrubInterval = scrubInterval;
+    return this;
+  }
+
+
+  /**
+   * Gets the I/O budget of the {@link Scrubber} in bytes per second.
+   *
+   * @return the bytes per second
+   */
+  public long getScrubRate() {
+    return scrubRate;
+  }
+
+
+  /**
+   * Sets the I/O budget of the {@link Scrubber} in bytes per second.
+   *
+   * @param scrubRate the bytes per second
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setScrubRate(final long scrubRate) {
+    if (scrubRate <= 0) {
+      throw new IllegalArgumentException("The scrub rate must be greater than 0!");
+    }
+
+    this.scrubRate = scrubRate;
+    return this;
+  }
+
+
+  /**
+   * Gets the size of the {@link RecordCache} for hot records.
+   *
+   * @return the size in bytes, 0 if the cache is disabled
+   */
+  public long getCacheSize() {
+    return cacheSize;
+  }
+
+
+  /**
+   * Sets the size of the {@link RecordCache} for hot records. The cached data is held off-heap, so the maximum direct
+   * memory of the JVM must be large enough.
+   *
+   * @param cacheSize the size in bytes, 0 to disable the cache
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setCacheSize(final long cacheSize) {
+    if (cacheSize < 0) {
+      throw new IllegalArgumentException("The cache size must not be negative!");
+    }
+
+    this.cacheSize = cacheSize;
+    return this;
+  }
+
+
+  /**
+   * Gets the size of the chunks in which a {@link StoreScanner} reads consecutive records.
+   *
+   * @return the chunk size in bytes
+   */
+  public int getScanChunkSize() {
+    return scanChunkSize;
+  }
+
+
+  /**
+   * Sets the size of the chunks in which a {@link StoreScanner} reads consecutive records. Records larger than a chunk
+   * are read on their own.
+   *
+   * @param scanChunkSize the chunk size in bytes
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setScanChunkSize(final int scanChunkSize) {
+    if (scanChunkSize <= 0) {
+      throw new IllegalArgumentException("The scan chunk size must be greater than 0!");
+    }
+
+    this.scanChunkSize = scanChunkSize;
+    return this;
+  }
+
+
+  /**
+   * Gets the size of a segment-file of a {@link SegmentedStore} after which new records are written to a new segment.
+   *
+   * @return the segment size in bytes
+   */
+  public long getSegmentSize() {
+    return segmentSize;
+  }
+
+
+  /**
+   * Sets the size of a segment-file of a {@link SegmentedStore} after which new records are written to a new segment.
+   * Updates of existing records stay in their segment, so a segment may grow beyond this size.
+   *
+   * @param segmentSize the segment size in bytes
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setSegmentSize(final long segmentSize) {
+    if (segmentSize <= 0) {
+      throw new IllegalArgumentException("The segment size must be greater than 0!");
+    }
+
+    this.segmentSize = segmentSize;
+    return this;
+  }
+
+
+  /**
+   * Gets the number of segments of a {@link SegmentedStore} new records are spread across.
+   *
+   * @return the number of active segments
+   */
+  public int getActiveSegments() {
+    return activeSegments;
+  }
+
+
+  /**
+   * Sets the number of segments of a {@link SegmentedStore} new records are spread across.
+   *
+   * @param activeSegments the number of active segments
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setActiveSegments(final int activeSegments) {
+    if (activeSegments <= 0) {
+      throw new IllegalArgumentException("The number of active segments must be greater than 0!");
+    }
+
+    this.activeSegments = activeSegments;
+    return this;
+  }
+
+
+  /**
+   * Gets the directories the segment-files of a {@link SegmentedStore} are spread across.
+   *
+   * @return the directories, empty if the segment-files are placed next to the store path
+   */
+  public List<Path> getSegmentDirectories() {
+    return segmentDirectories;
+  }
+
+
+  /**
+   * Sets the directories the segment-files of a {@link SegmentedStore} are spread across, e.g. one per disk. The
+   * directories must not change once segments have been written.
+   *
+   * @param segmentDirectories the directories, empty to place the segment-files next to the store path
+   * @return this {@link StoreOptions}
+   */
+  public StoreOptions setSegmentDirectories(final List<Path> segmentDirectories) {
+    this.segmentDirectories = Collections.unmodifiableList(new ArrayList<>(segmentDirectories));
+    return this;
+  }
+
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "StoreOptions [readMode=" + readMode + ", allocationMode=" + allocationMode + ", regionSize=" + regionSize + ", zeroCopyReads=" + zeroCopyReads
+        + ", readChannels=" + readChannels + ", writeChannels=" + writeChannels + ", writeAheadLog=" + writeAheadLog + ", fsyncPolicy=" + fsyncPolicy + ", fsyncInterval=" + fsyncInterval
+        + ", checkpointSize=" + checkpointSize + ", compaction=" + compaction + ", compactionInterval=" + compactionInterval
+        + ", compactionThreshold=" + compactionThreshold + ", compactionRate=" + compactionRate
+        + ", asyncThreads=" + asyncThreads + ", maxInFlight=" + maxInFlight + ", compression=" + compression
+        + ", dictionarySize=" + dictionarySize + ", checksums=" + checksums + ", scrubbing=" + scrubbing + ", scrubInterval=" + scrubInterval
+        + ", scrubRate=" + scrubRate + ", cacheSize=" + cacheSize + ", scanChunkSize=" + scanChunkSize + ", segmentSize=" + segmentSize
+        + ", activeSegments=" + activeSegments + ", segmentDirectories=" + segmentDirectories + "]";
+  }
+}
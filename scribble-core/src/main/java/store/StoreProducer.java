@@ -2,6 +2,8 @@ package store;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.enterprise.inject.Default;
 import javax.enterprise.inject.Produces;
@@ -19,4 +21,143 @@ public class StoreProducer {
 
     return Paths.get("store.bin");
   }
+
+
+  @Produces
+  public StoreOptions produceStoreOptions() {
+    final StoreOptions options = new StoreOptions();
+    final String readMode = System.getProperty("graph.store.readmode");
+    final String allocationMode = System.getProperty("graph.store.allocationmode");
+    final String regionSize = System.getProperty("graph.store.regionsize");
+    final String readChannels = System.getProperty("graph.store.readchannels");
+    final String writeChannels = System.getProperty("graph.store.writechannels");
+    final String writeAheadLog = System.getProperty("graph.store.wal");
+    final String fsyncPolicy = System.getProperty("graph.store.fsync");
+    final String fsyncInterval = System.getProperty("graph.store.fsyncinterval");
+    final String compaction = System.getProperty("graph.store.compaction");
+    final String compactionInterval = System.getProperty("graph.store.compactioninterval");
+    final String compactionThreshold = System.getProperty("graph.store.compactionthreshold");
+    final String compactionRate = System.getProperty("graph.store.compactionrate");
+    final String asyncThreads = System.getProperty("graph.store.asyncthreads");
+    final String maxInFlight = System.getProperty("graph.store.maxinflight");
+    final String compression = System.getProperty("graph.store.compression");
+    final String dictionarySize = System.getProperty("graph.store.dictionarysize");
+    final String checksums = System.getProperty("graph.store.checksums");
+    final String scrubbing = System.getProperty("graph.store.scrubbing");
+    final String scrubInterval = System.getProperty("graph.store.scrubinterval");
+    final String scrubRate = System.getProperty("graph.store.scrubrate");
+    final String cacheSize = System.getProperty("graph.store.cachesize");
+    final String scanChunkSize = System.getProperty("graph.store.scanchunksize");
+    final String segmentSize = System.getProperty("graph.store.segmentsize");
+    final String activeSegments = System.getProperty("graph.store.activesegments");
+    final String segmentDirectories = System.getProperty("graph.store.segmentdirs");
+
+    if (readMode != null) {
+      options.setReadMode(ReadMode.valueOf(readMode.toUpperCase()));
+    }
+
+    if (allocationMode != null) {
+      options.setAllocationMode(AllocationMode.valueOf(allocationMode.toUpperCase()));
+    }
+
+    if (regionSize != null) {
+      options.setRegionSize(Integer.parseInt(regionSize));
+    }
+
+    if (readChannels != null) {
+      options.setReadChannels(Integer.parseInt(readChannels));
+    }
+
+    if (writeChannels != null) {
+      options.setWriteChannels(Integer.parseInt(writeChannels));
+    }
+
+    if (writeAheadLog != null) {
+      options.setWriteAheadLog(Boolean.parseBoolean(writeAheadLog));
+    }
+
+    if (fsyncPolicy != null) {
+      options.setFsyncPolicy(FsyncPolicy.valueOf(fsyncPolicy.toUpperCase()));
+    }
+
+    if (fsyncInterval != null) {
+      options.setFsyncInterval(Long.parseLong(fsyncInterval));
+    }
+
+    if (compaction != null) {
+      options.setCompaction(Boolean.parseBoolean(compaction));
+    }
+
+    if (compactionInterval != null) {
+      options.setCompactionInterval(Long.parseLong(compactionInterval));
+    }
+
+    if (compactionThreshold != null) {
+      options.setCompactionThreshold(Double.parseDouble(compactionThreshold));
+    }
+
+    if (compactionRate != null) {
+      options.setCompactionRate(Long.parseLong(compactionRate));
+    }
+
+    if (asyncThreads != null) {
+      options.setAsyncThreads(Integer.parseInt(asyncThreads));
+    }
+
+    if (maxInFlight != null) {
+      options.setMaxInFlight(Integer.parseInt(maxInFlight));
+    }
+
+    if (compression != null) {
+      options.setCompression(Compression.valueOf(compression.toUpperCase()));
+    }
+
+    if (dictionarySize != null) {
+      options.setDictionarySize(Integer.parseInt(dictionarySize));
+    }
+
+    if (checksums != null) {
+      options.setChecksums(Boolean.parseBoolean(checksums));
+    }
+
+    if (scrubbing != null) {
+      options.setScrubbing(Boolean.parseBoolean(scrubbing));
+    }
+
+    if (scrubInterval != null) {
+      options.setScrubInterval(Long.parseLong(scrubInterval));
+    }
+
+    if (scrubRate != null) {
+      options.setScrubRate(Long.parseLong(scrubRate));
+    }
+
+    if (cacheSize != null) {
+      options.setCacheSize(Long.parseLong(cacheSize));
+    }
+
+    if (scanChunkSize != null) {
+      options.setScanChunkSize(Integer.parseInt(scanChunkSize));
+    }
+
+    if (segmentSize != null) {
+      options.setSegmentSize(Long.parseLong(segmentSize));
+    }
+
+    if (activeSegments != null) {
+      options.setActiveSegments(Integer.parseInt(activeSegments));
+    }
+
+    if (segmentDirectories != null) {
+      final List<Path> directories = new ArrayList<>();
+
+      for (final String directory : segmentDirectories.split(",")) {
+        directories.add(Paths.get(directory.trim()));
+      }
+
+      options.setSegmentDirectories(directories);
+    }
+
+    return options;
+  }
 }
@@ -0,0 +1,150 @@
+package store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import store.allocation.Fragment;
+
+/**
+ * A {@link Spliterator} over the records of a {@link Store} in the order of their position in the store-file. Instead
+ * of reading each record on its own, consecutive records are read together in chunks of up to the chunk size and
+ * yielded as slices of the chunk, so that a full scan issues few large sequential reads which the operating system
+ * can read ahead. The gaps between the records of a chunk are read as well.
+ * <p>
+ * The scanner splits by ranges of the store-file, so that parallel readers still read sequentially within their
+ * range. The fragments must not be reused while the scanner is in use, which is guaranteed by a {@link StoreSnapshot}.
+ */
+class StoreScanner implements Spliterator<Map.Entry<String, ByteBuffer>> {
+  private final Store store;
+  private final List<Fragment> fragments;
+  private final int chunkSize;
+  private final int end;
+  private int index;
+  private ByteBuffer chunk;
+  private long chunkStart;
+  private int chunkEnd;
+
+
+  /**
+   * Constructor.
+   *
+   * @param store the {@link Store}
+   * @param fragments the {@link Fragment}s of the records in offset order
+   * @param chunkSize the maximum size of a chunk
+   */
+  StoreScanner(final Store store, final List<Fragment> fragments, final int chunkSize) {
+    this(store, fragments, chunkSize, 0, fragments.size());
+  }
+
+
+  private StoreScanner(final Store store, final List<Fragment> fragments, final int chunkSize, final int index, final int end) {
+    this.store = store;
+    this.fragments = fragments;
+    this.chunkSize = chunkSize;
+    this.index = index;
+    this.end = end;
+  }
+
+
+  @Override
+  public boolean tryAdvance(final Consumer<? super Map.Entry<String, ByteBuffer>> action) {
+    if (index >= end) {
+      return false;
+    }
+
+    final Fragment fragment = fragments.get(index);
+
+    try {
+      if (index >= chunkEnd) {
+        readChunk();
+      }
+
+      final int offset = (int) (fragment.getStart() - chunkStart);
+      final ByteBuffer record = chunk.duplicate().clear().position(offset).limit(offset + (int) fragment.getSize()).slice();
+      index++;
+
+      if (index >= chunkEnd) {
+        chunk = null;
+      }
+
+      action.accept(new AbstractMap.SimpleImmutableEntry<>(fragment.getId(), store.decode(fragment.getId(), record)));
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Reads the next chunk starting with the current fragment. A chunk holds at least one fragment.
+   *
+   * @throws IOException if an error occurs during reading
+   */
+  private void readChunk() throws IOException {
+    chunkStart = fragments.get(index).getStart();
+    chunkEnd = index + 1;
+
+    while (chunkEnd < end && fragments.get(chunkEnd).getEnd() + 1 - chunkStart <= chunkSize) {
+      chunkEnd++;
+    }
+
+    chunk = store.readRange(chunkStart, (int) (fragments.get(chunkEnd - 1).getEnd() + 1 - chunkStart));
+  }
+
+
+  /**
+   * Splits off the first half of the remaining fragments by their range of the store-file.
+   */
+  @Override
+  public Spliterator<Map.Entry<String, ByteBuffer>> trySplit() {
+    // the fragments of the current chunk are not split off, so that the chunk is not read twice
+    final int from = Math.max(index, chunkEnd);
+
+    if (end - from < 2) {
+      return null;
+    }
+
+    final long middle = (fragments.get(from).getStart() + fragments.get(end - 1).getEnd()) / 2;
+    int low = from + 1;
+    int high = end - 1;
+
+    // the first fragment starting after the middle of the range
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+
+      if (fragments.get(mid).getStart() <= middle) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    final StoreScanner prefix = new StoreScanner(store, fragments, chunkSize, index, low);
+    prefix.chunk = chunk;
+    prefix.chunkStart = chunkStart;
+    prefix.chunkEnd = chunkEnd;
+    index = low;
+    chunk = null;
+    chunkEnd = 0;
+    return prefix;
+  }
+
+
+  @Override
+  public long estimateSize() {
+    return end - index;
+  }
+
+
+  @Override
+  public int characteristics() {
+    return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.SUBSIZED;
+  }
+}
@@ -0,0 +1,106 @@
+package store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import store.allocation.AllocationView;
+import store.allocation.Fragment;
+
+/**
+ * A consistent point-in-time read view of a {@link Store}, created with {@link Store#snapshot()}. The snapshot reads
+ * the records as they were when it was taken while writers keep updating the store: the space of records updated,
+ * relocated or freed afterwards is not reused until the snapshot is closed. A snapshot should therefore be closed as
+ * soon as e.g. a backup has been read, as the store-file cannot shrink while it is open.
+ */
+public class StoreSnapshot implements Closeable {
+  private final Store store;
+  private final AllocationView view;
+
+
+  /**
+   * Constructor.
+   *
+   * @param store the {@link Store}
+   * @param view the pinned {@link AllocationView} of the store
+   */
+  StoreSnapshot(final Store store, final AllocationView view) {
+    this.store = store;
+    this.view = view;
+  }
+
+
+  /**
+   * Reads the data for the specified id as it was when the snapshot was taken. The {@link RecordCache} is bypassed.
+   *
+   * @param id the id
+   * @return the data
+   * @throws IOException if the id was not allocated or an error occurs during reading
+   */
+  public ByteBuffer read(final String id) throws IOException {
+    final Fragment fragment = view.findById(id);
+
+    if (fragment == null) {
+      throw new IOException("Error: Item for id='" + id + "' not found!");
+    }
+
+    return store.read(id, fragment);
+  }
+
+
+  /**
+   * Gets the ids of the snapshot in the order of their position in the store-file, which is the cheapest order to read
+   * them in.
+   *
+   * @return the ids
+   * @throws IOException if the ids could not be listed
+   */
+  public List<String> getIds() throws IOException {
+    final List<Fragment> fragments = view.getFragments();
+    final List<String> ids = new ArrayList<>(fragments.size());
+
+    for (final Fragment fragment : fragments) {
+      ids.add(fragment.getId());
+    }
+
+    return ids;
+  }
+
+
+  /**
+   * Streams all records of the snapshot in the order of their position in the store-file. The records are read in large
+   * sequential chunks of {@link StoreOptions#getScanChunkSize()} bytes instead of one read per record. A parallel
+   * stream is split by ranges of the store-file.
+   *
+   * @param parallel true for a parallel stream
+   * @return the stream of ids and data
+   * @throws IOException if the records could not be listed
+   */
+  public Stream<Map.Entry<String, ByteBuffer>> stream(final boolean parallel) throws IOException {
+    return StreamSupport.stream(new StoreScanner(store, view.getFragments(), store.getOptions().getScanChunkSize()), parallel);
+  }
+
+
+  /**
+   * Returns the flag if the snapshot has been closed.
+   *
+   * @return true if the snapshot has been closed
+   */
+  public boolean isClosed() {
+    return view.isClosed();
+  }
+
+
+  /**
+   * Releases the snapshot, so that the space it has retained can be reused.
+   */
+  @Override
+  public void close() {
+    view.close();
+  }
+}
@@ -0,0 +1,349 @@
+package store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Redo log of the data written to the {@link Store}. Every write is appended to the log before the store-file is
+ * written and can be replayed after a crash until the next checkpoint has forced the store-file.
+ * <p>
+ * Records are <code>[length:int][crc:int][start:long][idLength:short][id:bytes][data:bytes]</code>. Forcing the log is
+ * done with group commit: a writer waiting for its record to become durable forces all records appended so far, so
+ * concurrent writers share a single force.
+ */
+public class WriteAheadLog implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+  private static final int RECORD_HEADER_SIZE = 8;
+  private final FileChannel channel;
+  private final FsyncPolicy policy;
+  private final Syncable beforeForce;
+  private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+  private final Object appendLock = new Object();
+  private final Object forceLock = new Object();
+  private final CRC32C crc = new CRC32C();
+  private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + 10 + Short.MAX_VALUE);
+  private ScheduledExecutorService flusher;
+  private volatile long written;
+  private volatile long durable;
+
+  /**
+   * Something which needs to be forced before the log.
+   */
+  @FunctionalInterface
+  public interface Syncable {
+    void force() throws IOException;
+  }
+
+  /**
+   * Receives the records during the replay of the log.
+   */
+  @FunctionalInterface
+  public interface RecordHandler {
+    void handle(String id, long start, ByteBuffer bytes) throws IOException;
+  }
+
+
+  /**
+   * Opens the log.
+   *
+   * @param path the path of the log
+   * @param policy the {@link FsyncPolicy}
+   * @param interval the interval in milliseconds for {@link FsyncPolicy#INTERVAL}
+   * @param beforeForce forced before the log is forced, e.g. the allocation journal
+   * @throws IOException if the log could not be opened
+   */
+  public WriteAheadLog(final Path path, final FsyncPolicy policy, final long interval, final Syncable beforeForce) throws IOException {
+    this.policy = policy;
+    this.beforeForce = beforeForce;
+    channel = FileChannel.open(path, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    written = channel.size();
+    durable = written;
+
+    if (policy == FsyncPolicy.INTERVAL) {
+      flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "wal-flusher-" + path.getFileName());
+        thread.setDaemon(true);
+        return thread;
+      });
+      flusher.scheduleWithFixedDelay(() -> {
+        try {
+          sync(written);
+        } catch (final IOException e) {
+          WriteAheadLog.LOG.error("Error forcing the write-ahead log " + path, e);
+        }
+      }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+
+  /**
+   * Replays all valid records in the log. A torn record at the end stops the replay.
+   *
+   * @param handler the {@link RecordHandler}
+   * @return the number of replayed records
+   * @throws IOException if the log could not be read
+   */
+  public int replay(final RecordHandler handler) throws IOException {
+    final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    final long size = channel.size();
+    long position = 0;
+    int records = 0;
+
+    while (position + RECORD_HEADER_SIZE <= size) {
+      recordHeader.clear();
+      channel.read(recordHeader, position);
+      final int length = recordHeader.getInt(0);
+      final int checksum = recordHeader.getInt(4);
+
+      if (length < 10 || position + RECORD_HEADER_SIZE + length > size) {
+        break;
+      }
+
+      final ByteBuffer record = ByteBuffer.allocate(length);
+
+      while (record.hasRemaining() && channel.read(record, position + RECORD_HEADER_SIZE + record.position()) > 0) {
+      }
+
+      crc.reset();
+      crc.update(record.array(), 0, length);
+
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+
+      record.flip();
+      final long start = record.getLong();
+      final byte[] id = new byte[record.getShort()];
+      record.get(id);
+      handler.handle(new String(id, StandardCharsets.UTF_8), start, record.slice());
+      position += RECORD_HEADER_SIZE + length;
+      records++;
+    }
+
+    if (position < size) {
+      WriteAheadLog.LOG.warn("Ignoring torn record at the end of the write-ahead log at position " + position);
+    }
+
+    return records;
+  }
+
+
+  /**
+   * Appends a record for the data written at the specified start. The caller must call {@link #done()} once the data
+   * has been written to the store-file.
+   *
+   * @param id the id
+   * @param start the start position in the store-file
+   * @param bytes the data
+   * @return the log sequence number to commit
+   * @throws IOException if the record could not be appended
+   */
+  public long append(final String id, final long start, final ByteBuffer bytes) throws IOException {
+    final byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer data = bytes.duplicate();
+    checkpointLock.readLock().lock();
+
+    try {
+      synchronized (appendLock) {
+        header.clear();
+        encode(header, idBytes, start, data);
+        return write(new ByteBuffer[] { header, data });
+      }
+    } catch (final IOException | RuntimeException e) {
+      checkpointLock.readLock().unlock();
+      throw e;
+    }
+  }
+
+
+  /**
+   * Appends the records for a batch of data with a single gathering write. The caller must call {@link #done()} once
+   * the data of all records has been written to the store-file.
+   *
+   * @param ids the ids
+   * @param starts the start positions in the store-file
+   * @param bytes the data
+   * @return the log sequence number to commit
+   * @throws IOException if the records could not be appended
+   */
+  public long appendAll(final String[] ids, final long[] starts, final ByteBuffer[] bytes) throws IOException {
+    final ByteBuffer[] buffers = new ByteBuffer[bytes.length * 2];
+    checkpointLock.readLock().lock();
+
+    try {
+      synchronized (appendLock) {
+        for (int i = 0; i < bytes.length; i++) {
+          final byte[] idBytes = ids[i].getBytes(StandardCharsets.UTF_8);
+          buffers[i * 2] = ByteBuffer.allocate(RECORD_HEADER_SIZE + 10 + idBytes.length);
+          buffers[i * 2 + 1] = bytes[i].duplicate();
+          encode(buffers[i * 2], idBytes, starts[i], buffers[i * 2 + 1]);
+        }
+
+        return write(buffers);
+      }
+    } catch (final IOException | RuntimeException e) {
+      checkpointLock.readLock().unlock();
+      throw e;
+    }
+  }
+
+
+  /**
+   * Encodes the header of a record into the specified buffer and flips it.
+   *
+   * @param target the buffer for the header
+   * @param idBytes the encoded id
+   * @param start the start position in the store-file
+   * @param data the data of the record
+   */
+  private void encode(final ByteBuffer target, final byte[] idBytes, final long start, final ByteBuffer data) {
+    target.position(RECORD_HEADER_SIZE);
+    target.putLong(start).putShort((short) idBytes.length).put(idBytes);
+    crc.reset();
+    crc.update(target.array(), RECORD_HEADER_SIZE, target.position() - RECORD_HEADER_SIZE);
+    crc.update(data.duplicate());
+    target.putInt(0, target.position() - RECORD_HEADER_SIZE + data.remaining()).putInt(4, (int) crc.getValue());
+    target.flip();
+  }
+
+
+  /**
+   * Writes the encoded records at the end of the log. The caller must hold the append lock.
+   *
+   * @param buffers the headers and data of the records
+   * @return the end of the log
+   * @throws IOException if the records could not be written
+   */
+  private long write(final ByteBuffer[] buffers) throws IOException {
+    long position = written;
+    long remaining = 0L;
+
+    for (final ByteBuffer buffer : buffers) {
+      remaining += buffer.remaining();
+    }
+
+    while (remaining > 0) {
+      channel.position(position);
+      final long count = channel.write(buffers);
+      position += count;
+      remaining -= count;
+    }
+
+    written = position;
+    return position;
+  }
+
+
+  /**
+   * Signals that the data of the record appended by this thread has been written to the store-file.
+   */
+  public void done() {
+    checkpointLock.readLock().unlock();
+  }
+
+
+  /**
+   * Commits the record with the specified log sequence number according to the {@link FsyncPolicy}.
+   *
+   * @param lsn the log sequence number
+   * @throws IOException if the log could not be forced
+   */
+  public void commit(final long lsn) throws IOException {
+    if (policy == FsyncPolicy.COMMIT) {
+      sync(lsn);
+    }
+  }
+
+
+  /**
+   * Forces the log at least up to the specified log sequence number. If another thread is currently forcing, this
+   * thread waits and then either finds its record already forced or forces all records appended in the meantime.
+   *
+   * @param lsn the log sequence number
+   * @throws IOException if the log could not be forced
+   */
+  public void sync(final long lsn) throws IOException {
+    if (durable >= lsn) {
+      return;
+    }
+
+    synchronized (forceLock) {
+      if (durable >= lsn) {
+        return;
+      }
+
+      final long target = written;
+
+      if (beforeForce != null) {
+        beforeForce.force();
+      }
+
+      channel.force(false);
+      durable = target;
+    }
+  }
+
+
+  /**
+   * Waits for all writes in progress, forces the store-file via the specified {@link Syncable} and discards the log.
+   *
+   * @param storeFile forces the store-file
+   * @throws IOException if the checkpoint failed
+   */
+  public void checkpoint(final Syncable storeFile) throws IOException {
+    checkpointLock.writeLock().lock();
+
+    try {
+      synchronized (forceLock) {
+        storeFile.force();
+
+        if (beforeForce != null) {
+          beforeForce.force();
+        }
+
+        channel.truncate(0);
+        channel.force(false);
+        written = 0;
+        durable = 0;
+      }
+    } finally {
+      checkpointLock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Gets the size of the log in bytes.
+   *
+   * @return the size
+   */
+  public long size() {
+    return written;
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    if (flusher != null) {
+      flusher.shutdownNow();
+    }
+
+    sync(written);
+    channel.close();
+  }
+}
@@ -0,0 +1,380 @@
+package store.allocation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class of the {@link IAllocationTable} implementations which persists the table with the
+ * {@link AllocationSnapshot} and the {@link AllocationJournal}. Modifications of the table are either serialized on the
+ * table {@link #lock} or, by implementations which stripe their locks, hold the {@link #modificationLock} shared. Their
+ * journal records are buffered while holding the locks and written with {@link #flushJournal()} after they have been
+ * released, so that no lock is held during file I/O. Operations which need the whole table, e.g. capturing a
+ * checkpoint or pinning a view, hold the modification lock exclusively and the table lock.
+ * <p>
+ * A checkpoint only captures the table in memory while holding the locks. The snapshot is written and the journal is
+ * rotated after the lock has been released, while the table is modified further. Once the journal exceeds the
+ * checkpoint size, the writer which flushes it next writes the checkpoint after its modification has been journaled,
+ * so that a failed checkpoint does not fail the modification.
+ * <p>
+ * While {@link AllocationView}s are pinned, released space is retained instead of being reused: it is kept out of the
+ * {@link FreeSpaceIndex} and the tail is not moved back, until the last view which may still read it is closed.
+ */
+public abstract class AbstractAllocationTable implements IAllocationTable {
+	private final static Logger LOG = LoggerFactory.getLogger(AbstractAllocationTable.class);
+	/** The default journal size (64MB) after which a snapshot is written. */
+	public static final long DEFAULT_CHECKPOINT_SIZE = 64L * 1024 * 1024;
+	/** The table lock. */
+	protected final Object lock = new Object();
+	/** Held shared by striped modifications and exclusively, before the table lock, by operations on the whole table. */
+	protected final ReadWriteLock modificationLock = new ReentrantReadWriteLock();
+	private final Object checkpointLock = new Object();
+	private final AtomicBoolean checkpointing = new AtomicBoolean();
+	private Path path;
+	private volatile AllocationJournal journal;
+	private long checkpointSize = AbstractAllocationTable.DEFAULT_CHECKPOINT_SIZE;
+	private final TreeMap<Long, AllocationView> views = new TreeMap<>();
+	private final Deque<long[]> retained = new ArrayDeque<>();
+	private long epoch = 0L;
+
+	/**
+	 * Visits the allocated fragments of the table.
+	 */
+	@FunctionalInterface
+	interface BlockVisitor {
+		void visit(long start, long end, String id) throws IOException;
+	}
+
+
+	@Override
+	public void open(final Path path) throws IOException {
+		modificationLock.writeLock().lock();
+
+		try {
+			synchronized (lock) {
+				if (journal != null) {
+					throw new IllegalStateException("The allocation table is already open!");
+				}
+
+				long[] snapshot = { 0L, 0L };
+
+				if (Files.exists(path)) {
+					final long time = System.currentTimeMillis();
+					snapshot = AllocationSnapshot.read(path, this);
+					AbstractAllocationTable.LOG.info("Loaded " + size() + " fragments from " + path + " in " + (System.currentTimeMillis() - time) + "ms");
+				}
+
+				journal = AllocationJournal.open(getJournalPath(path), snapshot[0], snapshot[1], this);
+				this.path = path;
+			}
+		} finally {
+			modificationLock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Writes a snapshot of the table and rotates the journal. Only capturing the table holds the locks.
+	 */
+	@Override
+	public void checkpoint() throws IOException {
+		synchronized (checkpointLock) {
+			final AllocationJournal journal;
+			final long position;
+			final AllocationSnapshot.Image image;
+
+			modificationLock.writeLock().lock();
+
+			try {
+				synchronized (lock) {
+					journal = this.journal;
+
+					if (journal == null) {
+						return;
+					}
+
+					// the snapshot contains the journal records appended so far
+					position = journal.size();
+					image = AllocationSnapshot.capture(this);
+				}
+			} finally {
+				modificationLock.writeLock().unlock();
+			}
+
+			final long generation = journal.getGeneration() + 1;
+			AllocationSnapshot.write(path, generation, position, image);
+			journal.rotate(generation, position);
+		}
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		synchronized (checkpointLock) {
+			if (journal != null) {
+				try {
+					checkpoint();
+				} finally {
+					modificationLock.writeLock().lock();
+
+					try {
+						synchronized (lock) {
+							journal.close();
+							journal = null;
+						}
+					} finally {
+						modificationLock.writeLock().unlock();
+					}
+				}
+			}
+		}
+	}
+
+
+	@Override
+	public void force() throws IOException {
+		final AllocationJournal journal = this.journal;
+
+		if (journal != null) {
+			journal.force();
+		}
+	}
+
+
+	/**
+	 * Gets the path of the journal for the specified snapshot path.
+	 *
+	 * @param path the path of the snapshot
+	 * @return the path of the journal
+	 */
+	public static Path getJournalPath(final Path path) {
+		return path.resolveSibling(path.getFileName() + ".journal");
+	}
+
+
+	@Override
+	public void setCheckpointSize(final long checkpointSize) {
+		this.checkpointSize = checkpointSize;
+	}
+
+
+	/**
+	 * Appends a block record to the journal if the table is open. The caller must hold the table lock or the
+	 * modification lock and call {@link #flushJournal()} after releasing it.
+	 *
+	 * @param id the id
+	 * @param start the start
+	 * @param end the end
+	 */
+	protected void journalBlock(final String id, final long start, final long end) {
+		if (journal != null) {
+			journal.block(id, start, end);
+		}
+	}
+
+
+	/**
+	 * Appends a free record to the journal if the table is open. The caller must hold the table lock or the
+	 * modification lock and call {@link #flushJournal()} after releasing it.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 */
+	protected void journalFree(final long start, final long end) {
+		if (journal != null) {
+			journal.free(start, end);
+		}
+	}
+
+
+	/**
+	 * Writes the appended journal records to the journal file and writes a checkpoint if the journal has grown beyond
+	 * the checkpoint size. The caller must not hold the table lock or the modification lock.
+	 */
+	protected void flushJournal() {
+		final AllocationJournal journal = this.journal;
+
+		if (journal != null) {
+			try {
+				journal.flush();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			// a concurrent checkpoint already covers the journal
+			if (journal.size() > checkpointSize && checkpointing.compareAndSet(false, true)) {
+				try {
+					checkpoint();
+				} catch (final IOException e) {
+					// the journal still holds the records, the next flush tries again
+					AbstractAllocationTable.LOG.warn("Writing the allocation table checkpoint failed", e);
+				} finally {
+					checkpointing.set(false);
+				}
+			}
+		}
+	}
+
+
+	@Override
+	public AllocationView pin() {
+		modificationLock.writeLock().lock();
+
+		try {
+			synchronized (lock) {
+				final AllocationView view = new AllocationView(this, ++epoch);
+				views.put(view.getEpoch(), view);
+				return view;
+			}
+		} finally {
+			modificationLock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Unpins the specified view and reclaims the retained space which is no longer visible to any pinned view.
+	 *
+	 * @param view the {@link AllocationView}
+	 */
+	void unpin(final AllocationView view) {
+		modificationLock.writeLock().lock();
+
+		try {
+			synchronized (lock) {
+				views.remove(view.getEpoch());
+				final long oldest = views.isEmpty() ? Long.MAX_VALUE : views.firstKey();
+
+				// the space has been retained for the views pinned up to its epoch
+				while (!retained.isEmpty() && retained.peekFirst()[0] < oldest) {
+					final long[] range = retained.pollFirst();
+					reclaim(range[1], range[2]);
+				}
+			}
+		} finally {
+			modificationLock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Returns true if released space must be retained for pinned views. The caller must hold the table lock or the
+	 * modification lock.
+	 *
+	 * @return true if a view is pinned
+	 */
+	protected boolean isRetaining() {
+		return !views.isEmpty();
+	}
+
+
+	/**
+	 * Registers the released space between start and end which is retained for the pinned views. The caller must hold
+	 * the table lock.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 */
+	protected void retain(final long start, final long end) {
+		retained.addLast(new long[] { epoch, start, end });
+	}
+
+
+	/**
+	 * Records the current fragment of the specified id in the pinned views before it is changed. The caller must hold
+	 * the table lock or the modification lock.
+	 *
+	 * @param id the id
+	 * @param fragment a copy of the current fragment or null if the id is not allocated
+	 */
+	protected void beforeChange(final String id, final Fragment fragment) {
+		for (final AllocationView view : views.values()) {
+			view.record(id, fragment);
+		}
+	}
+
+
+	/**
+	 * Releases retained space for reuse once no pinned view can read it anymore. The caller must hold the table lock.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 */
+	abstract void reclaim(long start, long end);
+
+
+	/**
+	 * Blocks the specified {@link Fragment} at its position, e.g. during the replay of the journal.
+	 *
+	 * @param id the id or null to generate a new id
+	 * @param fragment the fragment to block
+	 */
+	protected abstract void block(String id, Fragment fragment);
+
+
+	/**
+	 * Visits all allocated fragments in offset order. The caller must hold the modification lock exclusively and the
+	 * table lock.
+	 *
+	 * @param visitor the {@link BlockVisitor}
+	 * @throws IOException if the visitor fails
+	 */
+	abstract void forEachBlock(BlockVisitor visitor) throws IOException;
+
+
+	/**
+	 * Gets the length of the table including trailing free space. The caller must hold the modification lock
+	 * exclusively and the table lock.
+	 *
+	 * @return the length
+	 */
+	abstract long getLength();
+
+
+	/**
+	 * Gets the ids which are free to be reused.
+	 *
+	 * @return the free ids
+	 */
+	abstract Collection<String> getFreeIds();
+
+
+	/**
+	 * Gets the last generated id.
+	 *
+	 * @return the last generated id
+	 */
+	abstract long getLastId();
+
+
+	/**
+	 * Restores an allocated {@link Fragment} from a snapshot. Fragments must be restored in offset order, any gap to the
+	 * previous fragment is restored as free space.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 * @param id the id
+	 */
+	abstract void restore(long start, long end, String id);
+
+
+	/**
+	 * Completes the restore from a snapshot.
+	 *
+	 * @param length the length of the table including trailing free space
+	 * @param lastId the last generated id
+	 * @param freeIds the ids which are free to be reused
+	 */
+	abstract void restore(long length, long lastId, Collection<String> freeIds);
+}
@@ -0,0 +1,376 @@
+package store.allocation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the operations performed on an {@link AbstractAllocationTable} since its last snapshot.
+ * <p>
+ * The file starts with a header (magic, generation) followed by records of the form
+ * <code>[length:int][crc:int][op:byte][start:long][end:long]([idLength:short][id:bytes])</code>. The generation links
+ * the journal to the snapshot it continues, so a journal which has already been checkpointed is discarded on replay.
+ * A snapshot is written while records are appended, so it records the position up to which it contains the journal.
+ * The journal is then rotated to the generation of the snapshot, keeping only the records after that position. If the
+ * rotation has not completed, the replay of the previous generation starts at the position of the snapshot.
+ * <p>
+ * Records are appended to a buffer, which is cheap enough to be done while holding the table locks, and written to the
+ * file by {@link #flush()} outside of it. A flush writes the records of all concurrent writers at once.
+ */
+public class AllocationJournal implements Closeable {
+	private final static Logger LOG = LoggerFactory.getLogger(AllocationJournal.class);
+	static final byte BLOCK = 1;
+	static final byte FREE = 2;
+	private static final int MAGIC = 0x53414a4c;
+	private static final int HEADER_SIZE = 12;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int MAX_ID_LENGTH = Short.MAX_VALUE;
+	private static final int PENDING_SIZE = 64 * 1024;
+	private final Path path;
+	private FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + 17 + 2 + MAX_ID_LENGTH);
+	private final CRC32 crc = new CRC32();
+	private final Object writeLock = new Object();
+	private ByteBuffer pending = ByteBuffer.allocate(PENDING_SIZE);
+	private ByteBuffer writing = ByteBuffer.allocate(PENDING_SIZE);
+	private long generation;
+	private long size;
+	private long written;
+
+
+	private AllocationJournal(final Path path, final FileChannel channel, final long generation, final long size) {
+		this.path = path;
+		this.channel = channel;
+		this.generation = generation;
+		this.size = size;
+		written = size;
+	}
+
+
+	/**
+	 * Opens the journal at the specified path and replays all valid records of the specified generation into the
+	 * {@link AbstractAllocationTable}, or the records after the journal position of the snapshot if the journal of the
+	 * previous generation has not been rotated. A torn record at the end of the journal is truncated.
+	 *
+	 * @param path the path of the journal
+	 * @param generation the generation of the snapshot the table has been loaded from
+	 * @param position the journal position of the snapshot, 0 if it has none
+	 * @param table the {@link AbstractAllocationTable} to replay into
+	 * @return the opened {@link AllocationJournal}
+	 * @throws IOException if the journal could not be opened
+	 */
+	static AllocationJournal open(final Path path, final long generation, final long position, final AbstractAllocationTable table) throws IOException {
+		final FileChannel channel = FileChannel.open(path, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+		final AllocationJournal journal = new AllocationJournal(path, channel, generation, 0);
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		channel.read(header, 0);
+		header.flip();
+		final long found = header.remaining() == HEADER_SIZE && header.getInt() == MAGIC ? header.getLong() : -1L;
+
+		if (found == generation || found == generation - 1 && position >= HEADER_SIZE) {
+			journal.size = journal.replay(table, found == generation ? HEADER_SIZE : position);
+			journal.written = journal.size;
+
+			if (journal.size < channel.size()) {
+				AllocationJournal.LOG.warn("Truncating torn journal " + path + " at position " + journal.size);
+				channel.truncate(journal.size);
+			}
+
+			if (found != generation) {
+				journal.rotate(generation, position);
+			}
+		} else {
+			journal.reset(generation);
+		}
+
+		return journal;
+	}
+
+
+	/**
+	 * Replays all valid records from the specified position on into the {@link AbstractAllocationTable}.
+	 *
+	 * @param table the {@link AbstractAllocationTable}
+	 * @param from the position of the first record
+	 * @return the position after the last valid record
+	 * @throws IOException if the journal could not be read
+	 */
+	private long replay(final AbstractAllocationTable table, final long from) throws IOException {
+		final ByteBuffer bytes = ByteBuffer.allocate(1024 * 1024);
+		long position = from;
+		long valid = from;
+		boolean eof = false;
+		bytes.flip();
+
+		while (true) {
+			if (bytes.remaining() < RECORD_HEADER_SIZE || bytes.remaining() < RECORD_HEADER_SIZE + bytes.getInt(bytes.position())) {
+				if (eof) {
+					return valid;
+				}
+
+				bytes.compact();
+				final int read = channel.read(bytes, position);
+				eof = read <= 0;
+				position += Math.max(read, 0);
+				bytes.flip();
+				continue;
+			}
+
+			final int length = bytes.getInt();
+			final int checksum = bytes.getInt();
+
+			if (length < 17 || length > bytes.capacity() - RECORD_HEADER_SIZE) {
+				return valid;
+			}
+
+			crc.reset();
+			crc.update(bytes.slice(bytes.position(), length));
+
+			if ((int) crc.getValue() != checksum) {
+				return valid;
+			}
+
+			final byte op = bytes.get();
+			final long start = bytes.getLong();
+			final long end = bytes.getLong();
+
+			if (op == BLOCK) {
+				final byte[] id = new byte[bytes.getShort()];
+				bytes.get(id);
+				table.block(new String(id, StandardCharsets.UTF_8), new Fragment(start, end));
+			} else if (op == FREE) {
+				table.free(new Fragment(start, end));
+			} else {
+				return valid;
+			}
+
+			valid += RECORD_HEADER_SIZE + length;
+		}
+	}
+
+
+	/**
+	 * Appends a block record to the buffer.
+	 *
+	 * @param id the id of the blocked fragment
+	 * @param start the start of the fragment
+	 * @param end the end of the fragment
+	 */
+	synchronized void block(final String id, final long start, final long end) {
+		final byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+
+		if (bytes.length > MAX_ID_LENGTH) {
+			throw new IllegalArgumentException("The id [" + id + "] is too long!");
+		}
+
+		buffer.clear();
+		buffer.position(RECORD_HEADER_SIZE);
+		buffer.put(BLOCK).putLong(start).putLong(end).putShort((short) bytes.length).put(bytes);
+		append();
+	}
+
+
+	/**
+	 * Appends a free record to the buffer.
+	 *
+	 * @param start the start of the freed fragment
+	 * @param end the end of the freed fragment
+	 */
+	synchronized void free(final long start, final long end) {
+		buffer.clear();
+		buffer.position(RECORD_HEADER_SIZE);
+		buffer.put(FREE).putLong(start).putLong(end);
+		append();
+	}
+
+
+	/**
+	 * Completes the record in the buffer with its length and checksum and appends it to the records to be written.
+	 */
+	private void append() {
+		final int length = buffer.position() - RECORD_HEADER_SIZE;
+		crc.reset();
+		crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+		buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+		buffer.flip();
+
+		if (pending.remaining() < buffer.remaining()) {
+			final ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + buffer.remaining()));
+			pending = grown.put(pending.flip());
+		}
+
+		size += buffer.remaining();
+		pending.put(buffer);
+	}
+
+
+	/**
+	 * Writes the appended records to the end of the journal.
+	 *
+	 * @throws IOException if the records could not be written
+	 */
+	void flush() throws IOException {
+		synchronized (writeLock) {
+			final ByteBuffer records;
+
+			synchronized (this) {
+				if (pending.position() == 0) {
+					return;
+				}
+
+				records = pending.flip();
+				pending = writing.clear();
+				writing = records;
+			}
+
+			while (records.hasRemaining()) {
+				written += channel.write(records, written);
+			}
+		}
+	}
+
+
+	/**
+	 * Discards all records and starts the journal for the specified generation.
+	 *
+	 * @param generation the generation of the snapshot the journal continues
+	 * @throws IOException if the journal could not be reset
+	 */
+	void reset(final long generation) throws IOException {
+		synchronized (writeLock) {
+			synchronized (this) {
+				pending.clear();
+				size = HEADER_SIZE;
+			}
+
+			channel.truncate(0);
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(generation).flip();
+
+			while (header.hasRemaining()) {
+				channel.write(header, HEADER_SIZE - header.remaining());
+			}
+
+			this.generation = generation;
+			written = HEADER_SIZE;
+		}
+	}
+
+
+	/**
+	 * Continues the journal with the specified generation after its snapshot has been written. The records up to the
+	 * journal position of the snapshot are discarded, the records after it are copied into a new journal file, which
+	 * atomically replaces the journal. Records are appended to the buffer during the rotation, only the writes wait for
+	 * it.
+	 *
+	 * @param generation the generation of the written snapshot
+	 * @param position the journal position of the snapshot
+	 * @throws IOException if the journal could not be rotated
+	 */
+	void rotate(final long generation, final long position) throws IOException {
+		synchronized (writeLock) {
+			flush();
+			final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+			try (FileChannel target = FileChannel.open(temp, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(generation).flip();
+
+				while (header.hasRemaining()) {
+					target.write(header);
+				}
+
+				for (long copied = position; copied < written;) {
+					copied += channel.transferTo(copied, written - copied, target);
+				}
+
+				target.force(false);
+			}
+
+			channel.close();
+
+			try {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+
+			synchronized (this) {
+				size -= position - HEADER_SIZE;
+			}
+
+			this.generation = generation;
+			written -= position - HEADER_SIZE;
+		}
+	}
+
+
+	/**
+	 * Writes the appended records and forces them to the storage device.
+	 *
+	 * @throws IOException if the journal could not be forced
+	 */
+	void force() throws IOException {
+		final FileChannel forced;
+
+		synchronized (writeLock) {
+			flush();
+			forced = channel;
+		}
+
+		try {
+			forced.force(false);
+		} catch (final ClosedChannelException e) {
+			synchronized (writeLock) {
+				if (channel == forced) {
+					throw e;
+				}
+			}
+
+			// rotated concurrently, the new journal file contains the records
+			force();
+		}
+	}
+
+
+	/**
+	 * Gets the generation of the snapshot this journal continues.
+	 *
+	 * @return the generation
+	 */
+	long getGeneration() {
+		return generation;
+	}
+
+
+	/**
+	 * Gets the size of the journal in bytes including the records which have not been written yet.
+	 *
+	 * @return the size
+	 */
+	synchronized long size() {
+		return size;
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		synchronized (writeLock) {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
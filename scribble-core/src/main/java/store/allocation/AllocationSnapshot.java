@@ -0,0 +1,217 @@
+package store.allocation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Reads and writes the compact binary snapshot of an {@link AbstractAllocationTable}.
+ * <p>
+ * The layout is a header <code>[magic:int][version:int][generation:long][journalPosition:long][length:long]
+ * [lastId:long][freeIdCount:int][blockCount:long]</code> followed by the free ids and the blocked fragments in offset
+ * order, each as <code>[start:long][end:long][idLength:short][id:bytes]</code>. Free fragments are not stored but
+ * restored from the gaps between the blocked fragments. The journal position is the end of the records of the previous
+ * generation which the snapshot contains, see {@link AllocationJournal#rotate(long, long)}. Version 1 snapshots have no
+ * journal position.
+ * <p>
+ * A snapshot is taken in two steps: the state is captured in memory while holding the locks of the table and is written
+ * to the file after they have been released.
+ */
+public class AllocationSnapshot {
+	private static final int MAGIC = 0x53415453;
+	private static final int VERSION = 2;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+
+	private AllocationSnapshot() {
+	}
+
+
+	/**
+	 * Captures the state of the {@link AbstractAllocationTable} in memory. The caller must hold the modification
+	 * lock exclusively and the table lock.
+	 *
+	 * @param table the {@link AbstractAllocationTable}
+	 * @return the captured {@link Image}
+	 * @throws IOException if the blocks could not be visited
+	 */
+	static Image capture(final AbstractAllocationTable table) throws IOException {
+		final Image image = new Image(table.getLength(), table.getLastId(), new ArrayList<>(table.getFreeIds()));
+		table.forEachBlock(image::add);
+		return image;
+	}
+
+
+	/**
+	 * Writes the captured snapshot atomically to the specified path. The locks of the table are not required.
+	 *
+	 * @param path the path of the snapshot
+	 * @param generation the generation of the snapshot
+	 * @param journalPosition the end of the journal records of the previous generation contained in the snapshot
+	 * @param image the {@link Image} captured by {@link #capture(AbstractAllocationTable)}
+	 * @throws IOException if the snapshot could not be written
+	 */
+	static void write(final Path path, final long generation, final long journalPosition, final Image image) throws IOException {
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temp, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+			final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			bytes.putInt(MAGIC).putInt(VERSION).putLong(generation).putLong(journalPosition).putLong(image.length).putLong(image.lastId);
+			bytes.putInt(image.freeIds.size()).putLong(image.count);
+
+			for (final String id : image.freeIds) {
+				putId(channel, bytes, id);
+			}
+
+			for (int i = 0; i < image.count; i++) {
+				ensureRemaining(channel, bytes, 16);
+				bytes.putLong(image.starts[i]).putLong(image.ends[i]);
+				putId(channel, bytes, image.ids[i]);
+			}
+
+			bytes.flip();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+
+			channel.force(true);
+		}
+
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	/**
+	 * Reads the snapshot at the specified path into the empty {@link AbstractAllocationTable}.
+	 *
+	 * @param path the path of the snapshot
+	 * @param table the {@link AbstractAllocationTable}
+	 * @return the generation of the snapshot and its journal position
+	 * @throws IOException if the snapshot could not be read or is corrupt
+	 */
+	static long[] read(final Path path, final AbstractAllocationTable table) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			bytes.flip();
+			ensureAvailable(channel, bytes, 8);
+			final int version = bytes.getInt() == MAGIC ? bytes.getInt() : -1;
+
+			if (version < 1 || version > VERSION) {
+				throw new IOException("The file " + path + " is not an allocation table snapshot!");
+			}
+
+			ensureAvailable(channel, bytes, version > 1 ? 44 : 36);
+			final long generation = bytes.getLong();
+			final long journalPosition = version > 1 ? bytes.getLong() : 0L;
+			final long length = bytes.getLong();
+			final long lastId = bytes.getLong();
+			final int freeIdCount = bytes.getInt();
+			final long blocks = bytes.getLong();
+			final List<String> freeIds = new ArrayList<>(freeIdCount);
+
+			for (int i = 0; i < freeIdCount; i++) {
+				freeIds.add(getId(channel, bytes));
+			}
+
+			for (long i = 0; i < blocks; i++) {
+				ensureAvailable(channel, bytes, 16);
+				final long start = bytes.getLong();
+				final long end = bytes.getLong();
+				table.restore(start, end, getId(channel, bytes));
+			}
+
+			table.restore(length, lastId, freeIds);
+
+			return new long[] { generation, journalPosition };
+		}
+	}
+
+
+	private static void putId(final FileChannel channel, final ByteBuffer bytes, final String id) throws IOException {
+		final byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+		ensureRemaining(channel, bytes, 2 + idBytes.length);
+		bytes.putShort((short) idBytes.length).put(idBytes);
+	}
+
+
+	private static String getId(final FileChannel channel, final ByteBuffer bytes) throws IOException {
+		ensureAvailable(channel, bytes, 2);
+		final byte[] id = new byte[bytes.getShort()];
+		ensureAvailable(channel, bytes, id.length);
+		bytes.get(id);
+		return new String(id, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Flushes the buffer to the channel if it has less than the required number of bytes remaining.
+	 */
+	private static void ensureRemaining(final FileChannel channel, final ByteBuffer bytes, final int required) throws IOException {
+		if (bytes.remaining() < required) {
+			bytes.flip();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			bytes.clear();
+		}
+	}
+
+
+	/**
+	 * Refills the buffer from the channel if it has less than the required number of bytes available.
+	 */
+	private static void ensureAvailable(final FileChannel channel, final ByteBuffer bytes, final int required) throws IOException {
+		if (bytes.remaining() < required) {
+			bytes.compact();
+			while (bytes.position() < required) {
+				if (channel.read(bytes) < 0) {
+					throw new IOException("Unexpected end of allocation table snapshot!");
+				}
+			}
+			bytes.flip();
+		}
+	}
+
+
+	/**
+	 * The state of an {@link AbstractAllocationTable} captured for a snapshot.
+	 */
+	static final class Image {
+		private final long length;
+		private final long lastId;
+		private final List<String> freeIds;
+		private long[] starts = new long[1024];
+		private long[] ends = new long[1024];
+		private String[] ids = new String[1024];
+		private int count;
+
+
+		private Image(final long length, final long lastId, final List<String> freeIds) {
+			this.length = length;
+			this.lastId = lastId;
+			this.freeIds = freeIds;
+		}
+
+
+		private void add(final long start, final long end, final String id) {
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+				ids = Arrays.copyOf(ids, count * 2);
+			}
+
+			starts[count] = start;
+			ends[count] = end;
+			ids[count++] = id;
+		}
+	}
+}
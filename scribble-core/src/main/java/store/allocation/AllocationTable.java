@@ -1,67 +1,281 @@
 package store.allocation;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class AllocationTable {
+/**
+ * Manages the allocation of the store-file space in {@link Fragment}s.
+ * <p>
+ * Allocation is designed for concurrent writers: space is either taken from the lock-free {@link FreeSpaceIndex} or
+ * bump-allocated at the tail of the table without any lock. Publishing the allocated fragment (and buffering its
+ * journal record) is serialized on the lock stripe of its id, so writers of different ids do not contend, the journal
+ * is written after the stripe has been released. The journal record of a modification is buffered before the
+ * modification is published, so that the records of the modifications it depends on, e.g. the free record of the
+ * reused space, precede it in the journal. Free fragments are joined by whoever claims them from the index first.
+ * Lookups by id or position never block.
+ */
+public class AllocationTable extends AbstractAllocationTable {
 	private final static Logger LOG = LoggerFactory.getLogger(AllocationTable.class);
+	private static final int LOCK_STRIPES = 64;
 	private static Comparator<Long> comparator = (o1, o2) -> {
 		if (o1.equals(o2)) {
 			return 0;
 		}
 		return o1.compareTo(o2);
 	};
-	private final TreeMap<Long, Fragment> fragments = new TreeMap<Long, Fragment>(AllocationTable.comparator);
-	private final TreeMap<Long, Fragment> freeSpaces = new TreeMap<Long, Fragment>(AllocationTable.comparator);
-	private final Map<String, Fragment> ids = new HashMap<>();
+	private final ConcurrentSkipListMap<Long, Fragment> fragments = new ConcurrentSkipListMap<Long, Fragment>(AllocationTable.comparator);
+	private final FreeSpaceIndex freeSpaces = new FreeSpaceIndex();
+	private final Map<String, Fragment> ids = new ConcurrentHashMap<>();
 	private final Queue<String> freeIds = new LinkedBlockingQueue<>();
 	private final AtomicLong id_generator = new AtomicLong(0L);
+	private final AtomicLong tail = new AtomicLong(0L);
+	private final Object[] stripes = new Object[AllocationTable.LOCK_STRIPES];
+
+
+	public AllocationTable() {
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Object();
+		}
+	}
 
 
 	/**
-	 * Allocates a free space for the specified size. If there is no matching free space, then a space at the end will be allocated.
+	 * Allocates a free space for the specified size. The best fitting free space is used, if there is none, then a space at the end will be allocated.
+	 * If the id is already allocated its previous fragment is freed.
 	 *
+	 * @param id the id or null to generate a new id
 	 * @param size the size
 	 * @return the allocated {@link Fragment}
 	 */
+	@Override
 	public Fragment allocate(final String id, final long size) {
-		synchronized (fragments) {
+		// claim the best fitting free fragment or bump the tail
+		final Fragment free = freeSpaces.take(size);
+		final long start = free != null ? free.getStart() : tail.getAndAdd(size);
+		final Fragment fragment = new Fragment(start, start + size - 1);
+
+		modificationLock.readLock().lock();
+
+		try {
+			if (free != null) {
+				fragments.remove(free.getStart(), free);
+
+				// return the rest of the free fragment
+				if (free.getEnd() > fragment.getEnd()) {
+					final Fragment rest = new Fragment(fragment.getEnd() + 1, free.getEnd());
+					rest.setType(FragmentType.FREE);
+					addFragment(rest);
+				}
+			}
 
-			final Map.Entry<Long, Fragment> entry = freeSpaces.ceilingEntry(size);
-			long start, end;
+			publish(id, fragment);
+		} finally {
+			modificationLock.readLock().unlock();
+		}
 
-			// check if there is a free fragment for the requested size
-			if (entry != null && entry.getKey() >= size) {
-				start = entry.getValue().getStart();
-			} else {
-				// if not, allocate at the end of file
-				final Map.Entry<Long, Fragment> lastentry = fragments.lastEntry();
+		flushJournal();
+		return fragment;
+	}
 
-				// check if its a fresh and clean new table
-				if (lastentry == null) {
-					start = 0;
-				} else {
-					start = lastentry.getValue().getEnd() + 1;
+
+	/**
+	 * Allocates one contiguous free space for all specified sizes and splits it into consecutive fragments with new ids.
+	 *
+	 * @param sizes the sizes
+	 * @return the allocated {@link Fragment}s in the order of the sizes
+	 */
+	@Override
+	public List<Fragment> allocateAll(final long[] sizes) {
+		final long total = Arrays.stream(sizes).sum();
+		final List<Fragment> allocated = new ArrayList<>(sizes.length);
+
+		// claim the best fitting free fragment for the whole batch or bump the tail
+		final Fragment free = freeSpaces.take(total);
+		final long start = free != null ? free.getStart() : tail.getAndAdd(total);
+
+		modificationLock.readLock().lock();
+
+		try {
+			if (free != null) {
+				fragments.remove(free.getStart(), free);
+
+				// return the rest of the free fragment
+				if (free.getEnd() > start + total - 1) {
+					final Fragment rest = new Fragment(start + total, free.getEnd());
+					rest.setType(FragmentType.FREE);
+					addFragment(rest);
 				}
 			}
 
-			end = start + size - 1;
+			long position = start;
 
-			final Fragment fragment = new Fragment(start, end);
-			fragment.setType(FragmentType.FREE);
+			for (final long size : sizes) {
+				final Fragment fragment = new Fragment(position, position + size - 1);
+				publish(null, fragment);
+				allocated.add(fragment);
+				position += size;
+			}
+		} finally {
+			modificationLock.readLock().unlock();
+		}
+
+		flushJournal();
+		return allocated;
+	}
+
+
+	/**
+	 * Claims a free space for the specified size which starts before the specified position, e.g. to relocate a fragment
+	 * towards the head of the table. The claimed space must be passed to {@link #relocate(Fragment, Fragment)} or
+	 * returned with {@link #unclaim(Fragment)}.
+	 *
+	 * @param size the size
+	 * @param before the position the free space must start before
+	 * @return the claimed free {@link Fragment} or null if there is no suitable free space
+	 */
+	@Override
+	public Fragment claim(final long size, final long before) {
+		return freeSpaces.take(size, before);
+	}
+
+
+	/**
+	 * Returns a free space claimed with {@link #claim(long, long)} which is not used.
+	 *
+	 * @param claimed the claimed free {@link Fragment}
+	 */
+	@Override
+	public void unclaim(final Fragment claimed) {
+		freeSpaces.add(claimed);
+	}
 
-			block(id, fragment);
 
-			return fragment;
+	/**
+	 * Moves the specified allocated {@link Fragment} to the start of the claimed free space and frees its previous space.
+	 * The move is only done if the fragment is still the current fragment of its id, otherwise the claimed space is
+	 * returned.
+	 *
+	 * @param fragment the allocated {@link Fragment} as returned by {@link #findById(String)}
+	 * @param claimed the free {@link Fragment} claimed with {@link #claim(long, long)}
+	 * @return the relocated {@link Fragment} or null if the id has been written or freed in the meantime
+	 */
+	@Override
+	public Fragment relocate(final Fragment fragment, final Fragment claimed) {
+		final String id = fragment.getId();
+		final Fragment relocated;
+
+		if (id == null) {
+			unclaim(claimed);
+			return null;
+		}
+
+		modificationLock.readLock().lock();
+
+		try {
+			synchronized (stripe(id)) {
+				if (ids.get(id) != fragment) {
+					unclaim(claimed);
+					return null;
+				}
+
+				relocated = new Fragment(claimed.getStart(), claimed.getStart() + fragment.getSize() - 1);
+				journalBlock(id, relocated.getStart(), relocated.getEnd());
+				fragments.remove(claimed.getStart(), claimed);
+
+				// return the rest of the free fragment
+				if (claimed.getEnd() > relocated.getEnd()) {
+					final Fragment rest = new Fragment(relocated.getEnd() + 1, claimed.getEnd());
+					rest.setType(FragmentType.FREE);
+					addFragment(rest);
+				}
+
+				// replaces and releases the previous fragment of the id
+				relocated.setId(id);
+				relocated.setType(FragmentType.BLOCK);
+				addFragment(relocated);
+			}
+		} finally {
+			modificationLock.readLock().unlock();
+		}
+
+		flushJournal();
+		return relocated;
+	}
+
+
+	/**
+	 * Gets the allocated {@link Fragment} with the highest start before the specified position.
+	 *
+	 * @param before the position
+	 * @return the allocated {@link Fragment} or null if there is none
+	 */
+	@Override
+	public Fragment findLastBlock(final long before) {
+		Map.Entry<Long, Fragment> entry = fragments.lowerEntry(before);
+
+		while (entry != null && entry.getValue().getType() != FragmentType.BLOCK) {
+			entry = fragments.lowerEntry(entry.getKey());
+		}
+
+		return entry != null ? entry.getValue() : null;
+	}
+
+
+	/**
+	 * Gets the free space with the lowest start which is not claimed.
+	 *
+	 * @return the first free {@link Fragment} or null if there is none
+	 */
+	@Override
+	public Fragment findFirstFree() {
+		return freeSpaces.first();
+	}
+
+
+	/**
+	 * Removes trailing free space from the table, so that the file can be truncated to the tail.
+	 *
+	 * @return the tail of the table
+	 */
+	@Override
+	public long trim() {
+		modificationLock.writeLock().lock();
+
+		try {
+			synchronized (lock) {
+				final Map.Entry<Long, Fragment> last = fragments.lastEntry();
+
+				if (last != null && last.getValue().getType() == FragmentType.FREE) {
+					final Fragment free = last.getValue();
+
+					// the free space must not be claimed and the tail not concurrently be extended
+					if (freeSpaces.remove(free)) {
+						if (tail.compareAndSet(free.getEnd() + 1, free.getStart())) {
+							fragments.remove(free.getStart(), free);
+						} else {
+							freeSpaces.add(free);
+						}
+					}
+				}
+
+				return tail.get();
+			}
+		} finally {
+			modificationLock.writeLock().unlock();
 		}
 	}
 
@@ -77,7 +291,7 @@ public class AllocationTable {
 
 		if (fragment == null) {
 			final Map.Entry<Long, Fragment> previousEntry = fragments.floorEntry(position);
-			return previousEntry.getValue().clone();
+			return previousEntry != null ? previousEntry.getValue().clone() : null;
 		}
 
 		return fragment.clone();
@@ -89,217 +303,353 @@ public class AllocationTable {
 	 *
 	 * @param fragment the fragment to free
 	 */
+	@Override
 	public void free(final Fragment fragment) {
-		synchronized (fragments) {
-			final Map.Entry<Long, Fragment> previousEntry = fragments.floorEntry(fragment.getStart() - 1);
-			final Fragment allocatedFragment = fragments.get(fragment.getStart());
-			final Map.Entry<Long, Fragment> nextEntry = fragments.ceilingEntry(fragment.getStart() + 1);
-			boolean extendPrevious = false;
-			boolean extendNext = false;
-
-			// check if previous entry exists
-			if (previousEntry != null && previousEntry.getValue().getType() == FragmentType.FREE) {
-				final Fragment previous = previousEntry.getValue();
-
-				// check if fragment begins at the end of the previous free
-				// fragment
-				if (fragment.getStart() - 1 <= previous.getEnd()) {
-					extendPrevious = true;
-					fragment.setStart(previous.getStart());
-
-					// check if previous fragment overlaps the fragment end -
-					// should not happen
-					if (fragment.getEnd() < previous.getEnd()) {
-						// extend fragment end to the end of the previous
-						// fragment
-						fragment.setEnd(previous.getEnd());
-						AllocationTable.LOG.warn("End of previous free fragment overlaps fragment");
+		final long start = fragment.getStart();
+		final long end = fragment.getEnd();
+
+		modificationLock.readLock().lock();
+
+		try {
+			while (true) {
+				// the allocated fragment can only be replaced under the stripe of its id
+				final Fragment allocatedFragment = fragments.get(start);
+				final String id = allocatedFragment != null ? allocatedFragment.getId() : null;
+
+				synchronized (id != null ? stripe(id) : stripes[0]) {
+					if (fragments.get(start) == allocatedFragment && (allocatedFragment == null || allocatedFragment.getId() == id)) {
+						journalFree(start, end);
+						release(fragment);
+						break;
 					}
 				}
 			}
+		} finally {
+			modificationLock.readLock().unlock();
+		}
 
-			// check if next entry exists
-			if (nextEntry != null && nextEntry.getValue().getType() == FragmentType.FREE) {
-				final Fragment next = nextEntry.getValue();
+		flushJournal();
+	}
 
-				// check if the fragment ends at the next free fragment start
-				if (fragment.getEnd() + 1 >= next.getStart()) {
-					fragment.setEnd(next.getEnd());
 
-					// check if fragment end overlaps the end of the next
-					// fragment - should not happen
-					if (fragment.getEnd() > next.getEnd()) {
-						AllocationTable.LOG.warn("Fragment overlaps end of next free fragment");
-					}
+	/**
+	 * Releases the specified fragment without journaling it (see {@link #release(Fragment, boolean)}).
+	 *
+	 * @param fragment the fragment to release
+	 */
+	private void release(final Fragment fragment) {
+		release(fragment, isRetaining());
+	}
 
-					extendNext = true;
-				}
-			}
 
-			// remove the original allocated fragment
+	/**
+	 * Releases the specified fragment without journaling it. Neighbouring free fragments are only joined if they could be
+	 * claimed from the {@link FreeSpaceIndex}, i.e. they are not concurrently being allocated. A released fragment at the
+	 * end of the table moves the tail back instead of becoming free space. A retained fragment becomes a free fragment
+	 * which is neither joined nor added to the {@link FreeSpaceIndex} until it is reclaimed.
+	 *
+	 * @param fragment the fragment to release
+	 * @param retain true if the space must be retained for pinned views
+	 */
+	private void release(final Fragment fragment, final boolean retain) {
+		if (retain) {
+			final Fragment allocatedFragment = fragments.get(fragment.getStart());
+
 			if (allocatedFragment != null) {
 				removeFragment(allocatedFragment);
 			}
 
-			// check if the previous fragment was extended
-			if (extendPrevious) {
-				// then remove previous fragment
-				removeFragment(previousEntry.getValue());
+			final Fragment retained = new Fragment(fragment.getStart(), fragment.getEnd());
+			fragments.put(retained.getStart(), retained);
+
+			synchronized (lock) {
+				retain(retained.getStart(), retained.getEnd());
 			}
 
-			// check if the next fragment was extended
-			if (extendNext) {
-				// then remove next fragment
-				removeFragment(nextEntry.getValue());
+			return;
+		}
+
+		final Map.Entry<Long, Fragment> previousEntry = fragments.floorEntry(fragment.getStart() - 1);
+		final Fragment allocatedFragment = fragments.get(fragment.getStart());
+		final Map.Entry<Long, Fragment> nextEntry = fragments.ceilingEntry(fragment.getStart() + 1);
+		boolean extendPrevious = false;
+		boolean extendNext = false;
+
+		// check if previous entry exists
+		if (previousEntry != null && previousEntry.getValue().getType() == FragmentType.FREE) {
+			final Fragment previous = previousEntry.getValue();
+
+			// check if fragment begins at the end of the previous free
+			// fragment
+			if (fragment.getStart() - 1 <= previous.getEnd() && freeSpaces.remove(previous)) {
+				extendPrevious = true;
+				fragment.setStart(previous.getStart());
+
+				// check if previous fragment overlaps the fragment end -
+				// should not happen
+				if (fragment.getEnd() < previous.getEnd()) {
+					// extend fragment end to the end of the previous
+					// fragment
+					fragment.setEnd(previous.getEnd());
+					AllocationTable.LOG.warn("End of previous free fragment overlaps fragment");
+				}
+			}
+		}
+
+		// check if next entry exists
+		if (nextEntry != null && nextEntry.getValue().getType() == FragmentType.FREE) {
+			final Fragment next = nextEntry.getValue();
+
+			// check if the fragment ends at the next free fragment start
+			if (fragment.getEnd() + 1 >= next.getStart() && freeSpaces.remove(next)) {
+				fragment.setEnd(next.getEnd());
+
+				// check if fragment end overlaps the end of the next
+				// fragment - should not happen
+				if (fragment.getEnd() > next.getEnd()) {
+					AllocationTable.LOG.warn("Fragment overlaps end of next free fragment");
+				}
+
+				extendNext = true;
 			}
+		}
 
-			// add the fragment
-			fragment.setType(FragmentType.FREE);
-			addFragment(fragment);
+		// remove the original allocated fragment
+		if (allocatedFragment != null) {
+			removeFragment(allocatedFragment);
 		}
+
+		// check if the previous fragment was extended
+		if (extendPrevious) {
+			// then remove previous fragment
+			removeFragment(previousEntry.getValue());
+		}
+
+		// check if the next fragment was extended
+		if (extendNext) {
+			// then remove next fragment
+			removeFragment(nextEntry.getValue());
+		}
+
+		// check if the fragment is at the end of the table
+		if (fragments.ceilingEntry(fragment.getStart()) == null && tail.compareAndSet(fragment.getEnd() + 1, fragment.getStart())) {
+			return;
+		}
+
+		// add the fragment
+		fragment.setType(FragmentType.FREE);
+		addFragment(fragment);
 	}
 
 
 	/**
-	 * Blocks the specified {@link Fragment} for usage.
+	 * Blocks the specified {@link Fragment} for usage. Must not be called concurrently with {@link #allocate(String, long)}
+	 * as it uses free space without claiming it (e.g. during the replay of the journal).
 	 *
 	 * @param fragment the fragment to block
 	 */
+	@Override
 	protected void block(final String id, final Fragment fragment) {
-		synchronized (fragments) {
+		modificationLock.writeLock().lock();
 
-			final Fragment allocatedFragment = fragments.get(fragment.getStart());
+		try {
+			synchronized (lock) {
 
-			if (allocatedFragment != null) {
-				// check if the allocated fragment is free
-				if (allocatedFragment.getType() != FragmentType.FREE) {
-					throw new IllegalArgumentException("The requested fragment is already in use!");
-				}
-
-				// if the allocated fragment is smaller than the fragment
-				if (allocatedFragment.getEnd() < fragment.getEnd()) {
-					// check if there is a free fragment next - shouldn't happen
-					// if all free segments are joined properly
-					final Map.Entry<Long, Fragment> nextEntry = fragments.ceilingEntry(fragment.getStart() + 1);
+				final Fragment allocatedFragment = fragments.get(fragment.getStart());
 
-					if (nextEntry != null && nextEntry.getValue().getType() == FragmentType.FREE) {
-						final Fragment next = nextEntry.getValue();
-
-						// check if the next free fragment can accommodate the
-						// requested allocation
-						if (next.getEnd() >= fragment.getEnd()) {
+				if (allocatedFragment != null) {
+					// check if the allocated fragment is free
+					if (allocatedFragment.getType() != FragmentType.FREE) {
+						throw new IllegalArgumentException("The requested fragment is already in use!");
+					}
 
-							// check if the fragment will use all of the next
-							// free fragment
-							if (next.getEnd() == fragment.getEnd()) {
-								removeFragment(next);
-							} else {
-								// otherwise change the start of the next free
-								// fragment
-								removeFragment(next);
-								next.setStart(fragment.getEnd() + 1);
-								addFragment(next);
+					// if the allocated fragment is smaller than the fragment
+					if (allocatedFragment.getEnd() < fragment.getEnd()) {
+						// check if there is a free fragment next - shouldn't happen
+						// if all free segments are joined properly
+						final Map.Entry<Long, Fragment> nextEntry = fragments.ceilingEntry(fragment.getStart() + 1);
+
+						if (nextEntry == null) {
+							// the free fragment is at the end of the table, so
+							// extend it
+							removeFragment(allocatedFragment);
+						} else if (nextEntry.getValue().getType() == FragmentType.FREE) {
+							final Fragment next = nextEntry.getValue();
+							removeFragment(allocatedFragment);
+
+							// check if the next free fragment can accommodate the
+							// requested allocation
+							if (next.getEnd() >= fragment.getEnd()) {
+
+								// check if the fragment will use all of the next
+								// free fragment
+								if (next.getEnd() == fragment.getEnd()) {
+									removeFragment(next);
+								} else {
+									// otherwise change the start of the next free
+									// fragment
+									removeFragment(next);
+									next.setStart(fragment.getEnd() + 1);
+									addFragment(next);
+								}
 							}
+						} else {
+							throw new IllegalArgumentException("Fragment does not fit into the requested allocation!");
 						}
 					} else {
-						throw new IllegalArgumentException("Fragment does not fit into the requested allocation!");
+						// check if the fragment will use all of the allocated
+						// fragment
+						if (allocatedFragment.getEnd() == fragment.getEnd()) {
+							// then remove the allocated fragment
+							removeFragment(allocatedFragment);
+						} else {
+							// otherwise change to start
+							removeFragment(allocatedFragment);
+							allocatedFragment.setStart(fragment.getEnd() + 1);
+							addFragment(allocatedFragment);
+						}
 					}
 				} else {
-					// check if the fragment will use all of the allocated
-					// fragment
-					if (allocatedFragment.getEnd() == fragment.getEnd()) {
-						// then remove the allocated fragment
-						removeFragment(allocatedFragment);
-					} else {
-						// otherwise change to start
-						removeFragment(allocatedFragment);
-						allocatedFragment.setStart(fragment.getEnd() + 1);
-						addFragment(allocatedFragment);
-					}
-				}
-			} else {
-				// check if a previous free fragment exists
-				final Map.Entry<Long, Fragment> previousEntry = fragments.floorEntry(fragment.getStart() - 1);
-
-				if (previousEntry != null && previousEntry.getValue().getType() == FragmentType.FREE) {
-					final Fragment previous = previousEntry.getValue();
+					// check if a previous free fragment exists
+					final Map.Entry<Long, Fragment> previousEntry = fragments.floorEntry(fragment.getStart() - 1);
 
-					// check if the previous free fragment can accommodate the
-					// requested fragment
-					if (previous.getEnd() >= fragment.getEnd()) {
+					if (previousEntry != null && previousEntry.getValue().getType() == FragmentType.FREE) {
+						final Fragment previous = previousEntry.getValue();
 
-						// check if there is a rest of free space after the
+						// check if the previous free fragment can accommodate the
 						// requested fragment
-						if (previous.getEnd() > fragment.getEnd()) {
-							// create a new free fragment after the requested
-							// fragment
-							final Fragment newAfter = new Fragment(fragment.getEnd() + 1, previous.getEnd());
-							newAfter.setType(FragmentType.FREE);
-							addFragment(newAfter);
-						}
+						if (previous.getEnd() >= fragment.getEnd()) {
 
-						// change the end of the previous free fragment to
-						// before the start of the requested fragment
-						previous.setEnd(fragment.getStart() - 1);
+							// check if there is a rest of free space after the
+							// requested fragment
+							if (previous.getEnd() > fragment.getEnd()) {
+								// create a new free fragment after the requested
+								// fragment
+								final Fragment newAfter = new Fragment(fragment.getEnd() + 1, previous.getEnd());
+								newAfter.setType(FragmentType.FREE);
+								addFragment(newAfter);
+							}
+
+							// change the end of the previous free fragment to
+							// before the start of the requested fragment
+							removeFragment(previous);
+							previous.setEnd(fragment.getStart() - 1);
+							addFragment(previous);
+						} else {
+							// check if at the end of the allocation table
+							final Map.Entry<Long, Fragment> nextEntry = fragments.ceilingEntry(fragment.getStart());
+							if (nextEntry != null) {
+								// if not, then no space to accommodate the fragment
+								throw new IllegalArgumentException("There is not enough space in the previous free fragment to accommodate the fragment at this position!");
+							}
+						}
 					} else {
 						// check if at the end of the allocation table
 						final Map.Entry<Long, Fragment> nextEntry = fragments.ceilingEntry(fragment.getStart());
-						if (nextEntry != null) {
-							// if not, then no space to accommodate the fragment
-							throw new IllegalArgumentException("There is not enough space in the previous free fragment to accommodate the fragment at this position!");
-						}
-					}
-				} else {
-					// check if at the end of the allocation table
-					final Map.Entry<Long, Fragment> nextEntry = fragments.ceilingEntry(fragment.getStart());
-
-					if (nextEntry == null) {
-						// at the end of the current allocation table so extend
-						// is there a previous entry
-						if (previousEntry != null) {
-							final Fragment previous = previousEntry.getValue();
-							// then allocate a free fragment from the end of the
-							// previous fragment until the start of the
-							// requested
-							// fragment
-							if (previous.getEnd() < fragment.getStart() - 1) {
-								final Fragment newBefore = new Fragment(previous.getEnd() + 1, fragment.getStart() - 1);
-								newBefore.setType(FragmentType.FREE);
-								addFragment(newBefore);
+
+						if (nextEntry == null) {
+							// at the end of the current allocation table so extend
+							// is there a previous entry
+							if (previousEntry != null) {
+								final Fragment previous = previousEntry.getValue();
+								// then allocate a free fragment from the end of the
+								// previous fragment until the start of the
+								// requested
+								// fragment
+								if (previous.getEnd() < fragment.getStart() - 1) {
+									final Fragment newBefore = new Fragment(previous.getEnd() + 1, fragment.getStart() - 1);
+									newBefore.setType(FragmentType.FREE);
+									addFragment(newBefore);
+								}
+							} else {
+								// must be an fresh and empty allocation table
+								// check if we need to allocate a free fragment from
+								// the start of the table until the start of the
+								// requested
+								// fragment
+								if (fragment.getStart() > 0) {
+									final Fragment newBefore = new Fragment(0, fragment.getStart() - 1);
+									newBefore.setType(FragmentType.FREE);
+									addFragment(newBefore);
+								}
 							}
 						} else {
-							// must be an fresh and empty allocation table
-							// check if we need to allocate a free fragment from
-							// the start of the table until the start of the
-							// requested
-							// fragment
-							if (fragment.getStart() > 0) {
-								final Fragment newBefore = new Fragment(0, fragment.getStart() - 1);
-								newBefore.setType(FragmentType.FREE);
-								addFragment(newBefore);
-							}
+							throw new IllegalArgumentException("There is no free fragment to accommodate the fragment (" + fragment + ") at this position!\nFragments:\n" + fragments + "\nFreespaces:\n" + freeSpaces);
 						}
-					} else {
-						throw new IllegalArgumentException("There is no free fragment to accommodate the fragment (" + fragment + ") at this position!\nFragments:\n" + fragments + "\nFreespaces:\n" + freeSpaces);
 					}
 				}
+
+				// add the fragment
+				fragment.setId(id);
+				fragment.setType(FragmentType.BLOCK);
+				addFragment(fragment);
+
+				journalBlock(fragment.getId(), fragment.getStart(), fragment.getEnd());
 			}
+		} finally {
+			modificationLock.writeLock().unlock();
+		}
+
+		flushJournal();
+	}
 
-			// add the fragment
-			fragment.setId(id);
-			fragment.setType(FragmentType.BLOCK);
-			addFragment(fragment);
+
+	/**
+	 * Publishes the specified allocated {@link Fragment} under the lock stripe of its id. The journal record is buffered
+	 * before the fragment replaces the previous fragment of the id. The caller must hold the modification lock.
+	 *
+	 * @param id the id or null to generate a new id
+	 * @param fragment the allocated {@link Fragment}
+	 */
+	private void publish(final String id, final Fragment fragment) {
+		while (true) {
+			final String blockId = id != null ? id : nextId();
+
+			synchronized (stripe(blockId)) {
+				// an explicit allocation may have taken a reused id in the meantime
+				if (id == null && ids.containsKey(blockId)) {
+					continue;
+				}
+
+				journalBlock(blockId, fragment.getStart(), fragment.getEnd());
+				fragment.setId(blockId);
+				fragment.setType(FragmentType.BLOCK);
+				addFragment(fragment, id == null);
+				return;
+			}
 		}
 	}
 
 
 	/**
-	 * Adds the specified {@link Fragment} to the table. Manages also the free spaces.
+	 * Gets the lock stripe guarding the fragment of the specified id.
+	 *
+	 * @param id the id
+	 * @return the lock stripe
+	 */
+	private Object stripe(final String id) {
+		return stripes[(id.hashCode() & 0x7fffffff) % stripes.length];
+	}
+
+
+	/**
+	 * Adds the specified {@link Fragment} to the table. Manages also the free spaces. A blocked fragment replaces the
+	 * fragment previously allocated for the same id, which is then released.
 	 *
 	 * @param fragment the {@link Fragment}
 	 */
 	protected void addFragment(final Fragment fragment) {
-		fragments.put(fragment.getStart(), fragment);
+		addFragment(fragment, fragment.getId() == null);
+	}
+
+
+	/**
+	 * Adds the specified {@link Fragment} to the table (see {@link #addFragment(Fragment)}).
+	 *
+	 * @param fragment the {@link Fragment}
+	 * @param generated true if the id of a blocked fragment is or will be generated, false if it is explicit
+	 */
+	private void addFragment(final Fragment fragment, final boolean generated) {
 		String id = fragment.getId();
 
 		if (fragment.getType() == FragmentType.FREE) {
@@ -309,27 +659,43 @@ public class AllocationTable {
 
 			if (id != null) {
 				fragment.setId(null);
+
+				if (isRetaining()) {
+					final Fragment current = ids.get(id);
+					beforeChange(id, current != null ? current.clone() : null);
+				}
+
 				ids.remove(id);
 			}
 
-			freeSpaces.put(fragment.getSize(), fragment);
+			fragments.put(fragment.getStart(), fragment);
+			freeSpaces.add(fragment);
 		} else if (fragment.getType() == FragmentType.BLOCK) {
 			if (id == null) {
-				id = freeIds.poll();
+				id = nextId();
+				fragment.setId(id);
+			}
 
-				if (id == null) {
-					id = generateId();
-				}
+			fragments.put(fragment.getStart(), fragment);
 
-				fragment.setId(id);
-			} else {
-				final Fragment old = findById(fragment.getId());
-				old.setId(null);
-				free(old);
+			if (isRetaining()) {
+				final Fragment current = ids.get(id);
+				beforeChange(id, current != null ? current.clone() : null);
 			}
 
-			ids.put(id, fragment);
+			final Fragment old = ids.put(id, fragment);
+
+			if (old != null && old != fragment) {
+				// release a copy as releasing modifies the released fragment
+				old.setId(null);
+				release(old.clone());
+			} else if (old == null && !generated) {
+				// an explicit new id (e.g. during journal replay) must not be handed out again
+				reserveId(id);
+			}
 		}
+
+		tail.accumulateAndGet(fragment.getEnd() + 1, Math::max);
 	}
 
 
@@ -339,11 +705,44 @@ public class AllocationTable {
 	 * @param id the id
 	 * @return the fragment for the id
 	 */
+	@Override
 	public Fragment findById(final String id) {
 		return ids.get(id);
 	}
 
 
+	/**
+	 * Reserves the specified id so that it will not be generated or reused.
+	 *
+	 * @param id the id
+	 */
+	private void reserveId(final String id) {
+		try {
+			final long value = Long.parseLong(id);
+
+			if (id_generator.getAndAccumulate(value, Math::max) < value) {
+				return;
+			}
+		} catch (final NumberFormatException e) {
+			// not a generated id
+		}
+
+		// reused ids are found at the head of the free ids
+		freeIds.remove(id);
+	}
+
+
+	/**
+	 * Gets the next id, which is either a reused free id or a new id.
+	 *
+	 * @return the id
+	 */
+	private String nextId() {
+		final String id = freeIds.poll();
+		return id != null ? id : generateId();
+	}
+
+
 	/**
 	 * Generate a new unique id.
 	 *
@@ -361,22 +760,60 @@ public class AllocationTable {
 	 * @param fragment the {@link Fragment}
 	 */
 	protected void removeFragment(final Fragment fragment) {
-		synchronized (fragments) {
-			fragments.remove(fragment.getStart());
-
-			if (fragment.getType() == FragmentType.FREE) {
-				freeSpaces.remove(fragment.getSize());
-			} else if (fragment.getType() == FragmentType.BLOCK) {
-				if (fragment.getId() != null) {
-					ids.remove(fragment.getId());
-					freeIds.add(fragment.getId());
-					fragment.setId(null);
+		fragments.remove(fragment.getStart(), fragment);
+
+		if (fragment.getType() == FragmentType.FREE) {
+			freeSpaces.remove(fragment);
+		} else if (fragment.getType() == FragmentType.BLOCK) {
+			if (fragment.getId() != null) {
+				if (isRetaining() && ids.get(fragment.getId()) == fragment) {
+					beforeChange(fragment.getId(), fragment.clone());
 				}
+
+				ids.remove(fragment.getId(), fragment);
+				freeIds.add(fragment.getId());
+				fragment.setId(null);
+			}
+		}
+	}
+
+
+	@Override
+	void reclaim(final long start, final long end) {
+		synchronized (lock) {
+			final Fragment retained = fragments.get(start);
+
+			if (retained != null && retained.getType() == FragmentType.FREE && retained.getEnd() == end) {
+				fragments.remove(start, retained);
+				release(new Fragment(start, end), false);
+			}
+		}
+	}
+
+
+	@Override
+	void forEachBlock(final BlockVisitor visitor) throws IOException {
+		for (final Fragment fragment : fragments.values()) {
+			if (fragment.getType() == FragmentType.BLOCK) {
+				visitor.visit(fragment.getStart(), fragment.getEnd(), fragment.getId());
 			}
 		}
 	}
 
 
+	@Override
+	long getLength() {
+		final Map.Entry<Long, Fragment> last = fragments.lastEntry();
+		return last != null ? last.getValue().getEnd() + 1 : 0L;
+	}
+
+
+	@Override
+	public long size() {
+		return ids.size();
+	}
+
+
 	/**
 	 * Gets an unmodifiable collection of all fragments.
 	 *
@@ -388,12 +825,108 @@ public class AllocationTable {
 
 
 	/**
-	 * Gets an unmodifiable collection of all fragments.
+	 * Gets an unmodifiable collection of all free fragments.
 	 *
-	 * @return an unmodifiable collection of all fragments
+	 * @return an unmodifiable collection of all free fragments
+	 */
+	Collection<Fragment> getFreeSpaces() {
+		return freeSpaces.values();
+	}
+
+
+	/**
+	 * Gets the end of the table, i.e. the position at which the next space at the end will be allocated.
+	 *
+	 * @return the end of the table
+	 */
+	@Override
+	public long getTail() {
+		return tail.get();
+	}
+
+
+	/**
+	 * Gets the total number of free bytes within the table.
+	 *
+	 * @return the free bytes
+	 */
+	@Override
+	public long getFreeSpace() {
+		return freeSpaces.getFreeSpace();
+	}
+
+
+	/**
+	 * Gets the fragmentation ratio of the free space (see {@link FreeSpaceIndex#getFragmentationRatio()}).
+	 *
+	 * @return the fragmentation ratio between 0 and 1
+	 */
+	@Override
+	public double getFragmentationRatio() {
+		return freeSpaces.getFragmentationRatio();
+	}
+
+
+	/**
+	 * Gets the ids which are free to be reused.
+	 *
+	 * @return the free ids
 	 */
-	Map<Long, Fragment> getFreeSpaces() {
-		return Collections.unmodifiableMap(freeSpaces);
+	@Override
+	Collection<String> getFreeIds() {
+		return Collections.unmodifiableCollection(freeIds);
+	}
+
+
+	/**
+	 * Gets the last generated id.
+	 *
+	 * @return the last generated id
+	 */
+	@Override
+	long getLastId() {
+		return id_generator.get();
+	}
+
+
+	/**
+	 * Restores a blocked {@link Fragment} from a snapshot. Fragments must be restored in offset order, any gap to the
+	 * previous fragment is restored as free space.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 * @param id the id
+	 */
+	@Override
+	void restore(final long start, final long end, final String id) {
+		if (start > tail.get()) {
+			addFragment(new Fragment(tail.get(), start - 1));
+		}
+
+		final Fragment fragment = new Fragment(start, end);
+		fragment.setId(id);
+		fragment.setType(FragmentType.BLOCK);
+		fragments.put(start, fragment);
+		ids.put(id, fragment);
+		tail.set(end + 1);
+	}
+
+
+	/**
+	 * Completes the restore from a snapshot.
+	 *
+	 * @param length the length of the table including trailing free space
+	 * @param lastId the last generated id
+	 * @param freeIds the ids which are free to be reused
+	 */
+	@Override
+	void restore(final long length, final long lastId, final Collection<String> freeIds) {
+		if (length > tail.get()) {
+			addFragment(new Fragment(tail.get(), length - 1));
+		}
+
+		id_generator.set(lastId);
+		this.freeIds.addAll(freeIds);
 	}
 
 
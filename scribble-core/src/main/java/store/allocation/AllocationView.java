@@ -0,0 +1,147 @@
+package store.allocation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A point-in-time view of the allocated {@link Fragment}s of an {@link AbstractAllocationTable}, created with
+ * {@link IAllocationTable#pin()}. The view is copy-on-write: it only records the previous fragment of an id when the
+ * id is written, relocated or freed after the view has been pinned. The space of such fragments is not reused by the
+ * table until all views which may still read it have been closed.
+ * <p>
+ * The views are not persisted, after a restart all space is reusable again.
+ */
+public class AllocationView implements Closeable {
+	private static final Fragment ABSENT = new Fragment();
+	private final AbstractAllocationTable table;
+	private final long epoch;
+	private final Map<String, Fragment> previous = new ConcurrentHashMap<>();
+	private volatile boolean closed = false;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param table the pinned table
+	 * @param epoch the epoch of the view
+	 */
+	AllocationView(final AbstractAllocationTable table, final long epoch) {
+		this.table = table;
+		this.epoch = epoch;
+	}
+
+
+	/**
+	 * Records the fragment of the specified id before it is changed, unless it has been recorded already. The caller
+	 * must hold the table lock or the modification lock of the table.
+	 *
+	 * @param id the id
+	 * @param fragment a copy of the fragment or null if the id has not been allocated
+	 */
+	void record(final String id, final Fragment fragment) {
+		previous.putIfAbsent(id, fragment != null ? fragment : AllocationView.ABSENT);
+	}
+
+
+	/**
+	 * Gets the fragment of the specified id at the time the view has been pinned.
+	 *
+	 * @param id the id
+	 * @return the {@link Fragment} or null if the id was not allocated
+	 */
+	public Fragment findById(final String id) {
+		checkOpen();
+
+		// the current fragment is looked up first, as a change is recorded before it is made
+		final Fragment current = table.findById(id);
+		final Fragment recorded = previous.get(id);
+
+		if (recorded != null) {
+			return recorded != AllocationView.ABSENT ? recorded : null;
+		}
+
+		return current;
+	}
+
+
+	/**
+	 * Gets all fragments of the view in offset order.
+	 *
+	 * @return the {@link Fragment}s
+	 * @throws IOException if the fragments could not be listed
+	 */
+	public List<Fragment> getFragments() throws IOException {
+		checkOpen();
+		final List<Fragment> fragments = new ArrayList<>();
+
+		table.modificationLock.writeLock().lock();
+
+		try {
+			synchronized (table.lock) {
+				table.forEachBlock((start, end, id) -> {
+					if (!previous.containsKey(id)) {
+						final Fragment fragment = new Fragment(start, end);
+						fragment.setId(id);
+						fragment.setType(FragmentType.BLOCK);
+						fragments.add(fragment);
+					}
+				});
+
+				for (final Fragment fragment : previous.values()) {
+					if (fragment != AllocationView.ABSENT) {
+						fragments.add(fragment);
+					}
+				}
+			}
+		} finally {
+			table.modificationLock.writeLock().unlock();
+		}
+
+		fragments.sort(Comparator.comparingLong(Fragment::getStart));
+		return fragments;
+	}
+
+
+	/**
+	 * Gets the epoch of the view.
+	 *
+	 * @return the epoch
+	 */
+	long getEpoch() {
+		return epoch;
+	}
+
+
+	/**
+	 * Returns the flag if the view has been closed.
+	 *
+	 * @return true if the view has been closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("The allocation view has been closed!");
+		}
+	}
+
+
+	/**
+	 * Unpins the view, so that the space of its changed fragments can be reused.
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			table.unpin(this);
+		}
+	}
+}
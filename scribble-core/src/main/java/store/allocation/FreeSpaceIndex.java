@@ -0,0 +1,280 @@
+package store.allocation;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Segregated-fit index of the free {@link Fragment}s. Free fragments are kept in power-of-two size classes, each
+ * ordered by size and start, so any number of free fragments with the same size can be held and a best fit is found in
+ * O(log n).
+ * <p>
+ * Each size class is an independent lock-free skip list, so concurrent writers only contend when they reuse free space
+ * of the same size class. A free fragment is owned by whoever removes it from the index. The free fragments are also
+ * ordered by start, so that the free fragment nearest to the head of the file is found in O(1).
+ * <p>
+ * Fragments must not be modified while they are contained in the index.
+ */
+public class FreeSpaceIndex {
+	private static final int CLASSES = 64;
+	private static final Comparator<Fragment> comparator = Comparator.comparingLong(Fragment::getSize).thenComparingLong(Fragment::getStart);
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final ConcurrentSkipListSet<Fragment>[] classes = new ConcurrentSkipListSet[CLASSES];
+	private final ConcurrentSkipListSet<Fragment> positions = new ConcurrentSkipListSet<>(Comparator.comparingLong(Fragment::getStart).thenComparingLong(Fragment::getSize));
+	private final AtomicLong freeSpace = new AtomicLong(0L);
+	private final AtomicInteger count = new AtomicInteger(0);
+
+
+	public FreeSpaceIndex() {
+		for (int i = 0; i < CLASSES; i++) {
+			classes[i] = new ConcurrentSkipListSet<>(FreeSpaceIndex.comparator);
+		}
+	}
+
+
+	/**
+	 * Gets the size class of the specified size. Empty sizes belong to the smallest class.
+	 *
+	 * @param size the size
+	 * @return the size class
+	 */
+	static int sizeClass(final long size) {
+		return size > 0 ? 63 - Long.numberOfLeadingZeros(size) : 0;
+	}
+
+
+	/**
+	 * Adds the specified free {@link Fragment}.
+	 *
+	 * @param fragment the free {@link Fragment}
+	 */
+	public void add(final Fragment fragment) {
+		if (classes[sizeClass(fragment.getSize())].add(fragment)) {
+			positions.add(fragment);
+			freeSpace.addAndGet(fragment.getSize());
+			count.incrementAndGet();
+		}
+	}
+
+
+	/**
+	 * Removes the specified free {@link Fragment}.
+	 *
+	 * @param fragment the free {@link Fragment}
+	 * @return true if the fragment was contained in the index
+	 */
+	public boolean remove(final Fragment fragment) {
+		if (classes[sizeClass(fragment.getSize())].remove(fragment)) {
+			positions.remove(fragment);
+			freeSpace.addAndGet(-fragment.getSize());
+			count.decrementAndGet();
+			return true;
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Finds the smallest free {@link Fragment} which can accommodate the specified size. Of several equally sized
+	 * fragments the one with the lowest start is returned.
+	 *
+	 * @param size the requested size
+	 * @return the best fitting free {@link Fragment} or null if there is none
+	 */
+	public Fragment bestFit(final long size) {
+		final Fragment probe = new Fragment(Long.MIN_VALUE, Long.MIN_VALUE + size - 1);
+
+		// every fragment of a larger class fits, so the first one found is the best fit
+		for (int sizeClass = sizeClass(size); sizeClass < CLASSES; sizeClass++) {
+			final Fragment fit = classes[sizeClass].ceiling(probe);
+
+			if (fit != null) {
+				return fit;
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Finds and removes the best fitting free {@link Fragment} for the specified size (see {@link #bestFit(long)}).
+	 *
+	 * @param size the requested size
+	 * @return the claimed free {@link Fragment} or null if there is none
+	 */
+	public Fragment take(final long size) {
+		while (count.get() > 0) {
+			final Fragment fit = bestFit(size);
+
+			if (fit == null) {
+				return null;
+			}
+
+			// another writer may have claimed it in the meantime
+			if (remove(fit)) {
+				return fit;
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Finds and removes the best fitting free {@link Fragment} for the specified size which starts before the specified
+	 * position, e.g. to move data towards the head of the file.
+	 *
+	 * @param size the requested size
+	 * @param before the position the free fragment must start before
+	 * @return the claimed free {@link Fragment} or null if there is none
+	 */
+	public Fragment take(final long size, final long before) {
+		final Fragment probe = new Fragment(Long.MIN_VALUE, Long.MIN_VALUE + size - 1);
+
+		for (int sizeClass = sizeClass(size); sizeClass < CLASSES && count.get() > 0; sizeClass++) {
+			for (final Fragment fit : classes[sizeClass].tailSet(probe)) {
+				// another writer may have claimed it in the meantime
+				if (fit.getStart() < before && remove(fit)) {
+					return fit;
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Gets the free {@link Fragment} with the lowest start.
+	 *
+	 * @return the first free {@link Fragment} or null if there is none
+	 */
+	public Fragment first() {
+		try {
+			return positions.first();
+		} catch (final NoSuchElementException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Gets the largest free {@link Fragment}.
+	 *
+	 * @return the largest free {@link Fragment} or null if there is none
+	 */
+	public Fragment largest() {
+		for (int sizeClass = CLASSES - 1; sizeClass >= 0; sizeClass--) {
+			final Iterator<Fragment> largest = classes[sizeClass].descendingIterator();
+
+			if (largest.hasNext()) {
+				return largest.next();
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Gets the total number of free bytes.
+	 *
+	 * @return the free bytes
+	 */
+	public long getFreeSpace() {
+		return freeSpace.get();
+	}
+
+
+	/**
+	 * Gets the number of free fragments.
+	 *
+	 * @return the number of free fragments
+	 */
+	public int size() {
+		return count.get();
+	}
+
+
+	/**
+	 * Gets the fragmentation ratio of the free space, which is <code>1 - largest free fragment / total free space</code>.
+	 * It is 0 if all free space is contiguous and approaches 1 the more the free space is scattered over small holes.
+	 *
+	 * @return the fragmentation ratio between 0 and 1
+	 */
+	public double getFragmentationRatio() {
+		final Fragment largest = largest();
+
+		if (largest == null) {
+			return 0.0;
+		}
+
+		return Math.max(0.0, 1.0 - (double) largest.getSize() / freeSpace.get());
+	}
+
+
+	/**
+	 * Gets a read-only view of all free {@link Fragment}s ordered by size.
+	 *
+	 * @return the free {@link Fragment}s
+	 */
+	public Collection<Fragment> values() {
+		return new AbstractCollection<Fragment>() {
+			@Override
+			public Iterator<Fragment> iterator() {
+				return new Iterator<Fragment>() {
+					private int sizeClass = -1;
+					private Iterator<Fragment> current = null;
+
+
+					@Override
+					public boolean hasNext() {
+						while (current == null || !current.hasNext()) {
+							if (++sizeClass >= CLASSES) {
+								return false;
+							}
+
+							current = classes[sizeClass].iterator();
+						}
+
+						return true;
+					}
+
+
+					@Override
+					public Fragment next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+
+						return current.next();
+					}
+				};
+			}
+
+
+			@Override
+			public int size() {
+				return count.get();
+			}
+		};
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return values().toString();
+	}
+}
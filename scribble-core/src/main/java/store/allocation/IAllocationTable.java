@@ -0,0 +1,188 @@
+package store.allocation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Manages the allocation of the store-file space in {@link Fragment}s. The {@link Fragment}s returned by a table must
+ * be treated as read-only.
+ */
+public interface IAllocationTable {
+
+	/**
+	 * Opens the persistent table at the specified path. The snapshot at the path is loaded, the journal next to it is
+	 * replayed and all further operations are appended to the journal.
+	 *
+	 * @param path the path of the snapshot
+	 * @throws IOException if the table could not be loaded
+	 */
+	void open(Path path) throws IOException;
+
+
+	/**
+	 * Writes a new snapshot of the table and resets the journal.
+	 *
+	 * @throws IOException if the snapshot could not be written
+	 */
+	void checkpoint() throws IOException;
+
+
+	/**
+	 * Writes a final snapshot and closes the journal. The table stays usable in memory.
+	 *
+	 * @throws IOException if the snapshot could not be written
+	 */
+	void close() throws IOException;
+
+
+	/**
+	 * Forces the journal to the storage device.
+	 *
+	 * @throws IOException if the journal could not be forced
+	 */
+	void force() throws IOException;
+
+
+	/**
+	 * Sets the journal size after which a new snapshot is written.
+	 *
+	 * @param checkpointSize the journal size in bytes
+	 */
+	void setCheckpointSize(long checkpointSize);
+
+
+	/**
+	 * Allocates a free space for the specified size. If the id is already allocated its previous fragment is freed.
+	 *
+	 * @param id the id or null to generate a new id
+	 * @param size the size
+	 * @return the allocated {@link Fragment}
+	 */
+	Fragment allocate(String id, long size);
+
+
+	/**
+	 * Allocates one contiguous free space for all specified sizes and splits it into consecutive fragments with new ids.
+	 *
+	 * @param sizes the sizes
+	 * @return the allocated {@link Fragment}s in the order of the sizes
+	 */
+	List<Fragment> allocateAll(long[] sizes);
+
+
+	/**
+	 * Gets the fragment for the specified id.
+	 *
+	 * @param id the id
+	 * @return the fragment for the id or null if the id is not allocated
+	 */
+	Fragment findById(String id);
+
+
+	/**
+	 * Frees the specified fragment, possibly joining it together with previous or following free spaces.
+	 *
+	 * @param fragment the fragment to free
+	 */
+	void free(Fragment fragment);
+
+
+	/**
+	 * Claims a free space for the specified size which starts before the specified position, e.g. to relocate a fragment
+	 * towards the head of the table. The claimed space must be passed to {@link #relocate(Fragment, Fragment)} or
+	 * returned with {@link #unclaim(Fragment)}.
+	 *
+	 * @param size the size
+	 * @param before the position the free space must start before
+	 * @return the claimed free {@link Fragment} or null if there is no suitable free space
+	 */
+	Fragment claim(long size, long before);
+
+
+	/**
+	 * Returns a free space claimed with {@link #claim(long, long)} which is not used.
+	 *
+	 * @param claimed the claimed free {@link Fragment}
+	 */
+	void unclaim(Fragment claimed);
+
+
+	/**
+	 * Moves the specified allocated {@link Fragment} to the start of the claimed free space and frees its previous space.
+	 * The move is only done if the fragment is still the current fragment of its id, otherwise the claimed space is
+	 * returned.
+	 *
+	 * @param fragment the allocated {@link Fragment} as returned by {@link #findById(String)}
+	 * @param claimed the free {@link Fragment} claimed with {@link #claim(long, long)}
+	 * @return the relocated {@link Fragment} or null if the id has been written or freed in the meantime
+	 */
+	Fragment relocate(Fragment fragment, Fragment claimed);
+
+
+	/**
+	 * Gets the allocated {@link Fragment} with the highest start before the specified position, which must be the tail or
+	 * the start of a fragment.
+	 *
+	 * @param before the position
+	 * @return the allocated {@link Fragment} or null if there is none
+	 */
+	Fragment findLastBlock(long before);
+
+
+	/**
+	 * Gets the free space with the lowest start which is not claimed.
+	 *
+	 * @return the first free {@link Fragment} or null if there is none
+	 */
+	Fragment findFirstFree();
+
+
+	/**
+	 * Removes trailing free space from the table, so that the file can be truncated to the tail.
+	 *
+	 * @return the tail of the table
+	 */
+	long trim();
+
+
+	/**
+	 * Gets the end of the table, i.e. the position at which the next space at the end will be allocated.
+	 *
+	 * @return the end of the table
+	 */
+	long getTail();
+
+
+	/**
+	 * Gets the total number of free bytes within the table.
+	 *
+	 * @return the free bytes
+	 */
+	long getFreeSpace();
+
+
+	/**
+	 * Gets the fragmentation ratio of the free space (see {@link FreeSpaceIndex#getFragmentationRatio()}).
+	 *
+	 * @return the fragmentation ratio between 0 and 1
+	 */
+	double getFragmentationRatio();
+
+
+	/**
+	 * Pins a point-in-time view of the allocated fragments. The space of fragments which are changed afterwards is not
+	 * reused until the view has been closed.
+	 *
+	 * @return the {@link AllocationView}
+	 */
+	AllocationView pin();
+
+
+	/**
+	 * Gets the number of allocated fragments.
+	 *
+	 * @return the number of allocated fragments
+	 */
+	long size();
+}
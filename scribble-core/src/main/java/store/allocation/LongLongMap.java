@@ -0,0 +1,231 @@
+package store.allocation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Open addressing hash map from primitive long keys to long values which is kept off-heap. The slots are stored in
+ * direct buffers of up to 2^20 slots each, so the map can grow beyond 2GB. Collisions are resolved by linear probing and
+ * removals shift the following entries back, so there are no tombstones.
+ * <p>
+ * The map is not thread-safe. {@link Long#MIN_VALUE} can not be used as key.
+ */
+final class LongLongMap {
+	/** The value returned for a missing key. */
+	static final long MISSING = Long.MIN_VALUE;
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final int CHUNK_BITS = 20;
+	private static final int CHUNK_SIZE = 1 << LongLongMap.CHUNK_BITS;
+	private static final double LOAD_FACTOR = 0.6;
+	private LongBuffer[] chunks;
+	private long capacity;
+	private long mask;
+	private long size = 0;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param expected the expected number of entries
+	 */
+	LongLongMap(final long expected) {
+		allocate(Math.max(16L, Long.highestOneBit((long) (expected / LongLongMap.LOAD_FACTOR)) << 1));
+	}
+
+
+	/**
+	 * Allocates the slots for the specified capacity.
+	 *
+	 * @param capacity the capacity (a power of two)
+	 */
+	private void allocate(final long capacity) {
+		final int chunkSize = (int) Math.min(capacity, LongLongMap.CHUNK_SIZE);
+		chunks = new LongBuffer[(int) (capacity / chunkSize)];
+
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = ByteBuffer.allocateDirect(chunkSize * 16).order(ByteOrder.nativeOrder()).asLongBuffer();
+
+			for (int slot = 0; slot < chunkSize; slot++) {
+				chunks[i].put(slot * 2, LongLongMap.EMPTY);
+			}
+		}
+
+		this.capacity = capacity;
+		mask = capacity - 1;
+	}
+
+
+	/**
+	 * Gets the value for the specified key.
+	 *
+	 * @param key the key
+	 * @return the value or {@link #MISSING}
+	 */
+	long get(final long key) {
+		for (long slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			final long current = key(slot);
+
+			if (current == key) {
+				return value(slot);
+			} else if (current == LongLongMap.EMPTY) {
+				return LongLongMap.MISSING;
+			}
+		}
+	}
+
+
+	/**
+	 * Puts the value for the specified key.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @return the previous value or {@link #MISSING}
+	 */
+	long put(final long key, final long value) {
+		if (key == LongLongMap.EMPTY) {
+			throw new IllegalArgumentException("Invalid key: " + key);
+		}
+
+		for (long slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			final long current = key(slot);
+
+			if (current == key) {
+				final long previous = value(slot);
+				set(slot, key, value);
+				return previous;
+			} else if (current == LongLongMap.EMPTY) {
+				set(slot, key, value);
+
+				if (++size > capacity * LongLongMap.LOAD_FACTOR) {
+					resize();
+				}
+
+				return LongLongMap.MISSING;
+			}
+		}
+	}
+
+
+	/**
+	 * Removes the specified key.
+	 *
+	 * @param key the key
+	 * @return the removed value or {@link #MISSING}
+	 */
+	long remove(final long key) {
+		long slot = hash(key) & mask;
+
+		while (key(slot) != key) {
+			if (key(slot) == LongLongMap.EMPTY) {
+				return LongLongMap.MISSING;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		final long value = value(slot);
+		size--;
+
+		// shift back the following entries which would not be found anymore
+		long next = slot;
+
+		while (true) {
+			next = (next + 1) & mask;
+			final long current = key(next);
+
+			if (current == LongLongMap.EMPTY) {
+				break;
+			}
+
+			final long home = hash(current) & mask;
+
+			// the entry stays if its home lies cyclically between the free slot and itself
+			if (slot <= next ? slot < home && home <= next : slot < home || home <= next) {
+				continue;
+			}
+
+			set(slot, current, value(next));
+			slot = next;
+		}
+
+		set(slot, LongLongMap.EMPTY, 0L);
+		return value;
+	}
+
+
+	/**
+	 * Gets the number of entries.
+	 *
+	 * @return the number of entries
+	 */
+	long size() {
+		return size;
+	}
+
+
+	/**
+	 * Gets the number of off-heap bytes used by the map.
+	 *
+	 * @return the off-heap bytes
+	 */
+	long getMemoryUsage() {
+		return capacity * 16;
+	}
+
+
+	/**
+	 * Doubles the capacity and rehashes all entries.
+	 */
+	private void resize() {
+		final LongBuffer[] previous = chunks;
+		final long previousCapacity = capacity;
+		allocate(capacity * 2);
+		size = 0;
+
+		for (long slot = 0; slot < previousCapacity; slot++) {
+			final LongBuffer chunk = previous[(int) (slot >>> LongLongMap.CHUNK_BITS)];
+			final int index = (int) (slot & (LongLongMap.CHUNK_SIZE - 1)) * 2;
+			final long key = chunk.get(index);
+
+			if (key != LongLongMap.EMPTY) {
+				put(key, chunk.get(index + 1));
+			}
+		}
+	}
+
+
+	private long key(final long slot) {
+		return chunks[(int) (slot >>> LongLongMap.CHUNK_BITS)].get((int) (slot & (LongLongMap.CHUNK_SIZE - 1)) * 2);
+	}
+
+
+	private long value(final long slot) {
+		return chunks[(int) (slot >>> LongLongMap.CHUNK_BITS)].get((int) (slot & (LongLongMap.CHUNK_SIZE - 1)) * 2 + 1);
+	}
+
+
+	private void set(final long slot, final long key, final long value) {
+		final LongBuffer chunk = chunks[(int) (slot >>> LongLongMap.CHUNK_BITS)];
+		final int index = (int) (slot & (LongLongMap.CHUNK_SIZE - 1)) * 2;
+		chunk.put(index, key);
+		chunk.put(index + 1, value);
+	}
+
+
+	/**
+	 * Spreads the bits of the key (finalizer of MurmurHash3).
+	 *
+	 * @param key the key
+	 * @return the hash
+	 */
+	private static long hash(final long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93e53a7ca87L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
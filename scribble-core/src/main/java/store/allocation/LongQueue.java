@@ -0,0 +1,123 @@
+package store.allocation;
+
+import java.util.Arrays;
+
+/**
+ * First-in-first-out queue of primitive longs backed by a growing ring buffer. The queue is not thread-safe.
+ */
+final class LongQueue {
+	private long[] values = new long[16];
+	private int head = 0;
+	private int size = 0;
+
+
+	/**
+	 * Adds the value to the end of the queue.
+	 *
+	 * @param value the value
+	 */
+	void add(final long value) {
+		if (size == values.length) {
+			final long[] grown = new long[values.length * 2];
+
+			for (int i = 0; i < size; i++) {
+				grown[i] = get(i);
+			}
+
+			values = grown;
+			head = 0;
+		}
+
+		values[(head + size++) % values.length] = value;
+	}
+
+
+	/**
+	 * Gets the value at the head of the queue.
+	 *
+	 * @return the value
+	 * @throws IllegalStateException if the queue is empty
+	 */
+	long peek() {
+		if (size == 0) {
+			throw new IllegalStateException("The queue is empty!");
+		}
+
+		return values[head];
+	}
+
+
+	/**
+	 * Removes the value at the head of the queue.
+	 *
+	 * @return the value
+	 * @throws IllegalStateException if the queue is empty
+	 */
+	long poll() {
+		final long value = peek();
+		head = (head + 1) % values.length;
+		size--;
+		return value;
+	}
+
+
+	/**
+	 * Removes the first occurrence of the specified value.
+	 *
+	 * @param value the value
+	 * @return true if the value was contained
+	 */
+	boolean remove(final long value) {
+		for (int i = 0; i < size; i++) {
+			if (get(i) == value) {
+				// close the gap
+				for (int j = i; j < size - 1; j++) {
+					values[(head + j) % values.length] = get(j + 1);
+				}
+
+				size--;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Gets the value at the specified position from the head.
+	 *
+	 * @param index the index
+	 * @return the value
+	 */
+	long get(final int index) {
+		return values[(head + index) % values.length];
+	}
+
+
+	/**
+	 * Gets the number of values.
+	 *
+	 * @return the number of values
+	 */
+	int size() {
+		return size;
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final long[] copy = new long[size];
+
+		for (int i = 0; i < size; i++) {
+			copy[i] = get(i);
+		}
+
+		return Arrays.toString(copy);
+	}
+}
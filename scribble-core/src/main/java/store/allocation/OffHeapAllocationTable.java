@@ -0,0 +1,656 @@
+package store.allocation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link IAllocationTable} which keeps the allocated {@link Fragment}s in off-heap primitive maps instead of heap
+ * objects, so that tables with many millions of fragments put no pressure on the garbage collector.
+ * <p>
+ * Ids are numeric. Each allocated fragment is held by four {@link LongLongMap} entries: start to end, end to start,
+ * start to id and id to start. Neighbouring fragments are found through their adjacent start and end positions. Only
+ * the free fragments are kept on the heap in the {@link FreeSpaceIndex}, as they are few compared to the allocated
+ * ones. The {@link Fragment}s returned by this table are copies.
+ * <p>
+ * All modifications are serialized on the table monitor, lookups only wait for a modification in progress.
+ */
+public class OffHeapAllocationTable extends AbstractAllocationTable {
+	private static final long INITIAL_CAPACITY = 1024;
+	private final LongLongMap ends = new LongLongMap(OffHeapAllocationTable.INITIAL_CAPACITY);
+	private final LongLongMap starts = new LongLongMap(OffHeapAllocationTable.INITIAL_CAPACITY);
+	private final LongLongMap owners = new LongLongMap(OffHeapAllocationTable.INITIAL_CAPACITY);
+	private final LongLongMap ids = new LongLongMap(OffHeapAllocationTable.INITIAL_CAPACITY);
+	private final TreeMap<Long, Fragment> holes = new TreeMap<>();
+	private final FreeSpaceIndex freeSpaces = new FreeSpaceIndex();
+	private final LongQueue freeIds = new LongQueue();
+	private final ReadWriteLock mapLock = new ReentrantReadWriteLock();
+	private long lastId = 0L;
+	private volatile long tail = 0L;
+
+
+	@Override
+	public Fragment allocate(final String id, final long size) {
+		final long numericId = id != null ? OffHeapAllocationTable.parseId(id) : 0L;
+		final Fragment fragment;
+
+		synchronized (lock) {
+			mapLock.writeLock().lock();
+
+			try {
+				// use the best fitting free fragment or the tail
+				final Fragment free = freeSpaces.take(size);
+				final long start = free != null ? free.getStart() : tail;
+
+				if (free != null) {
+					holes.remove(free.getStart());
+
+					// return the rest of the free fragment
+					if (free.getEnd() > start + size - 1) {
+						addHole(start + size, free.getEnd());
+					}
+				}
+
+				fragment = addBlock(start, start + size - 1, id != null ? numericId : nextId(), id != null);
+			} finally {
+				mapLock.writeLock().unlock();
+			}
+
+			journalBlock(fragment.getId(), fragment.getStart(), fragment.getEnd());
+		}
+
+		flushJournal();
+		return fragment;
+	}
+
+
+	@Override
+	public List<Fragment> allocateAll(final long[] sizes) {
+		final long total = Arrays.stream(sizes).sum();
+		final List<Fragment> allocated = new ArrayList<>(sizes.length);
+
+		synchronized (lock) {
+			mapLock.writeLock().lock();
+
+			try {
+				// use the best fitting free fragment for the whole batch or the tail
+				final Fragment free = freeSpaces.take(total);
+				long position = free != null ? free.getStart() : tail;
+
+				if (free != null) {
+					holes.remove(free.getStart());
+
+					// return the rest of the free fragment
+					if (free.getEnd() > position + total - 1) {
+						addHole(position + total, free.getEnd());
+					}
+				}
+
+				for (final long size : sizes) {
+					allocated.add(addBlock(position, position + size - 1, nextId(), false));
+					position += size;
+				}
+			} finally {
+				mapLock.writeLock().unlock();
+			}
+
+			for (final Fragment fragment : allocated) {
+				journalBlock(fragment.getId(), fragment.getStart(), fragment.getEnd());
+			}
+		}
+
+		flushJournal();
+		return allocated;
+	}
+
+
+	@Override
+	public Fragment findById(final String id) {
+		final long numericId;
+
+		try {
+			numericId = Long.parseLong(id);
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+
+		mapLock.readLock().lock();
+
+		try {
+			final long start = ids.get(numericId);
+			return start != LongLongMap.MISSING ? block(start, ends.get(start), numericId) : null;
+		} finally {
+			mapLock.readLock().unlock();
+		}
+	}
+
+
+	@Override
+	public void free(final Fragment fragment) {
+		synchronized (lock) {
+			final long start = fragment.getStart();
+			final long end = fragment.getEnd();
+			mapLock.writeLock().lock();
+
+			try {
+				release(start, end, true);
+			} finally {
+				mapLock.writeLock().unlock();
+			}
+
+			journalFree(start, end);
+		}
+
+		flushJournal();
+	}
+
+
+	@Override
+	public Fragment claim(final long size, final long before) {
+		return freeSpaces.take(size, before);
+	}
+
+
+	@Override
+	public void unclaim(final Fragment claimed) {
+		freeSpaces.add(claimed);
+	}
+
+
+	@Override
+	public Fragment relocate(final Fragment fragment, final Fragment claimed) {
+		final Fragment relocated;
+
+		synchronized (lock) {
+			mapLock.writeLock().lock();
+
+			try {
+				final long id = fragment.getId() != null ? OffHeapAllocationTable.parseId(fragment.getId()) : LongLongMap.MISSING;
+
+				// the fragment must still be the current one of its id
+				if (id == LongLongMap.MISSING || ids.get(id) != fragment.getStart() || ends.get(fragment.getStart()) != fragment.getEnd()) {
+					unclaim(claimed);
+					return null;
+				}
+
+				holes.remove(claimed.getStart());
+				final long end = claimed.getStart() + fragment.getSize() - 1;
+
+				// return the rest of the free fragment
+				if (claimed.getEnd() > end) {
+					addHole(end + 1, claimed.getEnd());
+				}
+
+				// replaces and releases the previous fragment of the id
+				relocated = addBlock(claimed.getStart(), end, id, false);
+			} finally {
+				mapLock.writeLock().unlock();
+			}
+
+			journalBlock(relocated.getId(), relocated.getStart(), relocated.getEnd());
+		}
+
+		flushJournal();
+		return relocated;
+	}
+
+
+	@Override
+	public Fragment findLastBlock(final long before) {
+		mapLock.readLock().lock();
+
+		try {
+			long position = before;
+
+			// walk back over the free fragments
+			while (position > 0) {
+				final long start = starts.get(position - 1);
+
+				if (start != LongLongMap.MISSING) {
+					return block(start, position - 1, owners.get(start));
+				}
+
+				final Map.Entry<Long, Fragment> hole = holes.floorEntry(position - 1);
+
+				if (hole == null || hole.getValue().getEnd() < position - 1) {
+					return null;
+				}
+
+				position = hole.getKey();
+			}
+
+			return null;
+		} finally {
+			mapLock.readLock().unlock();
+		}
+	}
+
+
+	@Override
+	public Fragment findFirstFree() {
+		return freeSpaces.first();
+	}
+
+
+	@Override
+	public long trim() {
+		synchronized (lock) {
+			mapLock.writeLock().lock();
+
+			try {
+				final Map.Entry<Long, Fragment> last = holes.lastEntry();
+
+				// the free space must not be claimed
+				if (last != null && last.getValue().getEnd() + 1 == tail && freeSpaces.remove(last.getValue())) {
+					holes.remove(last.getKey());
+					tail = last.getKey();
+				}
+
+				return tail;
+			} finally {
+				mapLock.writeLock().unlock();
+			}
+		}
+	}
+
+
+	/**
+	 * Blocks the specified {@link Fragment} at its position. The position must either be free or beyond the tail.
+	 *
+	 * @param id the id or null to generate a new id
+	 * @param fragment the fragment to block
+	 * @throws IllegalArgumentException if the position is already in use
+	 */
+	@Override
+	protected void block(final String id, final Fragment fragment) {
+		final long start = fragment.getStart();
+		final long end = fragment.getEnd();
+
+		synchronized (lock) {
+			final Fragment blocked;
+			mapLock.writeLock().lock();
+
+			try {
+				if (start < tail) {
+					// collect the free fragments covering the position
+					final List<Fragment> covering = new ArrayList<>();
+					final Map.Entry<Long, Fragment> first = holes.floorEntry(start);
+					Fragment hole = first != null && first.getValue().getEnd() >= start ? first.getValue() : null;
+
+					while (hole != null) {
+						covering.add(hole);
+						hole = hole.getEnd() < end ? holes.get(hole.getEnd() + 1) : null;
+					}
+
+					final long covered = covering.isEmpty() ? start - 1 : covering.get(covering.size() - 1).getEnd();
+
+					if (covering.isEmpty() || covered < end && covered + 1 < tail) {
+						throw new IllegalArgumentException("The requested fragment (" + fragment + ") is already in use!");
+					}
+
+					for (final Fragment free : covering) {
+						if (!freeSpaces.remove(free)) {
+							throw new IllegalArgumentException("The requested fragment (" + fragment + ") is claimed!");
+						}
+
+						holes.remove(free.getStart());
+					}
+
+					// return the free space before and after the fragment
+					if (covering.get(0).getStart() < start) {
+						addHole(covering.get(0).getStart(), start - 1);
+					}
+
+					if (covered > end) {
+						addHole(end + 1, covered);
+					}
+				} else if (start > tail) {
+					addHole(tail, start - 1);
+				}
+
+				blocked = addBlock(start, end, id != null ? OffHeapAllocationTable.parseId(id) : nextId(), id != null);
+			} finally {
+				mapLock.writeLock().unlock();
+			}
+
+			journalBlock(blocked.getId(), start, end);
+		}
+
+		flushJournal();
+	}
+
+
+	/**
+	 * Adds an allocated fragment. The previous fragment of the id is released. The caller must hold the write lock.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 * @param id the id
+	 * @param explicit true if the id has been specified by the caller
+	 * @return the {@link Fragment}
+	 */
+	private Fragment addBlock(final long start, final long end, final long id, final boolean explicit) {
+		ends.put(start, end);
+		starts.put(end, start);
+		owners.put(start, id);
+
+		if (isRetaining()) {
+			final long current = ids.get(id);
+			beforeChange(Long.toString(id), current != LongLongMap.MISSING ? OffHeapAllocationTable.block(current, ends.get(current), id) : null);
+		}
+
+		final long previous = ids.put(id, start);
+		// extend the tail first, so releasing a previous fragment at the end leaves a free fragment
+		tail = Math.max(tail, end + 1);
+
+		if (previous != LongLongMap.MISSING && previous != start) {
+			release(previous, ends.get(previous), false);
+		} else if (previous == LongLongMap.MISSING && explicit) {
+			// an explicit new id (e.g. during journal replay) must not be handed out again
+			reserveId(id);
+		}
+
+		return block(start, end, id);
+	}
+
+
+	/**
+	 * Releases the space between start and end, joining it with neighbouring free fragments which are not claimed. A
+	 * released space at the end of the table moves the tail back. While views are pinned the space becomes a hole which
+	 * is neither joined nor added to the {@link FreeSpaceIndex} until it is reclaimed. The caller must hold the write
+	 * lock.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 * @param recycleId true if the id of a released fragment can be reused
+	 */
+	private void release(final long start, final long end, final boolean recycleId) {
+		if (ends.remove(start) != LongLongMap.MISSING) {
+			starts.remove(end);
+			final long id = owners.remove(start);
+
+			if (recycleId && id != LongLongMap.MISSING && ids.get(id) == start) {
+				if (isRetaining()) {
+					beforeChange(Long.toString(id), OffHeapAllocationTable.block(start, end, id));
+				}
+
+				ids.remove(id);
+				freeIds.add(id);
+			}
+		}
+
+		if (isRetaining()) {
+			final Fragment hole = new Fragment(start, end);
+			hole.setType(FragmentType.FREE);
+			holes.put(start, hole);
+			retain(start, end);
+			return;
+		}
+
+		releaseSpace(start, end);
+	}
+
+
+	/**
+	 * Makes the space between start and end free, joining it with neighbouring free fragments which are not claimed. The
+	 * caller must hold the write lock.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 */
+	private void releaseSpace(final long start, final long end) {
+		long from = start;
+		long to = end;
+		final Map.Entry<Long, Fragment> previous = holes.floorEntry(start - 1);
+
+		if (previous != null && previous.getValue().getEnd() == start - 1 && freeSpaces.remove(previous.getValue())) {
+			holes.remove(previous.getKey());
+			from = previous.getKey();
+		}
+
+		final Fragment next = holes.get(end + 1);
+
+		if (next != null && freeSpaces.remove(next)) {
+			holes.remove(next.getStart());
+			to = next.getEnd();
+		}
+
+		if (to + 1 >= tail) {
+			tail = from;
+		} else {
+			addHole(from, to);
+		}
+	}
+
+
+	/**
+	 * Adds a free fragment. The caller must hold the write lock.
+	 *
+	 * @param start the start
+	 * @param end the end
+	 */
+	private void addHole(final long start, final long end) {
+		final Fragment hole = new Fragment(start, end);
+		hole.setType(FragmentType.FREE);
+		holes.put(start, hole);
+		freeSpaces.add(hole);
+	}
+
+
+	/**
+	 * Creates a copy of an allocated fragment.
+	 */
+	private static Fragment block(final long start, final long end, final long id) {
+		final Fragment fragment = new Fragment(start, end);
+		fragment.setType(FragmentType.BLOCK);
+		fragment.setId(Long.toString(id));
+		return fragment;
+	}
+
+
+	/**
+	 * Parses the specified numeric id.
+	 *
+	 * @param id the id
+	 * @return the numeric id
+	 * @throws IllegalArgumentException if the id is not a positive number
+	 */
+	private static long parseId(final String id) {
+		try {
+			final long numericId = Long.parseLong(id);
+
+			if (numericId > 0) {
+				return numericId;
+			}
+		} catch (final NumberFormatException e) {
+			// handled below
+		}
+
+		throw new IllegalArgumentException("The id [" + id + "] is not numeric!");
+	}
+
+
+	/**
+	 * Takes the next free id or generates a new one.
+	 *
+	 * @return the id
+	 */
+	private long nextId() {
+		return freeIds.size() > 0 ? freeIds.poll() : ++lastId;
+	}
+
+
+	/**
+	 * Reserves the specified id so that it will not be generated or reused.
+	 *
+	 * @param id the id
+	 */
+	private void reserveId(final long id) {
+		if (freeIds.size() > 0 && freeIds.peek() == id) {
+			freeIds.poll();
+		} else if (id > lastId) {
+			lastId = id;
+		} else {
+			freeIds.remove(id);
+		}
+	}
+
+
+	@Override
+	public long getTail() {
+		return tail;
+	}
+
+
+	@Override
+	public long getFreeSpace() {
+		return freeSpaces.getFreeSpace();
+	}
+
+
+	@Override
+	public double getFragmentationRatio() {
+		return freeSpaces.getFragmentationRatio();
+	}
+
+
+	@Override
+	public long size() {
+		mapLock.readLock().lock();
+
+		try {
+			return ids.size();
+		} finally {
+			mapLock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Gets the number of off-heap bytes used by the table.
+	 *
+	 * @return the off-heap bytes
+	 */
+	public long getMemoryUsage() {
+		mapLock.readLock().lock();
+
+		try {
+			return ends.getMemoryUsage() + starts.getMemoryUsage() + owners.getMemoryUsage() + ids.getMemoryUsage();
+		} finally {
+			mapLock.readLock().unlock();
+		}
+	}
+
+
+	@Override
+	void reclaim(final long start, final long end) {
+		synchronized (lock) {
+			mapLock.writeLock().lock();
+
+			try {
+				final Fragment retained = holes.get(start);
+
+				if (retained != null && retained.getEnd() == end) {
+					holes.remove(start);
+					releaseSpace(start, end);
+				}
+			} finally {
+				mapLock.writeLock().unlock();
+			}
+		}
+	}
+
+
+	@Override
+	void forEachBlock(final BlockVisitor visitor) throws IOException {
+		long position = 0;
+
+		while (position < tail) {
+			final long end = ends.get(position);
+
+			if (end != LongLongMap.MISSING) {
+				visitor.visit(position, end, Long.toString(owners.get(position)));
+				position = end + 1;
+			} else {
+				final Fragment hole = holes.get(position);
+
+				if (hole == null) {
+					break;
+				}
+
+				position = hole.getEnd() + 1;
+			}
+		}
+	}
+
+
+	@Override
+	long getLength() {
+		return tail;
+	}
+
+
+	@Override
+	Collection<String> getFreeIds() {
+		final List<String> result = new ArrayList<>(freeIds.size());
+
+		for (int i = 0; i < freeIds.size(); i++) {
+			result.add(Long.toString(freeIds.get(i)));
+		}
+
+		return result;
+	}
+
+
+	@Override
+	long getLastId() {
+		return lastId;
+	}
+
+
+	@Override
+	void restore(final long start, final long end, final String id) {
+		if (start > tail) {
+			addHole(tail, start - 1);
+		}
+
+		final long numericId = OffHeapAllocationTable.parseId(id);
+		ends.put(start, end);
+		starts.put(end, start);
+		owners.put(start, numericId);
+		ids.put(numericId, start);
+		tail = end + 1;
+	}
+
+
+	@Override
+	void restore(final long length, final long lastId, final Collection<String> freeIds) {
+		if (length > tail) {
+			addHole(tail, length - 1);
+			tail = length;
+		}
+
+		this.lastId = lastId;
+
+		for (final String id : freeIds) {
+			this.freeIds.add(OffHeapAllocationTable.parseId(id));
+		}
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "OffHeapAllocationTable [fragments=" + ids.size() + ", freeSpaces=" + freeSpaces + ", freeIds=" + freeIds + ", lastId=" + lastId + ", tail=" + tail + "]";
+	}
+}
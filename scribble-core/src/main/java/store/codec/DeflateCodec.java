@@ -0,0 +1,89 @@
+package store.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * High-ratio codec using raw deflate at the highest compression level. The last 32KB of a dictionary are used as
+ * preset dictionary. The native deflaters and inflaters are kept per thread.
+ */
+public class DeflateCodec implements ICodec {
+  /** The id of the codec. */
+  public static final byte ID = 2;
+  private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_COMPRESSION, true));
+  private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+
+  @Override
+  public byte getId() {
+    return DeflateCodec.ID;
+  }
+
+
+  @Override
+  public byte[] compress(final byte[] src, final byte[] dictionary) {
+    final Deflater deflater = deflaters.get();
+    deflater.reset();
+
+    if (dictionary != null) {
+      deflater.setDictionary(dictionary);
+    }
+
+    deflater.setInput(src);
+    deflater.finish();
+    byte[] out = new byte[src.length + src.length / 1000 + 64];
+    int length = 0;
+
+    while (!deflater.finished()) {
+      if (length == out.length) {
+        out = Arrays.copyOf(out, out.length * 2);
+      }
+
+      length += deflater.deflate(out, length, out.length - length);
+    }
+
+    return Arrays.copyOf(out, length);
+  }
+
+
+  @Override
+  public byte[] decompress(final byte[] src, final int offset, final int length, final byte[] dictionary, final int uncompressedLength) throws IOException {
+    if (uncompressedLength == 0) {
+      return new byte[0];
+    }
+
+    final Inflater inflater = inflaters.get();
+    final byte[] out = new byte[uncompressedLength];
+    int op = 0;
+    inflater.reset();
+
+    if (dictionary != null) {
+      inflater.setDictionary(dictionary);
+    }
+
+    inflater.setInput(src, offset, length);
+
+    try {
+      while (!inflater.finished()) {
+        final int count = inflater.inflate(out, op, out.length - op);
+
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary() || op == out.length)) {
+          break;
+        }
+
+        op += count;
+      }
+    } catch (final DataFormatException e) {
+      throw new IOException("Corrupt compressed data", e);
+    }
+
+    if (op != uncompressedLength || !inflater.finished()) {
+      throw new IOException("Decompressed " + op + " bytes instead of " + uncompressedLength);
+    }
+
+    return out;
+  }
+}
@@ -0,0 +1,151 @@
+package store.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Trains a shared dictionary on sample records. The samples are cut into segments and each segment is scored by the
+ * number of samples containing its 8-byte substrings. The best segments are selected greedily; substrings already
+ * covered by a selected segment do not count again, so the dictionary covers many different frequent substrings. The
+ * best segments are placed at the end of the dictionary, where matches have the shortest offsets.
+ */
+public class DictionaryTrainer {
+  private static final int DMER = 8;
+  private static final int SEGMENT_SIZE = 64;
+
+  /**
+   * A segment of a sample with its last known score.
+   */
+  private static class Segment {
+    private final byte[] sample;
+    private final int start;
+    private final int end;
+    private long score;
+
+
+    private Segment(final byte[] sample, final int start, final int end) {
+      this.sample = sample;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+
+  private DictionaryTrainer() {
+  }
+
+
+  /**
+   * Trains a dictionary on the specified samples.
+   *
+   * @param samples the sample records
+   * @param size the maximum size of the dictionary
+   * @return the dictionary, which may be shorter than the size for few samples
+   * @throws IllegalArgumentException if there are no samples of at least 8 bytes
+   */
+  public static byte[] train(final List<ByteBuffer> samples, final int size) {
+    final Map<Long, Integer> frequencies = new HashMap<>();
+    final List<Segment> segments = new ArrayList<>();
+
+    for (final ByteBuffer buffer : samples) {
+      final byte[] sample = new byte[buffer.remaining()];
+      buffer.duplicate().get(sample);
+      final Set<Long> dmers = new HashSet<>();
+
+      for (int p = 0; p + DictionaryTrainer.DMER <= sample.length; p++) {
+        dmers.add(DictionaryTrainer.dmer(sample, p));
+      }
+
+      // count each substring once per sample
+      for (final Long dmer : dmers) {
+        frequencies.merge(dmer, 1, Integer::sum);
+      }
+
+      for (int start = 0; start + DictionaryTrainer.DMER <= sample.length; start += DictionaryTrainer.SEGMENT_SIZE) {
+        segments.add(new Segment(sample, start, Math.min(sample.length, start + DictionaryTrainer.SEGMENT_SIZE)));
+      }
+    }
+
+    if (segments.isEmpty()) {
+      throw new IllegalArgumentException("No samples of at least " + DictionaryTrainer.DMER + " bytes to train a dictionary");
+    }
+
+    final PriorityQueue<Segment> queue = new PriorityQueue<>((a, b) -> Long.compare(b.score, a.score));
+
+    for (final Segment segment : segments) {
+      segment.score = DictionaryTrainer.score(segment, frequencies);
+      queue.add(segment);
+    }
+
+    final List<Segment> selected = new ArrayList<>();
+    int length = 0;
+
+    while (!queue.isEmpty() && length < size) {
+      final Segment segment = queue.poll();
+      final long score = DictionaryTrainer.score(segment, frequencies);
+
+      // scores only decrease, so a segment still scoring at least the next best one is the best
+      if (!queue.isEmpty() && score < queue.peek().score) {
+        segment.score = score;
+        queue.add(segment);
+        continue;
+      }
+
+      // substrings which occur in a single sample are not worth a place in the dictionary
+      if (score <= segment.end - segment.start - DictionaryTrainer.DMER + 1) {
+        break;
+      }
+
+      selected.add(segment);
+      length += segment.end - segment.start;
+
+      for (int p = segment.start; p + DictionaryTrainer.DMER <= segment.end; p++) {
+        frequencies.remove(DictionaryTrainer.dmer(segment.sample, p));
+      }
+    }
+
+    // the best segment goes last, the worst one is cut to the size
+    final ByteBuffer dictionary = ByteBuffer.allocate(Math.min(length, size));
+    int overflow = Math.max(0, length - size);
+
+    for (int i = selected.size() - 1; i >= 0; i--) {
+      final Segment segment = selected.get(i);
+      final int skip = Math.min(overflow, segment.end - segment.start);
+      dictionary.put(segment.sample, segment.start + skip, segment.end - segment.start - skip);
+      overflow -= skip;
+    }
+
+    return dictionary.array();
+  }
+
+
+  /**
+   * Scores the segment by the frequencies of its substrings.
+   */
+  private static long score(final Segment segment, final Map<Long, Integer> frequencies) {
+    long score = 0;
+
+    for (int p = segment.start; p + DictionaryTrainer.DMER <= segment.end; p++) {
+      score += frequencies.getOrDefault(DictionaryTrainer.dmer(segment.sample, p), 0);
+    }
+
+    return score;
+  }
+
+
+  private static long dmer(final byte[] sample, final int position) {
+    long dmer = 0;
+
+    for (int i = 0; i < DictionaryTrainer.DMER; i++) {
+      dmer = dmer << 8 | (sample[position + i] & 0xff);
+    }
+
+    return dmer;
+  }
+}
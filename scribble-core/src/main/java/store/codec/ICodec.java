@@ -0,0 +1,41 @@
+package store.codec;
+
+import java.io.IOException;
+
+/**
+ * A compression codec for records. A codec may use a dictionary of data which is typical for the records, which
+ * improves the compression of small records considerably.
+ */
+public interface ICodec {
+
+  /**
+   * Gets the id of the codec stored in the header of each record.
+   *
+   * @return the id between 1 and 127
+   */
+  byte getId();
+
+
+  /**
+   * Compresses the specified data.
+   *
+   * @param src the data
+   * @param dictionary the dictionary or null
+   * @return the compressed data
+   */
+  byte[] compress(byte[] src, byte[] dictionary);
+
+
+  /**
+   * Decompresses the specified data.
+   *
+   * @param src the array holding the compressed data
+   * @param offset the offset of the compressed data in the array
+   * @param length the length of the compressed data
+   * @param dictionary the dictionary used for compression or null
+   * @param uncompressedLength the length of the uncompressed data
+   * @return the data
+   * @throws IOException if the compressed data is corrupt
+   */
+  byte[] decompress(byte[] src, int offset, int length, byte[] dictionary, int uncompressedLength) throws IOException;
+}
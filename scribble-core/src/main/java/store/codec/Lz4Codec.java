@@ -0,0 +1,249 @@
+package store.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fast LZ77 codec writing the LZ4 block format: sequences of a token, literals, a 2-byte offset and a match length.
+ * Matches are found greedily through a hash table of 4-byte sequences. A dictionary precedes the data as if it had been
+ * written before it, so matches may refer into the last 64KB of the dictionary.
+ */
+public class Lz4Codec implements ICodec {
+  /** The id of the codec. */
+  public static final byte ID = 1;
+  private static final int MIN_MATCH = 4;
+  private static final int LAST_LITERALS = 5;
+  private static final int MF_LIMIT = 12;
+  private static final int MAX_OFFSET = 65535;
+  private static final int HASH_BITS = 12;
+  private static final int EMPTY = Integer.MIN_VALUE;
+  private static final byte[] NO_DICTIONARY = new byte[0];
+  private volatile DictionaryTable dictionaryTable;
+
+  /**
+   * The hash table of a dictionary, which is copied for each compression instead of hashing the dictionary again.
+   */
+  private static class DictionaryTable {
+    private final byte[] dictionary;
+    private final int[] table;
+
+
+    private DictionaryTable(final byte[] dictionary) {
+      this.dictionary = dictionary;
+      table = new int[1 << Lz4Codec.HASH_BITS];
+      Arrays.fill(table, Lz4Codec.EMPTY);
+
+      // positions in the dictionary are negative, relative to the start of the data
+      for (int p = Math.max(0, dictionary.length - Lz4Codec.MAX_OFFSET); p + Lz4Codec.MIN_MATCH <= dictionary.length; p++) {
+        table[Lz4Codec.hash(Lz4Codec.readInt(dictionary, p))] = p - dictionary.length;
+      }
+    }
+  }
+
+
+  @Override
+  public byte getId() {
+    return Lz4Codec.ID;
+  }
+
+
+  @Override
+  public byte[] compress(final byte[] src, final byte[] dictionary) {
+    final byte[] dict = dictionary != null ? dictionary : Lz4Codec.NO_DICTIONARY;
+    final int[] table = getTable(dict);
+    final byte[] out = new byte[src.length + src.length / 255 + 16];
+    final int limit = src.length - Lz4Codec.MF_LIMIT;
+    final int matchLimit = src.length - Lz4Codec.LAST_LITERALS;
+    int op = 0;
+    int anchor = 0;
+    int p = 0;
+
+    while (p < limit) {
+      final int sequence = Lz4Codec.readInt(src, p);
+      final int hash = Lz4Codec.hash(sequence);
+      final int ref = table[hash];
+      table[hash] = p;
+
+      if (ref == Lz4Codec.EMPTY || p - ref > Lz4Codec.MAX_OFFSET || readInt(src, dict, ref) != sequence) {
+        // skip faster through data which does not match
+        p += 1 + ((p - anchor) >>> 6);
+        continue;
+      }
+
+      int length = Lz4Codec.MIN_MATCH;
+
+      while (p + length < matchLimit && byteAt(src, dict, ref + length) == src[p + length]) {
+        length++;
+      }
+
+      final int token = op;
+      op = writeSequence(out, op, src, anchor, p - anchor);
+      out[op++] = (byte) (p - ref);
+      out[op++] = (byte) ((p - ref) >>> 8);
+      out[token] |= (byte) Math.min(length - Lz4Codec.MIN_MATCH, 15);
+
+      if (length - Lz4Codec.MIN_MATCH >= 15) {
+        op = writeExtension(out, op, length - Lz4Codec.MIN_MATCH - 15);
+      }
+
+      p += length;
+      anchor = p;
+
+      if (p < limit) {
+        table[Lz4Codec.hash(Lz4Codec.readInt(src, p - 2))] = p - 2;
+      }
+    }
+
+    op = writeSequence(out, op, src, anchor, src.length - anchor);
+    return Arrays.copyOf(out, op);
+  }
+
+
+  @Override
+  public byte[] decompress(final byte[] src, final int offset, final int length, final byte[] dictionary, final int uncompressedLength) throws IOException {
+    final byte[] dict = dictionary != null ? dictionary : Lz4Codec.NO_DICTIONARY;
+    final byte[] out = new byte[uncompressedLength];
+    final int end = offset + length;
+    int ip = offset;
+    int op = 0;
+
+    try {
+      while (ip < end) {
+        final int token = src[ip++] & 0xff;
+        int literals = token >>> 4;
+
+        if (literals == 15) {
+          int b;
+
+          do {
+            b = src[ip++] & 0xff;
+            literals += b;
+          } while (b == 255);
+        }
+
+        System.arraycopy(src, ip, out, op, literals);
+        ip += literals;
+        op += literals;
+
+        // the last sequence has no match
+        if (ip >= end) {
+          break;
+        }
+
+        final int distance = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+        ip += 2;
+        int matchLength = token & 0x0f;
+
+        if (matchLength == 15) {
+          int b;
+
+          do {
+            b = src[ip++] & 0xff;
+            matchLength += b;
+          } while (b == 255);
+        }
+
+        matchLength += Lz4Codec.MIN_MATCH;
+        int ref = op - distance;
+
+        if (distance == 0 || ref < -dict.length) {
+          throw new IOException("Invalid match offset " + distance + " at " + op);
+        }
+
+        // byte by byte, as the match may overlap the bytes being written
+        for (final int matchEnd = op + matchLength; op < matchEnd; op++, ref++) {
+          out[op] = ref < 0 ? dict[dict.length + ref] : out[ref];
+        }
+      }
+    } catch (final IndexOutOfBoundsException e) {
+      throw new IOException("Corrupt compressed data", e);
+    }
+
+    if (op != uncompressedLength) {
+      throw new IOException("Decompressed " + op + " bytes instead of " + uncompressedLength);
+    }
+
+    return out;
+  }
+
+
+  /**
+   * Gets a fresh hash table for a compression, prefilled with the positions of the dictionary.
+   *
+   * @param dictionary the dictionary
+   * @return the hash table
+   */
+  private int[] getTable(final byte[] dictionary) {
+    if (dictionary.length == 0) {
+      final int[] table = new int[1 << Lz4Codec.HASH_BITS];
+      Arrays.fill(table, Lz4Codec.EMPTY);
+      return table;
+    }
+
+    DictionaryTable current = dictionaryTable;
+
+    if (current == null || current.dictionary != dictionary) {
+      current = new DictionaryTable(dictionary);
+      dictionaryTable = current;
+    }
+
+    return current.table.clone();
+  }
+
+
+  /**
+   * Writes a token with the literal length, the extended literal length and the literals. The match length is added
+   * to the token once the match has been written.
+   */
+  private static int writeSequence(final byte[] out, final int position, final byte[] src, final int start, final int literals) {
+    int op = position;
+    final int token = op++;
+    out[token] = (byte) (Math.min(literals, 15) << 4);
+
+    if (literals >= 15) {
+      op = writeExtension(out, op, literals - 15);
+    }
+
+    System.arraycopy(src, start, out, op, literals);
+    return op + literals;
+  }
+
+
+  private static int writeExtension(final byte[] out, final int position, final int length) {
+    int op = position;
+    int remaining = length;
+
+    while (remaining >= 255) {
+      out[op++] = (byte) 255;
+      remaining -= 255;
+    }
+
+    out[op++] = (byte) remaining;
+    return op;
+  }
+
+
+  private static byte byteAt(final byte[] src, final byte[] dictionary, final int position) {
+    return position < 0 ? dictionary[dictionary.length + position] : src[position];
+  }
+
+
+  private static int readInt(final byte[] src, final byte[] dictionary, final int position) {
+    if (position >= 0) {
+      return Lz4Codec.readInt(src, position);
+    }
+
+    return (byteAt(src, dictionary, position) & 0xff) | (byteAt(src, dictionary, position + 1) & 0xff) << 8
+        | (byteAt(src, dictionary, position + 2) & 0xff) << 16 | (byteAt(src, dictionary, position + 3) & 0xff) << 24;
+  }
+
+
+  private static int readInt(final byte[] src, final int position) {
+    return (src[position] & 0xff) | (src[position + 1] & 0xff) << 8 | (src[position + 2] & 0xff) << 16 | (src[position + 3] & 0xff) << 24;
+  }
+
+
+  private static int hash(final int sequence) {
+    return (sequence * -1640531535) >>> (32 - Lz4Codec.HASH_BITS);
+  }
+}
@@ -0,0 +1,136 @@
+package store.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the records of a store with an {@link ICodec}. Each encoded record starts with a header
+ * <code>[flags:byte][length:int]</code>: the flags hold the id of the codec and whether the shared dictionary was used,
+ * the length is the uncompressed length. A record which does not shrink is stored uncompressed with codec id 0.
+ * <p>
+ * Records are decoded with the codec named in their header, so the codec of a store can be changed without rewriting
+ * its records.
+ */
+public class RecordCodec {
+  /** The size of the header of an encoded record. */
+  public static final int HEADER_SIZE = 5;
+  private static final byte UNCOMPRESSED = 0;
+  private static final int DICTIONARY_FLAG = 0x80;
+  private static final ICodec[] CODECS = { null, new Lz4Codec(), new DeflateCodec() };
+  private final ICodec codec;
+  private volatile byte[] dictionary;
+
+
+  /**
+   * Constructor.
+   *
+   * @param codec the {@link ICodec} to compress new records with
+   */
+  public RecordCodec(final ICodec codec) {
+    this.codec = codec;
+  }
+
+
+  /**
+   * Encodes the remaining bytes of the specified buffer.
+   *
+   * @param bytes the data
+   * @return the encoded record
+   */
+  public ByteBuffer encode(final ByteBuffer bytes) {
+    final byte[] data = new byte[bytes.remaining()];
+    bytes.duplicate().get(data);
+    final byte[] dict = dictionary;
+    final byte[] compressed = codec.compress(data, dict);
+    final boolean shrunk = compressed.length < data.length;
+    final ByteBuffer record = ByteBuffer.allocate(RecordCodec.HEADER_SIZE + (shrunk ? compressed.length : data.length));
+
+    if (shrunk) {
+      record.put((byte) (codec.getId() | (dict != null ? RecordCodec.DICTIONARY_FLAG : 0))).putInt(data.length).put(compressed);
+    } else {
+      record.put(RecordCodec.UNCOMPRESSED).putInt(data.length).put(data);
+    }
+
+    return record.flip();
+  }
+
+
+  /**
+   * Decodes the remaining bytes of the specified buffer.
+   *
+   * @param record the encoded record
+   * @return the data
+   * @throws IOException if the record is corrupt or has been compressed with an unknown codec or dictionary
+   */
+  public ByteBuffer decode(final ByteBuffer record) throws IOException {
+    if (record.remaining() < RecordCodec.HEADER_SIZE) {
+      throw new IOException("The record is too short for its header: " + record.remaining() + " bytes");
+    }
+
+    final ByteBuffer source = record.duplicate();
+    final int flags = source.get() & 0xff;
+    final int length = source.getInt();
+    final int id = flags & ~RecordCodec.DICTIONARY_FLAG;
+
+    if (length < 0) {
+      throw new IOException("Invalid record length " + length);
+    }
+
+    if (id == RecordCodec.UNCOMPRESSED) {
+      final byte[] data = new byte[source.remaining()];
+      source.get(data);
+      return ByteBuffer.wrap(data);
+    }
+
+    if (id >= RecordCodec.CODECS.length || RecordCodec.CODECS[id] == null) {
+      throw new IOException("Unknown codec " + id);
+    }
+
+    final byte[] dict = (flags & RecordCodec.DICTIONARY_FLAG) != 0 ? dictionary : null;
+
+    if ((flags & RecordCodec.DICTIONARY_FLAG) != 0 && dict == null) {
+      throw new IOException("The record has been compressed with a dictionary which is not loaded");
+    }
+
+    final ICodec decoder = id == codec.getId() ? codec : RecordCodec.CODECS[id];
+
+    // decompress heap buffers in place
+    if (source.hasArray()) {
+      return ByteBuffer.wrap(decoder.decompress(source.array(), source.arrayOffset() + source.position(), source.remaining(), dict, length));
+    }
+
+    final byte[] data = new byte[source.remaining()];
+    source.get(data);
+    return ByteBuffer.wrap(decoder.decompress(data, 0, data.length, dict, length));
+  }
+
+
+  /**
+   * Gets the {@link ICodec} new records are compressed with.
+   *
+   * @return the {@link ICodec}
+   */
+  public ICodec getCodec() {
+    return codec;
+  }
+
+
+  /**
+   * Gets the shared dictionary.
+   *
+   * @return the dictionary or null
+   */
+  public byte[] getDictionary() {
+    return dictionary;
+  }
+
+
+  /**
+   * Sets the shared dictionary used for the records written from now on.
+   *
+   * @param dictionary the dictionary
+   */
+  public void setDictionary(final byte[] dictionary) {
+    this.dictionary = dictionary;
+  }
+}
@@ -0,0 +1,138 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BloomFilterTest {
+	private Path dir;
+
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("bloom");
+	}
+
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+
+	@Test
+	public void falsePositiveRate() throws IOException {
+		final BloomFilter filter = BloomFilter.create(10000, 0.01);
+
+		for (int i = 0; i < 10000; i++) {
+			filter.add(IndexKey.encode("word" + i));
+		}
+
+		final Path path = dir.resolve("filter.bloom");
+		filter.write(path, 10000, 12345);
+		final BloomFilter read = BloomFilter.read(path, 10000, 12345);
+		Assert.assertEquals(filter.getBitCount(), read.getBitCount());
+		Assert.assertEquals(7, read.getHashCount());
+
+		int falsePositives = 0;
+
+		for (int i = 0; i < 10000; i++) {
+			Assert.assertTrue(read.mightContain(IndexKey.encode("word" + i)));
+
+			if (read.mightContain(IndexKey.encode("absent" + i))) {
+				falsePositives++;
+			}
+		}
+
+		Assert.assertTrue("false positives: " + falsePositives, falsePositives < 200);
+
+		// the filter of another segment-file is discarded
+		Assert.assertNull(BloomFilter.read(path, 10000, 54321));
+		Assert.assertNull(BloomFilter.read(dir.resolve("missing.bloom"), 10000, 12345));
+	}
+
+
+	@Test
+	public void segmentKeys() throws IOException {
+		final List<Map.Entry<byte[], IIndexEntry>> entries = new ArrayList<>();
+
+		for (int i = 0; i < 3000; i++) {
+			final IndexEntry entry = new IndexEntry();
+			entry.setId(String.format("word%05d", i));
+			// values longer than 127 bytes and removed keys
+			entry.setProperty("text", "x".repeat(i % 300));
+			entries.add(new AbstractMap.SimpleImmutableEntry<>(IndexKey.encode(entry.getId()), i % 7 == 0 ? null : entry));
+		}
+
+		final Path path = dir.resolve("0.seg");
+		Assert.assertEquals(3000, SegmentWriter.write(path, entries.iterator(), 0.01));
+		final BloomFilter filter = BloomFilter.read(BloomFilter.getPath(path), 3000, Files.size(path));
+		Assert.assertNotNull(filter);
+
+		for (final Map.Entry<byte[], IIndexEntry> entry : entries) {
+			Assert.assertTrue(filter.mightContain(entry.getKey()));
+		}
+	}
+
+
+	@Test
+	public void negativeLookupsSkipSegment() throws IOException {
+		final Index index = new Index(dir, new IndexOptions().setBloomFilterFalsePositiveRate(0.01));
+
+		for (int i = 0; i < 10000; i++) {
+			final IndexEntry entry = new IndexEntry();
+			entry.setId("word" + i);
+			entry.setStart(i);
+			index.add(entry);
+		}
+
+		index.close();
+
+		for (int i = 0; i < 10000; i++) {
+			Assert.assertEquals(i, index.find("word" + i).getStart());
+			Assert.assertNull(index.find("absent" + i));
+		}
+
+		// a lookup checks the delta files of a segment before its base file, and each present key is found in one file
+		final BloomFilterMetrics metrics = index.getBloomFilterMetrics();
+		final long absent = metrics.getLookups() - 10000;
+		Assert.assertTrue(metrics.toString(), absent >= 10000);
+		Assert.assertTrue(metrics.toString(), metrics.getNegatives() > absent * 0.97);
+		Assert.assertEquals(absent - metrics.getNegatives(), metrics.getFalsePositives());
+		Assert.assertTrue(metrics.getFalsePositiveRate() < 0.03);
+		index.close();
+	}
+
+
+	@Test
+	public void withoutFilter() throws IOException {
+		final Index index = new Index(dir, new IndexOptions().setBloomFilterFalsePositiveRate(0.0));
+		final IndexEntry entry = new IndexEntry();
+		entry.setId("word");
+		index.add(entry);
+		index.close();
+
+		Assert.assertEquals("word", index.find("word").getId());
+		Assert.assertNull(index.find("absent"));
+		Assert.assertEquals(0, index.getBloomFilterMetrics().getLookups());
+		index.close();
+	}
+}
@@ -0,0 +1,107 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexEntryCodecTest {
+	@Test
+	public void typedProperties() throws IOException {
+		final IndexEntry entry = entry();
+		final IndexEntryCodec codec = new IndexEntryCodec();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		codec.encode(entry, out);
+
+		final IndexEntryView view = new IndexEntryView(IndexKey.encode("word"), ByteBuffer.wrap(out.toByteArray()), codec.getKeys().toArray(new String[0]));
+		Assert.assertEquals("word", view.getId());
+		Assert.assertEquals(1L << 40, view.getStart());
+		Assert.assertEquals(300, view.getSize());
+		Assert.assertEquals(-7, view.getProperty("int"));
+		Assert.assertEquals(Long.MIN_VALUE, view.getProperty("long"));
+		Assert.assertEquals(0.5, view.getProperty("double"));
+		Assert.assertEquals("\u00e4", view.getProperty("string"));
+		Assert.assertArrayEquals(new byte[] { 1, 2 }, (byte[]) view.getProperty("bytes"));
+		Assert.assertEquals(Boolean.TRUE, view.getProperty("flag"));
+		Assert.assertEquals(List.of("a", "b"), view.getProperty("list"));
+		Assert.assertNull(view.getProperty("missing"));
+		Assert.assertEquals(7, view.getProperties().size());
+
+		final IIndexEntry clone = view.clone();
+		clone.setStart(1);
+		Assert.assertEquals(1, clone.getStart());
+		Assert.assertEquals(-7, clone.getProperty("int"));
+	}
+
+
+	@Test
+	public void smallerThanSerialization() throws IOException {
+		final IndexEntry entry = new IndexEntry();
+		entry.setStart(1L << 40);
+		entry.setSize(300);
+		entry.setProperty("label", "word");
+		entry.setProperty("count", 42);
+		entry.setProperty("weight", 0.5);
+		final ByteArrayOutputStream compact = new ByteArrayOutputStream();
+		new IndexEntryCodec().encode(entry, compact);
+
+		final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+
+		try (ObjectOutputStream oos = new ObjectOutputStream(serialized)) {
+			oos.writeObject(new HashMap<>(entry.getProperties()));
+		}
+
+		Assert.assertTrue(compact.size() + " bytes", compact.size() * 4 < serialized.size());
+	}
+
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void segmentEntriesAreReadOnly() throws IOException {
+		final Path dir = Files.createTempDirectory("codec");
+		final Path path = dir.resolve("0.seg");
+
+		try {
+			final Iterable<Map.Entry<byte[], IIndexEntry>> entries = List.of(new AbstractMap.SimpleImmutableEntry<>(IndexKey.encode("word"), entry()));
+			SegmentWriter.write(path, entries.iterator());
+
+			try (SegmentFile file = SegmentFile.open(path)) {
+				final IIndexEntry found = file.get("word");
+				Assert.assertTrue(found instanceof IndexEntryView);
+				Assert.assertEquals("\u00e4", found.getProperty("string"));
+				Assert.assertEquals(Arrays.asList("a", "b"), found.getProperties().get("list"));
+				found.setStart(0);
+			}
+		} finally {
+			SegmentFile.delete(path);
+			Files.delete(dir);
+		}
+	}
+
+
+	private static IndexEntry entry() {
+		final IndexEntry entry = new IndexEntry();
+		entry.setId("word");
+		entry.setStart(1L << 40);
+		entry.setSize(300);
+		entry.setProperty("int", -7);
+		entry.setProperty("long", Long.MIN_VALUE);
+		entry.setProperty("double", 0.5);
+		entry.setProperty("string", "\u00e4");
+		entry.setProperty("bytes", new byte[] { 1, 2 });
+		entry.setProperty("flag", true);
+		entry.setProperty("list", List.of("a", "b"));
+		return entry;
+	}
+}
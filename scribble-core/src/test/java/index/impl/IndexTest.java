@@ -0,0 +1,195 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.FsyncPolicy;
+
+public class IndexTest {
+	private Path dir;
+
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("index");
+	}
+
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+
+	@Test
+	public void uniformPartitions() {
+		final Index index = new Index(dir, new IndexOptions().setPartitionBits(6));
+		final int[] counts = new int[64];
+
+		for (int i = 0; i < 64000; i++) {
+			counts[index.getPartition(i % 2 == 0 ? "word" + i : (Object) (long) -i)]++;
+		}
+
+		for (final int count : counts) {
+			Assert.assertTrue(Integer.toString(count), count > 800 && count < 1200);
+		}
+	}
+
+
+	@Test
+	public void boundedOpenSegments() throws IOException {
+		final Index index = new Index(dir, new IndexOptions().setPartitionBits(4).setMaxOpenSegments(3));
+
+		for (int i = 0; i < 300; i++) {
+			index.add(entry("word" + i, i));
+			Assert.assertTrue(index.getOpenSegments() <= 3);
+		}
+
+		// the evicted segments have been written
+		for (int i = 0; i < 300; i++) {
+			Assert.assertEquals(i, index.find("word" + i).getStart());
+		}
+
+		index.close();
+		Assert.assertEquals(0, index.getOpenSegments());
+
+		try (Stream<Path> files = Files.list(dir)) {
+			Assert.assertEquals(16, files.filter(file -> file.toString().endsWith(".seg")).count());
+		}
+	}
+
+
+	@Test
+	public void concurrentAccess() throws Exception {
+		final Index index = new Index(dir, new IndexOptions().setPartitionBits(4).setMaxOpenSegments(2));
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < 8; t++) {
+			final int thread = t;
+			threads.add(new Thread(() -> {
+				try {
+					for (int i = 0; i < 300; i++) {
+						index.add(entry(thread * 10000 + i, i));
+						Assert.assertEquals(i, index.find(thread * 10000 + i).getStart());
+					}
+				} catch (final Throwable e) {
+					error.set(e);
+				}
+			}));
+		}
+
+		threads.forEach(Thread::start);
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertNull(error.get());
+		index.close();
+
+		for (int t = 0; t < 8; t++) {
+			for (int i = 0; i < 300; i++) {
+				Assert.assertEquals(i, index.find(t * 10000 + i).getStart());
+			}
+		}
+
+		index.close();
+	}
+
+
+	@Test
+	public void scanMergesPartitions() throws IOException {
+		final Index index = new Index(dir, new IndexOptions().setPartitionBits(4).setMaxOpenSegments(3));
+
+		for (int i = 0; i < 300; i++) {
+			index.add(entry(String.format("word%03d", i), i));
+		}
+
+		index.add(entry(7, 0));
+		index.remove("word100");
+		index.close();
+		index.add(entry("word101", 1000));
+
+		final List<IIndexEntry> range = index.scan("word099", "word103").collect(Collectors.toList());
+		Assert.assertEquals(List.of("word099", "word101", "word102"), range.stream().map(IIndexEntry::getId).collect(Collectors.toList()));
+		Assert.assertEquals(1000, range.get(1).getStart());
+		Assert.assertEquals(10, index.prefix("word2").limit(10).count());
+		Assert.assertEquals(100, index.prefix("word2").count());
+		Assert.assertEquals(0, index.prefix("other").count());
+		Assert.assertEquals(7, index.scan(null, "").findFirst().get().getId());
+		Assert.assertEquals(300, index.scan(null, null).count());
+		Assert.assertTrue(index.getOpenSegments() <= 3);
+		index.close();
+	}
+
+
+	@Test
+	public void recoverAfterCrash() throws IOException {
+		final IndexOptions options = new IndexOptions().setPartitionBits(2).setFsyncPolicy(FsyncPolicy.NEVER).setCheckpointSize(4096);
+		final Index crashed = new Index(dir, options);
+
+		for (int i = 0; i < 500; i++) {
+			crashed.add(entry("word" + i, i));
+		}
+
+		for (int i = 0; i < 500; i += 5) {
+			crashed.remove("word" + i);
+		}
+
+		// the checkpoints bound the log which is replayed
+		Assert.assertTrue(Files.size(dir.resolve("index.wal")) <= 4096 + 64);
+
+		// the crashed index is never closed
+		final Index recovered = new Index(dir, options);
+
+		for (int i = 0; i < 500; i++) {
+			final IIndexEntry entry = recovered.find("word" + i);
+
+			if (i % 5 == 0) {
+				Assert.assertNull(entry);
+			} else {
+				Assert.assertEquals(i, entry.getStart());
+			}
+		}
+
+		Assert.assertEquals(0, Files.size(dir.resolve("index.wal")));
+		recovered.close();
+	}
+
+
+	@Test(expected = IOException.class)
+	public void partitionsCannotChange() throws IOException {
+		final Index index = new Index(dir, new IndexOptions().setPartitionBits(4));
+		index.add(entry("word", 0));
+		index.close();
+
+		new Index(dir, new IndexOptions().setPartitionBits(5)).open();
+	}
+
+
+	private static IndexEntry entry(final Object id, final long start) {
+		final IndexEntry entry = new IndexEntry();
+		entry.setId(id);
+		entry.setStart(start);
+		return entry;
+	}
+}
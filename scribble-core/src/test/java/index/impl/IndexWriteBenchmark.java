@@ -0,0 +1,81 @@
+package index.impl;
+
+import index.api.IIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the sustained throughput of random inserts into the segment-based {@link Index} and the {@link LsmIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexWriteBenchmark {
+	@Param({ "SEGMENT", "LSM" })
+	private String implementation;
+	private Path path;
+	private IIndex index;
+
+
+	@Setup(Level.Iteration)
+	public void setup() throws IOException {
+		path = Files.createTempDirectory("index");
+		index = "LSM".equals(implementation) ? new LsmIndex(path) : new Index(path);
+		index.open();
+	}
+
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		index.close();
+
+		try (Stream<Path> files = Files.walk(path)) {
+			for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+
+	@Benchmark
+	public void insert() throws IOException {
+		final long id = ThreadLocalRandom.current().nextLong();
+		final IndexEntry entry = new IndexEntry();
+		entry.setId("word" + id);
+		entry.setStart(id);
+		entry.setSize(64);
+		index.add(entry);
+	}
+
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(IndexWriteBenchmark.class.getSimpleName()).build()).run();
+	}
+}
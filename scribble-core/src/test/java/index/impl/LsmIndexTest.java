@@ -0,0 +1,256 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.FsyncPolicy;
+
+public class LsmIndexTest {
+	private Path dir;
+
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("lsm");
+	}
+
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+
+	@Test
+	public void addFindRemove() throws IOException {
+		final LsmIndex index = new LsmIndex(dir, new IndexOptions().setMemtableSize(100).setLevel0Files(2).setBaseLevelSize(8 * 1024));
+
+		for (int i = 0; i < 5000; i++) {
+			index.add(entry("word" + i, i));
+		}
+
+		for (int i = 0; i < 5000; i += 3) {
+			index.remove("word" + i);
+		}
+
+		// updates of flushed entries
+		for (int i = 1; i < 5000; i += 3) {
+			index.add(entry("word" + i, i + 10000));
+		}
+
+		verify(index);
+		index.close();
+
+		final LsmIndex reopened = new LsmIndex(dir, index.getOptions());
+		reopened.open();
+
+		// the level-0 files have been compacted into more than one level
+		final int[] files = reopened.getLevelFiles();
+		Assert.assertTrue(files.length > 2);
+		Assert.assertTrue(files[0] < 2);
+		verify(reopened);
+		Assert.assertNull(reopened.find("unknown"));
+		reopened.close();
+	}
+
+
+	@Test
+	public void obsoleteFilesAreDeleted() throws IOException {
+		final IndexOptions options = new IndexOptions().setMemtableSize(10).setLevel0Files(100);
+		final LsmIndex index = new LsmIndex(dir, options);
+
+		for (int i = 0; i < 35; i++) {
+			index.add(entry(i, i));
+		}
+
+		index.close();
+
+		// the files left over by a compaction which was interrupted before the input files could be deleted
+		final List<Path> level0 = list();
+		Assert.assertEquals(4, level0.size());
+		final Path level1 = dir.resolve(String.format("1-%010d.sst", 3));
+		final List<SegmentFile> inputs = new ArrayList<>();
+		Iterator<Map.Entry<byte[], IIndexEntry>> entries = Collections.emptyIterator();
+
+		for (final Path file : level0.subList(0, 3)) {
+			inputs.add(SegmentFile.open(file));
+			entries = Segment.merge(entries, inputs.get(inputs.size() - 1).iterator());
+		}
+
+		SegmentWriter.write(level1, entries);
+
+		for (final SegmentFile input : inputs) {
+			input.close();
+		}
+
+		final LsmIndex reopened = new LsmIndex(dir, options);
+		reopened.open();
+		Assert.assertArrayEquals(new int[] { 1, 1 }, reopened.getLevelFiles());
+		Assert.assertEquals(2, list().size());
+		Assert.assertFalse(Files.exists(BloomFilter.getPath(level0.get(0))));
+		Assert.assertTrue(Files.exists(BloomFilter.getPath(level0.get(3))));
+
+		for (int i = 0; i < 35; i++) {
+			Assert.assertEquals(i, reopened.find(i).getStart());
+		}
+
+		reopened.close();
+	}
+
+
+	@Test
+	public void scanAcrossLevels() throws IOException {
+		final LsmIndex index = new LsmIndex(dir, new IndexOptions().setMemtableSize(100).setLevel0Files(2).setBaseLevelSize(8 * 1024));
+
+		for (int i = 0; i < 1000; i++) {
+			index.add(entry(i, i));
+		}
+
+		// tombstones and updates in the memtable hide the flushed entries
+		for (int i = 0; i < 1000; i += 2) {
+			index.remove(i);
+		}
+
+		index.add(entry(1, 5000));
+		index.add(entry("apple", 0));
+		index.add(entry("apricot", 0));
+		index.add(entry("banana", 0));
+
+		final List<Object> odd = index.scan(100, 200).map(IIndexEntry::getId).collect(Collectors.toList());
+		Assert.assertEquals(50, odd.size());
+		Assert.assertEquals(101, odd.get(0));
+		Assert.assertEquals(199, odd.get(49));
+		Assert.assertEquals(5000, index.scan(null, 2).findFirst().get().getStart());
+		Assert.assertEquals(List.of(1, 3, 5), index.scan(null, null).limit(3).map(IIndexEntry::getId).collect(Collectors.toList()));
+		Assert.assertEquals(List.of("apple", "apricot"), index.prefix("ap").map(IIndexEntry::getId).collect(Collectors.toList()));
+		index.close();
+
+		Assert.assertEquals(503, index.scan(null, null).count());
+		Assert.assertEquals(3, index.prefix("").count());
+		index.close();
+	}
+
+
+	@Test
+	public void recoverAfterCrash() throws IOException {
+		// only the checkpoints flush, so no background flush of the crashed index runs on
+		final IndexOptions options = new IndexOptions().setMemtableSize(100000).setFsyncPolicy(FsyncPolicy.NEVER).setCheckpointSize(4096);
+		final LsmIndex crashed = new LsmIndex(dir, options);
+
+		for (int i = 0; i < 500; i++) {
+			crashed.add(entry("word" + i, i));
+		}
+
+		for (int i = 0; i < 500; i += 5) {
+			crashed.remove("word" + i);
+		}
+
+		// the checkpoints bound the log which is replayed
+		Assert.assertTrue(Files.size(dir.resolve("index.wal")) <= 4096 + 64);
+
+		// the crashed index is never closed
+		final LsmIndex recovered = new LsmIndex(dir, options);
+
+		for (int i = 0; i < 500; i++) {
+			final IIndexEntry entry = recovered.find("word" + i);
+
+			if (i % 5 == 0) {
+				Assert.assertNull(entry);
+			} else {
+				Assert.assertEquals(i, entry.getStart());
+			}
+		}
+
+		Assert.assertEquals(0, Files.size(dir.resolve("index.wal")));
+		recovered.close();
+	}
+
+
+	@Test
+	public void concurrentWriters() throws Exception {
+		final LsmIndex index = new LsmIndex(dir, new IndexOptions().setMemtableSize(500).setLevel0Files(2).setBaseLevelSize(16 * 1024));
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < 4; t++) {
+			final int thread = t;
+			threads.add(new Thread(() -> {
+				try {
+					for (int i = 0; i < 5000; i++) {
+						index.add(entry(thread * 10000 + i, i));
+						Assert.assertEquals(i, index.find(thread * 10000 + i).getStart());
+					}
+				} catch (final Throwable e) {
+					error.set(e);
+				}
+			}));
+		}
+
+		threads.forEach(Thread::start);
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertNull(error.get());
+
+		for (int t = 0; t < 4; t++) {
+			for (int i = 0; i < 5000; i++) {
+				Assert.assertEquals(i, index.find(t * 10000 + i).getStart());
+			}
+		}
+
+		index.close();
+	}
+
+
+	private static void verify(final LsmIndex index) throws IOException {
+		for (int i = 0; i < 5000; i++) {
+			final IIndexEntry entry = index.find("word" + i);
+
+			if (i % 3 == 0) {
+				Assert.assertNull(entry);
+			} else {
+				Assert.assertEquals(i % 3 == 1 ? i + 10000 : i, entry.getStart());
+				Assert.assertEquals("noun", entry.getProperty("pos"));
+			}
+		}
+	}
+
+
+	private List<Path> list() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(file -> file.toString().endsWith(".sst")).sorted().collect(Collectors.toList());
+		}
+	}
+
+
+	private static IIndexEntry entry(final Object id, final long start) {
+		final IndexEntry entry = new IndexEntry();
+		entry.setId(id);
+		entry.setStart(start);
+		entry.setProperty("pos", "noun");
+		return entry;
+	}
+}
@@ -0,0 +1,169 @@
+package index.impl;
+
+import index.api.IIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.FsyncPolicy;
+
+public class SecondaryIndexesTest {
+	private Path dir;
+
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("secondary");
+	}
+
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+
+	@Test
+	public void tupleKeysSortByElement() {
+		final List<List<Object>> tuples = List.of(List.of(-1, "b"), List.of(0, "a"), List.of(0, "a", 1L), List.of(0, "a\u0000"), List.of(0, "ab"), List.of(256, ""), List.of("a", 0),
+				List.of("a\u0000", 0), List.of("ab", 0));
+
+		for (int i = 0; i < tuples.size(); i++) {
+			final byte[] key = IndexKey.encode(tuples.get(i));
+			Assert.assertEquals(tuples.get(i), IndexKey.decode(key));
+
+			if (i > 0) {
+				Assert.assertTrue(tuples.get(i).toString(), IndexKey.COMPARATOR.compare(IndexKey.encode(tuples.get(i - 1)), key) < 0);
+			}
+		}
+	}
+
+
+	@Test
+	public void partitionedIndex() throws IOException {
+		final Index index = new Index(dir, new IndexOptions().setPartitionBits(4).setSecondaryIndexes("pos", "lang"));
+		verify(index);
+		Assert.assertTrue(Files.isDirectory(dir.resolve("secondary-pos")));
+		Assert.assertEquals(index.getPartition(List.of("noun", 1)), index.getPartition(List.of("noun", 2)));
+	}
+
+
+	@Test
+	public void lsmIndex() throws IOException {
+		verify(new LsmIndex(dir, new IndexOptions().setMemtableSize(50).setSecondaryIndexes("pos", "lang")));
+	}
+
+
+	@Test
+	public void recoverPartitionedIndex() throws IOException {
+		final IndexOptions options = new IndexOptions().setPartitionBits(2).setMaxOpenSegments(2).setFsyncPolicy(FsyncPolicy.NEVER).setCheckpointSize(4096).setSecondaryIndexes("pos", "lang");
+		// the crashed index is never closed
+		crash(new Index(dir, options));
+		verifyRecovered(new Index(dir, options));
+		Assert.assertFalse(Files.exists(dir.resolve(SecondaryIndexes.getDirectoryName("pos")).resolve("index.wal")));
+	}
+
+
+	@Test
+	public void recoverLsmIndex() throws IOException {
+		// a large memtable is only flushed by the checkpoints
+		final IndexOptions options = new IndexOptions().setMemtableSize(100000).setFsyncPolicy(FsyncPolicy.NEVER).setCheckpointSize(4096).setSecondaryIndexes("pos", "lang");
+		crash(new LsmIndex(dir, options));
+		verifyRecovered(new LsmIndex(dir, options));
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void undeclaredProperty() throws IOException {
+		final Index index = new Index(dir, new IndexOptions().setSecondaryIndexes("pos"));
+
+		try {
+			index.findIds("lang", "en");
+		} finally {
+			index.close();
+		}
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidPropertyName() {
+		new IndexOptions().setSecondaryIndexes("../pos");
+	}
+
+
+	private static void verify(final IIndex index) throws IOException {
+		for (int i = 0; i < 200; i++) {
+			index.add(entry("word" + i, i % 2 == 0 ? "noun" : "verb", i % 3 == 0 ? List.of("en", "de") : "en"));
+		}
+
+		Assert.assertEquals(100, index.findIds("pos", "noun").count());
+		Assert.assertEquals(200, index.findIds("lang", "en").count());
+		Assert.assertEquals(67, index.findIds("lang", "de").count());
+		Assert.assertEquals(List.of("word0", "word10", "word100"), index.findIds("pos", "noun").limit(3).collect(Collectors.toList()));
+
+		// changed and removed entries leave no stale postings
+		index.add(entry("word0", "verb", "fr"));
+		index.remove("word2");
+		index.close();
+
+		Assert.assertEquals(98, index.findIds("pos", "noun").count());
+		Assert.assertEquals(101, index.findIds("pos", "verb").count());
+		Assert.assertEquals(List.of("word0"), index.findIds("lang", "fr").collect(Collectors.toList()));
+		Assert.assertEquals(66, index.findIds("lang", "de").count());
+		Assert.assertEquals(0, index.findIds("pos", "adjective").count());
+		index.close();
+	}
+
+
+	/**
+	 * Writes, changes and removes entries, so that some changes are written to the files of the indexes before the crash
+	 * and some are only in the log.
+	 */
+	private static void crash(final IIndex index) throws IOException {
+		for (int i = 0; i < 200; i++) {
+			index.add(entry("word" + i, i % 2 == 0 ? "noun" : "verb", i % 3 == 0 ? List.of("en", "de") : "en"));
+		}
+
+		for (int i = 0; i < 200; i += 4) {
+			index.add(entry("word" + i, "verb", "fr"));
+		}
+
+		for (int i = 1; i < 200; i += 4) {
+			index.remove("word" + i);
+		}
+	}
+
+
+	private static void verifyRecovered(final IIndex index) throws IOException {
+		Assert.assertEquals(50, index.findIds("pos", "noun").count());
+		Assert.assertEquals(100, index.findIds("pos", "verb").count());
+		Assert.assertEquals(50, index.findIds("lang", "fr").count());
+		Assert.assertEquals(100, index.findIds("lang", "en").count());
+		Assert.assertEquals(List.of("word102", "word111"), index.findIds("lang", "de").limit(2).collect(Collectors.toList()));
+		Assert.assertEquals(34, index.findIds("lang", "de").count());
+		index.close();
+	}
+
+
+	private static IndexEntry entry(final String id, final String pos, final Object lang) {
+		final IndexEntry entry = new IndexEntry();
+		entry.setId(id);
+		entry.setProperty("pos", pos);
+		entry.setProperty("lang", lang);
+		return entry;
+	}
+}
@@ -0,0 +1,209 @@
+package index.impl;
+
+import index.api.IIndexEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentTest {
+	private Path dir;
+
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("segment");
+	}
+
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+
+	@Test
+	public void persistOnClose() throws IOException {
+		final String name = dir.resolve("words").toString();
+		Segment segment = Segment.open(name);
+
+		for (int i = 0; i < 10000; i++) {
+			segment.add(entry("word" + i, i));
+		}
+
+		segment.remove("word5");
+		Assert.assertNull(segment.get("word5"));
+		Assert.assertEquals(6, segment.get("word6").getStart());
+		segment.close();
+		Assert.assertFalse(segment.isOpen());
+
+		segment = Segment.open(name);
+
+		for (int i = 0; i < 10000; i++) {
+			final IIndexEntry entry = segment.get("word" + i);
+
+			if (i == 5) {
+				Assert.assertNull(entry);
+			} else {
+				Assert.assertEquals("word" + i, entry.getId());
+				Assert.assertEquals(i, entry.getStart());
+				Assert.assertEquals(i * 2, entry.getSize());
+				Assert.assertEquals("noun", entry.getProperty("pos"));
+			}
+		}
+
+		Assert.assertNull(segment.get("word"));
+		Assert.assertNull(segment.get("zzz"));
+		segment.close();
+	}
+
+
+	@Test
+	public void rebuildMergesChanges() throws IOException {
+		final Segment segment = Segment.open(dir.resolve("merge").toString());
+
+		for (int i = 0; i < 100; i += 2) {
+			segment.add(entry(i, i));
+		}
+
+		segment.rebuild();
+
+		for (int i = 1; i < 100; i += 2) {
+			segment.add(entry(i, i));
+		}
+
+		segment.add(entry(0, 1000));
+		segment.remove(50);
+		segment.rebuild();
+
+		try (SegmentFile file = SegmentFile.open(segment.getPath())) {
+			Assert.assertEquals(99, file.getEntryCount());
+			Assert.assertEquals(1000, file.get(0).getStart());
+			Assert.assertNull(file.get(50));
+
+			final List<Object> ids = new ArrayList<>();
+			file.iterator().forEachRemaining(entry -> ids.add(entry.getValue().getId()));
+			Assert.assertEquals(99, ids.size());
+
+			for (int i = 1; i < ids.size(); i++) {
+				Assert.assertTrue((Integer) ids.get(i - 1) < (Integer) ids.get(i));
+			}
+		}
+
+		segment.close();
+	}
+
+
+	@Test
+	public void boundedWriteAmplification() throws IOException {
+		final String name = dir.resolve("large").toString();
+		final int count = 16 * Segment.MAX_CHANGES;
+		Segment segment = Segment.open(name);
+
+		for (int i = 0; i < count; i++) {
+			// spreads the keys over the key range
+			segment.add(entry(Integer.reverse(i), i));
+		}
+
+		for (int i = 0; i < count; i += 1000) {
+			segment.remove(Integer.reverse(i));
+		}
+
+		segment.close();
+		// about 3.3 times as many entries, rebuilding the whole segment every MAX_CHANGES changes writes 8.5 times as many
+		Assert.assertTrue(segment.getWrittenEntries() + " entries written", segment.getWrittenEntries() < 3.4 * count);
+
+		segment = Segment.open(name);
+		Assert.assertTrue(segment.getDeltaCount() > 0);
+		Assert.assertTrue(segment.getDeltaCount() <= 4);
+
+		for (int i = 0; i < count; i += 7) {
+			final IIndexEntry entry = segment.get(Integer.reverse(i));
+
+			if (i % 1000 == 0) {
+				Assert.assertNull(entry);
+			} else {
+				Assert.assertEquals(i, entry.getStart());
+			}
+		}
+
+		final List<Map.Entry<byte[], IIndexEntry>> scanned = segment.scan(new byte[0], null, Integer.MAX_VALUE);
+		Assert.assertEquals(count - (count + 999) / 1000, scanned.size());
+		segment.close();
+	}
+
+
+	@Test
+	public void keyOrder() {
+		final List<Object> ids = Arrays.asList(Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE, Long.MIN_VALUE, 0L, Long.MAX_VALUE, "", "a", "ab", "b", "\u00e4");
+
+		for (int i = 0; i < ids.size(); i++) {
+			Assert.assertEquals(ids.get(i), IndexKey.decode(IndexKey.encode(ids.get(i))));
+
+			if (i > 0) {
+				Assert.assertTrue(ids.get(i).toString(), IndexKey.COMPARATOR.compare(IndexKey.encode(ids.get(i - 1)), IndexKey.encode(ids.get(i))) < 0);
+			}
+		}
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unorderedEntries() throws IOException {
+		final Iterator<Map.Entry<byte[], IIndexEntry>> entries = List.<Map.Entry<byte[], IIndexEntry>> of(Map.entry(IndexKey.encode("b"), entry("b", 0)), Map.entry(IndexKey.encode("a"), entry("a", 0))).iterator();
+		SegmentWriter.write(dir.resolve("unordered.seg"), entries);
+	}
+
+
+	@Test(expected = IOException.class)
+	public void invalidFile() throws IOException {
+		final Path path = dir.resolve("invalid.seg");
+		Files.write(path, new byte[100]);
+		SegmentFile.open(path);
+	}
+
+
+	@Test
+	public void indexPersists() throws IOException {
+		Index index = new Index(dir.resolve("index"));
+
+		for (int i = 0; i < 1000; i++) {
+			index.add(entry("id" + i, i));
+		}
+
+		index.close();
+		index = new Index(dir.resolve("index"));
+
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals(i, index.find("id" + i).getStart());
+		}
+
+		index.close();
+	}
+
+
+	private static IIndexEntry entry(final Object id, final long start) {
+		final IndexEntry entry = new IndexEntry();
+		entry.setId(id);
+		entry.setStart(start);
+		entry.setSize(start * 2);
+		entry.setProperty("pos", "noun");
+		return entry;
+	}
+}
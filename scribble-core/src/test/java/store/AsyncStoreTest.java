@@ -0,0 +1,172 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.allocation.AllocationTable;
+
+public class AsyncStoreTest {
+  private Path path;
+  private StoreOptions options;
+  private Store store;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    options = new StoreOptions().setCompaction(false).setAsyncThreads(2).setMaxInFlight(64);
+    store = new Store(path, options);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+  }
+
+  @Test
+  public void writeRead() throws Exception {
+    final AsyncStore async = store.getAsyncStore();
+    final List<CompletableFuture<String>> writes = new ArrayList<>();
+
+    for (int i = 0; i < 1000; i++) {
+      writes.add(async.write(null, ByteBuffer.wrap(("Record " + i).getBytes())));
+    }
+
+    final List<CompletableFuture<ByteBuffer>> reads = new ArrayList<>();
+
+    for (final CompletableFuture<String> write : writes) {
+      reads.add(async.read(write.get()));
+    }
+
+    for (int i = 0; i < reads.size(); i++) {
+      Assert.assertEquals("Record " + i, new String(reads.get(i).get().array()));
+    }
+
+    Assert.assertEquals(0, async.getInFlight());
+  }
+
+  @Test
+  public void boundedInFlight() throws Exception {
+    final AsyncStore async = store.getAsyncStore();
+    final String id = store.write(null, ByteBuffer.allocate(4096));
+    final List<CompletableFuture<ByteBuffer>> reads = new ArrayList<>();
+    int maxInFlight = 0;
+
+    for (int i = 0; i < 5000; i++) {
+      reads.add(async.read(id));
+      maxInFlight = Math.max(maxInFlight, async.getInFlight());
+    }
+
+    CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).get();
+    Assert.assertTrue(maxInFlight <= options.getMaxInFlight());
+  }
+
+  @Test
+  public void readUnknownId() throws Exception {
+    try {
+      store.getAsyncStore().read("unknown").get();
+      Assert.fail("Reading an unknown id must fail");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+
+    Assert.assertEquals(0, store.getAsyncStore().getInFlight());
+  }
+
+  @Test
+  public void readFailsWithRuntimeException() throws Exception {
+    store.close();
+    store = new Store(path, options) {
+      @Override
+      ByteBuffer decode(final String id, final ByteBuffer record) {
+        throw new IllegalStateException("decode failed");
+      }
+    };
+    final String id = store.write(null, ByteBuffer.wrap("Hello World!".getBytes()));
+    final AsyncStore async = new AsyncStore(store, 1, 1);
+
+    try {
+      // the second read blocks forever if the first one does not free its slot
+      for (int i = 0; i < 2; i++) {
+        try {
+          async.read(id).get(10, TimeUnit.SECONDS);
+          Assert.fail("Reading must fail");
+        } catch (final ExecutionException e) {
+          Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+      }
+
+      Assert.assertEquals(0, async.getInFlight());
+    } finally {
+      async.close();
+    }
+  }
+
+  @Test
+  public void readDuringUpdates() throws Exception {
+    final AsyncStore async = store.getAsyncStore();
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 100; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(record(i, 0))));
+    }
+
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicInteger versions = new AtomicInteger(0);
+    final Thread writer = new Thread(() -> {
+      try {
+        // updates move the records to new space, which frees and reuses the old space
+        for (int version = 1; version < 200; version++) {
+          for (int i = 0; i < ids.size(); i += 7) {
+            store.write(ids.get(i), ByteBuffer.wrap(record(i, version)));
+          }
+
+          versions.set(version);
+        }
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      } finally {
+        done.set(true);
+      }
+    });
+    writer.start();
+
+    while (!done.get()) {
+      final List<CompletableFuture<ByteBuffer>> reads = new ArrayList<>();
+
+      for (final String id : ids) {
+        reads.add(async.read(id));
+      }
+
+      for (int i = 0; i < reads.size(); i++) {
+        // a read returns a complete record of its own id
+        final String record = new String(reads.get(i).get().array());
+        Assert.assertTrue(record, record.startsWith(String.format("Record %3d version", i)));
+      }
+    }
+
+    writer.join();
+    Assert.assertEquals(199, versions.get());
+  }
+
+  private static byte[] record(final int i, final int version) {
+    return String.format("Record %3d version %" + (3 + version % 5) + "d", i, version).getBytes();
+  }
+}
@@ -0,0 +1,183 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.allocation.AllocationTable;
+
+public class CompactorTest {
+  private Path path;
+  private StoreOptions options;
+  private Store store;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    options = new StoreOptions().setCompaction(false);
+    store = new Store(path, options);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+  }
+
+  @Test
+  public void compactReclaimsSpace() throws IOException {
+    final List<String> ids = populate(1000);
+    final long size = Files.size(path);
+    Assert.assertTrue(store.getCompactor().isRequired(0.4));
+
+    final long reclaimed = store.getCompactor().compact();
+    Assert.assertEquals(size - Files.size(path), reclaimed);
+    Assert.assertTrue(reclaimed >= size / 2 - record(0).length);
+    Assert.assertEquals(reclaimed, store.getCompactor().getBytesReclaimed());
+    Assert.assertTrue(store.getCompactor().getFragmentsRelocated() > 0);
+    Assert.assertEquals(1.0, store.getCompactor().getProgress(), 0.0);
+    Assert.assertEquals(0, store.getAllocationTable().getFreeSpace());
+    Assert.assertFalse(store.getCompactor().isRequired(0.1));
+    assertRecords(ids);
+
+    // the relocations are persisted
+    store.close();
+    store = new Store(path, options);
+    assertRecords(ids);
+  }
+
+  @Test
+  public void compactDuringReadsAndWrites() throws Exception {
+    final List<String> ids = populate(2000);
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final List<Future<?>> results = new ArrayList<>();
+
+    for (int t = 0; t < 3; t++) {
+      results.add(executor.submit(() -> {
+        while (!done.get()) {
+          assertRecords(ids);
+        }
+
+        return null;
+      }));
+    }
+
+    // rewrite some records with their own data while they may be relocated
+    results.add(executor.submit(() -> {
+      for (int i = 1; i < ids.size(); i += 10) {
+        store.write(ids.get(i), ByteBuffer.wrap(record(i)));
+      }
+
+      return null;
+    }));
+
+    store.getCompactor().compact();
+    done.set(true);
+
+    for (final Future<?> result : results) {
+      result.get();
+    }
+
+    executor.shutdown();
+    assertRecords(ids);
+  }
+
+  @Test
+  public void compactMapped() throws IOException {
+    store.close();
+    // reads return copies with background compaction, so the mapped store-file can be truncated
+    options.setReadMode(ReadMode.MAPPED).setRegionSize(4096).setCompaction(true);
+    store = new Store(path, options);
+    final List<String> ids = populate(1000);
+    assertRecords(ids);
+
+    Assert.assertTrue(store.getCompactor().compact() > 0);
+    assertRecords(ids);
+  }
+
+  @Test
+  public void compactMappedUnderSlices() throws IOException {
+    for (final boolean compaction : new boolean[] { false, true }) {
+      store.close();
+      Files.write(path, new byte[0]);
+      Files.deleteIfExists(store.getTablePath());
+      Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+      options.setReadMode(ReadMode.MAPPED).setZeroCopyReads(true).setCompaction(compaction);
+      store = new Store(path, options);
+
+      store.write(null, ByteBuffer.allocate(1024 * 1024));
+      final String id = store.write(null, ByteBuffer.wrap(new byte[1024 * 1024]).put(1024 * 1024 - 1, (byte) 42));
+      final ByteBuffer bytes = store.read(id);
+      store.write(id, ByteBuffer.allocate(10));
+      store.getCompactor().compact();
+
+      // the slice must still be readable after the store-file has been truncated
+      Assert.assertEquals(42, bytes.get(1024 * 1024 - 1));
+    }
+  }
+
+  @Test
+  public void compactOffHeap() throws IOException {
+    store.close();
+    options.setAllocationMode(AllocationMode.OFF_HEAP);
+    store = new Store(path, options);
+    final List<String> ids = populate(1000);
+
+    Assert.assertTrue(store.getCompactor().compact() > 0);
+    Assert.assertEquals(0, store.getAllocationTable().getFreeSpace());
+    assertRecords(ids);
+
+    store.close();
+    store = new Store(path, options);
+    assertRecords(ids);
+  }
+
+  /**
+   * Writes the specified number of records and frees every other one.
+   */
+  private List<String> populate(final int count) throws IOException {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(record(i))));
+    }
+
+    for (int i = 0; i < count; i += 2) {
+      store.getAllocationTable().free(store.getAllocationTable().findById(ids.get(i)));
+      ids.set(i, null);
+    }
+
+    return ids;
+  }
+
+  private void assertRecords(final List<String> ids) throws IOException {
+    for (int i = 0; i < ids.size(); i++) {
+      if (ids.get(i) != null) {
+        final ByteBuffer bytes = store.read(ids.get(i)).duplicate().clear();
+        final byte[] data = new byte[bytes.remaining()];
+        bytes.get(data);
+        Assert.assertEquals(new String(record(i)), new String(data));
+      }
+    }
+  }
+
+  private static byte[] record(final int i) {
+    return String.format("Record number %5d with some payload", i).getBytes();
+  }
+}
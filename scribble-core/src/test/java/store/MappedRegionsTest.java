@@ -0,0 +1,70 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedRegionsTest {
+  private Path path;
+  private FileChannel writer;
+  private MappedRegions regions;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("mapped", ".bin");
+    writer = FileChannel.open(path, StandardOpenOption.WRITE);
+    regions = new MappedRegions(FileChannel.open(path, StandardOpenOption.READ), 16);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    regions.close();
+    writer.close();
+    Files.delete(path);
+  }
+
+  @Test
+  public void sliceWithinRegion() throws IOException {
+    writer.write(ByteBuffer.wrap("Hello World!".getBytes()), 0);
+
+    final ByteBuffer bytes = regions.slice(6, 5);
+    Assert.assertTrue(bytes.isReadOnly());
+    Assert.assertEquals("World", toString(bytes));
+  }
+
+  @Test
+  public void sliceAcrossRegions() throws IOException {
+    writer.write(ByteBuffer.wrap("0123456789abcdefghijklmnopqrstuvwxyz".getBytes()), 0);
+
+    Assert.assertEquals("cdefghijklmnopqrstu", toString(regions.slice(12, 19)));
+  }
+
+  @Test
+  public void remapAfterGrowth() throws IOException {
+    writer.write(ByteBuffer.wrap("Hello".getBytes()), 0);
+    Assert.assertEquals("Hello", toString(regions.slice(0, 5)));
+
+    writer.write(ByteBuffer.wrap(" World!".getBytes()), 5);
+    Assert.assertEquals("World!", toString(regions.slice(6, 6)));
+  }
+
+  @Test(expected = IOException.class)
+  public void sliceBeyondEndOfFile() throws IOException {
+    writer.write(ByteBuffer.wrap("Hello".getBytes()), 0);
+    regions.slice(3, 5);
+  }
+
+  private static String toString(final ByteBuffer bytes) {
+    final byte[] array = new byte[bytes.remaining()];
+    bytes.get(array);
+    return new String(array);
+  }
+}
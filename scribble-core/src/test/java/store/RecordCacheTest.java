@@ -0,0 +1,197 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.allocation.AllocationTable;
+
+public class RecordCacheTest {
+  private Path path;
+  private Store store;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    store = new Store(path, new StoreOptions().setCompaction(false).setCacheSize(1024 * 1024));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+  }
+
+  @Test
+  public void hitsAndMisses() {
+    final RecordCache cache = new RecordCache(64 * 1024);
+    Assert.assertNull(cache.get("1"));
+
+    cache.put("1", ByteBuffer.wrap("Record 1".getBytes()));
+    final ByteBuffer bytes = cache.get("1");
+    Assert.assertEquals("Record 1", new String(bytes.array()));
+
+    // the returned data is a copy
+    bytes.put(0, (byte) 'r');
+    Assert.assertEquals("Record 1", new String(cache.get("1").array()));
+
+    cache.invalidate("1");
+    Assert.assertNull(cache.get("1"));
+    Assert.assertEquals(2, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+    Assert.assertEquals(0, cache.getCount());
+  }
+
+  @Test
+  public void boundedSize() {
+    final RecordCache cache = new RecordCache(64 * 1024);
+
+    for (int i = 0; i < 1000; i++) {
+      final String id = Integer.toString(i);
+
+      if (cache.get(id) == null) {
+        cache.put(id, ByteBuffer.allocate(1000));
+      }
+
+      Assert.assertTrue(cache.getSize() <= cache.getCapacity());
+    }
+
+    Assert.assertEquals(cache.getCount() * 1000L, cache.getSize());
+    Assert.assertTrue(cache.getEvictions() > 0);
+
+    // larger than the cache
+    cache.put("large", ByteBuffer.allocate(128 * 1024));
+    Assert.assertNull(cache.get("large"));
+  }
+
+  @Test
+  public void frequentRecordsSurviveScan() {
+    final RecordCache cache = new RecordCache(64 * 1024);
+
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < 50; i++) {
+        read(cache, "hot" + i);
+      }
+    }
+
+    // a scan over records read once
+    for (int i = 0; i < 5000; i++) {
+      read(cache, "cold" + i);
+    }
+
+    final long hits = cache.getHits();
+
+    for (int i = 0; i < 50; i++) {
+      read(cache, "hot" + i);
+    }
+
+    Assert.assertEquals(50, cache.getHits() - hits);
+  }
+
+  @Test
+  public void invalidatedOnWrite() throws IOException {
+    final String id = store.write(null, ByteBuffer.wrap("Record 1".getBytes()));
+    Assert.assertEquals("Record 1", new String(store.read(id).array()));
+    Assert.assertEquals("Record 1", new String(store.read(id).array()));
+    Assert.assertEquals(1, store.getCache().getHits());
+
+    store.write(id, ByteBuffer.wrap("Record 1 updated".getBytes()));
+    Assert.assertEquals("Record 1 updated", new String(store.read(id).array()));
+    Assert.assertEquals("Record 1 updated", new String(store.read(id).array()));
+    Assert.assertEquals("Record 1 updated", new String(store.getAsyncStore().read(id).join().array()));
+  }
+
+  @Test
+  public void readAllAndAsync() throws Exception {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 10; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(("Record " + i).getBytes())));
+    }
+
+    store.read(ids.get(3));
+    store.getAsyncStore().read(ids.get(5)).get();
+    final Map<String, ByteBuffer> result = store.readAll(ids);
+    Assert.assertEquals(ids, new ArrayList<>(result.keySet()));
+
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals("Record " + i, new String(result.get(ids.get(i)).array()));
+    }
+
+    Assert.assertEquals(2, store.getCache().getHits());
+    Assert.assertEquals(10, store.getCache().getCount());
+    Assert.assertTrue(Arrays.equals("Record 7".getBytes(), store.getAsyncStore().read(ids.get(7)).get().array()));
+    Assert.assertEquals(3, store.getCache().getHits());
+  }
+
+  @Test
+  public void noStaleRecordsAfterConcurrentUpdates() throws Exception {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 20; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(("Record " + i + " version 0").getBytes())));
+    }
+
+    final Thread[] readers = new Thread[4];
+    final Thread writer = new Thread(() -> {
+      try {
+        for (int version = 1; version <= 200; version++) {
+          for (int i = 0; i < ids.size(); i++) {
+            store.write(ids.get(i), ByteBuffer.wrap(("Record " + i + " version " + version).getBytes()));
+          }
+        }
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread(() -> {
+        try {
+          while (writer.isAlive()) {
+            for (final String id : ids) {
+              store.read(id);
+            }
+          }
+        } catch (final IOException e) {
+          throw new RuntimeException(e);
+        }
+      });
+    }
+
+    writer.start();
+
+    for (final Thread reader : readers) {
+      reader.start();
+    }
+
+    writer.join();
+
+    for (final Thread reader : readers) {
+      reader.join();
+    }
+
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals("Record " + i + " version 200", new String(store.read(ids.get(i)).array()));
+    }
+  }
+
+  private static void read(final RecordCache cache, final String id) {
+    if (cache.get(id) == null) {
+      cache.put(id, ByteBuffer.allocate(1000));
+    }
+  }
+}
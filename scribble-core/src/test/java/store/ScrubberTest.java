@@ -0,0 +1,117 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.allocation.AllocationTable;
+import store.allocation.Fragment;
+
+public class ScrubberTest {
+  private Path path;
+  private StoreOptions options;
+  private Store store;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    options = new StoreOptions().setCompaction(false).setScrubbing(false).setChecksums(true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+  }
+
+  @Test
+  public void detectCorruptRecord() throws IOException {
+    store = new Store(path, options);
+    final List<String> ids = populate(100);
+    final String corrupt = ids.get(42);
+    corrupt(corrupt);
+
+    try {
+      store.read(corrupt);
+      Assert.fail("A corrupt record must not be read");
+    } catch (final CorruptRecordException e) {
+      Assert.assertEquals(corrupt, e.getId());
+    }
+
+    try {
+      store.readAll(ids);
+      Assert.fail("A corrupt record must not be read");
+    } catch (final CorruptRecordException e) {
+      Assert.assertEquals(corrupt, e.getId());
+    }
+
+    final List<Scrubber.CorruptRange> ranges = store.getScrubber().scrub();
+    Assert.assertEquals(1, ranges.size());
+    Assert.assertEquals(corrupt, ranges.get(0).getId());
+    Assert.assertEquals(store.getAllocationTable().findById(corrupt).getStart(), ranges.get(0).getStart());
+    Assert.assertEquals(ranges, store.getScrubber().getCorruptRanges());
+    Assert.assertEquals(1, store.getScrubber().getPasses());
+    Assert.assertEquals(store.getAllocationTable().getTail(), store.getScrubber().getBytesScrubbed());
+
+    // rewriting the record repairs it
+    store.write(corrupt, ByteBuffer.wrap(record(42)));
+    Assert.assertArrayEquals(record(42), store.read(corrupt).array());
+    Assert.assertTrue(store.getScrubber().scrub().isEmpty());
+  }
+
+  @Test
+  public void checksumsWithCompressionMapped() throws Exception {
+    store = new Store(path, options.setCompression(Compression.LZ4).setReadMode(ReadMode.MAPPED).setRegionSize(4096));
+    final List<String> ids = populate(100);
+
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals(ByteBuffer.wrap(record(i)), store.read(ids.get(i)));
+      Assert.assertEquals(ByteBuffer.wrap(record(i)), store.getAsyncStore().read(ids.get(i)).get());
+    }
+
+    corrupt(ids.get(7));
+    Assert.assertEquals(ids.get(7), store.getScrubber().scrub().get(0).getId());
+  }
+
+  private List<String> populate(final int count) throws IOException {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(record(i))));
+    }
+
+    return ids;
+  }
+
+  /**
+   * Flips a bit in the middle of the record of the specified id.
+   */
+  private void corrupt(final String id) throws IOException {
+    final Fragment fragment = store.getAllocationTable().findById(id);
+    final long position = fragment.getStart() + fragment.getSize() / 2;
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      final ByteBuffer bytes = ByteBuffer.allocate(1);
+      channel.read(bytes, position);
+      bytes.put(0, (byte) (bytes.get(0) ^ 0x10));
+      channel.write(bytes.rewind(), position);
+    }
+  }
+
+  private static byte[] record(final int i) {
+    return String.format("Record number %5d with some payload, Record number %5d with some payload", i, i).getBytes();
+  }
+}
@@ -0,0 +1,142 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentedStoreTest {
+  private Path directory;
+  private SegmentedStore store;
+
+  @Before
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("segments");
+    store = new SegmentedStore(directory.resolve("store.bin"), new StoreOptions().setCompaction(false).setSegmentSize(1024));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Test
+  public void rollOverAtSegmentSize() throws IOException {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 100; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(String.format("Record %03d", i).getBytes())));
+    }
+
+    // 10 bytes per record, 103 records per segment
+    Assert.assertEquals(1, store.getSegments().size());
+
+    for (int i = 100; i < 300; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(String.format("Record %03d", i).getBytes())));
+    }
+
+    Assert.assertEquals(3, store.getSegments().size());
+    Assert.assertTrue(Files.exists(store.getSegmentPath(2)));
+
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals(String.format("Record %03d", i), new String(store.read(ids.get(i)).array()));
+    }
+
+    // updates stay in the segment of their id
+    store.write(ids.get(0), ByteBuffer.wrap("Record 0 updated".getBytes()));
+    Assert.assertEquals("Record 0 updated", new String(store.read(ids.get(0)).array()));
+    Assert.assertEquals(3, store.getSegments().size());
+  }
+
+  @Test
+  public void spreadAcrossActiveSegmentsAndDirectories() throws IOException {
+    store.close();
+    final List<Path> directories = Arrays.asList(Files.createDirectory(directory.resolve("disk0")), Files.createDirectory(directory.resolve("disk1")));
+    store = new SegmentedStore(directory.resolve("store.bin"), new StoreOptions().setCompaction(false).setActiveSegments(2).setSegmentDirectories(directories));
+
+    final List<ByteBuffer> records = new ArrayList<>();
+
+    for (int i = 0; i < 10; i++) {
+      records.add(ByteBuffer.wrap(("Record " + i).getBytes()));
+    }
+
+    final List<String> ids = new ArrayList<>(store.writeAll(records));
+    ids.add(store.write(null, ByteBuffer.wrap("Record 10".getBytes())));
+
+    Assert.assertEquals(2, store.getSegments().size());
+    Assert.assertTrue(Files.exists(directories.get(0).resolve("store.bin.00000")));
+    Assert.assertTrue(Files.exists(directories.get(1).resolve("store.bin.00001")));
+    Assert.assertNotEquals(ids.get(0).split(":")[0], ids.get(10).split(":")[0]);
+
+    final Map<String, ByteBuffer> result = store.readAll(ids);
+    Assert.assertEquals(ids, new ArrayList<>(result.keySet()));
+
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals("Record " + i, new String(result.get(ids.get(i)).array()));
+    }
+  }
+
+  @Test
+  public void reopen() throws IOException {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 200; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(String.format("Record %03d", i).getBytes())));
+    }
+
+    store.close();
+    store = new SegmentedStore(store.getPath(), store.getOptions());
+
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals(String.format("Record %03d", i), new String(store.read(ids.get(i)).array()));
+    }
+
+    // the last segment has not been filled and stays active
+    Assert.assertEquals(2, store.getSegments().size());
+    final String id = store.write(null, ByteBuffer.wrap("Record 200".getBytes()));
+    Assert.assertTrue(id.startsWith("1:"));
+  }
+
+  @Test(expected = IOException.class)
+  public void readUnknownSegment() throws IOException {
+    store.read("42:1");
+  }
+
+  @Test
+  public void compactSegment() throws IOException {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 200; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(String.format("Record %03d", i).getBytes())));
+    }
+
+    final Store segment = store.getSegments().get(0);
+    final long size = Files.size(segment.getPath());
+
+    for (int i = 0; i < 100; i += 2) {
+      segment.getAllocationTable().free(segment.getAllocationTable().findById(ids.get(i).split(":")[1]));
+    }
+
+    Assert.assertTrue(segment.getCompactor().compact() > 0);
+    Assert.assertTrue(Files.size(segment.getPath()) < size);
+    Assert.assertEquals(size, Files.size(store.getSegments().get(0).getPath()) + 50 * 10);
+
+    for (int i = 1; i < ids.size(); i += 2) {
+      Assert.assertEquals(String.format("Record %03d", i), new String(store.read(ids.get(i)).array()));
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.allocation.AllocationTable;
+
+public class SharedChannelsTest {
+  private Path path;
+  private SharedChannels channels;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("shared", ".bin");
+
+    try (FileChannel writer = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      writer.write(ByteBuffer.wrap("0123456789abcdefghijklmnopqrstuvwxyz".getBytes()), 0);
+    }
+
+    channels = new SharedChannels(path, 2);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    channels.close();
+    Files.delete(path);
+  }
+
+  @Test
+  public void positionalRead() throws IOException {
+    final ByteBuffer bytes = ByteBuffer.allocate(5);
+    channels.read(bytes, 10);
+    Assert.assertEquals("abcde", new String(bytes.array()));
+
+    // reads into the remaining space
+    bytes.clear().position(2);
+    channels.read(bytes, 0);
+    Assert.assertEquals("ab012", new String(bytes.array()));
+  }
+
+  @Test
+  public void readBeyondEndOfFile() throws IOException {
+    final ByteBuffer bytes = ByteBuffer.allocate(10);
+    channels.read(bytes, 30);
+    Assert.assertEquals(6, bytes.position());
+  }
+
+  @Test
+  public void reopenAfterInterrupt() throws IOException {
+    Thread.currentThread().interrupt();
+
+    try {
+      channels.read(ByteBuffer.allocate(5), 0);
+      Assert.fail();
+    } catch (final ClosedByInterruptException e) {
+      Assert.assertTrue(Thread.interrupted());
+    }
+
+    final ByteBuffer bytes = ByteBuffer.allocate(5);
+    channels.read(bytes, 0);
+    Assert.assertEquals("01234", new String(bytes.array()));
+  }
+
+  @Test
+  public void concurrentStoreReads() throws Exception {
+    final Path storePath = Files.createTempFile("store", ".bin");
+    final Store store = new Store(storePath, new StoreOptions().setReadMode(ReadMode.SHARED).setReadChannels(2).setCompaction(false));
+
+    try {
+      final List<String> ids = new ArrayList<>();
+
+      for (int i = 0; i < 100; i++) {
+        ids.add(store.write(null, ByteBuffer.wrap(("Record " + i).getBytes())));
+      }
+
+      final AtomicReference<Throwable> error = new AtomicReference<>();
+      final Thread[] readers = new Thread[16];
+
+      for (int t = 0; t < readers.length; t++) {
+        readers[t] = new Thread(() -> {
+          try {
+            for (int round = 0; round < 20; round++) {
+              for (int i = 0; i < ids.size(); i++) {
+                Assert.assertEquals("Record " + i, new String(store.read(ids.get(i)).array()));
+              }
+            }
+          } catch (final Throwable e) {
+            error.set(e);
+          }
+        });
+        readers[t].start();
+      }
+
+      for (final Thread reader : readers) {
+        reader.join();
+      }
+
+      Assert.assertNull(error.get());
+      Assert.assertEquals(ids.size(), store.readAll(ids).size());
+    } finally {
+      store.close();
+      Files.deleteIfExists(storePath);
+      Files.deleteIfExists(store.getTablePath());
+      Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+      Files.deleteIfExists(store.getWalPath());
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import store.allocation.AllocationTable;
+
+/**
+ * Compares the latency of reads and writes of text records for the different {@link Compression}s, with and without a
+ * trained dictionary. The footprint of the records in the store-file is printed after each trial, so the CPU cost of a
+ * codec can be weighed against the I/O it saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreCompressionBenchmark {
+  private static final int RECORDS = 100_000;
+  private static final String[] WORDS = { "Person", "Organisation", "knows", "worksFor", "name", "label", "Berlin", "Vienna", "semantic", "node" };
+  @Param({ "NONE", "LZ4", "DEFLATE" })
+  private Compression compression;
+  @Param({ "false", "true" })
+  private boolean dictionary;
+  @Param({ "256", "2048" })
+  private int recordSize;
+  private Path path;
+  private Store store;
+  private String[] ids;
+  private long rawBytes;
+
+
+  @Setup
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    store = new Store(path, new StoreOptions().setCompression(compression).setFsyncPolicy(FsyncPolicy.NEVER).setCompaction(false));
+
+    if (dictionary && compression != Compression.NONE) {
+      final List<ByteBuffer> samples = new ArrayList<>();
+
+      for (int i = 0; i < 1000; i++) {
+        samples.add(ByteBuffer.wrap(StoreCompressionBenchmark.record(i, recordSize)));
+      }
+
+      store.trainDictionary(samples);
+    }
+
+    ids = new String[RECORDS];
+
+    for (int i = 0; i < RECORDS; i++) {
+      final byte[] record = StoreCompressionBenchmark.record(i, recordSize);
+      rawBytes += record.length;
+      ids[i] = store.write(null, ByteBuffer.wrap(record));
+    }
+
+    // warm up the page cache
+    for (final String id : ids) {
+      store.read(id);
+    }
+  }
+
+
+  @TearDown
+  public void tearDown() throws IOException {
+    System.out.println("\nFootprint of " + compression + (dictionary ? " with dictionary" : "") + ": " + store.getAllocationTable().getTail() * 100 / rawBytes + "% of " + rawBytes + " bytes");
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+    Files.deleteIfExists(store.getDictionaryPath());
+  }
+
+
+  @Benchmark
+  public void read(final Blackhole blackhole) throws IOException {
+    final ByteBuffer bytes = store.read(ids[ThreadLocalRandom.current().nextInt(RECORDS)]);
+    blackhole.consume(bytes.get(bytes.limit() - 1));
+  }
+
+
+  @Benchmark
+  public String update() throws IOException {
+    final int i = ThreadLocalRandom.current().nextInt(RECORDS);
+    return store.write(ids[i], ByteBuffer.wrap(StoreCompressionBenchmark.record(i, recordSize)));
+  }
+
+
+  /**
+   * Creates a text record which resembles a serialized semantic node.
+   */
+  private static byte[] record(final int i, final int size) {
+    final Random random = new Random(i);
+    final StringBuilder record = new StringBuilder("{\"id\":" + i + ",\"type\":\"" + WORDS[random.nextInt(2)] + "\",\"links\":[");
+
+    while (record.length() < size - 2) {
+      record.append("{\"relation\":\"").append(WORDS[2 + random.nextInt(2)]).append("\",\"target\":").append(random.nextInt(RECORDS)).append(",\"")
+          .append(WORDS[4 + random.nextInt(2)]).append("\":\"").append(WORDS[6 + random.nextInt(4)]).append("\"},");
+    }
+
+    record.setLength(size - 2);
+    return record.append("]}").toString().getBytes();
+  }
+
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(StoreCompressionBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,110 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.allocation.AllocationTable;
+
+public class StoreCompressionTest {
+  private Path path;
+  private StoreOptions options;
+  private Store store;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    options = new StoreOptions().setCompaction(false).setCompression(Compression.LZ4);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+    Files.deleteIfExists(store.getDictionaryPath());
+  }
+
+  @Test
+  public void writeRead() throws Exception {
+    store = new Store(path, options);
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 500; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(record(i))));
+    }
+
+    final List<ByteBuffer> batch = new ArrayList<>();
+
+    for (int i = 500; i < 1000; i++) {
+      batch.add(ByteBuffer.wrap(record(i)));
+    }
+
+    ids.addAll(store.writeAll(batch));
+    Assert.assertTrue(store.getAllocationTable().getTail() < 1000 * record(0).length);
+
+    final Map<String, ByteBuffer> records = store.readAll(ids);
+
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertArrayEquals(record(i), store.read(ids.get(i)).array());
+      Assert.assertArrayEquals(record(i), records.get(ids.get(i)).array());
+      Assert.assertArrayEquals(record(i), store.getAsyncStore().read(ids.get(i)).get().array());
+    }
+  }
+
+  @Test
+  public void trainDictionary() throws IOException {
+    store = new Store(path, options.setCompression(Compression.DEFLATE).setReadMode(ReadMode.MAPPED).setRegionSize(4096));
+    final List<ByteBuffer> samples = new ArrayList<>();
+
+    for (int i = 0; i < 200; i++) {
+      samples.add(ByteBuffer.wrap(record(i)));
+    }
+
+    final String before = store.write(null, ByteBuffer.wrap(record(1000)));
+    final long sizeBefore = store.getAllocationTable().findById(before).getSize();
+    Assert.assertTrue(store.trainDictionary(samples) > 0);
+    final String after = store.write(null, ByteBuffer.wrap(record(1000)));
+    Assert.assertTrue(store.getAllocationTable().findById(after).getSize() < sizeBefore);
+
+    // the dictionary is loaded on open
+    store.close();
+    store = new Store(path, options);
+    Assert.assertArrayEquals(record(1000), bytes(store.read(before)));
+    Assert.assertArrayEquals(record(1000), bytes(store.read(after)));
+
+    try {
+      store.trainDictionary(samples);
+      Assert.fail("A dictionary must be trained only once");
+    } catch (final IllegalStateException e) {
+      // expected
+    }
+  }
+
+  private static byte[] bytes(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private static byte[] record(final int i) {
+    final StringBuilder links = new StringBuilder();
+
+    for (int link = 1; link <= 5; link++) {
+      links.append(String.format("{\"relation\":\"knows\",\"target\":%d},", i * link % 1000));
+    }
+
+    return String.format("{\"id\":%d,\"type\":\"Person\",\"name\":\"Person number %d\",\"links\":[%s]}", i, i, links).getBytes();
+  }
+}
@@ -0,0 +1,90 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the read throughput of the pooled and the shared read channels under contention on a store-file which is
+ * warm in the page cache. {@link #main(String[])} runs the benchmark with 1, 8, 64 and 256 reader threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreContentionBenchmark {
+  private static final int RECORDS = 100_000;
+  private static final int[] THREADS = { 1, 8, 64, 256 };
+  @Param({ "POOLED", "SHARED" })
+  private ReadMode readMode;
+  @Param({ "1024" })
+  private int recordSize;
+  private Path path;
+  private Store store;
+  private String[] ids;
+
+
+  @Setup
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    store = new Store(path, new StoreOptions().setReadMode(readMode).setCompaction(false));
+    ids = new String[RECORDS];
+
+    final byte[] record = new byte[recordSize];
+
+    for (int i = 0; i < RECORDS; i++) {
+      ThreadLocalRandom.current().nextBytes(record);
+      ids[i] = store.write(null, ByteBuffer.wrap(record));
+    }
+
+    // warm up the page cache
+    for (final String id : ids) {
+      store.read(id);
+    }
+  }
+
+
+  @TearDown
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(store.getWalPath());
+  }
+
+
+  @Benchmark
+  public void read(final Blackhole blackhole) throws IOException {
+    final ByteBuffer bytes = store.read(ids[ThreadLocalRandom.current().nextInt(RECORDS)]);
+    blackhole.consume(bytes.get(bytes.limit() - 1));
+  }
+
+
+  public static void main(final String[] args) throws RunnerException {
+    for (final int threads : StoreContentionBenchmark.THREADS) {
+      new Runner(new OptionsBuilder().include(StoreContentionBenchmark.class.getSimpleName()).threads(threads).build()).run();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the latency of {@link Store#read(String)} for the different {@link ReadMode}s on a store-file which is warm
+ * in the page cache, with and without the verification of the record checksums.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreReadBenchmark {
+  private static final int RECORDS = 100_000;
+  @Param({ "POOLED", "SHARED", "MAPPED" })
+  private ReadMode readMode;
+  @Param({ "64", "1024", "16384" })
+  private int recordSize;
+  @Param({ "false", "true" })
+  private boolean checksums;
+  private Path path;
+  private Store store;
+  private String[] ids;
+
+
+  @Setup
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    store = new Store(path, new StoreOptions().setReadMode(readMode).setChecksums(checksums));
+    ids = new String[RECORDS];
+
+    final byte[] record = new byte[recordSize];
+
+    for (int i = 0; i < RECORDS; i++) {
+      ThreadLocalRandom.current().nextBytes(record);
+      ids[i] = store.write(null, ByteBuffer.wrap(record));
+    }
+
+    // warm up the page cache
+    for (final String id : ids) {
+      store.read(id);
+    }
+  }
+
+
+  @TearDown
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+  }
+
+
+  @Benchmark
+  public void read(final Blackhole blackhole) throws IOException {
+    final ByteBuffer bytes = store.read(ids[ThreadLocalRandom.current().nextInt(RECORDS)]);
+    blackhole.consume(bytes.get(bytes.limit() - 1));
+  }
+
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(StoreReadBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,142 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import store.allocation.AllocationTable;
+
+public class StoreScanTest {
+  private Path path;
+  private Store store;
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+    Files.deleteIfExists(store.getDictionaryPath());
+  }
+
+  @Test
+  public void scan() throws IOException {
+    scan(new StoreOptions().setScanChunkSize(100));
+  }
+
+  @Test
+  public void scanMapped() throws IOException {
+    scan(new StoreOptions().setScanChunkSize(100).setReadMode(ReadMode.MAPPED));
+  }
+
+  @Test
+  public void scanPooled() throws IOException {
+    scan(new StoreOptions().setScanChunkSize(100).setReadMode(ReadMode.POOLED));
+  }
+
+  @Test
+  public void scanChecksums() throws IOException {
+    scan(new StoreOptions().setScanChunkSize(100).setChecksums(true));
+  }
+
+  @Test
+  public void scanCompressed() throws IOException {
+    scan(new StoreOptions().setScanChunkSize(100).setChecksums(true).setCompression(Compression.LZ4));
+  }
+
+  @Test
+  public void scanSkipsFreedRecords() throws IOException {
+    final List<String> ids = open(new StoreOptions().setCompaction(false).setScanChunkSize(1000));
+
+    for (int i = 0; i < ids.size(); i += 2) {
+      store.getAllocationTable().free(store.getAllocationTable().findById(ids.get(i)));
+    }
+
+    try (Stream<Map.Entry<String, ByteBuffer>> stream = store.scan(false)) {
+      final List<String> scanned = stream.map(Map.Entry::getKey).collect(Collectors.toList());
+      Assert.assertEquals(ids.size() / 2, scanned.size());
+
+      for (final String id : scanned) {
+        Assert.assertEquals(1, ids.indexOf(id) % 2);
+      }
+    }
+  }
+
+  @Test
+  public void splitByFileRange() throws IOException {
+    final List<String> ids = open(new StoreOptions().setScanChunkSize(100));
+
+    try (StoreSnapshot snapshot = store.snapshot()) {
+      final Spliterator<Map.Entry<String, ByteBuffer>> suffix = snapshot.stream(false).spliterator();
+      final Spliterator<Map.Entry<String, ByteBuffer>> prefix = suffix.trySplit();
+      Assert.assertEquals(ids.size(), prefix.estimateSize() + suffix.estimateSize());
+      Assert.assertTrue(prefix.estimateSize() > ids.size() / 4);
+      Assert.assertTrue(suffix.estimateSize() > ids.size() / 4);
+
+      final List<String> scanned = new ArrayList<>();
+      prefix.forEachRemaining(entry -> scanned.add(entry.getKey()));
+      suffix.forEachRemaining(entry -> scanned.add(entry.getKey()));
+      Assert.assertEquals(snapshot.getIds(), scanned);
+    }
+  }
+
+  private void scan(final StoreOptions options) throws IOException {
+    final List<String> ids = open(options);
+
+    try (Stream<Map.Entry<String, ByteBuffer>> stream = store.scan(false)) {
+      final List<Map.Entry<String, ByteBuffer>> entries = stream.collect(Collectors.toList());
+      Assert.assertEquals(ids.size(), entries.size());
+
+      for (final Map.Entry<String, ByteBuffer> entry : entries) {
+        Assert.assertEquals(record(ids.indexOf(entry.getKey())), toString(entry.getValue()));
+      }
+    }
+
+    final Map<String, String> parallel = new ConcurrentHashMap<>();
+
+    try (Stream<Map.Entry<String, ByteBuffer>> stream = store.scan(true)) {
+      stream.forEach(entry -> parallel.put(entry.getKey(), toString(entry.getValue())));
+    }
+
+    Assert.assertEquals(ids.size(), parallel.size());
+
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals(record(i), parallel.get(ids.get(i)));
+    }
+  }
+
+  private List<String> open(final StoreOptions options) throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    store = new Store(path, options);
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 200; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(record(i).getBytes())));
+    }
+
+    return ids;
+  }
+
+  private static String record(final int i) {
+    return "Record " + i + " " + "x".repeat(i % 30);
+  }
+
+  private static String toString(final ByteBuffer bytes) {
+    final byte[] data = new byte[bytes.remaining()];
+    bytes.duplicate().get(data);
+    return new String(data);
+  }
+}
@@ -0,0 +1,128 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import store.allocation.AllocationTable;
+
+public class StoreSnapshotTest {
+  private Path path;
+  private Store store;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    store = new Store(path, new StoreOptions().setCompaction(false).setCacheSize(1024 * 1024));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+  }
+
+  @Test
+  public void readPointInTime() throws IOException {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 10; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(("Record " + i).getBytes())));
+    }
+
+    try (StoreSnapshot snapshot = store.snapshot()) {
+      store.write(ids.get(0), ByteBuffer.wrap("Record 0 updated".getBytes()));
+      store.getAllocationTable().free(store.getAllocationTable().findById(ids.get(1)));
+      store.write(null, ByteBuffer.wrap("Record 10".getBytes()));
+      Assert.assertEquals("Record 0 updated", new String(store.read(ids.get(0)).array()));
+
+      Assert.assertEquals(ids, snapshot.getIds());
+
+      for (int i = 0; i < ids.size(); i++) {
+        Assert.assertEquals("Record " + i, new String(snapshot.read(ids.get(i)).array()));
+      }
+    }
+  }
+
+  @Test
+  public void compactionKeepsSnapshotSpace() throws IOException {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 100; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(String.format("Record %03d", i).getBytes())));
+    }
+
+    final long size = Files.size(path);
+    final StoreSnapshot snapshot = store.snapshot();
+
+    for (int i = 0; i < 50; i++) {
+      store.getAllocationTable().free(store.getAllocationTable().findById(ids.get(i)));
+    }
+
+    Assert.assertEquals(0, store.getCompactor().compact());
+    Assert.assertEquals(size, Files.size(path));
+    Assert.assertEquals("Record 000", new String(snapshot.read(ids.get(0)).array()));
+
+    snapshot.close();
+    Assert.assertTrue(snapshot.isClosed());
+    Assert.assertTrue(store.getCompactor().compact() > 0);
+
+    for (int i = 50; i < ids.size(); i++) {
+      Assert.assertEquals(String.format("Record %03d", i), new String(store.read(ids.get(i)).array()));
+    }
+  }
+
+  @Test
+  public void snapshotWhileWriting() throws Exception {
+    final List<String> ids = new ArrayList<>();
+
+    for (int i = 0; i < 50; i++) {
+      ids.add(store.write(null, ByteBuffer.wrap(("Record " + i + " version 0").getBytes())));
+    }
+
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    final Thread writer = new Thread(() -> {
+      try {
+        for (int version = 1; version <= 100; version++) {
+          for (int i = 0; i < ids.size(); i++) {
+            store.write(ids.get(i), ByteBuffer.wrap(("Record " + i + " version " + version).getBytes()));
+          }
+        }
+      } catch (final Throwable e) {
+        error.set(e);
+      }
+    });
+
+    writer.start();
+
+    while (writer.isAlive()) {
+      try (StoreSnapshot snapshot = store.snapshot()) {
+        final String first = new String(snapshot.read(ids.get(0)).array());
+        final int version = Integer.parseInt(first.substring(first.lastIndexOf(' ') + 1));
+
+        // all records of a snapshot are from the same or the next pass of the writer
+        for (int i = 0; i < ids.size(); i++) {
+          final String record = new String(snapshot.read(ids.get(i)).array());
+          final int recordVersion = Integer.parseInt(record.substring(record.lastIndexOf(' ') + 1));
+          Assert.assertTrue(record, recordVersion == version || recordVersion == version - 1);
+          Assert.assertEquals(record, new String(snapshot.read(ids.get(i)).array()));
+        }
+      }
+    }
+
+    writer.join();
+    Assert.assertNull(error.get());
+  }
+}
@@ -2,7 +2,20 @@ package store;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jboss.weld.environment.se.Weld;
 import org.jboss.weld.environment.se.WeldContainer;
@@ -12,6 +25,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import store.allocation.AllocationTable;
+import store.allocation.Fragment;
+
 public class StoreTest {
   private final static Weld weld = new Weld();
   private final static WeldContainer cdiContainer = StoreTest.weld.initialize();
@@ -26,6 +42,9 @@ public class StoreTest {
   public void tearDown() throws IOException {
     store.close();
     Files.delete(store.getPath());
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
   }
 
   @AfterClass
@@ -57,4 +76,169 @@ public class StoreTest {
     Assert.assertEquals("Hello World!", new String(bytes.array()));
   }
 
+  @Test
+  public void writeAllReadAll() throws IOException {
+    final List<ByteBuffer> records = new ArrayList<>();
+
+    for (int i = 0; i < 100; i++) {
+      records.add(ByteBuffer.wrap(("Record " + i).getBytes()));
+    }
+
+    final List<String> ids = store.writeAll(records);
+    Assert.assertEquals(100, ids.size());
+
+    // the records are allocated contiguously
+    for (int i = 1; i < ids.size(); i++) {
+      final Fragment previous = store.getAllocationTable().findById(ids.get(i - 1));
+      Assert.assertEquals(previous.getEnd() + 1, store.getAllocationTable().findById(ids.get(i)).getStart());
+    }
+
+    // move one record out of the run
+    store.write(ids.get(50), ByteBuffer.wrap("Record 50 moved to the end".getBytes()));
+
+    final List<String> shuffled = new ArrayList<>(ids);
+    Collections.shuffle(shuffled, new Random(1));
+    final Map<String, ByteBuffer> read = store.readAll(shuffled);
+    Assert.assertEquals(shuffled, new ArrayList<>(read.keySet()));
+
+    for (int i = 0; i < ids.size(); i++) {
+      final String expected = i == 50 ? "Record 50 moved to the end" : "Record " + i;
+      Assert.assertEquals(expected, new String(read.get(ids.get(i)).array()));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void readAllUnknownId() throws IOException {
+    final String id = store.write(null, ByteBuffer.wrap("Hello World!".getBytes()));
+    store.readAll(Arrays.asList(id, "unknown"));
+  }
+
+  @Test
+  public void readAllRepeatedId() throws IOException {
+    final String first = store.write(null, ByteBuffer.wrap("Record 0".getBytes()));
+    final String second = store.write(null, ByteBuffer.wrap("Record 1".getBytes()));
+
+    final Map<String, ByteBuffer> read = store.readAll(List.of(second, first, second));
+    Assert.assertEquals(List.of(second, first), new ArrayList<>(read.keySet()));
+    Assert.assertEquals("Record 1", new String(read.get(second).array()));
+  }
+
+  @Test
+  public void concurrentWrites() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    final List<Future<List<String>>> results = new ArrayList<>();
+
+    for (int t = 0; t < 8; t++) {
+      final int thread = t;
+      results.add(executor.submit(() -> {
+        final List<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+          ids.add(store.write(null, ByteBuffer.wrap(("Thread " + thread + " record " + i).getBytes())));
+        }
+
+        // update with different sizes
+        for (int i = 0; i < 200; i += 2) {
+          store.write(ids.get(i), ByteBuffer.wrap(("T" + thread + " r" + i).getBytes()));
+        }
+
+        return ids;
+      }));
+    }
+
+    for (int t = 0; t < 8; t++) {
+      final List<String> ids = results.get(t).get();
+
+      for (int i = 0; i < 200; i++) {
+        final String expected = i % 2 == 0 ? "T" + t + " r" + i : "Thread " + t + " record " + i;
+        Assert.assertEquals(expected, new String(store.read(ids.get(i)).array()));
+      }
+    }
+
+    executor.shutdown();
+  }
+
+  @Test
+  public void reopen() throws IOException {
+    final String first = store.write(null, ByteBuffer.wrap("Hello".getBytes()));
+    final String second = store.write(null, ByteBuffer.wrap("World!".getBytes()));
+    store.write(first, ByteBuffer.wrap("Hello again".getBytes()));
+    store.close();
+
+    store = StoreTest.cdiContainer.instance().select(Store.class).get();
+    Assert.assertEquals("Hello again", new String(store.read(first).array()));
+    Assert.assertEquals("World!", new String(store.read(second).array()));
+  }
+
+  @Test
+  public void recoverFromWriteAheadLog() throws IOException {
+    final String id = store.write(null, ByteBuffer.wrap("Hello World!".getBytes()));
+    final Fragment fragment = store.getAllocationTable().findById(id);
+
+    // simulate a lost write to the store-file and a crash without close
+    try (FileChannel channel = FileChannel.open(store.getPath(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate((int) fragment.getSize()), fragment.getStart());
+    }
+
+    final Store recovered = new Store(store.getPath(), store.getOptions());
+    Assert.assertEquals("Hello World!", new String(recovered.read(id).array()));
+    recovered.close();
+  }
+
+  @Test
+  public void transferTo() throws IOException {
+    final String stored = store.write(null, ByteBuffer.wrap("Hello".getBytes()));
+    final Path stream = Files.createTempFile("target", ".bin");
+
+    try (FileChannel channel = FileChannel.open(stream, StandardOpenOption.WRITE)) {
+      Assert.assertEquals(5, store.transferTo(stored, channel));
+    }
+
+    Assert.assertEquals("Hello", new String(Files.readAllBytes(stream)));
+    Files.delete(stream);
+
+    final List<StoreOptions> variants = Arrays.asList(new StoreOptions().setReadMode(ReadMode.POOLED), new StoreOptions().setReadMode(ReadMode.SHARED),
+        new StoreOptions().setReadMode(ReadMode.MAPPED), new StoreOptions().setChecksums(true), new StoreOptions().setCompression(Compression.LZ4));
+
+    for (final StoreOptions options : variants) {
+      final Path path = Files.createTempFile("store", ".bin");
+      final Path target = Files.createTempFile("target", ".bin");
+      final Store transferStore = new Store(path, options.setCompaction(false));
+
+      try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+        final String id = transferStore.write(null, ByteBuffer.wrap("Hello World!".getBytes()));
+        Assert.assertEquals(12, transferStore.transferTo(id, channel));
+        Assert.assertEquals("Hello World!", new String(Files.readAllBytes(target)));
+      } finally {
+        transferStore.close();
+        Files.delete(target);
+        Files.delete(path);
+        Files.deleteIfExists(transferStore.getTablePath());
+        Files.deleteIfExists(AllocationTable.getJournalPath(transferStore.getTablePath()));
+        Files.deleteIfExists(transferStore.getWalPath());
+      }
+    }
+  }
+
+  @Test
+  public void mappedReadsAreCopies() throws IOException {
+    store.close();
+    store = new Store(store.getPath(), new StoreOptions().setReadMode(ReadMode.MAPPED));
+    final String id = store.write(null, ByteBuffer.wrap("Hello World!".getBytes()));
+    final ByteBuffer bytes = store.read(id);
+
+    // the space of the record is reused, which would change a view of the store-file
+    store.write(id, ByteBuffer.wrap("Hello Again!".getBytes()));
+    store.write(null, ByteBuffer.wrap("Hello Other!".getBytes()));
+    Assert.assertEquals("Hello World!", StandardCharsets.UTF_8.decode(bytes).toString());
+  }
+
+  @Test(expected = IOException.class)
+  public void transferToUnknownId() throws IOException {
+    store.write(null, ByteBuffer.wrap("Hello".getBytes()));
+
+    try (FileChannel channel = FileChannel.open(store.getPath(), StandardOpenOption.WRITE)) {
+      store.transferTo("42", channel);
+    }
+  }
 }
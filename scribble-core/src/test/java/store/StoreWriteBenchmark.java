@@ -0,0 +1,110 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import store.allocation.AllocationTable;
+
+/**
+ * Measures the write throughput of the {@link Store} for concurrent writers. Run {@link #main(String[])} to compare the
+ * throughput for 1 to 32 threads. {@link #insertBatch()} reports the throughput per record of batches written with
+ * {@link Store#writeAll(List)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreWriteBenchmark {
+  private static final int RECORDS = 10_000;
+  private static final int BATCH = 64;
+  @Param({ "1", "8" })
+  private int writeChannels;
+  @Param({ "256" })
+  private int recordSize;
+  @Param({ "NEVER", "INTERVAL", "COMMIT" })
+  private FsyncPolicy fsyncPolicy;
+  private Path path;
+  private Store store;
+  private String[] ids;
+
+
+  @Setup(Level.Iteration)
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".bin");
+    store = new Store(path, new StoreOptions().setWriteChannels(writeChannels).setWriteAheadLog(true).setFsyncPolicy(fsyncPolicy));
+    ids = new String[RECORDS];
+
+    for (int i = 0; i < RECORDS; i++) {
+      ids[i] = store.write(null, ByteBuffer.allocate(recordSize));
+    }
+  }
+
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws IOException {
+    store.close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(store.getTablePath());
+    Files.deleteIfExists(AllocationTable.getJournalPath(store.getTablePath()));
+    Files.deleteIfExists(store.getWalPath());
+  }
+
+
+  @Benchmark
+  public String insert() throws IOException {
+    return store.write(null, ByteBuffer.allocate(recordSize));
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<String> insertBatch() throws IOException {
+    final List<ByteBuffer> records = new ArrayList<>(BATCH);
+
+    for (int i = 0; i < BATCH; i++) {
+      records.add(ByteBuffer.allocate(recordSize));
+    }
+
+    return store.writeAll(records);
+  }
+
+
+  @Benchmark
+  public String update() throws IOException {
+    final int size = recordSize / 2 + ThreadLocalRandom.current().nextInt(recordSize);
+    return store.write(ids[ThreadLocalRandom.current().nextInt(RECORDS)], ByteBuffer.allocate(size));
+  }
+
+
+  public static void main(final String[] args) throws RunnerException {
+    for (final int threads : new int[] { 1, 2, 4, 8, 16, 32 }) {
+      new Runner(new OptionsBuilder().include(StoreWriteBenchmark.class.getSimpleName()).threads(threads).build()).run();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteAheadLogTest {
+  private Path path;
+
+  @Before
+  public void setup() throws IOException {
+    path = Files.createTempFile("store", ".wal");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  @Test
+  public void appendReplay() throws IOException {
+    final WriteAheadLog wal = new WriteAheadLog(path, FsyncPolicy.COMMIT, 1000, null);
+
+    for (int i = 0; i < 100; i++) {
+      final long lsn = wal.append(String.valueOf(i), i * 10L, ByteBuffer.wrap(("record " + i).getBytes()));
+      wal.done();
+      wal.commit(lsn);
+    }
+
+    wal.close();
+
+    final List<String> records = new ArrayList<>();
+    final WriteAheadLog replayed = new WriteAheadLog(path, FsyncPolicy.COMMIT, 1000, null);
+    Assert.assertEquals(100, replayed.replay((id, start, bytes) -> {
+      Assert.assertEquals(Long.parseLong(id) * 10L, start);
+      records.add(StandardCharsets.UTF_8.decode(bytes).toString());
+    }));
+    replayed.close();
+
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals("record " + i, records.get(i));
+    }
+  }
+
+  @Test
+  public void appendAllReplay() throws IOException {
+    final WriteAheadLog wal = new WriteAheadLog(path, FsyncPolicy.COMMIT, 1000, null);
+    final String[] ids = { "1", "2", "3" };
+    final long[] starts = { 0L, 5L, 11L };
+    final ByteBuffer[] bytes = { ByteBuffer.wrap("first".getBytes()), ByteBuffer.wrap("second".getBytes()), ByteBuffer.wrap("third".getBytes()) };
+    wal.commit(wal.appendAll(ids, starts, bytes));
+    wal.done();
+    wal.close();
+
+    final List<String> records = new ArrayList<>();
+    final WriteAheadLog replayed = new WriteAheadLog(path, FsyncPolicy.COMMIT, 1000, null);
+    Assert.assertEquals(3, replayed.replay((id, start, data) -> {
+      Assert.assertEquals(starts[Integer.parseInt(id) - 1], start);
+      records.add(StandardCharsets.UTF_8.decode(data).toString());
+    }));
+    replayed.close();
+
+    Assert.assertEquals(List.of("first", "second", "third"), records);
+
+    // the data buffers are not consumed by the log
+    Assert.assertEquals(5, bytes[0].remaining());
+  }
+
+  @Test
+  public void ignoreTornRecord() throws IOException {
+    final WriteAheadLog wal = new WriteAheadLog(path, FsyncPolicy.NEVER, 1000, null);
+    wal.append("1", 0, ByteBuffer.wrap("first".getBytes()));
+    wal.done();
+    wal.append("2", 5, ByteBuffer.wrap("second".getBytes()));
+    wal.done();
+    wal.close();
+
+    // cut the last record in half
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 4);
+    }
+
+    final List<String> ids = new ArrayList<>();
+    final WriteAheadLog replayed = new WriteAheadLog(path, FsyncPolicy.NEVER, 1000, null);
+    Assert.assertEquals(1, replayed.replay((id, start, bytes) -> ids.add(id)));
+    Assert.assertEquals(List.of("1"), ids);
+
+    replayed.checkpoint(() -> {
+    });
+    Assert.assertEquals(0, replayed.size());
+    replayed.close();
+  }
+
+  @Test
+  public void groupCommit() throws Exception {
+    final AtomicInteger forces = new AtomicInteger();
+    final WriteAheadLog wal = new WriteAheadLog(path, FsyncPolicy.COMMIT, 1000, forces::incrementAndGet);
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    final List<Future<?>> results = new ArrayList<>();
+
+    for (int t = 0; t < 8; t++) {
+      results.add(executor.submit(() -> {
+        for (int i = 0; i < 100; i++) {
+          final long lsn = wal.append("id", 0, ByteBuffer.wrap(new byte[100]));
+          wal.done();
+          wal.commit(lsn);
+        }
+
+        return null;
+      }));
+    }
+
+    for (final Future<?> result : results) {
+      result.get();
+    }
+
+    executor.shutdown();
+
+    // each commit is durable, but concurrent commits share a force
+    Assert.assertTrue(forces.get() <= 800);
+    Assert.assertEquals(800, wal.replay((id, start, bytes) -> {
+    }));
+    wal.close();
+  }
+}
@@ -0,0 +1,213 @@
+package store.allocation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AllocationJournalTest {
+	private Path path;
+
+	@Before
+	public void setup() throws IOException {
+		path = Files.createTempFile("allocation", ".table");
+		Files.delete(path);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+		Files.deleteIfExists(AllocationTable.getJournalPath(path));
+	}
+
+	@Test
+	public void replayJournal() throws IOException {
+		final AllocationTable table = new AllocationTable();
+		table.open(path);
+		populate(table);
+
+		// no close, so the state must be recovered from the journal only
+		final AllocationTable replayed = new AllocationTable();
+		replayed.open(path);
+		assertSameState(table, replayed);
+		Assert.assertFalse(Files.exists(path));
+	}
+
+	@Test
+	public void loadSnapshot() throws IOException {
+		final AllocationTable table = new AllocationTable();
+		table.open(path);
+		populate(table);
+		table.close();
+
+		final AllocationTable loaded = new AllocationTable();
+		loaded.open(path);
+		assertSameState(table, loaded);
+
+		// further operations continue on top of the snapshot
+		final Fragment fragment = loaded.allocate(null, 5);
+		final AllocationTable replayed = new AllocationTable();
+		replayed.open(path);
+		Assert.assertEquals(fragment, replayed.findById(fragment.getId()));
+	}
+
+	@Test
+	public void checkpointDuringOperation() throws IOException {
+		final AllocationTable table = new AllocationTable();
+		table.setCheckpointSize(64);
+		table.open(path);
+		populate(table);
+
+		Assert.assertTrue(Files.exists(path));
+
+		final AllocationTable loaded = new AllocationTable();
+		loaded.open(path);
+		assertSameState(table, loaded);
+	}
+
+	@Test
+	public void snapshotWithoutRotation() throws IOException {
+		final AllocationTable table = new AllocationTable();
+		table.open(path);
+		populate(table);
+
+		// a crash after the snapshot has been written and before the journal has been rotated
+		AllocationSnapshot.write(path, 1, Files.size(AllocationTable.getJournalPath(path)), AllocationSnapshot.capture(table));
+		final Fragment fragment = table.allocate(null, 15);
+		table.free(table.findById(table.allocate(null, 25).getId()));
+
+		final AllocationTable replayed = new AllocationTable();
+		replayed.open(path);
+		assertSameState(table, replayed);
+
+		// the journal has been rotated to the generation of the snapshot
+		final Fragment next = replayed.allocate(fragment.getId(), 35);
+		final AllocationTable again = new AllocationTable();
+		again.open(path);
+		Assert.assertEquals(next, again.findById(fragment.getId()));
+		assertSameState(replayed, again);
+	}
+
+	@Test
+	public void failedCheckpoint() throws IOException {
+		final AllocationTable table = new AllocationTable();
+		table.setCheckpointSize(64);
+		table.open(path);
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		Files.createDirectory(temp);
+
+		try {
+			// the snapshot cannot be written, but the allocations have been journaled
+			populate(table);
+			Assert.assertFalse(Files.exists(path));
+		} finally {
+			Files.delete(temp);
+		}
+
+		final Fragment fragment = table.allocate(null, 15);
+		Assert.assertTrue(Files.exists(path));
+
+		final AllocationTable loaded = new AllocationTable();
+		loaded.open(path);
+		assertSameState(table, loaded);
+		Assert.assertEquals(fragment, loaded.findById(fragment.getId()));
+	}
+
+	@Test
+	public void truncateTornRecord() throws IOException {
+		final AllocationTable table = new AllocationTable();
+		table.open(path);
+		final Fragment first = table.allocate(null, 10);
+		final Fragment second = table.allocate(null, 20);
+
+		// cut the last record in half
+		try (FileChannel channel = FileChannel.open(AllocationTable.getJournalPath(path), StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 5);
+			channel.write(ByteBuffer.wrap(new byte[] { 1, 2 }), channel.size());
+		}
+
+		final AllocationTable replayed = new AllocationTable();
+		replayed.open(path);
+		Assert.assertEquals(first, replayed.findById(first.getId()));
+		Assert.assertNull(replayed.findById(second.getId()));
+
+		final Fragment third = replayed.allocate(null, 5);
+		final AllocationTable again = new AllocationTable();
+		again.open(path);
+		Assert.assertEquals(third, again.findById(third.getId()));
+	}
+
+	@Test
+	public void replayConcurrentJournal() throws Exception {
+		final AllocationTable table = new AllocationTable();
+		table.open(path);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final List<Future<?>> results = new ArrayList<>();
+
+		for (int t = 0; t < 4; t++) {
+			final Random random = new Random(t);
+			results.add(executor.submit(() -> {
+				final List<String> ids = new ArrayList<>();
+
+				for (int i = 0; i < 2000; i++) {
+					final int operation = ids.isEmpty() ? 0 : random.nextInt(3);
+
+					if (operation == 0) {
+						ids.add(table.allocate(null, 1 + random.nextInt(100)).getId());
+					} else if (operation == 1) {
+						table.allocate(ids.get(random.nextInt(ids.size())), 1 + random.nextInt(100));
+					} else {
+						table.free(table.findByPosition(table.findById(ids.remove(random.nextInt(ids.size()))).getStart()));
+					}
+				}
+				return null;
+			}));
+		}
+
+		for (final Future<?> result : results) {
+			result.get();
+		}
+
+		executor.shutdown();
+
+		final AllocationTable replayed = new AllocationTable();
+		replayed.open(path);
+
+		for (final Fragment fragment : table.getFragments().values()) {
+			if (fragment.getType() == FragmentType.BLOCK) {
+				Assert.assertEquals(fragment, replayed.findById(fragment.getId()));
+			}
+		}
+
+		Assert.assertEquals(table.getTail() - table.getFreeSpace(), replayed.getTail() - replayed.getFreeSpace());
+	}
+
+	private static void populate(final AllocationTable table) {
+		final Fragment a = table.allocate(null, 10);
+		final String b = table.allocate(null, 20).getId();
+		table.allocate(null, 30);
+		table.allocate(b, 40);
+		table.free(table.findById(a.getId()));
+		table.allocate(null, 5);
+		table.free(table.findById(b));
+	}
+
+	private static void assertSameState(final AllocationTable expected, final AllocationTable actual) {
+		Assert.assertEquals(expected.getFragments().toString(), actual.getFragments().toString());
+		Assert.assertEquals(expected.getFreeIds().toString(), actual.getFreeIds().toString());
+		Assert.assertEquals(expected.getLastId(), actual.getLastId());
+	}
+}
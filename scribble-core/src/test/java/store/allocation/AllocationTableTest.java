@@ -3,6 +3,10 @@ package store.allocation;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -73,6 +77,126 @@ public class AllocationTableTest {
 		Assert.assertEquals(FragmentType.FREE, f.getType());
 	}
 
+	@Test
+	public void reuseFreeSpaces() {
+		final AllocationTable table = new AllocationTable();
+		final Fragment a = table.allocate(null, 10);
+		table.allocate(null, 10);
+		final Fragment c = table.allocate(null, 10);
+		table.allocate(null, 10);
+
+		// two free spaces of the same size
+		table.free(table.findByPosition(a.getStart()));
+		table.free(table.findByPosition(c.getStart()));
+		Assert.assertEquals(2, table.getFreeSpaces().size());
+		Assert.assertEquals(20, table.getFreeSpace());
+
+		Assert.assertEquals(0, table.allocate(null, 10).getStart());
+		Assert.assertEquals(20, table.allocate(null, 10).getStart());
+		Assert.assertEquals(0, table.getFreeSpace());
+	}
+
+	@Test
+	public void churn() {
+		final AllocationTable table = new AllocationTable();
+		final Random random = new Random(4711);
+		final List<String> ids = new ArrayList<>();
+
+		for (int i = 0; i < 20000; i++) {
+			if (ids.isEmpty() || random.nextInt(3) > 0) {
+				ids.add(table.allocate(null, 1 + random.nextInt(1000)).getId());
+			} else {
+				final String id = ids.remove(random.nextInt(ids.size()));
+				table.free(table.findByPosition(table.findById(id).getStart()));
+			}
+
+			if (!ids.isEmpty() && random.nextInt(4) == 0) {
+				// update an existing record with a different size
+				final String id = ids.get(random.nextInt(ids.size()));
+				table.allocate(id, 1 + random.nextInt(1000));
+			}
+		}
+
+		long position = 0;
+		long free = 0;
+
+		for (final Fragment fragment : table.getFragments().values()) {
+			Assert.assertEquals(position, fragment.getStart());
+			position = fragment.getEnd() + 1;
+
+			if (fragment.getType() == FragmentType.FREE) {
+				free += fragment.getSize();
+			}
+		}
+
+		Assert.assertEquals(free, table.getFreeSpace());
+		Assert.assertEquals(ids.size(), ids.stream().map(table::findById).distinct().count());
+		System.out.println("Free: " + (double) free / position + ", fragmentation ratio: " + table.getFragmentationRatio());
+		Assert.assertTrue(free < position / 4);
+	}
+
+	@Test
+	public void concurrentAllocation() throws Exception {
+		final AllocationTable table = new AllocationTable();
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final List<Future<List<String>>> results = new ArrayList<>();
+
+		for (int t = 0; t < 8; t++) {
+			final long seed = t;
+			results.add(executor.submit(() -> {
+				final Random random = new Random(seed);
+				final List<String> ids = new ArrayList<>();
+
+				for (int i = 0; i < 5000; i++) {
+					final int operation = ids.isEmpty() ? 0 : random.nextInt(4);
+
+					if (operation < 2) {
+						ids.add(table.allocate(null, 1 + random.nextInt(500)).getId());
+					} else if (operation == 2) {
+						table.allocate(ids.get(random.nextInt(ids.size())), 1 + random.nextInt(500));
+					} else {
+						final String id = ids.remove(random.nextInt(ids.size()));
+						table.free(table.findByPosition(table.findById(id).getStart()));
+					}
+				}
+
+				return ids;
+			}));
+		}
+
+		final List<String> ids = new ArrayList<>();
+
+		for (final Future<List<String>> result : results) {
+			ids.addAll(result.get());
+		}
+
+		executor.shutdown();
+
+		long position = 0;
+		long free = 0;
+		int blocks = 0;
+
+		for (final Fragment fragment : table.getFragments().values()) {
+			Assert.assertEquals(position, fragment.getStart());
+			position = fragment.getEnd() + 1;
+
+			if (fragment.getType() == FragmentType.FREE) {
+				free += fragment.getSize();
+			} else {
+				Assert.assertSame(fragment, table.findById(fragment.getId()));
+				blocks++;
+			}
+		}
+
+		Assert.assertEquals(position, table.getTail());
+		Assert.assertEquals(free, table.getFreeSpace());
+		Assert.assertEquals(ids.size(), blocks);
+
+		for (final String id : ids) {
+			Assert.assertEquals(FragmentType.BLOCK, table.findById(id).getType());
+		}
+	}
+
 	@Test
 	public void multiThreadedAccess() {
 		final List<Fragment> blocked = Collections.synchronizedList(new ArrayList<Fragment>());
@@ -0,0 +1,95 @@
+package store.allocation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AllocationViewTest {
+
+	@Test
+	public void heapTable() throws IOException {
+		pinnedViewIsStable(new AllocationTable());
+	}
+
+
+	@Test
+	public void offHeapTable() throws IOException {
+		pinnedViewIsStable(new OffHeapAllocationTable());
+	}
+
+
+	@Test
+	public void reclaimAfterOldestViewClosed() {
+		for (final IAllocationTable table : Arrays.asList(new AllocationTable(), new OffHeapAllocationTable())) {
+			final String id = table.allocate(null, 10).getId();
+			final AllocationView older = table.pin();
+			table.allocate(id, 10);
+			final AllocationView newer = table.pin();
+			table.free(table.findById(id));
+
+			// both spaces are retained
+			Assert.assertEquals(0, table.getFreeSpace());
+			Assert.assertEquals(20, table.getTail());
+
+			// the first space is no longer visible to any view
+			older.close();
+			Assert.assertEquals(10, table.getFreeSpace());
+			Assert.assertEquals(10, newer.findById(id).getStart());
+
+			newer.close();
+			Assert.assertEquals(0, table.getFreeSpace());
+			Assert.assertEquals(0, table.trim());
+		}
+	}
+
+
+	private static void pinnedViewIsStable(final IAllocationTable table) throws IOException {
+		final List<String> ids = new ArrayList<>();
+
+		for (int i = 0; i < 10; i++) {
+			ids.add(table.allocate(null, 10).getId());
+		}
+
+		final AllocationView view = table.pin();
+
+		// update, free and add fragments after pinning the view
+		table.allocate(ids.get(0), 20);
+		table.free(table.findById(ids.get(5)));
+		table.free(table.findById(ids.get(9)));
+		table.allocate(null, 5);
+
+		// the space of the changed fragments is not reused
+		Assert.assertEquals(0, table.getFreeSpace());
+		Assert.assertEquals(125, table.getTail());
+		Assert.assertEquals(125, table.trim());
+
+		for (int i = 0; i < ids.size(); i++) {
+			final Fragment fragment = view.findById(ids.get(i));
+			Assert.assertEquals(i * 10, fragment.getStart());
+			Assert.assertEquals(i * 10 + 9, fragment.getEnd());
+		}
+
+		// the added fragment reuses the id of a freed one
+		Assert.assertEquals(ids, toIds(view.getFragments()));
+
+		view.close();
+		Assert.assertTrue(view.isClosed());
+		Assert.assertEquals(30, table.getFreeSpace());
+		Assert.assertTrue(table.allocate(null, 10).getStart() < 100);
+	}
+
+
+	private static List<String> toIds(final List<Fragment> fragments) {
+		final List<String> ids = new ArrayList<>();
+
+		for (final Fragment fragment : fragments) {
+			ids.add(fragment.getId());
+		}
+
+		return ids;
+	}
+}
@@ -0,0 +1,62 @@
+package store.allocation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FreeSpaceIndexTest {
+	private final FreeSpaceIndex index = new FreeSpaceIndex();
+
+	@Test
+	public void duplicateSizes() {
+		index.add(new Fragment(0, 9));
+		index.add(new Fragment(20, 29));
+		index.add(new Fragment(40, 49));
+
+		Assert.assertEquals(3, index.size());
+		Assert.assertEquals(30, index.getFreeSpace());
+		Assert.assertEquals(0, index.bestFit(10).getStart());
+		Assert.assertEquals(0, index.first().getStart());
+
+		Assert.assertTrue(index.remove(new Fragment(0, 9)));
+		Assert.assertEquals(20, index.bestFit(10).getStart());
+		Assert.assertEquals(20, index.first().getStart());
+		Assert.assertFalse(index.remove(new Fragment(0, 9)));
+	}
+
+	@Test
+	public void bestFit() {
+		index.add(new Fragment(0, 99));
+		index.add(new Fragment(200, 219));
+		index.add(new Fragment(300, 316));
+		index.add(new Fragment(400, 1399));
+
+		// within the same size class
+		Assert.assertEquals(300, index.bestFit(17).getStart());
+		Assert.assertEquals(200, index.bestFit(18).getStart());
+		// from a larger size class
+		Assert.assertEquals(0, index.bestFit(21).getStart());
+		Assert.assertEquals(400, index.bestFit(101).getStart());
+		Assert.assertNull(index.bestFit(1001));
+	}
+
+	@Test
+	public void emptySize() {
+		index.add(new Fragment(0, 9));
+
+		Assert.assertEquals(0, FreeSpaceIndex.sizeClass(0));
+		Assert.assertEquals(0, index.bestFit(0).getStart());
+	}
+
+	@Test
+	public void fragmentationRatio() {
+		Assert.assertEquals(0.0, index.getFragmentationRatio(), 0.0);
+
+		index.add(new Fragment(0, 99));
+		Assert.assertEquals(0.0, index.getFragmentationRatio(), 0.0);
+
+		index.add(new Fragment(200, 299));
+		index.add(new Fragment(400, 599));
+		Assert.assertEquals(0.5, index.getFragmentationRatio(), 0.0001);
+		Assert.assertEquals(400, index.largest().getStart());
+	}
+}
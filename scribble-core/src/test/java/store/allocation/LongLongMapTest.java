@@ -0,0 +1,49 @@
+package store.allocation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LongLongMapTest {
+
+	@Test
+	public void putGetRemove() {
+		final LongLongMap map = new LongLongMap(4);
+		Assert.assertEquals(LongLongMap.MISSING, map.get(1));
+		Assert.assertEquals(LongLongMap.MISSING, map.put(1, 10));
+		Assert.assertEquals(10, map.put(1, 11));
+		Assert.assertEquals(11, map.get(1));
+		Assert.assertEquals(11, map.remove(1));
+		Assert.assertEquals(LongLongMap.MISSING, map.remove(1));
+		Assert.assertEquals(0, map.size());
+	}
+
+	@Test
+	public void sameAsHashMap() {
+		final LongLongMap map = new LongLongMap(16);
+		final Map<Long, Long> expected = new HashMap<>();
+		final Random random = new Random(5);
+
+		for (int i = 0; i < 200000; i++) {
+			// a small key range forces collisions, removals and growth
+			final long key = random.nextInt(50000) * 64L;
+
+			if (random.nextInt(3) == 0) {
+				final Long removed = expected.remove(key);
+				Assert.assertEquals(removed != null ? removed : LongLongMap.MISSING, map.remove(key));
+			} else {
+				final Long previous = expected.put(key, (long) i);
+				Assert.assertEquals(previous != null ? previous : LongLongMap.MISSING, map.put(key, i));
+			}
+		}
+
+		Assert.assertEquals(expected.size(), map.size());
+
+		for (final Map.Entry<Long, Long> entry : expected.entrySet()) {
+			Assert.assertEquals((long) entry.getValue(), map.get(entry.getKey()));
+		}
+	}
+}
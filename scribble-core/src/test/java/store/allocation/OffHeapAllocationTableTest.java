@@ -0,0 +1,249 @@
+package store.allocation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapAllocationTableTest {
+	private Path path;
+
+	@Before
+	public void setup() throws IOException {
+		path = Files.createTempFile("offheap", ".table");
+		Files.delete(path);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+		Files.deleteIfExists(AbstractAllocationTable.getJournalPath(path));
+	}
+
+	@Test
+	public void sameAsHeapTable() {
+		final AllocationTable heap = new AllocationTable();
+		final OffHeapAllocationTable offHeap = new OffHeapAllocationTable();
+		final Random random = new Random(7);
+		final List<String> ids = new ArrayList<>();
+
+		for (int i = 0; i < 20000; i++) {
+			final int operation = ids.isEmpty() ? 0 : random.nextInt(4);
+			final long size = 1 + random.nextInt(100);
+
+			if (operation == 3) {
+				final long[] sizes = { size, 1 + random.nextInt(100), 1 + random.nextInt(100) };
+				final List<Fragment> fragments = heap.allocateAll(sizes);
+				Assert.assertEquals(fragments, offHeap.allocateAll(sizes));
+				fragments.forEach(fragment -> ids.add(fragment.getId()));
+			} else if (operation == 0) {
+				final Fragment fragment = heap.allocate(null, size);
+				Assert.assertEquals(fragment, offHeap.allocate(null, size));
+				ids.add(fragment.getId());
+			} else if (operation == 1) {
+				final String id = ids.get(random.nextInt(ids.size()));
+				Assert.assertEquals(heap.allocate(id, size), offHeap.allocate(id, size));
+			} else {
+				final String id = ids.remove(random.nextInt(ids.size()));
+				heap.free(heap.findById(id).clone());
+				offHeap.free(offHeap.findById(id));
+				Assert.assertNull(offHeap.findById(id));
+			}
+
+			Assert.assertEquals(heap.getTail(), offHeap.getTail());
+			Assert.assertEquals(heap.getFreeSpace(), offHeap.getFreeSpace());
+		}
+
+		for (final String id : ids) {
+			Assert.assertEquals(heap.findById(id), offHeap.findById(id));
+		}
+
+		Assert.assertEquals(ids.size(), offHeap.size());
+	}
+
+	@Test
+	public void freeJoinsNeighbours() {
+		final OffHeapAllocationTable table = new OffHeapAllocationTable();
+		final Fragment a = table.allocate(null, 10);
+		final Fragment b = table.allocate(null, 20);
+		final Fragment c = table.allocate(null, 30);
+		table.allocate(null, 40);
+
+		table.free(a);
+		table.free(c);
+		Assert.assertEquals(40, table.getFreeSpace());
+
+		// b is joined with both neighbours
+		table.free(b);
+		Assert.assertEquals(60, table.getFreeSpace());
+		Assert.assertEquals(0.0, table.getFragmentationRatio(), 0.0);
+
+		// the freed ids are reused
+		Assert.assertEquals(a.getId(), table.allocate(null, 60).getId());
+		Assert.assertEquals(0, table.getFreeSpace());
+	}
+
+	@Test
+	public void freeTailMovesTailBack() {
+		final OffHeapAllocationTable table = new OffHeapAllocationTable();
+		table.allocate(null, 10);
+		final Fragment b = table.allocate(null, 20);
+		final Fragment c = table.allocate(null, 30);
+
+		table.free(b);
+		table.free(c);
+		Assert.assertEquals(10, table.getTail());
+		Assert.assertEquals(0, table.getFreeSpace());
+	}
+
+	@Test
+	public void numericIds() {
+		final OffHeapAllocationTable table = new OffHeapAllocationTable();
+		Assert.assertNull(table.findById("unknown"));
+
+		try {
+			table.allocate("unknown", 10);
+			Assert.fail("Non-numeric ids must be rejected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+
+		// explicit ids are not generated again
+		table.allocate("3", 10);
+		Assert.assertEquals("4", table.allocate(null, 10).getId());
+	}
+
+	@Test
+	public void relocate() {
+		final OffHeapAllocationTable table = new OffHeapAllocationTable();
+		final Fragment a = table.allocate(null, 10);
+		table.allocate(null, 10);
+		final Fragment c = table.allocate(null, 10);
+		table.free(a);
+
+		Assert.assertEquals(c, table.findLastBlock(table.getTail()));
+		final Fragment claimed = table.claim(10, c.getStart());
+		Assert.assertEquals(0, claimed.getStart());
+
+		final Fragment relocated = table.relocate(c, claimed);
+		Assert.assertEquals(0, relocated.getStart());
+		Assert.assertEquals(relocated, table.findById(c.getId()));
+		Assert.assertEquals(20, table.getTail());
+		Assert.assertEquals(20, table.trim());
+
+		// a stale fragment is not relocated
+		table.allocate(null, 10);
+		final Fragment free = table.allocate(null, 10);
+		table.free(table.findById(table.allocate(null, 10).getId()));
+		table.free(free);
+		final Fragment stale = table.findById(c.getId());
+		table.allocate(c.getId(), 10);
+		Assert.assertNull(table.relocate(stale, table.claim(10, Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void persist() throws IOException {
+		final OffHeapAllocationTable table = new OffHeapAllocationTable();
+		table.open(path);
+		final List<String> ids = populate(table);
+
+		// replay the journal only
+		final OffHeapAllocationTable replayed = new OffHeapAllocationTable();
+		replayed.open(path);
+		assertSameState(table, replayed, ids);
+
+		// load the snapshot
+		table.close();
+		final OffHeapAllocationTable loaded = new OffHeapAllocationTable();
+		loaded.open(path);
+		assertSameState(table, loaded, ids);
+		Assert.assertEquals(table.getFreeIds(), loaded.getFreeIds());
+		Assert.assertEquals(table.getLastId(), loaded.getLastId());
+	}
+
+	@Test
+	public void loadHeapSnapshot() throws IOException {
+		final AllocationTable heap = new AllocationTable();
+		heap.open(path);
+		final List<String> ids = populate(heap);
+		heap.close();
+
+		final OffHeapAllocationTable offHeap = new OffHeapAllocationTable();
+		offHeap.open(path);
+		assertSameState(heap, offHeap, ids);
+	}
+
+	@Test
+	public void concurrentAllocation() throws Exception {
+		final OffHeapAllocationTable table = new OffHeapAllocationTable();
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final List<Future<List<Fragment>>> results = new ArrayList<>();
+
+		for (int t = 0; t < 8; t++) {
+			results.add(executor.submit(() -> {
+				final List<Fragment> fragments = new ArrayList<>();
+
+				for (int i = 0; i < 1000; i++) {
+					fragments.add(table.allocate(null, 10));
+
+					if (i % 3 == 0) {
+						table.free(table.findById(fragments.remove(0).getId()));
+					}
+				}
+
+				return fragments;
+			}));
+		}
+
+		long allocated = 0;
+
+		for (final Future<List<Fragment>> result : results) {
+			for (final Fragment fragment : result.get()) {
+				Assert.assertEquals(fragment, table.findById(fragment.getId()));
+				allocated += fragment.getSize();
+			}
+		}
+
+		executor.shutdown();
+		Assert.assertEquals(allocated, table.getTail() - table.getFreeSpace());
+	}
+
+	private static List<String> populate(final IAllocationTable table) {
+		final Random random = new Random(3);
+		final List<String> ids = new ArrayList<>();
+
+		for (int i = 0; i < 2000; i++) {
+			final int operation = ids.isEmpty() ? 0 : random.nextInt(3);
+
+			if (operation == 0) {
+				ids.add(table.allocate(null, 1 + random.nextInt(100)).getId());
+			} else if (operation == 1) {
+				table.allocate(ids.get(random.nextInt(ids.size())), 1 + random.nextInt(100));
+			} else {
+				final Fragment fragment = table.findById(ids.remove(random.nextInt(ids.size())));
+				table.free(new Fragment(fragment.getStart(), fragment.getEnd()));
+			}
+		}
+
+		return ids;
+	}
+
+	private static void assertSameState(final IAllocationTable expected, final IAllocationTable actual, final List<String> ids) {
+		for (final String id : ids) {
+			Assert.assertEquals(expected.findById(id), actual.findById(id));
+		}
+
+		Assert.assertEquals(expected.size(), actual.size());
+		Assert.assertEquals(expected.getTail() - expected.getFreeSpace(), actual.getTail() - actual.getFreeSpace());
+	}
+}
@@ -0,0 +1,87 @@
+package store.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodecTest {
+  private static final byte[] DICTIONARY = "{\"type\":\"Person\",\"name\":\"\",\"links\":[{\"relation\":\"knows\",\"target\":\"\"}]}".getBytes();
+
+  @Test
+  public void lz4() throws IOException {
+    roundTrips(new Lz4Codec());
+  }
+
+  @Test
+  public void deflate() throws IOException {
+    roundTrips(new DeflateCodec());
+  }
+
+  @Test
+  public void lz4Compresses() {
+    final byte[] text = text(100_000);
+    Assert.assertTrue(new Lz4Codec().compress(text, null).length < text.length * 2 / 3);
+  }
+
+  @Test
+  public void dictionaryImprovesSmallRecords() {
+    final byte[] record = "{\"type\":\"Person\",\"name\":\"Alice\",\"links\":[{\"relation\":\"knows\",\"target\":\"Bob\"}]}".getBytes();
+
+    for (final ICodec codec : new ICodec[] { new Lz4Codec(), new DeflateCodec() }) {
+      Assert.assertTrue(codec.compress(record, CodecTest.DICTIONARY).length < codec.compress(record, null).length / 2);
+    }
+  }
+
+  @Test
+  public void corruptData() {
+    final byte[] text = text(10_000);
+
+    for (final ICodec codec : new ICodec[] { new Lz4Codec(), new DeflateCodec() }) {
+      final byte[] compressed = codec.compress(text, null);
+
+      try {
+        codec.decompress(compressed, 0, compressed.length / 2, null, text.length);
+        Assert.fail("Truncated data must not be decompressed by " + codec.getClass().getSimpleName());
+      } catch (final IOException e) {
+        // expected
+      }
+    }
+  }
+
+  private static void roundTrips(final ICodec codec) throws IOException {
+    final Random random = new Random(11);
+    final byte[] noise = new byte[5000];
+    random.nextBytes(noise);
+    final byte[] run = new byte[70_000];
+    Arrays.fill(run, (byte) 'a');
+
+    for (final byte[] data : new byte[][] { new byte[0], "a".getBytes(), "Hello World! Hello World! Hello World!".getBytes(), noise, run, text(300_000) }) {
+      for (final byte[] dictionary : new byte[][] { null, CodecTest.DICTIONARY }) {
+        final byte[] compressed = codec.compress(data, dictionary);
+
+        // decompress from the middle of a larger array
+        final byte[] padded = new byte[compressed.length + 10];
+        System.arraycopy(compressed, 0, padded, 3, compressed.length);
+        Assert.assertArrayEquals(data, codec.decompress(padded, 3, compressed.length, dictionary, data.length));
+      }
+    }
+  }
+
+  /**
+   * Creates text-like data with repeating words.
+   */
+  static byte[] text(final int length) {
+    final String[] words = { "node", "link", "person", "knows", "type", "name", "{", "}", "\"", ":", ",", "semantic", "graph" };
+    final Random random = new Random(3);
+    final StringBuilder text = new StringBuilder();
+
+    while (text.length() < length) {
+      text.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? random.nextInt(1000) : "").append(' ');
+    }
+
+    return text.substring(0, length).getBytes();
+  }
+}
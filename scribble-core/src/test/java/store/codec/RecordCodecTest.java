@@ -0,0 +1,68 @@
+package store.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RecordCodecTest {
+
+  @Test
+  public void encodeDecode() throws IOException {
+    final RecordCodec codec = new RecordCodec(new Lz4Codec());
+    final byte[] text = CodecTest.text(1000);
+    final ByteBuffer record = codec.encode(ByteBuffer.wrap(text));
+    Assert.assertTrue(record.remaining() < text.length);
+    Assert.assertEquals(Lz4Codec.ID, record.get(0));
+    Assert.assertArrayEquals(text, codec.decode(record).array());
+
+    // a record which does not shrink is stored uncompressed
+    final ByteBuffer small = codec.encode(ByteBuffer.wrap("abc".getBytes()));
+    Assert.assertEquals(RecordCodec.HEADER_SIZE + 3, small.remaining());
+    Assert.assertEquals("abc", new String(codec.decode(small).array()));
+
+    // records of another codec can still be read
+    Assert.assertArrayEquals(text, new RecordCodec(new DeflateCodec()).decode(record).array());
+  }
+
+  @Test
+  public void trainedDictionary() throws IOException {
+    final List<ByteBuffer> samples = new ArrayList<>();
+
+    for (int i = 0; i < 1000; i++) {
+      samples.add(RecordCodecTest.record(i));
+    }
+
+    final byte[] dictionary = DictionaryTrainer.train(samples, 4096);
+    Assert.assertTrue(dictionary.length > 0 && dictionary.length <= 4096);
+
+    final RecordCodec codec = new RecordCodec(new Lz4Codec());
+    final ByteBuffer before = codec.encode(RecordCodecTest.record(5000));
+    codec.setDictionary(dictionary);
+    final ByteBuffer after = codec.encode(RecordCodecTest.record(5000));
+    Assert.assertTrue(after.remaining() + " < " + before.remaining(), after.remaining() < before.remaining() * 2 / 3);
+
+    // records with and without the dictionary are readable
+    Assert.assertArrayEquals(RecordCodecTest.record(5000).array(), codec.decode(before).array());
+    Assert.assertArrayEquals(RecordCodecTest.record(5000).array(), codec.decode(after).array());
+
+    try {
+      new RecordCodec(new Lz4Codec()).decode(after);
+      Assert.fail("A record compressed with a dictionary requires the dictionary");
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void trainWithoutSamples() {
+    DictionaryTrainer.train(List.of(ByteBuffer.wrap("short".getBytes())), 1024);
+  }
+
+  private static ByteBuffer record(final int i) {
+    return ByteBuffer.wrap(String.format("{\"id\":%d,\"type\":\"Person\",\"name\":\"Person %d\",\"links\":[{\"relation\":\"knows\",\"target\":%d}]}", i, i, i * 7 % 1000).getBytes());
+  }
+}